@@ -27,6 +27,7 @@ import org.kurento.client.Continuation;
 import org.kurento.client.MediaPipeline;
 import org.kurento.client.WebRtcEndpoint;
 import org.kurento.client.internal.server.KurentoServerException;
+import org.kurento.commons.ThreadFactoryCreator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.TextMessage;
@@ -65,7 +66,7 @@ public class RoomParticipant implements Closeable {
     this.room = room;
     this.receivingEndpoint = new WebRtcEndpoint.Builder(pipeline).build();
 
-    this.senderThread = new Thread("sender:" + name) {
+    this.senderThread = ThreadFactoryCreator.newThread("sender:" + name, new Runnable() {
       @Override
       public void run() {
         try {
@@ -74,7 +75,7 @@ public class RoomParticipant implements Closeable {
           return;
         }
       }
-    };
+    });
 
     this.senderThread.start();
   }
@@ -19,19 +19,29 @@ package org.kurento.client;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.PreDestroy;
 
 import org.kurento.client.internal.KmsUrlLoader;
 import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.MediaObjectPool;
+import org.kurento.client.internal.client.PropertyCache;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.client.AbstractJsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.ConnectionHealth;
 import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientMultiplexedWebSocket;
 import org.kurento.jsonrpc.client.JsonRpcClientNettyWebSocket;
+import org.kurento.jsonrpc.client.JsonRpcWSConnectionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,6 +71,9 @@ public class KurentoClient {
   private long connectionTimeout =
       PropertiesManager.getProperty("kurento.client.connectionTimeout", 5000);
 
+  private static final boolean MULTIPLEXING =
+      PropertiesManager.getProperty("kurento.client.multiplexing", false);
+
   private String id;
 
   private ServerManager serverManager;
@@ -118,11 +131,25 @@ public class KurentoClient {
 
   public static KurentoClient create(String websocketUrl, Properties properties) {
     log.debug("Connecting to kms in {}", websocketUrl);
-    JsonRpcClientNettyWebSocket client = new JsonRpcClientNettyWebSocket(websocketUrl);
+    JsonRpcClientNettyWebSocket client = createJsonRpcClient(websocketUrl, null);
     configureJsonRpcClient(client);
     return new KurentoClient(client);
   }
 
+  /**
+   * Creates the WebSocket client used to connect to the media server. If the property
+   * {@code kurento.client.multiplexing} is true, all the clients connected to the same server
+   * share a single WebSocket (when the server supports it).
+   */
+  protected static JsonRpcClientNettyWebSocket createJsonRpcClient(String websocketUrl,
+      JsonRpcWSConnectionListener listener) {
+    if (MULTIPLEXING) {
+      return new JsonRpcClientMultiplexedWebSocket(websocketUrl, listener);
+    } else {
+      return new JsonRpcClientNettyWebSocket(websocketUrl, listener);
+    }
+  }
+
   protected static void configureJsonRpcClient(AbstractJsonRpcClientWebSocket client) {
     client.enableHeartbeat(KEEPALIVE_TIME);
     client.setTryReconnectingForever(true);
@@ -144,7 +171,7 @@ public class KurentoClient {
   public static KurentoClient create(String websocketUrl, KurentoConnectionListener listener,
       Properties properties) {
     log.debug("Connecting to KMS in {}", websocketUrl);
-    JsonRpcClientNettyWebSocket client = new JsonRpcClientNettyWebSocket(websocketUrl,
+    JsonRpcClientNettyWebSocket client = createJsonRpcClient(websocketUrl,
         JsonRpcConnectionListenerKurento.create(listener));
     configureJsonRpcClient(client);
     return new KurentoClient(client);
@@ -166,7 +193,7 @@ public class KurentoClient {
 
     log.debug("Connecting to KMS in {}", kmsWsUri);
 
-    JsonRpcClientNettyWebSocket client = new JsonRpcClientNettyWebSocket(kmsWsUri);
+    JsonRpcClientNettyWebSocket client = createJsonRpcClient(kmsWsUri, null);
 
     if (connectionTimeout != null) {
       client.setConnectionTimeout(connectionTimeout.intValue());
@@ -337,6 +364,40 @@ public class KurentoClient {
     return new TransactionImpl(manager);
   }
 
+  /**
+   * Releases all the objects in a single request. Objects whose parent (e.g. their pipeline) is
+   * also in the collection are released by the media server with it, so no request is sent for
+   * them. Event listeners of the released objects are discarded without unsubscribe requests.
+   *
+   * @param objects
+   *          the objects to release
+   */
+  public void releaseAll(Collection<? extends KurentoObject> objects) {
+    manager.releaseAll(toRemoteObjects(objects));
+  }
+
+  /**
+   * Releases all the objects in a single request. Asynchronous call.
+   *
+   * @param objects
+   *          the objects to release
+   * @param cont
+   *          {@link Continuation#onSuccess} will be called when all the objects have been released.
+   *          {@link Continuation#onError} will be called if there is an exception.
+   * @see #releaseAll(Collection)
+   */
+  public void releaseAll(Collection<? extends KurentoObject> objects, Continuation<Void> cont) {
+    manager.releaseAll(toRemoteObjects(objects), cont);
+  }
+
+  private static List<RemoteObject> toRemoteObjects(Collection<? extends KurentoObject> objects) {
+    List<RemoteObject> remoteObjects = new ArrayList<>(objects.size());
+    for (KurentoObject object : objects) {
+      remoteObjects.add(RemoteObjectInvocationHandler.getFor(object).getRemoteObject());
+    }
+    return remoteObjects;
+  }
+
   public ServerManager getServerManager() {
     if (serverManager == null) {
       serverManager = getById("manager_ServerManager", ServerManager.class);
@@ -348,10 +409,33 @@ public class KurentoClient {
     return manager.getById(id, clazz);
   }
 
+  /**
+   * Returns the pool of pre-created pipelines and endpoints. The pool is disabled by default.
+   */
+  public MediaObjectPool getMediaObjectPool() {
+    return manager.getObjectPool();
+  }
+
+  /**
+   * Returns the client side cache of media object properties, used to enable it and to get its
+   * hit and miss counters. The cache is disabled by default.
+   */
+  public PropertyCache getPropertyCache() {
+    return manager.getPropertyCache();
+  }
+
   public String getSessionId() {
     return client.getSession().getSessionId();
   }
 
+  /**
+   * Returns the health of the connection to the media server: ping round trip times, request
+   * latencies, error rate, reconnections and circuit breaker state.
+   */
+  public ConnectionHealth getConnectionHealth() {
+    return client.getHealth();
+  }
+
   public void setLabel(String label) {
     this.label = label;
     updateLabel(client, label);
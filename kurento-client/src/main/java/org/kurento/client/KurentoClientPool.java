@@ -0,0 +1,205 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.client.internal.NotEnoughResourcesException;
+import org.kurento.client.internal.balancer.KmsInstance;
+import org.kurento.client.internal.balancer.KmsLoadBalancer;
+import org.kurento.client.internal.balancer.PlacementStrategy;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps connections to several media servers and distributes load among them. Load is reserved
+ * with a key, typically a room id, and all the load of a key is placed in the same server:
+ *
+ * <pre>
+ * KurentoClient kurento = pool.getClient(roomId, 10);
+ * MediaPipeline pipeline = kurento.createMediaPipeline();
+ * ...
+ * pipeline.release();
+ * pool.release(roomId);
+ * </pre>
+ *
+ * <p>
+ * Besides the load reserved through the pool, the load of each server can be updated from the
+ * number of pipelines reported by its {@link ServerManager}, so load created by other clients is
+ * also taken into account (see {@link #startServerLoadUpdates(long)}).
+ * </p>
+ */
+public class KurentoClientPool {
+
+  private static final Logger log = LoggerFactory.getLogger(KurentoClientPool.class);
+
+  private final KmsLoadBalancer balancer;
+  private final ConcurrentMap<String, KurentoClient> clients = new ConcurrentHashMap<>();
+
+  private volatile int loadPointsPerPipeline = 1;
+  private ScheduledExecutorService loadUpdateExec;
+
+  public KurentoClientPool(List<String> kmsUrls, int maxLoadPoints, PlacementStrategy strategy) {
+    this(new KmsLoadBalancer(kmsUrls, maxLoadPoints, strategy));
+  }
+
+  public KurentoClientPool(List<String> kmsUrls, int maxLoadPoints, String strategyName) {
+    this(kmsUrls, maxLoadPoints, KmsLoadBalancer.createStrategy(strategyName));
+  }
+
+  public KurentoClientPool(KmsLoadBalancer balancer) {
+    this.balancer = balancer;
+  }
+
+  /**
+   * Reserves load for the key and returns the client of the server where it has been placed.
+   * Servers that can't be connected are marked as not available and another server is selected.
+   *
+   * @throws NotEnoughResourcesException
+   *           if no available server has room for the load
+   */
+  public KurentoClient getClient(String key, int loadPoints) {
+
+    for (int i = 0; i < balancer.getInstances().size(); i++) {
+
+      KmsInstance instance = balancer.reserve(key, loadPoints);
+
+      try {
+        return getOrCreateClient(instance.getUrl());
+      } catch (RuntimeException e) {
+        log.warn("Exception connecting to KMS {}. Marking it as not available", instance.getUrl(),
+            e);
+        balancer.setAvailable(instance.getUrl(), false);
+        if (key != null) {
+          // Only the load of this call. Previous load of the key stays in the server
+          balancer.release(key, loadPoints);
+          if (balancer.getReservedInstance(key) != null) {
+            throw new NotEnoughResourcesException("KMS " + instance.getUrl()
+                + " that holds the load of " + key + " is not available", e);
+          }
+        } else {
+          balancer.release(instance, loadPoints);
+        }
+      }
+    }
+
+    throw new NotEnoughResourcesException("There is no available KMS to place load " + key);
+  }
+
+  /**
+   * Releases all the load reserved with the key.
+   */
+  public void release(String key) {
+    balancer.release(key);
+  }
+
+  private KurentoClient getOrCreateClient(String kmsUrl) {
+
+    KurentoClient client = clients.get(kmsUrl);
+
+    if (client == null || client.isClosed()) {
+      synchronized (this) {
+        client = clients.get(kmsUrl);
+        if (client == null || client.isClosed()) {
+          client = KurentoClient.create(kmsUrl);
+          clients.put(kmsUrl, client);
+        }
+      }
+    }
+
+    return client;
+  }
+
+  /**
+   * Updates the load of each connected server with the number of pipelines it reports, multiplied
+   * by the load points per pipeline. Servers that can't be queried are marked as not available,
+   * and servers that answer are marked as available again.
+   */
+  public void updateServerLoads() {
+
+    for (KmsInstance instance : balancer.getInstances()) {
+
+      KurentoClient client = clients.get(instance.getUrl());
+      if (client == null) {
+        continue;
+      }
+
+      try {
+        int pipelines = client.getServerManager().getPipelines().size();
+        balancer.updateServerLoad(instance.getUrl(), pipelines * loadPointsPerPipeline);
+        balancer.setAvailable(instance.getUrl(), true);
+      } catch (Exception e) {
+        log.warn("Exception obtaining load of KMS {}", instance.getUrl(), e);
+        balancer.setAvailable(instance.getUrl(), false);
+      }
+    }
+  }
+
+  /**
+   * Updates the load of the servers periodically. See {@link #updateServerLoads()}.
+   */
+  public synchronized void startServerLoadUpdates(long periodMillis) {
+
+    if (loadUpdateExec != null) {
+      return;
+    }
+
+    loadUpdateExec = Executors
+        .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("KurentoClientPool"));
+    loadUpdateExec.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        updateServerLoads();
+      }
+    }, 0, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops updating loads and closes the connections to all the servers.
+   */
+  public synchronized void destroy() {
+
+    if (loadUpdateExec != null) {
+      loadUpdateExec.shutdownNow();
+      loadUpdateExec = null;
+    }
+
+    for (KurentoClient client : clients.values()) {
+      client.destroy();
+    }
+    clients.clear();
+  }
+
+  public void setLoadPointsPerPipeline(int loadPointsPerPipeline) {
+    this.loadPointsPerPipeline = loadPointsPerPipeline;
+  }
+
+  public int getLoadPointsPerPipeline() {
+    return loadPointsPerPipeline;
+  }
+
+  public KmsLoadBalancer getLoadBalancer() {
+    return balancer;
+  }
+}
@@ -0,0 +1,361 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Declarative description of a media pipeline: the elements to create, their properties, the
+ * connections between them and the event listeners to add. A template is built with a single
+ * {@code transaction} request to the media server, instead of one request per element, property,
+ * connection and listener.
+ *
+ * <pre>
+ * PipelineTemplate template = new PipelineTemplate();
+ * Element&lt;MediaPipeline&gt; pipeline = template.add(MediaPipeline.class);
+ * Element&lt;WebRtcEndpoint&gt; webRtc = template.add(WebRtcEndpoint.class)
+ *     .withParam("mediaPipeline", pipeline);
+ * Element&lt;FaceOverlayFilter&gt; filter = template.add(FaceOverlayFilter.class)
+ *     .withParam("mediaPipeline", pipeline);
+ * template.connect(webRtc, filter);
+ * template.connect(filter, webRtc);
+ *
+ * PipelineTemplate.Instance instance = template.build(kurentoClient);
+ * WebRtcEndpoint endpoint = instance.get(webRtc);
+ * </pre>
+ *
+ * A template can be built several times, creating new media objects each time. Templates are not
+ * thread safe while they are being defined, but they can be built concurrently.
+ */
+public class PipelineTemplate {
+
+  private static final Logger log = LoggerFactory.getLogger(PipelineTemplate.class);
+
+  /**
+   * Typed handle of an element of the template. It is used to configure the element and to
+   * obtain the created media object from an {@link Instance}.
+   */
+  public static class Element<T extends KurentoObject> {
+
+    private final Class<T> clazz;
+    private final int index;
+    private final Props params = new Props();
+    private final Props genericProperties = new Props();
+    private final List<Entry<String, Object>> properties = new ArrayList<>();
+
+    Element(Class<T> clazz, int index) {
+      this.clazz = clazz;
+      this.index = index;
+    }
+
+    /**
+     * Sets a constructor param, as the builder of the element would do. The value can be another
+     * element of the template, like the media pipeline.
+     */
+    public Element<T> withParam(String name, Object value) {
+      params.add(name, value);
+      return this;
+    }
+
+    /**
+     * Sets a generic property of the element, as {@link AbstractBuilder#with(String, Object)}.
+     */
+    public Element<T> with(String name, Object value) {
+      genericProperties.add(name, value);
+      return this;
+    }
+
+    /**
+     * Sets a property invoking its setter after the element is created. For example,
+     * {@code set("name", "caller")} invokes {@code setName("caller")}.
+     */
+    public Element<T> set(String property, Object value) {
+      properties.add(new SimpleImmutableEntry<>(property, value));
+      return this;
+    }
+
+    public Class<T> getType() {
+      return clazz;
+    }
+
+    @Override
+    public String toString() {
+      return clazz.getSimpleName() + "#" + index;
+    }
+  }
+
+  /**
+   * The media objects created when a template is built.
+   */
+  public static class Instance {
+
+    private final Map<Element<?>, KurentoObject> objects;
+
+    Instance(Map<Element<?>, KurentoObject> objects) {
+      this.objects = objects;
+    }
+
+    public <T extends KurentoObject> T get(Element<T> element) {
+      KurentoObject object = objects.get(element);
+      if (object == null) {
+        throw new IllegalArgumentException("Element " + element + " is not part of this template");
+      }
+      return element.getType().cast(object);
+    }
+  }
+
+  private static class Invocation {
+
+    private final Element<?> target;
+    private final String method;
+    private final Props params;
+
+    Invocation(Element<?> target, String method, Props params) {
+      this.target = target;
+      this.method = method;
+      this.params = params;
+    }
+  }
+
+  private static class Subscription {
+
+    private final Element<?> target;
+    private final Class<? extends Event> eventClass;
+    private final EventListener<?> listener;
+
+    Subscription(Element<?> target, Class<? extends Event> eventClass,
+        EventListener<?> listener) {
+      this.target = target;
+      this.eventClass = eventClass;
+      this.listener = listener;
+    }
+  }
+
+  private final List<Element<?>> elements = new ArrayList<>();
+  private final List<Invocation> invocations = new ArrayList<>();
+  private final List<Subscription> subscriptions = new ArrayList<>();
+
+  private final AtomicLong builds = new AtomicLong();
+  private final AtomicLong totalBuildTimeNanos = new AtomicLong();
+  private volatile long lastBuildTimeNanos;
+
+  /**
+   * Adds an element to the template. Elements are created in the order they are added, so an
+   * element can only reference elements added before it.
+   */
+  public <T extends KurentoObject> Element<T> add(Class<T> clazz) {
+    Element<T> element = new Element<>(clazz, elements.size());
+    elements.add(element);
+    return element;
+  }
+
+  /**
+   * Connects the source element to the sink element.
+   */
+  public PipelineTemplate connect(Element<?> source, Element<?> sink) {
+    return invoke(source, "connect", new Props("sink", sink));
+  }
+
+  /**
+   * Connects the source element to the sink element for the given media type.
+   *
+   * @param mediaType
+   *          a value of the enumeration MediaType
+   */
+  public PipelineTemplate connect(Element<?> source, Element<?> sink, Object mediaType) {
+    return invoke(source, "connect", new Props("sink", sink).add("mediaType", mediaType));
+  }
+
+  /**
+   * Invokes a method of an element after the elements are created, in the same transaction.
+   * Param values can be elements of the template.
+   */
+  public PipelineTemplate invoke(Element<?> target, String method, Props params) {
+    invocations.add(new Invocation(target, method, params));
+    return this;
+  }
+
+  /**
+   * Adds a listener to an element. The listener receives the events of the elements created in
+   * every build of the template.
+   */
+  public <E extends Event> PipelineTemplate addListener(Element<?> target, Class<E> eventClass,
+      EventListener<E> listener) {
+    subscriptions.add(new Subscription(target, eventClass, listener));
+    return this;
+  }
+
+  /**
+   * Creates the media objects of the template with a single request to the media server.
+   */
+  public Instance build(KurentoClient client) {
+
+    long start = System.nanoTime();
+
+    TransactionImpl tx = new TransactionImpl(client.manager);
+    Instance instance = compile(client.manager, tx);
+    tx.commit();
+
+    recordBuildTime(start);
+
+    return instance;
+  }
+
+  /**
+   * Creates the media objects of the template with a single request to the media server.
+   * Asynchronous call.
+   */
+  public void buildAsync(KurentoClient client, final Continuation<Instance> cont) {
+
+    final long start = System.nanoTime();
+
+    TransactionImpl tx = new TransactionImpl(client.manager);
+    final Instance instance = compile(client.manager, tx);
+
+    tx.commit(new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        recordBuildTime(start);
+        cont.onSuccess(instance);
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        cont.onError(cause);
+      }
+    });
+  }
+
+  /**
+   * Adds the operations needed to create the template to a transaction. It can be used to create
+   * the template together with other objects.
+   */
+  public Instance build(Transaction tx) {
+    TransactionImpl txImpl = (TransactionImpl) tx;
+    return compile(txImpl.getRomManager(), txImpl);
+  }
+
+  private Instance compile(RomManager manager, Transaction tx) {
+
+    Map<Element<?>, KurentoObject> objects = new IdentityHashMap<>();
+
+    for (Element<?> element : elements) {
+
+      RemoteObject remoteObject = manager.createWithKurentoObject(element.clazz,
+          resolve(element.params, objects, element), resolve(element.genericProperties, objects,
+              element), tx);
+
+      for (Entry<String, Object> property : element.properties) {
+        String name = property.getKey();
+        Object value = resolveValue(property.getValue(), objects, element);
+        remoteObject.invoke("set" + Character.toUpperCase(name.charAt(0)) + name.substring(1),
+            new Props(name, value), Void.class, tx);
+      }
+
+      objects.put(element, remoteObject.getKurentoObject());
+    }
+
+    for (Invocation invocation : invocations) {
+      getRemoteObject(objects, invocation.target).invoke(invocation.method,
+          resolve(invocation.params, objects, invocation.target), Void.class, tx);
+    }
+
+    for (Subscription subscription : subscriptions) {
+      KurentoObject object = objects.get(subscription.target);
+      RemoteObjectInvocationHandler handler = RemoteObjectInvocationHandler.getFor(object);
+      handler.getRemoteObject().addEventListener(
+          RemoteObjectInvocationHandler.getEventType(subscription.eventClass),
+          handler.newEventListener(subscription.eventClass, subscription.listener), tx);
+    }
+
+    return new Instance(objects);
+  }
+
+  private RemoteObject getRemoteObject(Map<Element<?>, KurentoObject> objects,
+      Element<?> element) {
+    return RemoteObjectInvocationHandler.getFor(objects.get(element)).getRemoteObject();
+  }
+
+  private Props resolve(Props props, Map<Element<?>, KurentoObject> objects, Element<?> owner) {
+
+    if (props == null) {
+      return null;
+    }
+
+    Props resolved = new Props();
+    for (Entry<String, Object> prop : props.getMap().entrySet()) {
+      resolved.add(prop.getKey(), resolveValue(prop.getValue(), objects, owner));
+    }
+    return resolved;
+  }
+
+  private Object resolveValue(Object value, Map<Element<?>, KurentoObject> objects,
+      Element<?> owner) {
+
+    if (!(value instanceof Element)) {
+      return value;
+    }
+
+    KurentoObject object = objects.get(value);
+    if (object == null) {
+      throw new IllegalStateException("Element " + owner + " references element " + value
+          + " that is not created before it in the template");
+    }
+    return object;
+  }
+
+  private void recordBuildTime(long start) {
+
+    long time = System.nanoTime() - start;
+
+    lastBuildTimeNanos = time;
+    totalBuildTimeNanos.addAndGet(time);
+    builds.incrementAndGet();
+
+    log.debug("Template with {} elements built in {} ms", elements.size(),
+        TimeUnit.NANOSECONDS.toMillis(time));
+  }
+
+  public long getBuildCount() {
+    return builds.get();
+  }
+
+  public double getAverageBuildTimeMillis() {
+    long count = builds.get();
+    return count == 0 ? 0 : totalBuildTimeNanos.get() / (count * 1000000.0);
+  }
+
+  public double getLastBuildTimeMillis() {
+    return lastBuildTimeNanos / 1000000.0;
+  }
+}
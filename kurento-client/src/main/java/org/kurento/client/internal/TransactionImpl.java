@@ -23,6 +23,7 @@ import java.util.List;
 import org.kurento.client.Continuation;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.TransactionPlanner;
 import org.kurento.client.internal.client.operation.Operation;
 
 public class TransactionImpl implements Transaction {
@@ -35,6 +36,10 @@ public class TransactionImpl implements Transaction {
     this.manager = manager;
   }
 
+  public RomManager getRomManager() {
+    return manager;
+  }
+
   public void addOperation(Operation op) {
     this.operations.add(op);
   }
@@ -50,7 +55,7 @@ public class TransactionImpl implements Transaction {
   }
 
   public String nextObjectRef() {
-    return "newref:" + objectRef++;
+    return TransactionPlanner.NEW_REF_PREFIX + objectRef++;
   }
 
   @Override
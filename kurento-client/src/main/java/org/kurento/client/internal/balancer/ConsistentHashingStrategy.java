@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Places all the load with the same key (e.g. all the pipelines of a room) in the same server,
+ * using a hash ring with several virtual nodes per server. When a server is added, removed or
+ * full, only the keys placed in it are moved to other servers. Loads without key are placed in
+ * the least loaded server.
+ */
+public class ConsistentHashingStrategy implements PlacementStrategy {
+
+  public static final int DEFAULT_VIRTUAL_NODES = 100;
+
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final int virtualNodes;
+  private final LeastLoadedStrategy keylessStrategy = new LeastLoadedStrategy();
+
+  private List<KmsInstance> ringInstances;
+  private NavigableMap<Long, KmsInstance> ring;
+
+  public ConsistentHashingStrategy() {
+    this(DEFAULT_VIRTUAL_NODES);
+  }
+
+  public ConsistentHashingStrategy(int virtualNodes) {
+    this.virtualNodes = virtualNodes;
+  }
+
+  @Override
+  public KmsInstance select(List<KmsInstance> instances, String key, int loadPoints) {
+
+    if (key == null) {
+      return keylessStrategy.select(instances, null, loadPoints);
+    }
+
+    NavigableMap<Long, KmsInstance> ring = getRing(instances);
+
+    if (ring.isEmpty()) {
+      return null;
+    }
+
+    // Walk the ring clockwise from the key until finding a server that can accept the load
+    long hash = hash(key);
+    for (Entry<Long, KmsInstance> entry : ring.tailMap(hash, true).entrySet()) {
+      if (entry.getValue().canAccept(loadPoints)) {
+        return entry.getValue();
+      }
+    }
+    for (Entry<Long, KmsInstance> entry : ring.headMap(hash, false).entrySet()) {
+      if (entry.getValue().canAccept(loadPoints)) {
+        return entry.getValue();
+      }
+    }
+
+    return null;
+  }
+
+  private synchronized NavigableMap<Long, KmsInstance> getRing(List<KmsInstance> instances) {
+
+    if (ring == null || !instances.equals(ringInstances)) {
+
+      NavigableMap<Long, KmsInstance> newRing = new TreeMap<>();
+      for (KmsInstance instance : instances) {
+        for (int i = 0; i < virtualNodes; i++) {
+          newRing.put(hash(instance.getUrl() + "#" + i), instance);
+        }
+      }
+
+      ringInstances = instances;
+      ring = newRing;
+    }
+
+    return ring;
+  }
+
+  private static long hash(String value) {
+    return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+  }
+}
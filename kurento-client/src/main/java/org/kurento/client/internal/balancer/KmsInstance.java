@@ -0,0 +1,121 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import org.kurento.jsonrpc.client.ConnectionHealth;
+
+/**
+ * Load of a media server, measured in load points. The load is the maximum of the points reserved
+ * through this client and the points reported by the server itself, which also include the load
+ * created by other clients.
+ *
+ * <p>
+ * The {@link ConnectionHealth} of the clients connected to the server is also taken into account:
+ * no load is placed in a server with an open circuit, and servers with a low health score are
+ * considered more loaded than they are (see {@link #getEffectiveLoad()}).
+ * </p>
+ */
+public class KmsInstance {
+
+  private final String url;
+  private final int maxLoadPoints;
+  private final ConnectionHealth health;
+
+  private int reservedLoadPoints;
+  private volatile int serverLoadPoints;
+  private volatile boolean available = true;
+
+  public KmsInstance(String url, int maxLoadPoints) {
+    this.url = url;
+    this.maxLoadPoints = maxLoadPoints;
+    // Never released: the health of the server is kept while the balancer exists, even when
+    // there are no clients connected to it
+    this.health = ConnectionHealth.getFor(url);
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public int getMaxLoadPoints() {
+    return maxLoadPoints;
+  }
+
+  public synchronized int getReservedLoadPoints() {
+    return reservedLoadPoints;
+  }
+
+  synchronized void addReservedLoadPoints(int loadPoints) {
+    reservedLoadPoints = Math.max(0, reservedLoadPoints + loadPoints);
+  }
+
+  public int getServerLoadPoints() {
+    return serverLoadPoints;
+  }
+
+  void setServerLoadPoints(int serverLoadPoints) {
+    this.serverLoadPoints = serverLoadPoints;
+  }
+
+  public synchronized int getLoadPoints() {
+    return Math.max(reservedLoadPoints, serverLoadPoints);
+  }
+
+  /**
+   * Returns the load of the server, from 0 (idle) to 1 (full).
+   */
+  public double getLoad() {
+    return (double) getLoadPoints() / maxLoadPoints;
+  }
+
+  /**
+   * Returns the load of the server plus a penalty for its bad health: a server with a health score
+   * of 0.8 is considered 20% more loaded than it is. Placement strategies compare servers by this
+   * value.
+   */
+  public double getEffectiveLoad() {
+    return getLoad() + (1 - health.getScore());
+  }
+
+  public ConnectionHealth getHealth() {
+    return health;
+  }
+
+  public boolean isAvailable() {
+    return available;
+  }
+
+  void setAvailable(boolean available) {
+    this.available = available;
+  }
+
+  /**
+   * Returns true if the server is available, its circuit is not open and has room for the given
+   * load.
+   */
+  public boolean canAccept(int loadPoints) {
+    return available && !health.isCircuitOpen() && getLoadPoints() + loadPoints <= maxLoadPoints;
+  }
+
+  @Override
+  public String toString() {
+    return "KmsInstance [url=" + url + ", loadPoints=" + getLoadPoints() + "/" + maxLoadPoints
+        + ", available=" + available + ", healthScore=" + String.format("%.2f", health.getScore())
+        + "]";
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.client.internal.NotEnoughResourcesException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Distributes load among several media servers. Load is reserved with a key (a client id, a room
+ * id...); further reservations with the same key are placed in the same server until the key is
+ * released. Servers are selected with a {@link PlacementStrategy}.
+ */
+public class KmsLoadBalancer {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsLoadBalancer.class);
+
+  public static final String LEAST_LOADED = "leastLoaded";
+  public static final String POWER_OF_TWO_CHOICES = "powerOfTwoChoices";
+  public static final String CONSISTENT_HASHING = "consistentHashing";
+
+  private static class Reservation {
+
+    private final KmsInstance instance;
+    private int loadPoints;
+
+    Reservation(KmsInstance instance) {
+      this.instance = instance;
+    }
+  }
+
+  private final List<KmsInstance> instances;
+  private final PlacementStrategy strategy;
+  private final Map<String, Reservation> reservations = new HashMap<>();
+
+  public KmsLoadBalancer(List<String> kmsUrls, int maxLoadPoints, PlacementStrategy strategy) {
+
+    if (kmsUrls.isEmpty()) {
+      throw new IllegalArgumentException("At least one KMS url is needed");
+    }
+
+    List<KmsInstance> kmsInstances = new ArrayList<>(kmsUrls.size());
+    for (String kmsUrl : kmsUrls) {
+      kmsInstances.add(new KmsInstance(kmsUrl, maxLoadPoints));
+    }
+
+    this.instances = Collections.unmodifiableList(kmsInstances);
+    this.strategy = strategy;
+  }
+
+  public static PlacementStrategy createStrategy(String name) {
+    switch (name) {
+      case LEAST_LOADED:
+        return new LeastLoadedStrategy();
+      case POWER_OF_TWO_CHOICES:
+        return new PowerOfTwoChoicesStrategy();
+      case CONSISTENT_HASHING:
+        return new ConsistentHashingStrategy();
+      default:
+        throw new IllegalArgumentException("Unknown placement strategy '" + name + "'. Valid values: "
+            + LEAST_LOADED + ", " + POWER_OF_TWO_CHOICES + ", " + CONSISTENT_HASHING);
+    }
+  }
+
+  /**
+   * Reserves load in a server. If there is already a reservation with the same key, the load is
+   * added to the server of that reservation.
+   *
+   * @throws NotEnoughResourcesException
+   *           if there is no server with room for the load
+   */
+  public synchronized KmsInstance reserve(String key, int loadPoints) {
+
+    Reservation reservation = key != null ? reservations.get(key) : null;
+
+    if (reservation == null) {
+
+      KmsInstance instance = strategy.select(instances, key, loadPoints);
+
+      if (instance == null) {
+        throw new NotEnoughResourcesException(
+            "There is no KMS with " + loadPoints + " free load points. Servers: " + instances);
+      }
+
+      reservation = new Reservation(instance);
+      if (key != null) {
+        reservations.put(key, reservation);
+      }
+
+      log.debug("Placing load {} with {} points in {}", key, loadPoints, instance);
+
+    } else if (!reservation.instance.canAccept(loadPoints)) {
+
+      throw new NotEnoughResourcesException("KMS " + reservation.instance.getUrl()
+          + " of reservation " + key + " has not " + loadPoints + " free load points");
+    }
+
+    reservation.loadPoints += loadPoints;
+    reservation.instance.addReservedLoadPoints(loadPoints);
+
+    return reservation.instance;
+  }
+
+  /**
+   * Releases all the load reserved with the key.
+   */
+  public synchronized void release(String key) {
+    Reservation reservation = reservations.remove(key);
+    if (reservation != null) {
+      reservation.instance.addReservedLoadPoints(-reservation.loadPoints);
+    }
+  }
+
+  /**
+   * Releases part of the load reserved with the key. The reservation is removed when it has no
+   * load left.
+   */
+  public synchronized void release(String key, int loadPoints) {
+
+    Reservation reservation = reservations.get(key);
+
+    if (reservation != null) {
+      int released = Math.min(loadPoints, reservation.loadPoints);
+      reservation.loadPoints -= released;
+      reservation.instance.addReservedLoadPoints(-released);
+      if (reservation.loadPoints == 0) {
+        reservations.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Releases load not associated to a key, reserved with {@code reserve(null, loadPoints)}.
+   */
+  public void release(KmsInstance instance, int loadPoints) {
+    instance.addReservedLoadPoints(-loadPoints);
+  }
+
+  /**
+   * Updates the load reported by the server. Used to take into account the load created by other
+   * clients.
+   */
+  public void updateServerLoad(String kmsUrl, int loadPoints) {
+    getInstance(kmsUrl).setServerLoadPoints(loadPoints);
+  }
+
+  /**
+   * Marks a server as available or not. No load is placed in unavailable servers, but the
+   * existing reservations are kept.
+   */
+  public void setAvailable(String kmsUrl, boolean available) {
+    getInstance(kmsUrl).setAvailable(available);
+  }
+
+  public KmsInstance getInstance(String kmsUrl) {
+    for (KmsInstance instance : instances) {
+      if (instance.getUrl().equals(kmsUrl)) {
+        return instance;
+      }
+    }
+    throw new IllegalArgumentException("Unknown KMS " + kmsUrl);
+  }
+
+  public synchronized KmsInstance getReservedInstance(String key) {
+    Reservation reservation = reservations.get(key);
+    return reservation != null ? reservation.instance : null;
+  }
+
+  public List<KmsInstance> getInstances() {
+    return instances;
+  }
+
+  public PlacementStrategy getStrategy() {
+    return strategy;
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.util.List;
+
+/**
+ * Places the load in the server with lowest load. It gives the best balance, but when load
+ * information is stale all clients choose the same server until it is updated.
+ */
+public class LeastLoadedStrategy implements PlacementStrategy {
+
+  @Override
+  public KmsInstance select(List<KmsInstance> instances, String key, int loadPoints) {
+
+    KmsInstance selected = null;
+    double selectedLoad = Double.MAX_VALUE;
+
+    for (KmsInstance instance : instances) {
+      if (instance.canAccept(loadPoints)) {
+        double load = instance.getEffectiveLoad();
+        if (load < selectedLoad) {
+          selected = instance;
+          selectedLoad = load;
+        }
+      }
+    }
+
+    return selected;
+  }
+}
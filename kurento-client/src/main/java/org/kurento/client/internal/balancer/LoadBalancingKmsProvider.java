@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kurento.client.internal.KmsProvider;
+import org.kurento.client.internal.NotEnoughResourcesException;
+import org.kurento.commons.PropertiesManager;
+
+/**
+ * {@link KmsProvider} that distributes clients among a fixed set of media servers. To use it,
+ * configure {@code kms.url.provider} with this class name and set the properties:
+ * <ul>
+ * <li>{@code kms.urls}: comma separated list of KMS urls</li>
+ * <li>{@code kms.maxLoadPoints}: capacity of each server. 100 by default</li>
+ * <li>{@code kms.defaultLoadPoints}: load of a client created without {@code loadPoints}. 1 by
+ * default</li>
+ * <li>{@code kms.placementStrategy}: leastLoaded (default), powerOfTwoChoices or
+ * consistentHashing</li>
+ * </ul>
+ */
+public class LoadBalancingKmsProvider implements KmsProvider {
+
+  private final KmsLoadBalancer balancer;
+  private final int defaultLoadPoints;
+
+  public LoadBalancingKmsProvider() {
+    this(new KmsLoadBalancer(parseUrls(PropertiesManager.getPropertyOrException("kms.urls",
+        "Property 'kms.urls' is needed by " + LoadBalancingKmsProvider.class.getSimpleName())),
+        PropertiesManager.getProperty("kms.maxLoadPoints", 100),
+        KmsLoadBalancer.createStrategy(
+            PropertiesManager.getProperty("kms.placementStrategy", KmsLoadBalancer.LEAST_LOADED))),
+        PropertiesManager.getProperty("kms.defaultLoadPoints", 1));
+  }
+
+  public LoadBalancingKmsProvider(KmsLoadBalancer balancer, int defaultLoadPoints) {
+    this.balancer = balancer;
+    this.defaultLoadPoints = defaultLoadPoints;
+  }
+
+  static List<String> parseUrls(String urls) {
+    List<String> kmsUrls = new ArrayList<>();
+    for (String url : urls.split(",")) {
+      if (!url.trim().isEmpty()) {
+        kmsUrls.add(url.trim());
+      }
+    }
+    return kmsUrls;
+  }
+
+  @Override
+  public String reserveKms(String id, int loadPoints) throws NotEnoughResourcesException {
+    return balancer.reserve(id, loadPoints).getUrl();
+  }
+
+  @Override
+  public String reserveKms(String id) throws NotEnoughResourcesException {
+    return reserveKms(id, defaultLoadPoints);
+  }
+
+  @Override
+  public void releaseKms(String id) throws NotEnoughResourcesException {
+    balancer.release(id);
+  }
+
+  public KmsLoadBalancer getLoadBalancer() {
+    return balancer;
+  }
+}
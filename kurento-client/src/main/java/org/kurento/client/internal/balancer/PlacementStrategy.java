@@ -0,0 +1,40 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.util.List;
+
+/**
+ * Selects the media server where a new load is placed.
+ */
+public interface PlacementStrategy {
+
+  /**
+   * Selects a server that can accept the load.
+   *
+   * @param instances
+   *          all the known servers, including the ones that are full or not available
+   * @param key
+   *          identifies the load being placed (e.g. a room id). Can be null
+   * @param loadPoints
+   *          the load to place
+   * @return the selected server, or null if no server can accept the load
+   */
+  KmsInstance select(List<KmsInstance> instances, String key, int loadPoints);
+
+}
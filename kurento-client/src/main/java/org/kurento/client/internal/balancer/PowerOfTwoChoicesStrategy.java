@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.balancer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks two random servers and places the load in the least loaded of them. It balances almost
+ * as well as {@link LeastLoadedStrategy}, and behaves better with stale load information because
+ * clients don't converge on the same server.
+ */
+public class PowerOfTwoChoicesStrategy implements PlacementStrategy {
+
+  @Override
+  public KmsInstance select(List<KmsInstance> instances, String key, int loadPoints) {
+
+    List<KmsInstance> candidates = new ArrayList<>(instances.size());
+    for (KmsInstance instance : instances) {
+      if (instance.canAccept(loadPoints)) {
+        candidates.add(instance);
+      }
+    }
+
+    int size = candidates.size();
+    if (size == 0) {
+      return null;
+    } else if (size == 1) {
+      return candidates.get(0);
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(size);
+    int second = random.nextInt(size - 1);
+    if (second >= first) {
+      second++;
+    }
+
+    KmsInstance firstInstance = candidates.get(first);
+    KmsInstance secondInstance = candidates.get(second);
+
+    return firstInstance.getEffectiveLoad() <= secondInstance.getEffectiveLoad() ? firstInstance
+        : secondInstance;
+  }
+}
@@ -0,0 +1,532 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.client.Continuation;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Pool of media pipelines created in advance, each one with some endpoints, to reduce the time
+ * needed to set up a call. When enabled, pipelines built without params are taken from the pool,
+ * and so are the endpoints later built in those pipelines. The pool is refilled in the background
+ * with asynchronous requests.
+ *
+ * <p>
+ * The pool is disabled by default. It is enabled with the property
+ * {@code kurento.client.pool.pipelines} (or calling {@link #start()}), and configured with:
+ * <ul>
+ * <li>{@code kurento.client.pool.endpointsPerPipeline}: endpoints created in each pooled pipeline.
+ * 1 by default</li>
+ * <li>{@code kurento.client.pool.endpointType}: type of the pooled endpoints. WebRtcEndpoint by
+ * default</li>
+ * <li>{@code kurento.client.pool.minIdle}: pipelines kept when the pool is not used for
+ * {@code kurento.client.pool.maxIdleMillis} (5 minutes by default). 0 by default</li>
+ * <li>{@code kurento.client.pool.maxAgeMillis}: pooled pipelines older than this are released and
+ * replaced, so they don't pin media server resources forever. 1 hour by default</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Endpoints of a pipeline that are not handed out are released with the pipeline.
+ * </p>
+ */
+public class MediaObjectPool {
+
+  private static final Logger log = LoggerFactory.getLogger(MediaObjectPool.class);
+
+  private static final String PIPELINE_TYPE = "MediaPipeline";
+  private static final String PIPELINE_PARAM = "mediaPipeline";
+
+  private static final int POOL_PIPELINES =
+      PropertiesManager.getProperty("kurento.client.pool.pipelines", 0);
+  private static final int POOL_ENDPOINTS_PER_PIPELINE =
+      PropertiesManager.getProperty("kurento.client.pool.endpointsPerPipeline", 1);
+  private static final String POOL_ENDPOINT_TYPE =
+      PropertiesManager.getProperty("kurento.client.pool.endpointType", "WebRtcEndpoint");
+  private static final int POOL_MIN_IDLE =
+      PropertiesManager.getProperty("kurento.client.pool.minIdle", 0);
+  private static final long POOL_MAX_IDLE_MILLIS =
+      PropertiesManager.getProperty("kurento.client.pool.maxIdleMillis", 300000L);
+  private static final long POOL_MAX_AGE_MILLIS =
+      PropertiesManager.getProperty("kurento.client.pool.maxAgeMillis", 3600000L);
+  private static final long POOL_MAINTENANCE_INTERVAL_MILLIS =
+      PropertiesManager.getProperty("kurento.client.pool.maintenanceIntervalMillis", 5000L);
+
+  private static class PooledPipeline {
+
+    private final RemoteObject pipeline;
+    private final Deque<RemoteObject> endpoints = new ArrayDeque<>();
+    private final long creationTime = System.currentTimeMillis();
+
+    PooledPipeline(RemoteObject pipeline) {
+      this.pipeline = pipeline;
+    }
+  }
+
+  private final RomManager manager;
+
+  private final Object lock = new Object();
+
+  // Oldest pipelines first, so they are handed out before they expire
+  private final Deque<PooledPipeline> available = new ArrayDeque<>();
+
+  // Endpoints not handed out yet of the pooled pipelines in use
+  private final ConcurrentMap<RemoteObject, Deque<RemoteObject>> spareEndpoints = new MapMaker()
+      .weakKeys().makeMap();
+
+  private int creating;
+  private long lastAcquireTime = System.currentTimeMillis();
+
+  private volatile int pipelines = POOL_PIPELINES;
+  private volatile int endpointsPerPipeline = POOL_ENDPOINTS_PER_PIPELINE;
+  private volatile String endpointType = POOL_ENDPOINT_TYPE;
+  private volatile int minIdle = POOL_MIN_IDLE;
+  private volatile long maxIdleMillis = POOL_MAX_IDLE_MILLIS;
+  private volatile long maxAgeMillis = POOL_MAX_AGE_MILLIS;
+
+  private volatile boolean started;
+  private volatile boolean closed;
+  private ScheduledExecutorService maintenanceExec;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong createdPipelines = new AtomicLong();
+  private final AtomicLong creationErrors = new AtomicLong();
+  private final AtomicLong trimmedPipelines = new AtomicLong();
+  private final AtomicLong expiredPipelines = new AtomicLong();
+
+  MediaObjectPool(RomManager manager) {
+    this.manager = manager;
+  }
+
+  boolean isEnabledByProperties() {
+    return POOL_PIPELINES > 0;
+  }
+
+  /**
+   * Starts creating the pooled objects in the background. Configuration has to be changed before
+   * calling this method.
+   */
+  public synchronized void start() {
+
+    if (started || closed) {
+      return;
+    }
+
+    if (pipelines <= 0) {
+      throw new IllegalStateException("The number of pooled pipelines must be positive");
+    }
+
+    synchronized (lock) {
+      lastAcquireTime = System.currentTimeMillis();
+    }
+
+    started = true;
+
+    log.debug("Starting pool of {} pipelines with {} {} each", pipelines, endpointsPerPipeline,
+        endpointType);
+
+    maintenanceExec = Executors
+        .newSingleThreadScheduledExecutor(ThreadFactoryCreator.create("MediaObjectPool"));
+    maintenanceExec.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          maintain();
+        } catch (Exception e) {
+          log.warn("Exception in pool maintenance", e);
+        }
+      }
+    }, POOL_MAINTENANCE_INTERVAL_MILLIS, POOL_MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+    refill();
+  }
+
+  /**
+   * Stops refilling the pool and releases the pooled pipelines.
+   */
+  public void close() {
+
+    List<RemoteObject> toRelease = new ArrayList<>();
+
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      started = false;
+      if (maintenanceExec != null) {
+        maintenanceExec.shutdownNow();
+      }
+    }
+
+    synchronized (lock) {
+      for (PooledPipeline pooled : available) {
+        toRelease.add(pooled.pipeline);
+      }
+      available.clear();
+    }
+
+    if (!toRelease.isEmpty()) {
+      try {
+        manager.releaseAll(toRelease);
+      } catch (Exception e) {
+        log.warn("Exception releasing {} pooled pipelines", toRelease.size(), e);
+      }
+    }
+  }
+
+  /**
+   * Returns a pooled object that can be used instead of creating a new one with the given params,
+   * or null if there is none.
+   */
+  RemoteObject acquire(String type, Props params, Props genericProps) {
+
+    if (!started || (genericProps != null && !genericProps.getMap().isEmpty())) {
+      return null;
+    }
+
+    if (PIPELINE_TYPE.equals(type)) {
+
+      if (params != null && !params.getMap().isEmpty()) {
+        return null;
+      }
+
+      PooledPipeline pooled;
+      synchronized (lock) {
+        lastAcquireTime = System.currentTimeMillis();
+        pooled = available.poll();
+        if (pooled != null && !pooled.endpoints.isEmpty()) {
+          spareEndpoints.put(pooled.pipeline, pooled.endpoints);
+        }
+      }
+
+      refill();
+      return count(pooled != null ? pooled.pipeline : null);
+
+    } else if (type.equals(endpointType) && params != null && params.getMap().size() == 1) {
+
+      RemoteObject pipeline = RomManager.toRemoteObject(params.getProp(PIPELINE_PARAM));
+      if (pipeline == null) {
+        return null;
+      }
+
+      RemoteObject endpoint = null;
+      synchronized (lock) {
+        Deque<RemoteObject> endpoints = spareEndpoints.get(pipeline);
+        if (endpoints != null) {
+          endpoint = endpoints.poll();
+          if (endpoints.isEmpty()) {
+            spareEndpoints.remove(pipeline);
+          }
+        }
+      }
+
+      return count(endpoint);
+    }
+
+    return null;
+  }
+
+  private RemoteObject count(RemoteObject pooledObject) {
+    if (pooledObject != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return pooledObject;
+  }
+
+  private int getTargetSize(long now) {
+    if (maxIdleMillis > 0 && now - lastAcquireTime > maxIdleMillis) {
+      return Math.min(minIdle, pipelines);
+    }
+    return pipelines;
+  }
+
+  private void refill() {
+
+    int toCreate;
+
+    synchronized (lock) {
+      if (!started) {
+        return;
+      }
+      toCreate = getTargetSize(System.currentTimeMillis()) - available.size() - creating;
+      if (toCreate <= 0) {
+        return;
+      }
+      creating += toCreate;
+    }
+
+    for (int i = 0; i < toCreate; i++) {
+      createPooledPipeline();
+    }
+  }
+
+  private void createPooledPipeline() {
+
+    manager.create(PIPELINE_TYPE, null, null, new Continuation<RemoteObject>() {
+      @Override
+      public void onSuccess(RemoteObject pipeline) {
+        PooledPipeline pooled = new PooledPipeline(pipeline);
+        if (endpointsPerPipeline > 0) {
+          createEndpoints(pooled);
+        } else {
+          pipelineCreated(pooled, null);
+        }
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        pipelineCreated(null, cause);
+      }
+    });
+  }
+
+  private void createEndpoints(final PooledPipeline pooled) {
+
+    final int numEndpoints = endpointsPerPipeline;
+    final AtomicInteger pendingEndpoints = new AtomicInteger(numEndpoints);
+    final AtomicInteger failedEndpoints = new AtomicInteger();
+
+    for (int i = 0; i < numEndpoints; i++) {
+
+      manager.create(endpointType, new Props(PIPELINE_PARAM, pooled.pipeline), null,
+          new Continuation<RemoteObject>() {
+            @Override
+            public void onSuccess(RemoteObject endpoint) {
+              synchronized (lock) {
+                pooled.endpoints.add(endpoint);
+              }
+              endpointFinished();
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+              failedEndpoints.incrementAndGet();
+              log.warn("Exception creating pooled {}", endpointType, cause);
+              endpointFinished();
+            }
+
+            private void endpointFinished() {
+              if (pendingEndpoints.decrementAndGet() == 0) {
+                if (failedEndpoints.get() == 0) {
+                  pipelineCreated(pooled, null);
+                } else {
+                  release(pooled.pipeline);
+                  pipelineCreated(null, null);
+                }
+              }
+            }
+          });
+    }
+  }
+
+  private void pipelineCreated(PooledPipeline pooled, Throwable error) {
+
+    boolean discard = false;
+
+    synchronized (lock) {
+      creating--;
+      if (pooled == null) {
+        creationErrors.incrementAndGet();
+      } else if (!started) {
+        discard = true;
+      } else {
+        createdPipelines.incrementAndGet();
+        available.add(pooled);
+      }
+    }
+
+    if (error != null) {
+      // The pool will be refilled in the next maintenance
+      log.warn("Exception creating pooled pipeline", error);
+    }
+
+    if (discard) {
+      release(pooled.pipeline);
+    }
+  }
+
+  /**
+   * Releases the pipelines that are too old or that exceed the size of the pool while it is idle,
+   * and creates new ones if needed. It is executed periodically every
+   * {@code kurento.client.pool.maintenanceIntervalMillis} (5 seconds by default).
+   */
+  public void maintain() {
+
+    List<RemoteObject> toRelease = new ArrayList<>();
+    long now = System.currentTimeMillis();
+
+    synchronized (lock) {
+
+      if (maxAgeMillis > 0) {
+        Iterator<PooledPipeline> it = available.iterator();
+        while (it.hasNext()) {
+          PooledPipeline pooled = it.next();
+          if (now - pooled.creationTime > maxAgeMillis) {
+            it.remove();
+            toRelease.add(pooled.pipeline);
+            expiredPipelines.incrementAndGet();
+          }
+        }
+      }
+
+      int targetSize = getTargetSize(now);
+      while (available.size() > targetSize) {
+        toRelease.add(available.poll().pipeline);
+        trimmedPipelines.incrementAndGet();
+      }
+    }
+
+    if (!toRelease.isEmpty()) {
+      log.debug("Releasing {} pooled pipelines", toRelease.size());
+      manager.releaseAll(toRelease, new Continuation<Void>() {
+        @Override
+        public void onSuccess(Void result) {
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          log.warn("Exception releasing pooled pipelines", cause);
+        }
+      });
+    }
+
+    refill();
+  }
+
+  private void release(final RemoteObject pipeline) {
+    pipeline.release(new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        log.warn("Exception releasing pooled pipeline {}", pipeline.getObjectRef(), cause);
+      }
+    });
+  }
+
+  public int getAvailablePipelines() {
+    synchronized (lock) {
+      return available.size();
+    }
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public double getHitRatio() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  public long getCreatedPipelines() {
+    return createdPipelines.get();
+  }
+
+  public long getCreationErrors() {
+    return creationErrors.get();
+  }
+
+  public long getTrimmedPipelines() {
+    return trimmedPipelines.get();
+  }
+
+  public long getExpiredPipelines() {
+    return expiredPipelines.get();
+  }
+
+  public boolean isStarted() {
+    return started;
+  }
+
+  public int getPipelines() {
+    return pipelines;
+  }
+
+  public void setPipelines(int pipelines) {
+    this.pipelines = pipelines;
+  }
+
+  public int getEndpointsPerPipeline() {
+    return endpointsPerPipeline;
+  }
+
+  public void setEndpointsPerPipeline(int endpointsPerPipeline) {
+    this.endpointsPerPipeline = endpointsPerPipeline;
+  }
+
+  public String getEndpointType() {
+    return endpointType;
+  }
+
+  public void setEndpointType(String endpointType) {
+    this.endpointType = endpointType;
+  }
+
+  public int getMinIdle() {
+    return minIdle;
+  }
+
+  public void setMinIdle(int minIdle) {
+    this.minIdle = minIdle;
+  }
+
+  public long getMaxIdleMillis() {
+    return maxIdleMillis;
+  }
+
+  public void setMaxIdleMillis(long maxIdleMillis) {
+    this.maxIdleMillis = maxIdleMillis;
+  }
+
+  public long getMaxAgeMillis() {
+    return maxAgeMillis;
+  }
+
+  public void setMaxAgeMillis(long maxAgeMillis) {
+    this.maxAgeMillis = maxAgeMillis;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * Configuration and metrics of the client side cache of remote object properties. Cached values
+ * are stored in each {@link RemoteObject}. The cache is disabled by default and it can be enabled
+ * with the property kurento.client.propertyCache.enabled or with {@link #setEnabled(boolean)}.
+ *
+ * <p>
+ * Three kinds of properties are cached:
+ * <ul>
+ * <li>Immutable properties (getMediaPipeline, getParent, getCreationTime by default). They are
+ * cached forever.</li>
+ * <li>Properties that only change through setters (getName and getSendTagsInEvents by default).
+ * They are invalidated when the setter is invoked in this client. Changes made by other clients are
+ * not detected.</li>
+ * <li>Properties that change with a known event (getMediaState and getConnectionState by default).
+ * They are only cached while the object has a server subscription to the event, and invalidated
+ * each time the event is received.</li>
+ * </ul>
+ * </p>
+ */
+public class PropertyCache {
+
+  private static final boolean ENABLED =
+      PropertiesManager.getProperty("kurento.client.propertyCache.enabled", false);
+
+  private volatile boolean enabled = ENABLED;
+
+  private final Set<String> immutableProperties =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final Set<String> setterProperties =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final ConcurrentMap<String, String> eventProperties = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, List<String>> propertiesByEvent = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong invalidations = new AtomicLong();
+
+  public PropertyCache() {
+    addImmutableProperty("getMediaPipeline");
+    addImmutableProperty("getParent");
+    addImmutableProperty("getCreationTime");
+    addSetterProperty("getName");
+    addSetterProperty("getSendTagsInEvents");
+    addEventProperty("getMediaState", "MediaStateChanged");
+    addEventProperty("getConnectionState", "ConnectionStateChanged");
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Caches a property that never changes.
+   *
+   * @param getter
+   *          the name of the getter method, like getMediaPipeline
+   */
+  public void addImmutableProperty(String getter) {
+    immutableProperties.add(getter);
+  }
+
+  /**
+   * Caches a property that only changes when its setter is invoked.
+   *
+   * @param getter
+   *          the name of the getter method, like getName. The setter is expected to have the same
+   *          name with prefix set
+   */
+  public void addSetterProperty(String getter) {
+    setterProperties.add(getter);
+  }
+
+  /**
+   * Caches a property that only changes when an event is fired.
+   *
+   * @param getter
+   *          the name of the getter method, like getMediaState
+   * @param eventType
+   *          the type of the event fired when the property changes, like MediaStateChanged
+   */
+  public void addEventProperty(String getter, String eventType) {
+
+    eventProperties.put(getter, eventType);
+
+    List<String> properties = propertiesByEvent.get(eventType);
+    if (properties == null) {
+      properties = new CopyOnWriteArrayList<>();
+      List<String> previous = propertiesByEvent.putIfAbsent(eventType, properties);
+      if (previous != null) {
+        properties = previous;
+      }
+    }
+    properties.add(getter);
+  }
+
+  boolean isCacheable(RemoteObject remoteObject, String method, Props params) {
+
+    if (!enabled || params != null && !params.getMap().isEmpty()) {
+      return false;
+    }
+
+    if (immutableProperties.contains(method) || setterProperties.contains(method)) {
+      return true;
+    }
+
+    String eventType = eventProperties.get(method);
+    return eventType != null && remoteObject.hasServerSubscription(eventType);
+  }
+
+  /**
+   * @return the getter whose value is changed by the method, or null if the method is not a setter
+   *         of a cached property
+   */
+  String getInvalidatedProperty(String method) {
+
+    if (!method.startsWith("set")) {
+      return null;
+    }
+
+    String getter = "get" + method.substring("set".length());
+    return setterProperties.contains(getter) ? getter : null;
+  }
+
+  List<String> getInvalidatedProperties(String eventType) {
+    List<String> properties = propertiesByEvent.get(eventType);
+    return properties != null ? properties : Collections.<String> emptyList();
+  }
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  void invalidated() {
+    invalidations.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  public double getHitRatio() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  @Override
+  public String toString() {
+    return "PropertyCache [enabled=" + enabled + ", hits=" + hits + ", misses=" + misses
+        + ", invalidations=" + invalidations + "]";
+  }
+}
@@ -18,10 +18,15 @@
 package org.kurento.client.internal.client;
 
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.KurentoObject;
@@ -37,12 +42,17 @@ import org.kurento.client.internal.client.operation.SubscriptionOperation;
 import org.kurento.client.internal.client.operation.UnsubscriptionOperation;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
 import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.MapMaker;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.gson.JsonObject;
 
 public class RemoteObject {
 
@@ -50,10 +60,162 @@ public class RemoteObject {
     NOT_COMMITED, ROLLBACK, CREATED
   }
 
+  /**
+   * Local listeners of an event type. All of them share a single server subscription, which is
+   * created when the first listener is added and removed when the last listener is removed.
+   */
+  private class EventSubscription {
+
+    private final String eventType;
+
+    // Events are fired far more often than listeners are added or removed, so listeners are kept
+    // in a copy-on-write list that can be iterated without locking nor copying
+    private final CopyOnWriteArrayList<RemoteObjectEventListener> listeners =
+        new CopyOnWriteArrayList<>();
+
+    private SettableFuture<String> subscriptionId;
+
+    EventSubscription(String eventType) {
+      this.eventType = eventType;
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param newSubscriptionId
+     *          future id used if there is no server subscription yet
+     * @return the future id of the server subscription. If it is newSubscriptionId, the caller
+     *         has to subscribe in the server and complete it
+     */
+    synchronized SettableFuture<String> addListener(RemoteObjectEventListener listener,
+        SettableFuture<String> newSubscriptionId) {
+
+      listeners.add(listener);
+
+      if (subscriptionId == null) {
+        subscriptionId = newSubscriptionId;
+      }
+
+      return subscriptionId;
+    }
+
+    /**
+     * Adds a listener whose server subscription has already been created (in a transaction).
+     *
+     * @return the future id of the server subscription shared by all listeners. If it is not the
+     *         given one, the given subscription is redundant
+     */
+    SettableFuture<String> addListener(RemoteObjectEventListener listener,
+        String txSubscriptionId) {
+
+      serverResources.subscriptionIds.add(txSubscriptionId);
+
+      SettableFuture<String> txFuture = SettableFuture.create();
+      txFuture.set(txSubscriptionId);
+
+      return addListener(listener, txFuture);
+    }
+
+    synchronized boolean adoptSubscription(String txSubscriptionId) {
+
+      if (subscriptionId != null) {
+        return false;
+      }
+
+      subscriptionId = SettableFuture.create();
+      subscriptionId.set(txSubscriptionId);
+      return true;
+    }
+
+    synchronized boolean isSubscribed() {
+      return subscriptionId != null && subscriptionId.isDone() && !listeners.isEmpty();
+    }
+
+    /**
+     * Invoked when the server subscription has been created. If all listeners have been removed
+     * in the meantime, the server subscription is removed.
+     */
+    void subscribed(SettableFuture<String> future) {
+
+      serverResources.subscriptionIds.add(Futures.getUnchecked(future));
+
+      synchronized (this) {
+        if (future != subscriptionId || !listeners.isEmpty()) {
+          return;
+        }
+        subscriptionId = null;
+      }
+
+      unsubscribeInBackground(Futures.getUnchecked(future));
+    }
+
+    void subscriptionFailed(SettableFuture<String> future, Throwable cause) {
+      synchronized (this) {
+        if (future == subscriptionId) {
+          subscriptionId = null;
+        }
+      }
+      future.setException(cause);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @return the id of the server subscription that has to be unsubscribed if it was the last
+     *         listener, or null if there are other listeners or the subscription is in progress
+     */
+    synchronized String removeListener(RemoteObjectEventListener listener) {
+
+      listeners.remove(listener);
+
+      if (!listeners.isEmpty() || subscriptionId == null || !subscriptionId.isDone()) {
+        return null;
+      }
+
+      SettableFuture<String> future = subscriptionId;
+      subscriptionId = null;
+
+      try {
+        String id = Futures.getUnchecked(future);
+        serverResources.subscriptionIds.remove(id);
+        return id;
+      } catch (UncheckedExecutionException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "EventSubscription [eventType=" + eventType + ", listeners=" + listeners + "]";
+    }
+  }
+
+  /**
+   * Server side resources held by a remote object. They are kept apart from the object so they
+   * can be freed once the object is no longer reachable by the application.
+   */
+  static class ServerResources {
+
+    final Set<String> subscriptionIds =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    final Throwable creationStack;
+
+    volatile boolean owned = true;
+    volatile boolean releaseWhenUnreachable;
+
+    ServerResources(Throwable creationStack, boolean releaseWhenUnreachable) {
+      this.creationStack = creationStack;
+      this.releaseWhenUnreachable = releaseWhenUnreachable;
+    }
+  }
+
   private static Logger log = LoggerFactory.getLogger(RemoteObject.class);
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
+  private static final Object NULL_PROPERTY = new Object();
+
   private String objectRef;
   private final String type;
   private ObjectStatus objectStatus;
@@ -65,10 +227,21 @@ public class RemoteObject {
   private Continuation<Object> whenContinuation;
   private Executor executor;
 
-  private final ArrayListMultimap<String, RemoteObjectEventListener> multi = ArrayListMultimap
-      .create();
-  private final Multimap<String, RemoteObjectEventListener> listeners = Multimaps
-      .synchronizedMultimap(multi);
+  private final ConcurrentMap<String, EventSubscription> subscriptions = new ConcurrentHashMap<>();
+
+  private final ServerResources serverResources;
+
+  // Objects created with this one as parent. They are released by the media server with it
+  private final Set<RemoteObject> children = Collections
+      .newSetFromMap(new MapMaker().weakKeys().<RemoteObject, Boolean> makeMap());
+
+  // Keeps the parent reachable while this object is, so it is not released as unreachable (and
+  // this object with it in the media server) while this object is still in use
+  private RemoteObject parent;
+
+  // Cached property values by getter name. See PropertyCache
+  private final ConcurrentMap<String, Object> cachedProperties = new ConcurrentHashMap<>();
+  private final AtomicLong cachedPropertiesVersion = new AtomicLong();
 
   private TransactionExecutionException transactionException;
 
@@ -81,6 +254,7 @@ public class RemoteObject {
     this.manager = manager;
     this.type = type;
     this.objectStatus = created ? ObjectStatus.CREATED : ObjectStatus.NOT_COMMITED;
+    this.serverResources = manager.getObjectManager().createServerResources(type);
 
     this.manager.registerObject(objectRef, this);
   }
@@ -141,6 +315,33 @@ public class RemoteObject {
     }
   }
 
+  ServerResources getServerResources() {
+    return serverResources;
+  }
+
+  public boolean isReleaseWhenUnreachable() {
+    return serverResources.releaseWhenUnreachable;
+  }
+
+  /**
+   * Configures if the object has to be released in the media server when it is no longer reachable
+   * by the application. It can only be enabled in objects created by this client, never in objects
+   * obtained by id, which could be shared with other clients. By default, it is configured with
+   * the property kurento.client.releaseUnreachableObjects.
+   */
+  public void setReleaseWhenUnreachable(boolean releaseWhenUnreachable) {
+    serverResources.releaseWhenUnreachable = releaseWhenUnreachable && serverResources.owned;
+  }
+
+  /**
+   * Marks this object as not created by this client, so it is never released automatically nor
+   * reported as leaked.
+   */
+  void setNotOwned() {
+    serverResources.owned = false;
+    serverResources.releaseWhenUnreachable = false;
+  }
+
   public KurentoObject getKurentoObject() {
     return kurentoObject;
   }
@@ -161,6 +362,37 @@ public class RemoteObject {
     return manager;
   }
 
+  void addChild(RemoteObject child) {
+    child.parent = this;
+    children.add(child);
+  }
+
+  /**
+   * Adds to {@code tree} the objects created in this client with this object as parent, and
+   * recursively their children. Objects obtained by id are unknown until they are used as parents.
+   */
+  void collectDescendants(Set<RemoteObject> tree) {
+    for (RemoteObject child : children) {
+      if (tree.add(child)) {
+        child.collectDescendants(tree);
+      }
+    }
+  }
+
+  /**
+   * Discards the local state of an object released in the media server. Its subscriptions were
+   * removed by the server with the object, so listeners are dropped without unsubscribe requests.
+   */
+  void releasedInServer() {
+    for (EventSubscription subscription : subscriptions.values()) {
+      subscription.listeners.clear();
+    }
+    subscriptions.clear();
+    serverResources.subscriptionIds.clear();
+    cachedProperties.clear();
+    children.clear();
+  }
+
   @SuppressWarnings("unchecked")
   public <E> E invoke(String method, Props params, Class<E> clazz) {
 
@@ -183,13 +415,44 @@ public class RemoteObject {
 
     Type flattenType = FLATTENER.calculateFlattenType(type);
 
-    Object obj = manager.invoke(objectRef, method, params, flattenType);
+    Object obj;
+
+    PropertyCache cache = manager.getPropertyCache();
+
+    if (cache.isCacheable(this, method, params)) {
+
+      obj = cachedProperties.get(method);
+
+      if (obj != null) {
+        cache.hit();
+      } else {
+        cache.miss();
+        long version = cachedPropertiesVersion.get();
+        obj = manager.invoke(objectRef, method, params, flattenType);
+        cacheProperty(method, obj, version);
+      }
+
+      obj = obj == NULL_PROPERTY ? null : obj;
+
+    } else {
+
+      // Getters started before the setter response could cache the previous value, so the
+      // property is invalidated again once the response arrives
+      invalidateProperty(cache.getInvalidatedProperty(method));
+      try {
+        obj = manager.invoke(objectRef, method, params, flattenType);
+      } finally {
+        invalidateProperty(cache.getInvalidatedProperty(method));
+      }
+    }
 
     return FLATTENER.unflattenValue("return", type, obj, manager);
   }
 
   public TFuture<Object> invoke(String method, Props params, Type type, Transaction tx) {
 
+    invalidateProperty(manager.getPropertyCache().getInvalidatedProperty(method));
+
     TransactionImpl txImpl = (TransactionImpl) tx;
     InvokeOperation op = new InvokeOperation(getKurentoObject(), method, params, type);
     txImpl.addOperation(op);
@@ -197,22 +460,61 @@ public class RemoteObject {
   }
 
   @SuppressWarnings("rawtypes")
-  public void invoke(String method, Props params, final Type type, final Continuation cont) {
+  public void invoke(final String method, Props params, final Type type, final Continuation cont) {
 
     checkCreated();
 
     Type flattenType = FLATTENER.calculateFlattenType(type);
 
+    final PropertyCache cache = manager.getPropertyCache();
+    final boolean cacheable = cache.isCacheable(this, method, params);
+    final long version = cachedPropertiesVersion.get();
+
+    if (cacheable) {
+
+      Object cached = cachedProperties.get(method);
+
+      if (cached != null) {
+        cache.hit();
+        try {
+          cont.onSuccess(
+              FLATTENER.unflattenValue("return", type, cached == NULL_PROPERTY ? null : cached,
+                  manager));
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+        }
+        return;
+      }
+
+      cache.miss();
+
+    } else {
+      invalidateProperty(cache.getInvalidatedProperty(method));
+    }
+
     manager.invoke(objectRef, method, params, flattenType, new DefaultContinuation<Object>(cont) {
       @SuppressWarnings("unchecked")
       @Override
       public void onSuccess(Object result) {
+        if (cacheable) {
+          cacheProperty(method, result, version);
+        } else {
+          invalidateProperty(cache.getInvalidatedProperty(method));
+        }
         try {
           cont.onSuccess(FLATTENER.unflattenValue("return", type, result, manager));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
       }
+
+      @Override
+      public void onError(Throwable cause) {
+        if (!cacheable) {
+          invalidateProperty(cache.getInvalidatedProperty(method));
+        }
+        super.onError(cause);
+      }
     });
   }
 
@@ -228,6 +530,25 @@ public class RemoteObject {
     txImpl.addOperation(new ReleaseOperation(getKurentoObject()));
   }
 
+  /**
+   * Releases this object and its descendants in a single request. Local state of all of them is
+   * discarded without additional requests.
+   */
+  public void releaseTree() {
+    checkCreated();
+    manager.releaseAll(Collections.singletonList(this));
+  }
+
+  public void releaseTree(Continuation<Void> cont) {
+    checkCreated();
+    manager.releaseAll(Collections.singletonList(this), cont);
+  }
+
+  public void releaseTree(Transaction tx) {
+    TransactionImpl txImpl = (TransactionImpl) tx;
+    txImpl.addOperation(new ReleaseOperation(getKurentoObject(), true));
+  }
+
   public void release(final Continuation<Void> cont) {
 
     checkCreated();
@@ -249,11 +570,33 @@ public class RemoteObject {
 
     checkCreated();
 
-    String subscription = manager.subscribe(objectRef, eventType);
+    EventSubscription subscription = getEventSubscription(eventType);
+    SettableFuture<String> newSubscriptionId = SettableFuture.create();
+    SettableFuture<String> subscriptionId = subscription.addListener(listener, newSubscriptionId);
 
-    listeners.put(eventType, listener);
+    if (subscriptionId == newSubscriptionId) {
+      String newId = null;
+      try {
+        newId = manager.subscribe(objectRef, eventType);
+      } catch (RuntimeException e) {
+        subscription.subscriptionFailed(newSubscriptionId, e);
+      }
+      if (newId != null) {
+        newSubscriptionId.set(newId);
+        subscription.subscribed(newSubscriptionId);
+      }
+    }
 
-    return new ListenerSubscriptionImpl(subscription, eventType, listener);
+    try {
+      return new ListenerSubscriptionImpl(Futures.getUnchecked(subscriptionId), eventType,
+          listener);
+    } catch (UncheckedExecutionException e) {
+      subscription.listeners.remove(listener);
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
   }
 
   public ListenerSubscriptionImpl addEventListener(String eventType,
@@ -269,18 +612,89 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.put(eventType, listener);
+    final EventSubscription subscription = getEventSubscription(eventType);
+    final SettableFuture<String> newSubscriptionId = SettableFuture.create();
+    SettableFuture<String> subscriptionId = subscription.addListener(listener, newSubscriptionId);
 
-    manager.subscribe(objectRef, eventType, new DefaultContinuation<String>(cont) {
-      @Override
-      public void onSuccess(String subscription) {
+    if (subscriptionId == newSubscriptionId) {
+
+      manager.subscribe(objectRef, eventType, new Continuation<String>() {
+        @Override
+        public void onSuccess(String result) {
+          newSubscriptionId.set(result);
+          subscription.subscribed(newSubscriptionId);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          subscription.subscriptionFailed(newSubscriptionId, cause);
+        }
+      });
+    }
 
+    Futures.addCallback(subscriptionId, new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String result) {
         try {
-          cont.onSuccess(new ListenerSubscriptionImpl(subscription, eventType, listener));
+          cont.onSuccess(new ListenerSubscriptionImpl(result, eventType, listener));
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
       }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        subscription.listeners.remove(listener);
+        try {
+          cont.onError(cause);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onError implemented by client", e);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Registers a listener whose server subscription has been created in a transaction. If there
+   * was already a server subscription for the event type, the one created in the transaction is
+   * redundant and it is unsubscribed as soon as the shared one is available.
+   */
+  public void addTransactionEventListener(String eventType, RemoteObjectEventListener listener,
+      final String txSubscriptionId) {
+
+    final EventSubscription subscription = getEventSubscription(eventType);
+    final SettableFuture<String> subscriptionId = subscription.addListener(listener,
+        txSubscriptionId);
+
+    Futures.addCallback(subscriptionId, new FutureCallback<String>() {
+      @Override
+      public void onSuccess(String result) {
+        if (!txSubscriptionId.equals(result)) {
+          unsubscribeInBackground(txSubscriptionId);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        // The shared subscription failed, so the one created in the transaction is used instead
+        if (!subscription.adoptSubscription(txSubscriptionId)) {
+          unsubscribeInBackground(txSubscriptionId);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private void unsubscribeInBackground(String subscriptionId) {
+    serverResources.subscriptionIds.remove(subscriptionId);
+    manager.unsubscribe(objectRef, subscriptionId, new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        log.warn("Error removing unneeded event subscription in object {}", objectRef, cause);
+      }
     });
   }
 
@@ -288,17 +702,26 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription.getListener());
-
-    manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId());
+    String subscriptionId = getEventSubscription(listenerSubscription.getType())
+        .removeListener(listenerSubscription.getListener());
 
+    if (subscriptionId != null) {
+      manager.unsubscribe(objectRef, subscriptionId);
+    }
   }
 
   public void removeEventListener(ListenerSubscriptionImpl listenerSubscription, Transaction tx) {
-    TransactionImpl txImpl = (TransactionImpl) tx;
-    UnsubscriptionOperation op = new UnsubscriptionOperation(getKurentoObject(),
-        listenerSubscription);
-    txImpl.addOperation(op);
+
+    String subscriptionId = getEventSubscription(listenerSubscription.getType())
+        .removeListener(listenerSubscription.getListener());
+
+    if (subscriptionId != null) {
+      listenerSubscription.setSubscription(subscriptionId);
+      TransactionImpl txImpl = (TransactionImpl) tx;
+      UnsubscriptionOperation op = new UnsubscriptionOperation(getKurentoObject(),
+          listenerSubscription);
+      txImpl.addOperation(op);
+    }
   }
 
   public void removeEventListener(final ListenerSubscriptionImpl listenerSubscription,
@@ -306,33 +729,107 @@ public class RemoteObject {
 
     checkCreated();
 
-    listeners.remove(listenerSubscription.getType(), listenerSubscription);
+    String subscriptionId = getEventSubscription(listenerSubscription.getType())
+        .removeListener(listenerSubscription.getListener());
+
+    if (subscriptionId == null) {
+      try {
+        cont.onSuccess(null);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+      return;
+    }
+
+    manager.unsubscribe(objectRef, subscriptionId, new DefaultContinuation<Void>(cont) {
+      @Override
+      public void onSuccess(Void result) {
 
-    manager.unsubscribe(objectRef, listenerSubscription.getSubscriptionId(),
-        new DefaultContinuation<Void>(cont) {
-          @Override
-          public void onSuccess(Void result) {
+        try {
+          cont.onSuccess(result);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+        }
+      }
 
-            try {
-              cont.onSuccess(result);
-            } catch (Exception e) {
-              log.warn("[Continuation] error invoking onSuccess implemented by client", e);
-            }
-          }
+    });
+  }
 
-        });
+  /**
+   * @return the number of local listeners of the given event type
+   */
+  public int getEventListenerCount(String eventType) {
+    EventSubscription subscription = subscriptions.get(eventType);
+    return subscription != null ? subscription.listeners.size() : 0;
   }
 
-  public void fireEvent(String type, Props data) {
+  private EventSubscription getEventSubscription(String eventType) {
 
-    Collection<RemoteObjectEventListener> typeListeners;
-    synchronized (this.listeners) {
-      typeListeners = new ArrayList<>(this.listeners.get(type));
+    EventSubscription subscription = subscriptions.get(eventType);
+
+    if (subscription == null) {
+      subscription = new EventSubscription(eventType);
+      EventSubscription previous = subscriptions.putIfAbsent(eventType, subscription);
+      if (previous != null) {
+        subscription = previous;
+      }
+    }
+
+    return subscription;
+  }
+
+  private void cacheProperty(String method, Object value, long version) {
+    synchronized (cachedProperties) {
+      // Values obtained before an invalidation could be stale
+      if (version == cachedPropertiesVersion.get()) {
+        cachedProperties.put(method, value == null ? NULL_PROPERTY : value);
+      }
+    }
+  }
+
+  /**
+   * Invalidates the cached property modified by the given method. It is invoked when the response
+   * of a method executed in a transaction is received.
+   */
+  public void invoked(String method) {
+    invalidateProperty(manager.getPropertyCache().getInvalidatedProperty(method));
+  }
+
+  private void invalidateProperty(String method) {
+    if (method != null) {
+      synchronized (cachedProperties) {
+        cachedPropertiesVersion.incrementAndGet();
+        if (cachedProperties.remove(method) != null) {
+          manager.getPropertyCache().invalidated();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if the object has an active server subscription to the given event type
+   */
+  public boolean hasServerSubscription(String eventType) {
+    EventSubscription subscription = subscriptions.get(eventType);
+    return subscription != null && subscription.isSubscribed();
+  }
+
+  public void fireEvent(String type, JsonObject data) {
+
+    for (String property : manager.getPropertyCache().getInvalidatedProperties(type)) {
+      invalidateProperty(property);
+    }
+
+    EventSubscription subscription = subscriptions.get(type);
+    List<RemoteObjectEventListener> typeListeners =
+        subscription != null ? subscription.listeners : null;
+
+    if (log.isDebugEnabled()) {
       log.debug("Listeners found in object {}:{} for event {}: {}", super.hashCode(),
           this.getObjectRef(), type, typeListeners);
     }
 
-    if (typeListeners.isEmpty()) {
+    if (typeListeners == null || typeListeners.isEmpty()) {
 
       log.warn(
           "Received event with data {} in object {} but there is no listener registered for it",
@@ -340,6 +837,9 @@ public class RemoteObject {
 
     } else {
 
+      boolean recordEvent = JsonRpcEvents.isEnabled();
+      long start = recordEvent ? System.nanoTime() : 0;
+
       for (RemoteObjectEventListener eventListener : typeListeners) {
         try {
           eventListener.onEvent(type, data);
@@ -347,6 +847,11 @@ public class RemoteObject {
           log.error("Exception executing event listener", e);
         }
       }
+
+      if (recordEvent) {
+        JsonRpcEvents.remoteObjectEventFired(type, getObjectRef(), typeListeners.size(),
+            System.nanoTime() - start);
+      }
     }
   }
 
@@ -393,8 +898,10 @@ public class RemoteObject {
   }
 
   public void setCreatedObjectRef(String objectRef) {
+    String txObjectRef = this.objectRef;
     this.objectRef = objectRef;
     this.objectStatus = ObjectStatus.CREATED;
+    manager.getObjectManager().updateObjectRef(txObjectRef, objectRef, this);
     createReadyLatchIfNecessary();
     readyLatch.countDown();
     if (whenContinuation != null) {
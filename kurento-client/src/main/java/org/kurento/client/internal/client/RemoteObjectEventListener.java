@@ -17,8 +17,8 @@
 
 package org.kurento.client.internal.client;
 
-import org.kurento.jsonrpc.Props;
+import com.google.gson.JsonObject;
 
 public interface RemoteObjectEventListener {
-  public void onEvent(String eventType, Props data);
+  public void onEvent(String eventType, JsonObject data);
 }
\ No newline at end of file
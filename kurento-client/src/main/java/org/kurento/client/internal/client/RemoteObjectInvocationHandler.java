@@ -17,7 +17,6 @@
 
 package org.kurento.client.internal.client;
 
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
@@ -34,12 +33,13 @@ import org.kurento.client.KurentoObject;
 import org.kurento.client.Transaction;
 import org.kurento.client.internal.ParamAnnotationUtils;
 import org.kurento.client.internal.server.EventSubscription;
-import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.client.internal.transport.serialization.EventDecoder;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonObject;
 
 public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 
@@ -111,6 +111,10 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
 
       return release(cont, tx);
 
+    } else if (methodName.equals("releaseTree")) {
+
+      return releaseTree(cont, tx);
+
     } else if (method.getAnnotation(EventSubscription.class) != null) {
 
       EventSubscription eventSubscription = method.getAnnotation(EventSubscription.class);
@@ -173,19 +177,25 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     return null;
   }
 
+  @SuppressWarnings("unchecked")
+  private Object releaseTree(Continuation<?> cont, Transaction tx) {
+    if (cont != null) {
+      remoteObject.releaseTree((Continuation<Void>) cont);
+    } else if (tx != null) {
+      remoteObject.releaseTree(tx);
+    } else {
+      remoteObject.releaseTree();
+    }
+    return null;
+  }
+
   @SuppressWarnings("unchecked")
   private Object subscribeEventListener(final Object proxy, final Object[] args, String methodName,
       final Class<? extends Event> eventClass, Continuation<?> cont, Transaction tx) {
 
-    String eventName = eventClass.getSimpleName().substring(0,
-        eventClass.getSimpleName().length() - "Event".length());
+    String eventName = getEventType(eventClass);
 
-    RemoteObjectEventListener listener = new RemoteObjectEventListener() {
-      @Override
-      public void onEvent(String eventType, Props data) {
-        propagateEventTo(proxy, eventClass, data, (EventListener<?>) args[0]);
-      }
-    };
+    RemoteObjectEventListener listener = newEventListener(eventClass, (EventListener<?>) args[0]);
 
     if (cont != null) {
       remoteObject.addEventListener(eventName, listener,
@@ -198,6 +208,31 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
     }
   }
 
+  /**
+   * @return the event type used in the protocol for the given event class
+   */
+  public static String getEventType(Class<? extends Event> eventClass) {
+    return eventClass.getSimpleName().substring(0,
+        eventClass.getSimpleName().length() - "Event".length());
+  }
+
+  /**
+   * Creates a listener that decodes the events received by the remote object and propagates them
+   * to the given listener.
+   */
+  public RemoteObjectEventListener newEventListener(Class<? extends Event> eventClass,
+      final EventListener<?> listener) {
+
+    final EventDecoder decoder = EventDecoder.getFor(eventClass);
+
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+        propagateEventTo(decoder, data, listener);
+      }
+    };
+  }
+
   @SuppressWarnings("unchecked")
   private Object unsubscribeEventListener(final Object proxy, final Object[] args,
       String methodName, final Class<? extends Event> eventClass, Continuation<?> cont,
@@ -216,29 +251,21 @@ public class RemoteObjectInvocationHandler extends DefaultInvocationHandler {
   }
 
   @SuppressWarnings({ "unchecked", "rawtypes" })
-  protected void propagateEventTo(Object object, Class<? extends Event> eventClass, Props data,
+  protected void propagateEventTo(EventDecoder decoder, JsonObject data,
       EventListener<?> listener) {
 
-    // TODO Optimize this to create only one event for all listeners
-
     try {
 
-      log.debug("Event class '" + eventClass.getSimpleName() + " Data: " + data);
-
-      Constructor<?> constructor = eventClass.getConstructors()[0];
-
-      data.add("source", ((KurentoObject) object).getId());
-
-      Object[] params = ParamsFlattener.getInstance().unflattenParams(
-          constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(), data,
-          manager);
+      if (log.isDebugEnabled()) {
+        log.debug("Event class '{}' Data: {}", decoder.getEventClass().getSimpleName(), data);
+      }
 
-      Event event = (Event) constructor.newInstance(params);
+      Event event = decoder.decode(data, remoteObject.getObjectRef(), manager);
 
       ((EventListener) listener).onEvent(event);
 
     } catch (Exception e) {
-      log.error("Exception while processing event '" + eventClass.getSimpleName()
+      log.error("Exception while processing event '" + decoder.getEventClass().getSimpleName()
           + "' with params '" + data + "'", e);
     }
   }
@@ -17,21 +17,58 @@
 
 package org.kurento.client.internal.client;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.RemoteObject.ServerResources;
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
-import org.kurento.jsonrpc.Props;
+import org.kurento.commons.PropertiesManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.MapMaker;
+import com.google.gson.JsonObject;
 
 public class RomClientObjectManager implements RomEventHandler, ObjectRefsManager {
 
+  /**
+   * Weak reference to a registered object. It keeps the server resources of the object, so they
+   * can be freed when the object is collected.
+   */
+  private static class RemoteObjectReference extends WeakReference<RemoteObject> {
+
+    private final String objectRef;
+    private final String type;
+    private final ServerResources serverResources;
+
+    RemoteObjectReference(String objectRef, RemoteObject remoteObject,
+        ReferenceQueue<RemoteObject> queue) {
+      super(remoteObject, queue);
+      this.objectRef = objectRef;
+      this.type = remoteObject.getType();
+      this.serverResources = remoteObject.getServerResources();
+    }
+  }
+
   private static final Logger log = LoggerFactory.getLogger(RomClientObjectManager.class);
 
+  private static final boolean RELEASE_UNREACHABLE_OBJECTS =
+      PropertiesManager.getProperty("kurento.client.releaseUnreachableObjects", false);
+
+  private static final boolean TRACK_OBJECT_CREATION = PropertiesManager
+      .getProperty("kurento.client.trackObjectCreation", log.isDebugEnabled());
+
   private final ConcurrentMap<String, RemoteObject> objects = new MapMaker().weakValues().makeMap();
 
+  private final ConcurrentMap<String, RemoteObjectReference> references =
+      new ConcurrentHashMap<>();
+
+  private final ReferenceQueue<RemoteObject> unreachableObjects = new ReferenceQueue<>();
+
   private final RomClient client;
 
   public RomClientObjectManager(RomClient client) {
@@ -43,27 +80,73 @@ public class RomClientObjectManager implements RomEventHandler, ObjectRefsManage
   }
 
   @Override
-  public void processEvent(String objectRef, String subscription, String type, Props data) {
+  public void processEvent(String objectRef, String subscription, String type, JsonObject data) {
 
     RemoteObject object = objects.get(objectRef);
 
     if (object == null) {
-      log.error(
-          "Trying to propagate a event with type={} and data={} to object {}, "
-              + "but that doesn't exist in the client. Objects are={}",
-          type, data, objectRef, objects);
+
+      // The object could have been collected. Freeing its resources removes its subscriptions
+      freeUnreachableObjects();
+
+      log.warn("Trying to propagate a event with type={} to object {}, "
+          + "but that doesn't exist in the client", type, objectRef);
       return;
     }
 
     object.fireEvent(type, data);
   }
 
+  ServerResources createServerResources(String type) {
+
+    Throwable creationStack = null;
+    if (TRACK_OBJECT_CREATION) {
+      creationStack = new Throwable("Creation of object of type " + type);
+    }
+
+    return new ServerResources(creationStack, RELEASE_UNREACHABLE_OBJECTS);
+  }
+
   public void registerObject(String objectRef, RemoteObject remoteObject) {
+
+    freeUnreachableObjects();
+
     this.objects.put(objectRef, remoteObject);
+
+    // Objects not commited yet don't have server resources
+    if (remoteObject.isCommited()) {
+      this.references.put(objectRef,
+          new RemoteObjectReference(objectRef, remoteObject, unreachableObjects));
+    }
+  }
+
+  /**
+   * Registers an object created in a transaction with the objectRef assigned by the server.
+   */
+  void updateObjectRef(String txObjectRef, String objectRef, RemoteObject remoteObject) {
+    forgetObject(txObjectRef);
+    registerObject(objectRef, remoteObject);
   }
 
   public void releaseObject(String objectRef) {
+    forgetObject(objectRef);
+  }
+
+  public void releaseObjects(Collection<String> objectRefs) {
+    for (String objectRef : objectRefs) {
+      forgetObject(objectRef);
+    }
+  }
+
+  private void forgetObject(String objectRef) {
+
     this.objects.remove(objectRef);
+
+    RemoteObjectReference reference = this.references.remove(objectRef);
+    if (reference != null) {
+      // A cleared reference is never enqueued, so its resources are not freed twice
+      reference.clear();
+    }
   }
 
   public RemoteObject getRemoteObject(String objectRef) {
@@ -75,4 +158,74 @@ public class RomClientObjectManager implements RomEventHandler, ObjectRefsManage
     return this.objects.get(objectRef);
   }
 
+  /**
+   * Frees the server resources of the objects that have been collected without being released:
+   * their event subscriptions are removed and, if configured, the objects are released in the
+   * media server. This is done automatically when objects are registered and when events for
+   * unknown objects are received.
+   *
+   * @return the number of unreachable objects found
+   */
+  public int freeUnreachableObjects() {
+
+    int count = 0;
+
+    RemoteObjectReference reference;
+    while ((reference = (RemoteObjectReference) unreachableObjects.poll()) != null) {
+      freeServerResources(reference);
+      count++;
+    }
+
+    return count;
+  }
+
+  private void freeServerResources(RemoteObjectReference reference) {
+
+    final String objectRef = reference.objectRef;
+    ServerResources resources = reference.serverResources;
+
+    // If another object has been registered with the same objectRef, the application is still
+    // using the remote object, so it can't be released
+    boolean current = references.remove(objectRef, reference);
+
+    if (resources.creationStack != null && resources.owned) {
+      log.warn("Object {} of type {} is no longer reachable but it was not released",
+          objectRef, reference.type, resources.creationStack);
+    }
+
+    if (client == null) {
+      return;
+    }
+
+    for (String subscriptionId : resources.subscriptionIds) {
+      log.debug("Removing subscription {} of unreachable object {}", subscriptionId, objectRef);
+      client.unsubscribe(objectRef, subscriptionId, new LoggingContinuation<Void>(
+          "Error removing subscription " + subscriptionId + " of unreachable object " + objectRef));
+    }
+    resources.subscriptionIds.clear();
+
+    if (current && resources.releaseWhenUnreachable) {
+      log.debug("Releasing unreachable object {}", objectRef);
+      client.release(objectRef,
+          new LoggingContinuation<Void>("Error releasing unreachable object " + objectRef));
+    }
+  }
+
+  private static class LoggingContinuation<F> implements Continuation<F> {
+
+    private final String errorMessage;
+
+    LoggingContinuation(String errorMessage) {
+      this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public void onSuccess(F result) {
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+      log.warn(errorMessage, cause);
+    }
+  }
 }
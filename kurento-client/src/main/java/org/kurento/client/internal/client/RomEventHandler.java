@@ -17,10 +17,10 @@
 
 package org.kurento.client.internal.client;
 
-import org.kurento.jsonrpc.Props;
+import com.google.gson.JsonObject;
 
 public interface RomEventHandler {
 
-  void processEvent(String objectRef, String subscription, String type, Props data);
+  void processEvent(String objectRef, String subscription, String type, JsonObject data);
 
 }
@@ -17,16 +17,33 @@
 
 package org.kurento.client.internal.client;
 
+import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.Transaction;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.TransactionImpl;
 import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
 import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.client.operation.ReleaseOperation;
 import org.kurento.client.internal.transport.serialization.ObjectRefsManager;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.JsonRpcClientClosedException;
+import org.kurento.jsonrpc.Prop;
 import org.kurento.jsonrpc.Props;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,14 +54,29 @@ public class RomManager implements ObjectRefsManager {
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
+  private static final String PARENT_PARAM = "mediaPipeline";
+
+  private static final int TRANSACTION_MAX_RETRIES =
+      PropertiesManager.getProperty("kurento.client.transaction.maxRetries", 3);
+
+  private static final long TRANSACTION_TIMEOUT =
+      PropertiesManager.getProperty("kurento.client.transaction.timeout", 60000L);
+
   private final RomClientObjectManager manager;
   private final RomClient client;
+  private final PropertyCache propertyCache = new PropertyCache();
+  private final TransactionPlanner transactionPlanner = new TransactionPlanner();
+  private final MediaObjectPool objectPool = new MediaObjectPool(this);
+  private final AtomicLong transactionRetries = new AtomicLong();
 
   public RomManager(RomClient client) {
     this.client = client;
     this.manager = new RomClientObjectManager(client);
     if (client != null) {
       this.client.addRomEventHandler(manager);
+      if (objectPool.isEnabledByProperties()) {
+        objectPool.start();
+      }
     }
   }
 
@@ -53,7 +85,9 @@ public class RomManager implements ObjectRefsManager {
       Props genericProps) {
     String objectRef = client.create(remoteClassName, constructorParams, genericProps);
 
-    return new RemoteObject(objectRef, remoteClassName, this);
+    RemoteObject remoteObject = new RemoteObject(objectRef, remoteClassName, this);
+    registerInParent(remoteObject, constructorParams);
+    return remoteObject;
   }
 
   public synchronized RemoteObject create(String remoteClassName, Props constructorParams,
@@ -63,6 +97,7 @@ public class RomManager implements ObjectRefsManager {
 
     RemoteObject remoteObject = new RemoteObject(txImpl.nextObjectRef(), remoteClassName, false,
         this);
+    registerInParent(remoteObject, constructorParams);
 
     MediaObjectCreationOperation op = new MediaObjectCreationOperation(remoteClassName,
         constructorParams, genericProps, remoteObject);
@@ -83,8 +118,10 @@ public class RomManager implements ObjectRefsManager {
     client.create(remoteClassName, constructorParams, genericProps, new Continuation<String>() {
       @Override
       public void onSuccess(String objectRef) {
+        RemoteObject remoteObject = new RemoteObject(objectRef, remoteClassName, RomManager.this);
+        registerInParent(remoteObject, constructorParams);
         try {
-          cont.onSuccess(new RemoteObject(objectRef, remoteClassName, RomManager.this));
+          cont.onSuccess(remoteObject);
         } catch (Exception e) {
           log.warn("[Continuation] error invoking onSuccess implemented by client", e);
         }
@@ -105,6 +142,49 @@ public class RomManager implements ObjectRefsManager {
     create(remoteClassName, null, null, cont);
   }
 
+  /**
+   * Registers the object as child of its parent, so it can be found when the parent tree is
+   * released and the parent is kept reachable while the object is. The parent is the pipeline of
+   * the object or, for objects not created in a pipeline, the only remote object of the
+   * constructor params (e.g. the hub of a port).
+   */
+  private void registerInParent(RemoteObject remoteObject, Props constructorParams) {
+
+    if (constructorParams == null) {
+      return;
+    }
+
+    RemoteObject parent = toRemoteObject(constructorParams.getProp(PARENT_PARAM));
+
+    if (parent == null) {
+      for (Prop prop : constructorParams) {
+        RemoteObject param = toRemoteObject(prop.getValue());
+        if (param != null) {
+          if (parent != null) {
+            // Ambiguous parent
+            return;
+          }
+          parent = param;
+        }
+      }
+    }
+
+    if (parent != null) {
+      parent.addChild(remoteObject);
+    }
+  }
+
+  static RemoteObject toRemoteObject(Object value) {
+    if (value instanceof RemoteObject) {
+      return (RemoteObject) value;
+    } else if (value != null && Proxy.isProxyClass(value.getClass())
+        && Proxy.getInvocationHandler(value) instanceof RemoteObjectInvocationHandler) {
+      return RemoteObjectInvocationHandler.getFor(value).getRemoteObject();
+    } else {
+      return null;
+    }
+  }
+
   @Override
   public synchronized Object getObject(String objectRef) {
     return manager.getObject(objectRef);
@@ -120,6 +200,7 @@ public class RomManager implements ObjectRefsManager {
       clazz = obtainConcreteClass(objectRef, clazz);
 
       remoteObject = new RemoteObject(objectRef, clazz.getSimpleName(), this);
+      remoteObject.setNotOwned();
 
       RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
     }
@@ -146,6 +227,7 @@ public class RomManager implements ObjectRefsManager {
 
   public void destroy() {
     log.debug("Closing RomManager");
+    objectPool.close();
     this.client.destroy();
   }
 
@@ -167,6 +249,88 @@ public class RomManager implements ObjectRefsManager {
     manager.releaseObject(objectRef);
   }
 
+  /**
+   * Releases all the objects in a single transaction. Objects whose parent (or any other ancestor)
+   * is also in the collection are released by the media server with it, so no request is sent
+   * for them. The local state of the objects and their descendants, including their event
+   * listeners, is discarded without sending unsubscribe requests.
+   *
+   * <p>
+   * The transaction is never split by the {@link TransactionPlanner}: the objects are released in
+   * one request, whatever their number.
+   * </p>
+   */
+  public void releaseAll(Collection<RemoteObject> objects) {
+
+    List<Operation> operations = createReleaseOperations(objects);
+
+    if (!operations.isEmpty()) {
+      for (Operation op : operations) {
+        op.setManager(this);
+      }
+      client.transaction(operations);
+    }
+  }
+
+  public void releaseAll(Collection<RemoteObject> objects, Continuation<Void> cont) {
+
+    List<Operation> operations = createReleaseOperations(objects);
+
+    if (operations.isEmpty()) {
+      try {
+        cont.onSuccess(null);
+      } catch (Exception e) {
+        log.warn("[Continuation] error invoking onSuccess implemented by client", e);
+      }
+      return;
+    }
+
+    for (Operation op : operations) {
+      op.setManager(this);
+    }
+
+    commitBatch(operations, TRANSACTION_MAX_RETRIES, cont);
+  }
+
+  private List<Operation> createReleaseOperations(Collection<RemoteObject> objects) {
+
+    Set<RemoteObject> descendants = new HashSet<>();
+    for (RemoteObject object : objects) {
+      object.collectDescendants(descendants);
+    }
+
+    List<Operation> operations = new ArrayList<>(objects.size());
+    Set<RemoteObject> released = new HashSet<>();
+    for (RemoteObject object : objects) {
+      if (!descendants.contains(object) && released.add(object)) {
+        operations.add(new ReleaseOperation(object.getKurentoObject(), true));
+      }
+    }
+
+    return operations;
+  }
+
+  /**
+   * Discards the local state of an object released in the media server and, optionally, of all
+   * its descendants.
+   */
+  public void releasedInServer(RemoteObject object, boolean withDescendants) {
+
+    Set<RemoteObject> released = new LinkedHashSet<>();
+    released.add(object);
+    if (withDescendants) {
+      object.collectDescendants(released);
+    }
+
+    List<String> objectRefs = new ArrayList<>(released.size());
+    for (RemoteObject releasedObject : released) {
+      objectRefs.add(releasedObject.getObjectRef());
+      releasedObject.releasedInServer();
+    }
+
+    manager.releaseObjects(objectRefs);
+  }
+
   public void release(final String objectRef, final Continuation<Void> cont) {
     client.release(objectRef, new DefaultContinuation<Void>(cont) {
       @Override
@@ -201,15 +365,67 @@ public class RomManager implements ObjectRefsManager {
     client.addRomEventHandler(eventHandler);
   }
 
+  public PropertyCache getPropertyCache() {
+    return propertyCache;
+  }
+
   public RomClientObjectManager getObjectManager() {
     return manager;
   }
 
+  public MediaObjectPool getObjectPool() {
+    return objectPool;
+  }
+
+  public TransactionPlanner getTransactionPlanner() {
+    return transactionPlanner;
+  }
+
+  public long getTransactionRetries() {
+    return transactionRetries.get();
+  }
+
   public void transaction(List<Operation> operations) {
+
     for (Operation op : operations) {
       op.setManager(this);
     }
-    client.transaction(operations);
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    Continuation<Void> continuation = new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        error.set(cause);
+        latch.countDown();
+      }
+    };
+
+    // Committed the same way as an asynchronous transaction, so it is retried in the same cases
+    commitBatches(transactionPlanner.plan(operations), TRANSACTION_MAX_RETRIES, continuation);
+
+    try {
+      if (!latch.await(TRANSACTION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        throw new KurentoException("Timeout of " + TRANSACTION_TIMEOUT
+            + "ms waiting for a transaction to be committed");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KurentoException("Interrupted while waiting for transaction to be committed", e);
+    }
+
+    Throwable cause = error.get();
+    if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else if (cause != null) {
+      throw new KurentoException("Exception committing transaction", cause);
+    }
   }
 
   public void transaction(final List<Operation> operations, final Continuation<Void> continuation) {
@@ -218,7 +434,58 @@ public class RomManager implements ObjectRefsManager {
       op.setManager(this);
     }
 
-    client.transaction(operations, new Continuation<Void>() {
+    commitBatches(transactionPlanner.plan(operations), TRANSACTION_MAX_RETRIES, continuation);
+  }
+
+  /**
+   * Commits each batch in its own request, all of them in parallel. The continuation is invoked
+   * when all batches have finished, with the first error found (if any). Batches that succeed are
+   * not affected by the failure of other batches.
+   */
+  private void commitBatches(List<List<Operation>> batches, int maxRetries,
+      final Continuation<Void> continuation) {
+
+    if (batches.size() == 1) {
+      commitBatch(batches.get(0), maxRetries, continuation);
+      return;
+    }
+
+    final AtomicInteger pendingBatches = new AtomicInteger(batches.size());
+    final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+    Continuation<Void> batchContinuation = new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) throws Exception {
+        batchFinished();
+      }
+
+      @Override
+      public void onError(Throwable cause) throws Exception {
+        firstError.compareAndSet(null, cause);
+        batchFinished();
+      }
+
+      private void batchFinished() throws Exception {
+        if (pendingBatches.decrementAndGet() == 0) {
+          Throwable cause = firstError.get();
+          if (cause == null) {
+            continuation.onSuccess(null);
+          } else {
+            continuation.onError(cause);
+          }
+        }
+      }
+    };
+
+    for (List<Operation> batch : batches) {
+      commitBatch(batch, maxRetries, batchContinuation);
+    }
+  }
+
+  private void commitBatch(final List<Operation> batch, final int retriesLeft,
+      final Continuation<Void> continuation) {
+
+    Continuation<Void> batchContinuation = new Continuation<Void>() {
       @Override
       public void onSuccess(Void result) throws Exception {
         continuation.onSuccess(null);
@@ -226,9 +493,58 @@ public class RomManager implements ObjectRefsManager {
 
       @Override
       public void onError(Throwable cause) throws Exception {
-        transaction(operations, continuation);
+
+        if (retriesLeft > 0 && isRetryable(batch, cause)) {
+
+          log.debug("Retrying transaction with {} operations ({} retries left)", batch.size(),
+              retriesLeft, cause);
+          transactionRetries.incrementAndGet();
+          commitBatch(batch, retriesLeft - 1, continuation);
+
+        } else {
+
+          // Operations of transactions executed with errors are rolled back when the response is
+          // processed. The rest of errors leave the transaction in an unknown state
+          if (!(cause instanceof TransactionExecutionException)) {
+            for (Operation op : batch) {
+              op.rollback(null);
+            }
+          }
+          continuation.onError(cause);
+        }
       }
-    });
+    };
+
+    try {
+      client.transaction(batch, batchContinuation);
+    } catch (Exception e) {
+      try {
+        batchContinuation.onError(e);
+      } catch (Exception e2) {
+        log.warn("[Continuation] error invoking onError implemented by client", e2);
+      }
+    }
+  }
+
+  /**
+   * A failed transaction is only retried if it was not rejected by the media server and all its
+   * operations can be executed twice safely, because the failure could have happened after the
+   * server executed them.
+   */
+  private boolean isRetryable(List<Operation> batch, Throwable cause) {
+
+    if (cause instanceof TransactionExecutionException
+        || cause instanceof JsonRpcClientClosedException || client.isClosed()) {
+      return false;
+    }
+
+    for (Operation op : batch) {
+      if (!op.isIdempotent()) {
+        return false;
+      }
+    }
+
+    return true;
   }
 
   public RomClient getRomClient() {
@@ -249,7 +565,11 @@ public class RomManager implements ObjectRefsManager {
   public synchronized RemoteObject createWithKurentoObject(Class<?> clazz, Props props,
       Props genericProps) {
 
-    RemoteObject remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
+    RemoteObject remoteObject = objectPool.acquire(clazz.getSimpleName(), props, genericProps);
+
+    if (remoteObject == null) {
+      remoteObject = this.create(clazz.getSimpleName(), props, genericProps);
+    }
 
     RemoteObjectInvocationHandler.newProxy(remoteObject, this, clazz);
 
@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.commons.PropertiesManager;
+
+/**
+ * Splits the operations of a transaction in independent batches that can be committed in parallel.
+ *
+ * <p>
+ * Two operations are dependent when they use a common object, either an existing one or one
+ * created in the same transaction (referenced as {@code newref:N}). Dependent operations are
+ * always placed in the same batch and keep their relative order, so each batch is a valid
+ * transaction by itself. If a batch fails, only its operations have to be rolled back.
+ * </p>
+ *
+ * <p>
+ * The media server resolves {@code newref:N} references inside each request, N being the creation
+ * order of the object in that request. The references of each batch are renumbered with
+ * {@link #getBatchRefs(List)} before it is sent. Objects created in previous requests are
+ * referenced by the id returned by the media server, because requests are built when the batch is
+ * committed.
+ * </p>
+ *
+ * <p>
+ * Transactions with less than {@code kurento.client.transaction.parallelMinOperations} operations
+ * (16 by default) are not split. At most {@code kurento.client.transaction.parallelMaxBatches}
+ * batches (8 by default) are created; when there are more independent groups of operations, they
+ * are packed into the least loaded batches.
+ * </p>
+ */
+public class TransactionPlanner {
+
+  public static final String NEW_REF_PREFIX = "newref:";
+
+  private static final int MIN_OPERATIONS =
+      PropertiesManager.getProperty("kurento.client.transaction.parallelMinOperations", 16);
+
+  private static final int MAX_BATCHES =
+      PropertiesManager.getProperty("kurento.client.transaction.parallelMaxBatches", 8);
+
+  private final int minOperations;
+  private final int maxBatches;
+
+  private final AtomicLong splitTransactions = new AtomicLong();
+
+  public TransactionPlanner() {
+    this(MIN_OPERATIONS, MAX_BATCHES);
+  }
+
+  public TransactionPlanner(int minOperations, int maxBatches) {
+    this.minOperations = minOperations;
+    this.maxBatches = maxBatches;
+  }
+
+  /**
+   * Returns the batches in which the operations can be committed. If the transaction can't (or
+   * shouldn't) be split, a single batch with all the operations is returned.
+   */
+  public List<List<Operation>> plan(List<Operation> operations) {
+
+    int numOps = operations.size();
+
+    if (maxBatches <= 1 || numOps < minOperations || numOps < 2) {
+      return Collections.singletonList(operations);
+    }
+
+    int[] parents = new int[numOps];
+    for (int i = 0; i < numOps; i++) {
+      parents[i] = i;
+    }
+
+    Map<String, Integer> refOwners = new HashMap<>();
+    Set<String> refs = new HashSet<>();
+
+    for (int i = 0; i < numOps; i++) {
+
+      refs.clear();
+      operations.get(i).collectObjectRefs(refs);
+
+      if (refs.isEmpty()) {
+        // Unknown dependencies. Keep it with the first operation to be on the safe side
+        union(parents, 0, i);
+      }
+
+      for (String ref : refs) {
+        Integer owner = refOwners.get(ref);
+        if (owner == null) {
+          refOwners.put(ref, i);
+        } else {
+          union(parents, owner, i);
+        }
+      }
+    }
+
+    Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+    for (int i = 0; i < numOps; i++) {
+      int root = find(parents, i);
+      List<Integer> group = groups.get(root);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(root, group);
+      }
+      group.add(i);
+    }
+
+    if (groups.size() == 1) {
+      return Collections.singletonList(operations);
+    }
+
+    List<List<Integer>> sortedGroups = new ArrayList<>(groups.values());
+    Collections.sort(sortedGroups, new Comparator<List<Integer>>() {
+      @Override
+      public int compare(List<Integer> g1, List<Integer> g2) {
+        return g2.size() - g1.size();
+      }
+    });
+
+    // Biggest groups first, each one in the least loaded batch
+    List<List<Integer>> batchIndexes = new ArrayList<>();
+    for (List<Integer> group : sortedGroups) {
+      if (batchIndexes.size() < maxBatches) {
+        batchIndexes.add(new ArrayList<>(group));
+      } else {
+        List<Integer> leastLoaded = batchIndexes.get(0);
+        for (List<Integer> batch : batchIndexes) {
+          if (batch.size() < leastLoaded.size()) {
+            leastLoaded = batch;
+          }
+        }
+        leastLoaded.addAll(group);
+      }
+    }
+
+    List<List<Operation>> batches = new ArrayList<>(batchIndexes.size());
+    for (List<Integer> indexes : batchIndexes) {
+      Collections.sort(indexes);
+      List<Operation> batch = new ArrayList<>(indexes.size());
+      for (int index : indexes) {
+        batch.add(operations.get(index));
+      }
+      batches.add(batch);
+    }
+
+    splitTransactions.incrementAndGet();
+
+    return batches;
+  }
+
+  /**
+   * Returns the reference that each object created in the batch has inside it, indexed by its
+   * reference in the whole transaction. Objects are numbered from 0 in their creation order, as
+   * the media server resolves them in each request.
+   */
+  public static Map<String, String> getBatchRefs(List<Operation> batch) {
+
+    Map<String, String> batchRefs = new HashMap<>();
+
+    for (Operation op : batch) {
+      if (op instanceof MediaObjectCreationOperation) {
+        String ref = ((MediaObjectCreationOperation) op).getCreatedObject().getObjectRef();
+        if (ref.startsWith(NEW_REF_PREFIX)) {
+          batchRefs.put(ref, NEW_REF_PREFIX + batchRefs.size());
+        }
+      }
+    }
+
+    return batchRefs;
+  }
+
+  private static int find(int[] parents, int i) {
+    while (parents[i] != i) {
+      parents[i] = parents[parents[i]];
+      i = parents[i];
+    }
+    return i;
+  }
+
+  private static void union(int[] parents, int i, int j) {
+    int rootI = find(parents, i);
+    int rootJ = find(parents, j);
+    if (rootI != rootJ) {
+      // The root is always the first operation of the group
+      if (rootI < rootJ) {
+        parents[rootJ] = rootI;
+      } else {
+        parents[rootI] = rootJ;
+      }
+    }
+  }
+
+  public long getSplitTransactions() {
+    return splitTransactions.get();
+  }
+
+  public int getMinOperations() {
+    return minOperations;
+  }
+
+  public int getMaxBatches() {
+    return maxBatches;
+  }
+}
@@ -18,18 +18,29 @@
 package org.kurento.client.internal.client.operation;
 
 import java.lang.reflect.Type;
+import java.util.Set;
 
 import org.kurento.client.KurentoObject;
+import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.Props;
 
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+
 public class InvokeOperation extends Operation {
 
   private static ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
 
+  // Methods, besides getters, that can be executed more than once with the same effect
+  private static final Set<String> IDEMPOTENT_METHODS = ImmutableSet.copyOf(Splitter.on(',')
+      .trimResults().omitEmptyStrings()
+      .split(PropertiesManager.getProperty("kurento.client.transaction.idempotentMethods", "")));
+
   private KurentoObject kurentoObject;
   private String method;
   private Props params;
@@ -56,12 +67,37 @@ public class InvokeOperation extends Operation {
   @Override
   public void processResponse(Object result) {
 
+    getRemoteObject(kurentoObject).invoked(method);
+
     if (returnType != Void.class && returnType != void.class) {
 
       future.getFuture().set(FLATTENER.unflattenValue("return", returnType, result, manager));
     }
   }
 
+  @Override
+  public void rollback(TransactionExecutionException ex) {
+    // The method could have been executed before the transaction failed
+    getRemoteObject(kurentoObject).invoked(method);
+    super.rollback(ex);
+  }
+
+  @Override
+  public void collectObjectRefs(Set<String> refs) {
+    refs.add(getObjectRef(kurentoObject));
+    collectObjectRefs(params, refs);
+  }
+
+  /**
+   * Getters can be executed again safely. Other methods, setters included, only if they are listed
+   * in the property {@code kurento.client.transaction.idempotentMethods}, because they can have
+   * side effects (events, state changes) that are not repeatable.
+   */
+  @Override
+  public boolean isIdempotent() {
+    return method.startsWith("get") || IDEMPOTENT_METHODS.contains(method);
+  }
+
   @Override
   public String getDescription() {
     return "Invoking method '" + method + "' in object " + getObjectRef(kurentoObject)
@@ -17,6 +17,8 @@
 
 package org.kurento.client.internal.client.operation;
 
+import java.util.Set;
+
 import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.RemoteObject;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
@@ -49,6 +51,17 @@ public class MediaObjectCreationOperation extends Operation {
     remoteObject.setCreatedObjectRef((String) response);
   }
 
+  public RemoteObject getCreatedObject() {
+    return remoteObject;
+  }
+
+  @Override
+  public void collectObjectRefs(Set<String> refs) {
+    refs.add(remoteObject.getObjectRef());
+    collectObjectRefs(constructorParams, refs);
+    collectObjectRefs(genericProps, refs);
+  }
+
   @Override
   public String getDescription() {
     return "Object creation of type '" + className + "' with params " + constructorParams;
@@ -17,6 +17,11 @@
 
 package org.kurento.client.internal.client.operation;
 
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.TFutureImpl;
 import org.kurento.client.internal.client.RemoteObject;
@@ -24,6 +29,8 @@ import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
 import org.kurento.client.internal.client.RomManager;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
+import org.kurento.jsonrpc.Prop;
+import org.kurento.jsonrpc.Props;
 
 public abstract class Operation {
 
@@ -66,4 +73,41 @@ public abstract class Operation {
 
   public abstract void processResponse(Object response);
 
+  /**
+   * Adds to {@code refs} the references of all the objects used by this operation. Objects created
+   * in the same transaction are referenced with their {@code newref:} reference. Operations that
+   * share an object are dependent and must be committed in the same request.
+   */
+  public abstract void collectObjectRefs(Set<String> refs);
+
+  /**
+   * Returns true if executing this operation more than once has the same effect as executing it
+   * once. Only requests composed of idempotent operations are retried when they fail, because the
+   * media server could have executed them before the failure.
+   */
+  public boolean isIdempotent() {
+    return false;
+  }
+
+  protected static void collectObjectRefs(Object value, Set<String> refs) {
+
+    if (value instanceof RemoteObject) {
+      refs.add(((RemoteObject) value).getObjectRef());
+    } else if (value != null && Proxy.isProxyClass(value.getClass())
+        && Proxy.getInvocationHandler(value) instanceof RemoteObjectInvocationHandler) {
+      refs.add(RemoteObjectInvocationHandler.getFor(value).getRemoteObject().getObjectRef());
+    } else if (value instanceof Props) {
+      for (Prop prop : (Props) value) {
+        collectObjectRefs(prop.getValue(), refs);
+      }
+    } else if (value instanceof List<?>) {
+      for (Object element : (List<?>) value) {
+        collectObjectRefs(element, refs);
+      }
+    } else if (value instanceof Map<?, ?>) {
+      for (Object element : ((Map<?, ?>) value).values()) {
+        collectObjectRefs(element, refs);
+      }
+    }
+  }
 }
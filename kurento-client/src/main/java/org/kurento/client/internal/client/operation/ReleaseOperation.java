@@ -17,6 +17,8 @@
 
 package org.kurento.client.internal.client.operation;
 
+import java.util.Set;
+
 import org.kurento.client.KurentoObject;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.RequestAndResponseType;
@@ -24,9 +26,20 @@ import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient.Requ
 public class ReleaseOperation extends Operation {
 
   private KurentoObject kurentoObject;
+  private boolean releaseTree;
 
   public ReleaseOperation(KurentoObject mediaObject) {
+    this(mediaObject, false);
+  }
+
+  /**
+   * @param releaseTree
+   *          if true, the local state of the descendants of the object is also discarded when the
+   *          object is released
+   */
+  public ReleaseOperation(KurentoObject mediaObject, boolean releaseTree) {
     this.kurentoObject = mediaObject;
+    this.releaseTree = releaseTree;
   }
 
   @Override
@@ -37,7 +50,13 @@ public class ReleaseOperation extends Operation {
 
   @Override
   public void processResponse(Object response) {
-    manager.release(getObjectRef(kurentoObject));
+    // The object has been released by the transaction. Only the local state has to be discarded
+    manager.releasedInServer(getRemoteObject(kurentoObject), releaseTree);
+  }
+
+  @Override
+  public void collectObjectRefs(Set<String> refs) {
+    refs.add(getObjectRef(kurentoObject));
   }
 
   @Override
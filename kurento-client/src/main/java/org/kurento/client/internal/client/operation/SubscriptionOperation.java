@@ -17,6 +17,8 @@
 
 package org.kurento.client.internal.client.operation;
 
+import java.util.Set;
+
 import org.kurento.client.KurentoObject;
 import org.kurento.client.internal.client.ListenerSubscriptionImpl;
 import org.kurento.client.internal.client.RemoteObjectEventListener;
@@ -52,7 +54,13 @@ public class SubscriptionOperation extends Operation {
   public void processResponse(Object response) {
 
     listenerSubscription.setSubscription((String) response);
-    getRemoteObject(kurentoObject).addEventListener(eventType, listener);
+    getRemoteObject(kurentoObject).addTransactionEventListener(eventType, listener,
+        (String) response);
+  }
+
+  @Override
+  public void collectObjectRefs(Set<String> refs) {
+    refs.add(getObjectRef(kurentoObject));
   }
 
   @Override
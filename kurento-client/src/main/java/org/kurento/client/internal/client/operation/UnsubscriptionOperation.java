@@ -17,6 +17,8 @@
 
 package org.kurento.client.internal.client.operation;
 
+import java.util.Set;
+
 import org.kurento.client.KurentoObject;
 import org.kurento.client.internal.client.ListenerSubscriptionImpl;
 import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
@@ -53,6 +55,11 @@ public class UnsubscriptionOperation extends Operation {
     // There is nothing to do here.
   }
 
+  @Override
+  public void collectObjectRefs(Set<String> refs) {
+    refs.add(getObjectRef(kurentoObject));
+  }
+
   @Override
   public String getDescription() {
     return "Event " + listenerSubscription.getType() + " unsubscription";
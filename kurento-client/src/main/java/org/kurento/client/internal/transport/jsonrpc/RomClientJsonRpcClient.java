@@ -43,22 +43,40 @@ import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.kurento.client.Continuation;
 import org.kurento.client.TransactionExecutionException;
 import org.kurento.client.internal.client.DefaultContinuation;
 import org.kurento.client.internal.client.RomClient;
 import org.kurento.client.internal.client.RomEventHandler;
+import org.kurento.client.internal.client.TransactionPlanner;
 import org.kurento.client.internal.client.operation.Operation;
 import org.kurento.client.internal.server.KurentoServerException;
 import org.kurento.client.internal.server.KurentoServerTransportException;
 import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.TraceContext;
 import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.AbstractJsonRpcClientWebSocket;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
@@ -66,10 +84,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Splitter;
 import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 public class RomClientJsonRpcClient implements RomClient {
 
@@ -86,10 +110,67 @@ public class RomClientJsonRpcClient implements RomClient {
 
   private static final Logger log = LoggerFactory.getLogger(RomClientJsonRpcClient.class);
 
+  private static final String COALESCED_OPERATIONS =
+      PropertiesManager.getProperty("kurento.client.coalescedOperations", "");
+
   private final JsonRpcClient client;
 
+  // Operations whose identical in-flight invocations share a single request. See
+  // addCoalescedOperation
+  private final Set<String> coalescedOperations =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  // Results of the in-flight requests of coalesced operations, by request params
+  private final ConcurrentMap<String, SettableFuture<JsonElement>> inFlightReads =
+      new ConcurrentHashMap<>();
+
+  private final AtomicLong coalescedRequests = new AtomicLong();
+
+  // Fails the coalesced requests whose response doesn't arrive. Created with the first one
+  private ScheduledThreadPoolExecutor coalescedTimeoutExec;
+  private boolean destroyed;
+
   public RomClientJsonRpcClient(JsonRpcClient client) {
     this.client = client;
+    for (String operation : Splitter.on(',').trimResults().omitEmptyStrings()
+        .split(COALESCED_OPERATIONS)) {
+      coalescedOperations.add(operation);
+    }
+  }
+
+  /**
+   * Enables single-flight coalescing for an operation. When an invocation of the operation is
+   * done while an identical one (same object, operation and params) is waiting for its response,
+   * no new request is sent and both invocations get the result of the request in flight.
+   *
+   * <p>
+   * Coalescing is disabled for all operations by default. Only read operations without side
+   * effects, like getMediaState, getConnectionState or getStats, should be coalesced. Operations
+   * can also be configured with the property kurento.client.coalescedOperations, as a comma
+   * separated list of names.
+   * </p>
+   *
+   * @param operationName
+   *          the name of the operation, like getMediaState
+   */
+  public void addCoalescedOperation(String operationName) {
+    coalescedOperations.add(operationName);
+  }
+
+  public void removeCoalescedOperation(String operationName) {
+    coalescedOperations.remove(operationName);
+  }
+
+  public Set<String> getCoalescedOperations() {
+    return Collections.unmodifiableSet(coalescedOperations);
+  }
+
+  /**
+   * Returns the number of invocations that have been served by a request already in flight instead
+   * of sending a new one.
+   */
+  public long getCoalescedRequests() {
+    return coalescedRequests.get();
   }
 
   // Operations
@@ -114,6 +195,10 @@ public class RomClientJsonRpcClient implements RomClient {
     RequestAndResponseType reqres = createInvokeRequest(objectRef, operationName, operationParams,
         type, false);
 
+    if (coalescedOperations.contains(operationName)) {
+      return sendCoalescedRequest(reqres.request, reqres.responseType, cont);
+    }
+
     return sendRequest(reqres.request, reqres.responseType, null, cont);
   }
 
@@ -174,6 +259,11 @@ public class RomClientJsonRpcClient implements RomClient {
   @Override
   public void addRomEventHandler(final RomEventHandler eventHandler) {
 
+    if (client instanceof AbstractJsonRpcClientWebSocket) {
+      ((AbstractJsonRpcClientWebSocket) client)
+          .setServerRequestKeyExtractor(new RomEventKeyExtractor());
+    }
+
     this.client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonObject>() {
 
       @Override
@@ -200,8 +290,7 @@ public class RomClientJsonRpcClient implements RomClient {
       subscription = params.get(ONEVENT_SUBSCRIPTION).getAsString();
     }
     String type = params.get(ONEVENT_TYPE).getAsString();
-    JsonObject jsonData = (JsonObject) params.get(ONEVENT_DATA);
-    Props data = JsonUtils.fromJson(jsonData, Props.class);
+    JsonObject data = (JsonObject) params.get(ONEVENT_DATA);
 
     eventHandler.processEvent(objectRef, subscription, type, data);
   }
@@ -209,6 +298,12 @@ public class RomClientJsonRpcClient implements RomClient {
   @Override
   public void destroy() {
     log.debug("Destroying RomClientJsonRpc");
+    synchronized (this) {
+      destroyed = true;
+      if (coalescedTimeoutExec != null) {
+        coalescedTimeoutExec.shutdownNow();
+      }
+    }
     try {
       client.close();
     } catch (IOException e) {
@@ -220,6 +315,8 @@ public class RomClientJsonRpcClient implements RomClient {
   private <P, R> R sendRequest(Request<JsonObject> request, final Type responseType,
       final Function<P, R> processor, final Continuation<R> cont) {
 
+    injectTraceContext(request);
+
     try {
 
       if (cont == null) {
@@ -265,6 +362,171 @@ public class RomClientJsonRpcClient implements RomClient {
     }
   }
 
+  private void injectTraceContext(Request<JsonObject> request) {
+    TraceContext traceContext = TraceContext.forOutgoingRequest();
+    if (traceContext != null) {
+      traceContext.injectInto(request.getParams());
+    }
+  }
+
+  private <R> R sendCoalescedRequest(Request<JsonObject> request, Type responseType,
+      Continuation<R> cont) {
+
+    // Params include the object and the operation, so they identify the invocation
+    final String key = request.getParams().toString();
+    final SettableFuture<JsonElement> result = SettableFuture.create();
+
+    SettableFuture<JsonElement> inFlight = inFlightReads.putIfAbsent(key, result);
+    if (inFlight != null) {
+      coalescedRequests.incrementAndGet();
+      log.trace("Invocation {} coalesced with an identical request in flight", key);
+      return awaitResult(key, inFlight, responseType, cont);
+    }
+
+    injectTraceContext(request);
+
+    try {
+
+      scheduleTimeout(key, result);
+
+      client.sendRequest(request.getMethod(), request.getParams(),
+          new org.kurento.jsonrpc.client.Continuation<JsonElement>() {
+
+            @Override
+            public void onSuccess(JsonElement reqResult) {
+              inFlightReads.remove(key, result);
+              result.set(reqResult);
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+              inFlightReads.remove(key, result);
+              result.setException(cause);
+            }
+          });
+
+    } catch (RuntimeException e) {
+      inFlightReads.remove(key, result);
+      result.setException(e);
+    }
+
+    return awaitResult(key, result, responseType, cont);
+  }
+
+  /**
+   * Fails the result of a coalesced request if its response doesn't arrive in the request timeout,
+   * so it stops being shared whether it was started by a synchronous or an asynchronous invocation.
+   */
+  private void scheduleTimeout(final String key, final SettableFuture<JsonElement> result) {
+
+    final long timeout = client.getRequestTimeout();
+
+    final ScheduledFuture<?> timeoutTask = getCoalescedTimeoutExec().schedule(new Runnable() {
+      @Override
+      public void run() {
+        inFlightReads.remove(key, result);
+        result.setException(new JsonRpcException("Timeout of " + timeout
+            + " milliseconds waiting from response to coalesced request " + key,
+            new TimeoutException()));
+      }
+    }, timeout, TimeUnit.MILLISECONDS);
+
+    result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        timeoutTask.cancel(false);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private synchronized ScheduledThreadPoolExecutor getCoalescedTimeoutExec() {
+
+    if (destroyed) {
+      throw new KurentoException("Client has been destroyed");
+    }
+
+    if (coalescedTimeoutExec == null) {
+      coalescedTimeoutExec = new ScheduledThreadPoolExecutor(1,
+          ThreadFactoryCreator.create("RomClientJsonRpcClient-coalescedTimeoutExec"));
+      // Most requests are responded in time, so their timeouts must not pile up in the queue
+      coalescedTimeoutExec.setRemoveOnCancelPolicy(true);
+    }
+
+    return coalescedTimeoutExec;
+  }
+
+  /**
+   * Waits for the result of a coalesced request. Each invocation converts the shared result on its
+   * own, so invocations don't share mutable result objects. The request stops being shared when
+   * it times out (see {@link #scheduleTimeout(String, SettableFuture)}), and then every invocation
+   * waiting for it fails.
+   */
+  private <R> R awaitResult(String key, SettableFuture<JsonElement> future,
+      final Type responseType, final Continuation<R> cont) {
+
+    if (cont == null) {
+
+      long timeout = client.getRequestTimeout();
+
+      try {
+        return processReqResult(responseType, null,
+            future.get(timeout, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        inFlightReads.remove(key, future);
+        future.setException(e);
+        throw new JsonRpcException("Timeout of " + timeout
+            + " milliseconds waiting from response to coalesced request " + key, e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new KurentoException("Interrupted while waiting for the response", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof JsonRpcErrorException) {
+          throw new KurentoServerException(((JsonRpcErrorException) cause).getError());
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else {
+          String messageError = "Error connecting with server";
+          log.error(messageError, cause);
+          throw new KurentoServerTransportException(messageError, cause);
+        }
+      }
+    }
+
+    Futures.addCallback(future, new FutureCallback<JsonElement>() {
+
+      @SuppressWarnings({ "rawtypes", "unchecked" })
+      @Override
+      public void onSuccess(JsonElement reqResult) {
+
+        Object methodResult;
+        try {
+          methodResult = processReqResult(responseType, null, reqResult);
+        } catch (Exception e) {
+          onFailure(e);
+          return;
+        }
+
+        try {
+          ((Continuation) cont).onSuccess(methodResult);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking OnSuccess implemented by client", e);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable cause) {
+        try {
+          cont.onError(cause);
+        } catch (Exception e) {
+          log.warn("[Continuation] error invoking onError implemented by client", e);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+
+    return null;
+  }
+
   @SuppressWarnings("unchecked")
   private <P, R> R processReqResult(final Type type, Function<P, R> processor,
       JsonElement reqResult) {
@@ -355,12 +617,15 @@ public class RomClientJsonRpcClient implements RomClient {
     JsonArray opJsons = new JsonArray();
     final List<RequestAndResponseType> opReqres = new ArrayList<>();
 
+    // Operations can be a batch of a bigger transaction
+    Map<String, String> batchRefs = TransactionPlanner.getBatchRefs(operations);
+
     int numReq = 0;
     for (Operation op : operations) {
       RequestAndResponseType reqres = op.createRequest(this);
       opReqres.add(reqres);
       reqres.request.setId(numReq);
-      opJsons.add(JsonUtils.toJsonElement(reqres.request));
+      opJsons.add(replaceNewRefs(JsonUtils.toJsonElement(reqres.request), batchRefs));
       numReq++;
     }
 
@@ -373,7 +638,12 @@ public class RomClientJsonRpcClient implements RomClient {
       wrappedContinuation = new DefaultContinuation<List<Response<JsonElement>>>(continuation) {
         @Override
         public void onSuccess(List<Response<JsonElement>> responses) throws Exception {
-          processTransactionResponse(operations, opReqres, responses);
+          try {
+            processTransactionResponse(operations, opReqres, responses);
+          } catch (TransactionExecutionException e) {
+            continuation.onError(e);
+            return;
+          }
           continuation.onSuccess(null);
         }
       };
@@ -388,6 +658,42 @@ public class RomClientJsonRpcClient implements RomClient {
     }
   }
 
+  /**
+   * Replaces the {@code newref:N} references of the transaction with the ones of the request.
+   */
+  private static JsonElement replaceNewRefs(JsonElement json, Map<String, String> batchRefs) {
+
+    if (json.isJsonPrimitive() && json.getAsJsonPrimitive().isString()) {
+
+      String value = json.getAsString();
+      if (!value.startsWith(TransactionPlanner.NEW_REF_PREFIX)) {
+        return json;
+      }
+
+      String batchRef = batchRefs.get(value);
+      if (batchRef == null) {
+        throw new KurentoException(
+            "Object " + value + " is not created in the same request it is referenced");
+      }
+      return new JsonPrimitive(batchRef);
+
+    } else if (json.isJsonArray()) {
+
+      JsonArray array = json.getAsJsonArray();
+      for (int i = 0; i < array.size(); i++) {
+        array.set(i, replaceNewRefs(array.get(i), batchRefs));
+      }
+
+    } else if (json.isJsonObject()) {
+
+      for (Map.Entry<String, JsonElement> entry : json.getAsJsonObject().entrySet()) {
+        entry.setValue(replaceNewRefs(entry.getValue(), batchRefs));
+      }
+    }
+
+    return json;
+  }
+
   private void processTransactionResponse(List<Operation> operations,
       List<RequestAndResponseType> opReqres, List<Response<JsonElement>> responses) {
 
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.transport.jsonrpc;
+
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_METHOD;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_OBJECT;
+import static org.kurento.client.internal.transport.jsonrpc.RomJsonRpcConstants.ONEVENT_TYPE;
+
+import org.kurento.jsonrpc.client.ServerRequestKeyExtractor;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Orders the events received from the media server by the objectRef of the object firing them, so
+ * events of the same object are delivered in order. Events of the same type can be coalesced.
+ */
+public class RomEventKeyExtractor implements ServerRequestKeyExtractor {
+
+  @Override
+  public String getOrderingKey(JsonObject request) {
+    return getEventProperty(request, ONEVENT_OBJECT);
+  }
+
+  @Override
+  public String getCoalescingKey(JsonObject request) {
+    return getEventProperty(request, ONEVENT_TYPE);
+  }
+
+  private String getEventProperty(JsonObject request, String property) {
+
+    JsonElement method = request.get(JsonRpcConstants.METHOD_PROPERTY);
+    if (method == null || !ONEVENT_METHOD.equals(method.getAsString())) {
+      return null;
+    }
+
+    JsonElement params = request.get(JsonRpcConstants.PARAMS_PROPERTY);
+    if (params == null || !params.isJsonObject()) {
+      return null;
+    }
+
+    JsonObject event = params.getAsJsonObject();
+    if (event.has("value") && event.get("value").isJsonObject()) {
+      event = event.getAsJsonObject("value");
+    }
+
+    JsonElement value = event.get(property);
+    return value != null && value.isJsonPrimitive() ? value.getAsString() : null;
+  }
+}
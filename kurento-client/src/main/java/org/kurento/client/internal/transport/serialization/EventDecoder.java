@@ -0,0 +1,211 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.transport.serialization;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kurento.client.Event;
+import org.kurento.client.internal.ParamAnnotationUtils;
+import org.kurento.client.internal.server.ProtocolException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Builds {@link Event} instances directly from the JSON data received in an {@code onEvent}
+ * request. The constructor, param names and param types of each event class are resolved only
+ * once and cached, so delivering an event doesn't need reflection lookups nor an intermediate
+ * {@link Props} object for the whole payload. Only values that are not JSON primitives (complex
+ * types, lists and maps) are converted and unflattened with {@link ParamsFlattener}.
+ */
+public class EventDecoder {
+
+  public static final String SOURCE_PARAM = "source";
+
+  private enum ParamKind {
+    SOURCE, STRING, INTEGER, LONG, FLOAT, DOUBLE, BOOLEAN, GENERIC
+  }
+
+  private static final ParamsFlattener FLATTENER = ParamsFlattener.getInstance();
+
+  private static final ConcurrentMap<Class<?>, EventDecoder> decoders = new ConcurrentHashMap<>();
+
+  private final Class<? extends Event> eventClass;
+  private final Constructor<?> constructor;
+  private final String[] paramNames;
+  private final Type[] paramTypes;
+  private final ParamKind[] paramKinds;
+
+  public static EventDecoder getFor(Class<? extends Event> eventClass) {
+
+    EventDecoder decoder = decoders.get(eventClass);
+
+    if (decoder == null) {
+      decoder = new EventDecoder(eventClass);
+      EventDecoder previous = decoders.putIfAbsent(eventClass, decoder);
+      if (previous != null) {
+        decoder = previous;
+      }
+    }
+
+    return decoder;
+  }
+
+  private EventDecoder(Class<? extends Event> eventClass) {
+
+    this.eventClass = eventClass;
+    this.constructor = eventClass.getConstructors()[0];
+    this.paramTypes = constructor.getGenericParameterTypes();
+
+    List<String> names = ParamAnnotationUtils.getParamNames(constructor);
+    this.paramNames = names.toArray(new String[names.size()]);
+
+    this.paramKinds = new ParamKind[paramTypes.length];
+    for (int i = 0; i < paramTypes.length; i++) {
+      paramKinds[i] = SOURCE_PARAM.equals(paramNames[i]) ? ParamKind.SOURCE
+          : getParamKind(paramTypes[i]);
+    }
+  }
+
+  public Class<? extends Event> getEventClass() {
+    return eventClass;
+  }
+
+  /**
+   * Creates a new event object from the data of an {@code onEvent} request.
+   *
+   * @param data
+   *          the {@code data} field of the event, as received from the server
+   * @param sourceRef
+   *          the objectRef of the object firing the event. It is used as value of the
+   *          {@code source} param, overriding the value in data (if any)
+   * @param manager
+   *          used to resolve object references found in the event data
+   * @return the event object
+   */
+  public Event decode(JsonObject data, String sourceRef, ObjectRefsManager manager) {
+
+    Object[] params = new Object[paramTypes.length];
+
+    for (int i = 0; i < params.length; i++) {
+
+      if (paramKinds[i] == ParamKind.SOURCE) {
+        params[i] = FLATTENER.unflattenValue(SOURCE_PARAM, paramTypes[i], sourceRef, manager);
+        continue;
+      }
+
+      JsonElement value = data != null ? data.get(paramNames[i]) : null;
+
+      if (value == null || value.isJsonNull()) {
+        params[i] = null;
+      } else if (paramKinds[i] != ParamKind.GENERIC && value.isJsonPrimitive()) {
+        params[i] = decodePrimitive(paramKinds[i], value.getAsJsonPrimitive());
+      } else {
+        params[i] = FLATTENER.unflattenValue(paramNames[i], paramTypes[i], toFlatValue(value),
+            manager);
+      }
+    }
+
+    try {
+      return (Event) constructor.newInstance(params);
+    } catch (Exception e) {
+      throw new ProtocolException(
+          "Exception while creating an event of class '" + eventClass.getSimpleName() + "'", e);
+    }
+  }
+
+  private static Object decodePrimitive(ParamKind kind, JsonPrimitive value) {
+    switch (kind) {
+      case STRING:
+        return value.getAsString();
+      case INTEGER:
+        return value.getAsInt();
+      case LONG:
+        return value.getAsLong();
+      case FLOAT:
+        return value.getAsFloat();
+      case DOUBLE:
+        return value.getAsDouble();
+      case BOOLEAN:
+        return value.getAsBoolean();
+      default:
+        throw new ProtocolException("Param kind " + kind + " is not a primitive");
+    }
+  }
+
+  /**
+   * Converts a non primitive JSON value to the flat representation expected by
+   * {@link ParamsFlattener#unflattenValue(String, Type, Object, ObjectRefsManager)}. This is the
+   * same representation that is obtained when a JSON object is converted to {@link Props}.
+   */
+  private static Object toFlatValue(JsonElement value) {
+
+    if (value == null || value.isJsonNull()) {
+      return null;
+    } else if (value instanceof JsonObject) {
+      return JsonUtils.fromJson(value, Props.class);
+    } else if (value instanceof JsonArray) {
+      JsonArray array = (JsonArray) value;
+      List<Object> list = new ArrayList<>(array.size());
+      for (JsonElement element : array) {
+        list.add(toFlatValue(element));
+      }
+      return list;
+    } else {
+      JsonPrimitive primitive = (JsonPrimitive) value;
+      if (primitive.isBoolean()) {
+        return primitive.getAsBoolean();
+      } else if (primitive.isNumber()) {
+        double number = primitive.getAsDouble();
+        if ((int) number == number) {
+          return (int) number;
+        }
+        return (float) number;
+      } else {
+        return primitive.getAsString();
+      }
+    }
+  }
+
+  private static ParamKind getParamKind(Type type) {
+    if (type == String.class) {
+      return ParamKind.STRING;
+    } else if (type == Integer.class || type == int.class) {
+      return ParamKind.INTEGER;
+    } else if (type == Long.class || type == long.class) {
+      return ParamKind.LONG;
+    } else if (type == Float.class || type == float.class) {
+      return ParamKind.FLOAT;
+    } else if (type == Double.class || type == double.class) {
+      return ParamKind.DOUBLE;
+    } else if (type == Boolean.class || type == boolean.class) {
+      return ParamKind.BOOLEAN;
+    } else {
+      return ParamKind.GENERIC;
+    }
+  }
+}
@@ -104,6 +104,32 @@ done. If an error occurs, {@link Continuation#onError} is called.
     Transaction beginTransaction();
     </#if>
 
+    <#if remoteClass.name == "MediaObject">
+    /**
+     * Releases this object and all its descendants in a single request. The local state of the
+     * descendants known by this client, including their event listeners, is also discarded
+     * without additional requests.
+     *
+     **/
+    void releaseTree();
+
+    /**
+     * Releases this object and all its descendants in a single request. Asynchronous call.
+     *
+     * @param cont Continuation to be called when the objects are released
+     *
+     **/
+    void releaseTree(Continuation<Void> cont);
+
+    /**
+     * Releases this object and all its descendants as part of a transaction.
+     *
+     * @param tx Transaction in which the objects are released
+     *
+     **/
+    void releaseTree(Transaction tx);
+    </#if>
+
 
     <#if !remoteClass.abstract && remoteClass.name != "MediaPipeline">
 
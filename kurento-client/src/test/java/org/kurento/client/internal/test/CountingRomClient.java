@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.RomClient;
+import org.kurento.client.internal.client.RomEventHandler;
+import org.kurento.client.internal.client.operation.MediaObjectCreationOperation;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.client.operation.SubscriptionOperation;
+import org.kurento.commons.exception.KurentoException;
+import org.kurento.jsonrpc.Props;
+
+/**
+ * {@link RomClient} that doesn't connect to any server. It counts the requests received and
+ * answers them with generated ids.
+ */
+public class CountingRomClient implements RomClient {
+
+  private final AtomicInteger ids = new AtomicInteger();
+
+  public final AtomicInteger creates = new AtomicInteger();
+  public final AtomicInteger invokes = new AtomicInteger();
+  public final AtomicInteger releases = new AtomicInteger();
+  public final AtomicInteger subscribes = new AtomicInteger();
+  public final AtomicInteger unsubscribes = new AtomicInteger();
+  public final AtomicInteger transactions = new AtomicInteger();
+
+  /**
+   * Number of next transactions that will fail with a transport error.
+   */
+  public final AtomicInteger failingTransactions = new AtomicInteger();
+
+  public final List<List<Operation>> committedTransactions = new CopyOnWriteArrayList<>();
+
+  /**
+   * If true, operations of committed transactions receive a successful response.
+   */
+  public volatile boolean processTransactionResponses;
+
+  private volatile List<Operation> lastTransaction;
+
+  private RomEventHandler eventHandler;
+
+  public List<Operation> getLastTransaction() {
+    return lastTransaction;
+  }
+
+  public RomEventHandler getEventHandler() {
+    return eventHandler;
+  }
+
+  @Override
+  public String create(String remoteClassName, Props constructorParams, Props genericProps) {
+    creates.incrementAndGet();
+    return remoteClassName + "-" + ids.incrementAndGet();
+  }
+
+  @Override
+  public String create(String remoteClassName, Props constructorParams, Props genericProps,
+      Continuation<String> cont) {
+    return complete(create(remoteClassName, constructorParams, genericProps), cont);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public <E> E invoke(String objectRef, String methodName, Props params, Class<E> clazz) {
+    return (E) invoke(objectRef, methodName, params, (Type) clazz);
+  }
+
+  @Override
+  public Object invoke(String objectRef, String operationName, Props operationParams,
+      Type type) {
+    invokes.incrementAndGet();
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Object invoke(String objectRef, String operationName, Props operationParams, Type type,
+      Continuation<?> cont) {
+    return complete(invoke(objectRef, operationName, operationParams, type),
+        (Continuation<Object>) cont);
+  }
+
+  @Override
+  public void release(String objectRef) {
+    releases.incrementAndGet();
+  }
+
+  @Override
+  public void release(String objectRef, Continuation<Void> cont) {
+    release(objectRef);
+    complete(null, cont);
+  }
+
+  @Override
+  public String subscribe(String objectRef, String eventType) {
+    subscribes.incrementAndGet();
+    return "subscription-" + ids.incrementAndGet();
+  }
+
+  @Override
+  public String subscribe(String objectRef, String type, Continuation<String> cont) {
+    return complete(subscribe(objectRef, type), cont);
+  }
+
+  @Override
+  public void unsubscribe(String objectRef, String listenerSubscription) {
+    unsubscribes.incrementAndGet();
+  }
+
+  @Override
+  public void unsubscribe(String objectRef, String listenerSubscription,
+      Continuation<Void> cont) {
+    unsubscribe(objectRef, listenerSubscription);
+    complete(null, cont);
+  }
+
+  @Override
+  public void transaction(List<Operation> operations) {
+    transactions.incrementAndGet();
+    lastTransaction = operations;
+    if (failingTransactions.getAndDecrement() > 0) {
+      throw new KurentoException("Simulated transport error");
+    }
+    failingTransactions.set(0);
+    committedTransactions.add(operations);
+
+    if (processTransactionResponses) {
+      for (Operation op : operations) {
+        if (op instanceof MediaObjectCreationOperation) {
+          op.processResponse(((MediaObjectCreationOperation) op).className + "-"
+              + ids.incrementAndGet());
+        } else if (op instanceof SubscriptionOperation) {
+          op.processResponse("subscription-" + ids.incrementAndGet());
+        } else {
+          op.processResponse(null);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void transaction(List<Operation> operations, Continuation<Void> continuation) {
+    try {
+      transaction(operations);
+    } catch (KurentoException e) {
+      try {
+        continuation.onError(e);
+      } catch (Exception e2) {
+        throw new RuntimeException(e2);
+      }
+      return;
+    }
+    complete(null, continuation);
+  }
+
+  @Override
+  public void addRomEventHandler(RomEventHandler eventHandler) {
+    this.eventHandler = eventHandler;
+  }
+
+  @Override
+  public void destroy() {
+  }
+
+  @Override
+  public boolean isClosed() {
+    return false;
+  }
+
+  private <E> E complete(E result, Continuation<E> cont) {
+    if (cont != null) {
+      try {
+        cont.onSuccess(result);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return result;
+  }
+}
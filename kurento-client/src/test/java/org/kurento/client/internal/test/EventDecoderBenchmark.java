@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Constructor;
+
+import org.junit.Test;
+import org.kurento.client.Event;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.client.internal.transport.serialization.EventDecoder;
+import org.kurento.client.internal.transport.serialization.ParamsFlattener;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the allocations of {@link EventDecoder} with the previous decoding of events. Run with
+ * the benchmark profile.
+ */
+public class EventDecoderBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(EventDecoderBenchmark.class);
+
+  private static final int WARMUP_EVENTS = 20000;
+  private static final int MEASURED_EVENTS = 100000;
+
+  private final RomManager manager = new RomManager(null);
+
+  private JsonObject createEventData(int i) {
+    JsonObject data = new JsonObject();
+    data.addProperty("prop1", "value1-" + i);
+    data.addProperty("prop2", "value2-" + i);
+    data.addProperty("type", "Sample");
+    data.addProperty("timestamp", "1476839728");
+    return data;
+  }
+
+  @Test
+  public void benchmarkEventAllocation() throws Exception {
+
+    EventDecoder decoder = EventDecoder.getFor(SampleEvent.class);
+
+    JsonObject[] events = new JsonObject[1024];
+    for (int i = 0; i < events.length; i++) {
+      events[i] = createEventData(i);
+    }
+
+    for (int i = 0; i < WARMUP_EVENTS; i++) {
+      decodeWithProps(events[i % events.length]);
+      decoder.decode(events[i % events.length], "objectRef", manager);
+    }
+
+    long propsStart = allocatedBytes();
+    for (int i = 0; i < MEASURED_EVENTS; i++) {
+      decodeWithProps(events[i % events.length]);
+    }
+    long propsBytes = allocatedBytes() - propsStart;
+
+    long decoderStart = allocatedBytes();
+    for (int i = 0; i < MEASURED_EVENTS; i++) {
+      decoder.decode(events[i % events.length], "objectRef", manager);
+    }
+    long decoderBytes = allocatedBytes() - decoderStart;
+
+    log.info("Allocated bytes per event: Props and reflection={}, EventDecoder={}",
+        propsBytes / MEASURED_EVENTS, decoderBytes / MEASURED_EVENTS);
+  }
+
+  /**
+   * Decodes an event the way it was done before {@link EventDecoder}: converting the whole payload
+   * to {@link Props} and looking up the constructor for each event.
+   */
+  private Event decodeWithProps(JsonObject jsonData) throws Exception {
+
+    Props data = JsonUtils.fromJson(jsonData, Props.class);
+    data.add("source", "objectRef");
+
+    Constructor<?> constructor = SampleEvent.class.getConstructors()[0];
+
+    Object[] params = ParamsFlattener.getInstance().unflattenParams(
+        constructor.getParameterAnnotations(), constructor.getGenericParameterTypes(), data,
+        manager);
+
+    return (Event) constructor.newInstance(params);
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.client.internal.transport.serialization.EventDecoder;
+
+import com.google.gson.JsonObject;
+
+public class EventDecoderTest {
+
+  private final RomManager manager = new RomManager(null);
+
+  private JsonObject createEventData(int i) {
+    JsonObject data = new JsonObject();
+    data.addProperty("prop1", "value1-" + i);
+    data.addProperty("prop2", "value2-" + i);
+    data.addProperty("type", "Sample");
+    data.addProperty("timestamp", "1476839728");
+    return data;
+  }
+
+  @Test
+  public void testDecodeEvent() {
+
+    EventDecoder decoder = EventDecoder.getFor(SampleEvent.class);
+
+    assertSame(decoder, EventDecoder.getFor(SampleEvent.class));
+
+    SampleEvent event = (SampleEvent) decoder.decode(createEventData(0), "objectRef", manager);
+
+    assertEquals("value1-0", event.getProp1());
+    assertEquals("value2-0", event.getProp2());
+  }
+
+  @Test
+  public void testDecodeEventWithMissingProps() {
+
+    JsonObject data = new JsonObject();
+    data.addProperty("prop1", "value1");
+
+    SampleEvent event = (SampleEvent) EventDecoder.getFor(SampleEvent.class).decode(data,
+        "objectRef", manager);
+
+    assertEquals("value1", event.getProp1());
+    assertNull(event.getProp2());
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.client.internal.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.kurento.client.internal.NotEnoughResourcesException;
+import org.kurento.client.internal.balancer.KmsInstance;
+import org.kurento.client.internal.balancer.KmsLoadBalancer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the load imbalance of the placement strategies of {@link KmsLoadBalancer}. Run with the
+ * benchmark profile.
+ */
+public class KmsLoadBalancerBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(KmsLoadBalancerBenchmark.class);
+
+  private static final List<String> URLS = Arrays.asList("ws://kms1:8888/kurento",
+      "ws://kms2:8888/kurento", "ws://kms3:8888/kurento", "ws://kms4:8888/kurento");
+
+  private KmsLoadBalancer createBalancer(String strategy, int maxLoadPoints) {
+    return new KmsLoadBalancer(URLS, maxLoadPoints, KmsLoadBalancer.createStrategy(strategy));
+  }
+
+  /**
+   * Simulates rooms arriving to a fleet of stubbed servers which also have load from other
+   * clients. That load is only known by the balancer when server loads are updated, so it works
+   * with stale information most of the time, as it happens in a real deployment.
+   */
+  @Test
+  public void benchmarkPlacementStrategies() {
+
+    for (String strategy : Arrays.asList(KmsLoadBalancer.LEAST_LOADED,
+        KmsLoadBalancer.POWER_OF_TWO_CHOICES, KmsLoadBalancer.CONSISTENT_HASHING)) {
+
+      Random random = new Random(0);
+      KmsLoadBalancer balancer = createBalancer(strategy, 1000);
+
+      int[] externalLoad = new int[URLS.size()];
+      List<String> activeRooms = new ArrayList<>();
+      int rejected = 0;
+      double maxImbalance = 0;
+
+      for (int step = 0; step < 20000; step++) {
+
+        // Load created by other clients, not reserved through the balancer
+        int server = random.nextInt(URLS.size());
+        externalLoad[server] = Math.max(0, externalLoad[server] + random.nextInt(5) - 2);
+
+        if (step % 100 == 0) {
+          for (int i = 0; i < URLS.size(); i++) {
+            KmsInstance instance = balancer.getInstance(URLS.get(i));
+            balancer.updateServerLoad(URLS.get(i),
+                instance.getReservedLoadPoints() + externalLoad[i]);
+          }
+        }
+
+        if (activeRooms.size() < 200 && random.nextInt(3) > 0) {
+          String room = "room" + step;
+          try {
+            balancer.reserve(room, 1 + random.nextInt(10));
+            activeRooms.add(room);
+          } catch (NotEnoughResourcesException e) {
+            rejected++;
+          }
+        } else if (!activeRooms.isEmpty()) {
+          balancer.release(activeRooms.remove(random.nextInt(activeRooms.size())));
+        }
+
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int i = 0; i < URLS.size(); i++) {
+          KmsInstance instance = balancer.getInstance(URLS.get(i));
+          double load = (double) (instance.getReservedLoadPoints() + externalLoad[i])
+              / instance.getMaxLoadPoints();
+          min = Math.min(min, load);
+          max = Math.max(max, load);
+        }
+        maxImbalance = Math.max(maxImbalance, max - min);
+      }
+
+      log.info("Strategy {}: max load imbalance={}, rejected reservations={}", strategy,
+          String.format("%.3f", maxImbalance), rejected);
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.kurento.client.internal.NotEnoughResourcesException;
+import org.kurento.client.internal.balancer.KmsInstance;
+import org.kurento.client.internal.balancer.KmsLoadBalancer;
+import org.kurento.client.internal.balancer.LoadBalancingKmsProvider;
+import org.kurento.jsonrpc.client.ConnectionHealth;
+
+public class KmsLoadBalancerTest {
+
+  private static final List<String> URLS = Arrays.asList("ws://kms1:8888/kurento",
+      "ws://kms2:8888/kurento", "ws://kms3:8888/kurento", "ws://kms4:8888/kurento");
+
+  private KmsLoadBalancer createBalancer(String strategy, int maxLoadPoints) {
+    return new KmsLoadBalancer(URLS, maxLoadPoints, KmsLoadBalancer.createStrategy(strategy));
+  }
+
+  @Test
+  public void testLeastLoaded() {
+
+    KmsLoadBalancer balancer = createBalancer(KmsLoadBalancer.LEAST_LOADED, 100);
+
+    balancer.updateServerLoad(URLS.get(0), 50);
+    balancer.updateServerLoad(URLS.get(1), 10);
+    balancer.updateServerLoad(URLS.get(2), 30);
+    balancer.updateServerLoad(URLS.get(3), 40);
+
+    assertEquals(URLS.get(1), balancer.reserve("room1", 35).getUrl());
+    assertEquals(URLS.get(2), balancer.reserve("room2", 10).getUrl());
+
+    // Load of the same room goes to the same server
+    assertEquals(URLS.get(1), balancer.reserve("room1", 5).getUrl());
+    assertEquals(40, balancer.getInstance(URLS.get(1)).getReservedLoadPoints());
+
+    balancer.release("room1");
+    assertEquals(0, balancer.getInstance(URLS.get(1)).getReservedLoadPoints());
+    assertNull(balancer.getReservedInstance("room1"));
+  }
+
+  @Test
+  public void testPartialReleaseKeepsPreviousLoad() {
+
+    KmsLoadBalancer balancer = createBalancer(KmsLoadBalancer.LEAST_LOADED, 100);
+
+    KmsInstance instance = balancer.reserve("room1", 10);
+    assertSame(instance, balancer.reserve("room1", 5));
+
+    balancer.release("room1", 5);
+    assertEquals(10, instance.getReservedLoadPoints());
+    assertSame(instance, balancer.getReservedInstance("room1"));
+
+    balancer.release("room1", 10);
+    assertEquals(0, instance.getReservedLoadPoints());
+    assertNull(balancer.getReservedInstance("room1"));
+  }
+
+  @Test(expected = NotEnoughResourcesException.class)
+  public void testNotEnoughResources() {
+
+    KmsLoadBalancer balancer = createBalancer(KmsLoadBalancer.POWER_OF_TWO_CHOICES, 10);
+
+    for (int i = 0; i < URLS.size(); i++) {
+      balancer.reserve("room" + i, 8);
+    }
+
+    balancer.reserve("newRoom", 5);
+  }
+
+  @Test
+  public void testUnavailableServersAreSkipped() {
+
+    KmsLoadBalancer balancer = createBalancer(KmsLoadBalancer.POWER_OF_TWO_CHOICES, 100);
+
+    balancer.setAvailable(URLS.get(0), false);
+    balancer.setAvailable(URLS.get(1), false);
+
+    for (int i = 0; i < 20; i++) {
+      String url = balancer.reserve(null, 1).getUrl();
+      assertTrue(url.equals(URLS.get(2)) || url.equals(URLS.get(3)));
+    }
+  }
+
+  @Test
+  public void testConsistentHashingOnlyMovesKeysOfRemovedServer() {
+
+    KmsLoadBalancer balancer = createBalancer(KmsLoadBalancer.CONSISTENT_HASHING, 1000);
+
+    Map<String, KmsInstance> placement = new HashMap<>();
+    for (int i = 0; i < 200; i++) {
+      String room = "room" + i;
+      placement.put(room, balancer.reserve(room, 1));
+      balancer.release(room);
+    }
+
+    KmsInstance removed = balancer.getInstance(URLS.get(0));
+    balancer.setAvailable(removed.getUrl(), false);
+
+    int moved = 0;
+    for (Map.Entry<String, KmsInstance> entry : placement.entrySet()) {
+      KmsInstance instance = balancer.reserve(entry.getKey(), 1);
+      if (entry.getValue() == removed) {
+        assertNotSame(removed, instance);
+        moved++;
+      } else {
+        assertSame(entry.getValue(), instance);
+      }
+    }
+
+    assertTrue("All rooms were placed in the same server", moved > 0 && moved < 200);
+  }
+
+  @Test
+  public void testUnhealthyServersAreAvoided() {
+
+    // Health is shared by url, so other urls are used to not affect the rest of tests
+    List<String> urls = Arrays.asList("ws://healthy:8888/kurento", "ws://slow:8888/kurento",
+        "ws://failing:8888/kurento");
+    KmsLoadBalancer balancer = new KmsLoadBalancer(urls, 100,
+        KmsLoadBalancer.createStrategy(KmsLoadBalancer.LEAST_LOADED));
+
+    balancer.updateServerLoad(urls.get(0), 30);
+
+    for (int i = 0; i < 10; i++) {
+      ConnectionHealth.getFor(urls.get(0)).recordPingRtt(10);
+      ConnectionHealth.getFor(urls.get(1)).recordPingRtt(1000);
+    }
+    for (int i = 0; i < 10; i++) {
+      ConnectionHealth.getFor(urls.get(2)).recordFailure();
+    }
+
+    assertTrue(ConnectionHealth.getFor(urls.get(2)).isCircuitOpen());
+    assertEquals(urls.get(0), balancer.reserve("room", 1).getUrl());
+  }
+
+  @Test
+  public void testKmsProvider() {
+
+    LoadBalancingKmsProvider provider = new LoadBalancingKmsProvider(
+        createBalancer(KmsLoadBalancer.LEAST_LOADED, 100), 10);
+
+    String url = provider.reserveKms("client1");
+    assertEquals(10, provider.getLoadBalancer().getInstance(url).getReservedLoadPoints());
+
+    provider.releaseKms("client1");
+    assertEquals(0, provider.getLoadBalancer().getInstance(url).getReservedLoadPoints());
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.KurentoObject;
+import org.kurento.client.internal.client.MediaObjectPool;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.jsonrpc.Props;
+
+public class MediaObjectPoolTest {
+
+  // The pool is selected by the simple name of the class being built
+  private interface MediaPipeline extends KurentoObject {
+  }
+
+  private interface WebRtcEndpoint extends KurentoObject {
+  }
+
+  private CountingRomClient client;
+  private RomManager manager;
+  private MediaObjectPool pool;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    manager = new RomManager(client);
+    pool = manager.getObjectPool();
+    pool.setPipelines(2);
+    pool.setEndpointsPerPipeline(2);
+  }
+
+  @After
+  public void teardown() {
+    pool.close();
+  }
+
+  private RemoteObject buildPipeline() {
+    return manager.createWithKurentoObject(MediaPipeline.class, new Props(), new Props());
+  }
+
+  private RemoteObject buildEndpoint(RemoteObject pipeline) {
+    return manager.createWithKurentoObject(WebRtcEndpoint.class,
+        new Props("mediaPipeline", pipeline.getKurentoObject()), new Props());
+  }
+
+  @Test
+  public void testPooledObjectsAreHandedOut() {
+
+    pool.start();
+
+    assertEquals(2, pool.getAvailablePipelines());
+    assertEquals(6, client.creates.get());
+
+    RemoteObject pipeline = buildPipeline();
+
+    // The pool is refilled in the background
+    assertEquals(2, pool.getAvailablePipelines());
+    assertEquals(9, client.creates.get());
+
+    RemoteObject endpoint1 = buildEndpoint(pipeline);
+    RemoteObject endpoint2 = buildEndpoint(pipeline);
+    assertEquals(9, client.creates.get());
+    assertNotSame(endpoint1, endpoint2);
+
+    // There are no more pooled endpoints in this pipeline
+    buildEndpoint(pipeline);
+    assertEquals(10, client.creates.get());
+
+    assertEquals(3, pool.getHits());
+    assertEquals(1, pool.getMisses());
+    assertEquals(0.75, pool.getHitRatio(), 0.001);
+  }
+
+  @Test
+  public void testObjectsWithParamsAreNotPooled() {
+
+    pool.start();
+
+    manager.createWithKurentoObject(MediaPipeline.class, new Props("name", "value"), new Props());
+
+    assertEquals(0, pool.getHits());
+    assertEquals(2, pool.getAvailablePipelines());
+  }
+
+  @Test
+  public void testOldPipelinesAreReplaced() throws InterruptedException {
+
+    pool.setMaxAgeMillis(1);
+    pool.start();
+
+    Thread.sleep(10);
+    pool.maintain();
+
+    assertEquals(2, pool.getExpiredPipelines());
+    assertEquals(1, client.transactions.get());
+    assertEquals(4, pool.getCreatedPipelines());
+  }
+
+  @Test
+  public void testIdlePoolIsTrimmed() throws InterruptedException {
+
+    pool.setMaxIdleMillis(1);
+    pool.setMinIdle(1);
+    pool.start();
+
+    Thread.sleep(10);
+    pool.maintain();
+
+    assertEquals(1, pool.getTrimmedPipelines());
+    assertEquals(1, pool.getAvailablePipelines());
+
+    // Using the pool again fills it up to its full size
+    buildPipeline();
+    assertEquals(2, pool.getAvailablePipelines());
+  }
+
+  @Test
+  public void testPooledPipelinesAreReleasedWhenClosed() {
+
+    pool.start();
+    pool.close();
+
+    assertEquals(1, client.transactions.get());
+    assertEquals(2, client.getLastTransaction().size());
+    assertEquals(0, pool.getAvailablePipelines());
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.PipelineTemplate;
+import org.kurento.client.PipelineTemplate.Element;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+import org.kurento.jsonrpc.Props;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the time needed to build a graph of elements with a {@link PipelineTemplate} with the
+ * time needed to build it with one request per element and per call. Each request to the media
+ * server is simulated with a fixed round trip time. Run with the benchmark profile.
+ */
+public class PipelineTemplateBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(PipelineTemplateBenchmark.class);
+
+  private static final long ROUND_TRIP_MILLIS = 2;
+  private static final int WARMUP_BUILDS = 10;
+  private static final int MEASURED_BUILDS = 50;
+
+  /**
+   * {@link CountingRomClient} that waits a round trip time in each request.
+   */
+  private static class RoundTripRomClient extends CountingRomClient {
+
+    private static void roundTrip() {
+      try {
+        Thread.sleep(ROUND_TRIP_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public String create(String remoteClassName, Props constructorParams, Props genericProps) {
+      roundTrip();
+      return super.create(remoteClassName, constructorParams, genericProps);
+    }
+
+    @Override
+    public Object invoke(String objectRef, String operationName, Props operationParams,
+        Type type) {
+      roundTrip();
+      return super.invoke(objectRef, operationName, operationParams, type);
+    }
+
+    @Override
+    public String subscribe(String objectRef, String eventType) {
+      roundTrip();
+      return super.subscribe(objectRef, eventType);
+    }
+
+    @Override
+    public void transaction(List<Operation> operations) {
+      roundTrip();
+      super.transaction(operations);
+    }
+  }
+
+  private final RoundTripRomClient client = new RoundTripRomClient();
+  private final RomManager manager = new RomManager(client);
+
+  @Test
+  public void benchmarkTemplateVsImperativeBuild() {
+
+    PipelineTemplate template = createTemplate();
+
+    for (int i = 0; i < WARMUP_BUILDS; i++) {
+      buildTemplate(template);
+      buildImperative();
+    }
+
+    long templateStart = System.nanoTime();
+    for (int i = 0; i < MEASURED_BUILDS; i++) {
+      buildTemplate(template);
+    }
+    double templateMillis = (System.nanoTime() - templateStart) / (MEASURED_BUILDS * 1000000.0);
+
+    long imperativeStart = System.nanoTime();
+    for (int i = 0; i < MEASURED_BUILDS; i++) {
+      buildImperative();
+    }
+    double imperativeMillis =
+        (System.nanoTime() - imperativeStart) / (MEASURED_BUILDS * 1000000.0);
+
+    log.info("Build time with {} ms round trips: template={} ms, imperative={} ms",
+        ROUND_TRIP_MILLIS, String.format("%.2f", templateMillis),
+        String.format("%.2f", imperativeMillis));
+
+    assertTrue("Template build (" + templateMillis + " ms) is not faster than imperative build ("
+        + imperativeMillis + " ms)", templateMillis < imperativeMillis);
+  }
+
+  /**
+   * Three elements, a setter, a connection and a listener: one request.
+   */
+  private PipelineTemplate createTemplate() {
+
+    PipelineTemplate template = new PipelineTemplate();
+
+    Element<SampleClass> pipeline = template.add(SampleClass.class);
+    Element<SampleClass> source = template.add(SampleClass.class).withParam("parent", pipeline)
+        .set("name", "source");
+    Element<SampleClass> sink = template.add(SampleClass.class).withParam("parent", pipeline);
+
+    template.connect(source, sink);
+    template.addListener(sink, SampleEvent.class, new EventListener<SampleEvent>() {
+      @Override
+      public void onEvent(SampleEvent event) {
+      }
+    });
+
+    return template;
+  }
+
+  private void buildTemplate(PipelineTemplate template) {
+    TransactionImpl tx = new TransactionImpl(manager);
+    template.build(tx);
+    tx.commit();
+  }
+
+  /**
+   * The same graph as the template: six requests.
+   */
+  private void buildImperative() {
+
+    new SampleClass.Builder("pipeline", false, manager).build();
+    SampleClass source = new SampleClass.Builder("source", false, manager).build();
+    SampleClass sink = new SampleClass.Builder("sink", false, manager).build();
+
+    RemoteObject sourceObject = RemoteObjectInvocationHandler.getFor(source).getRemoteObject();
+    RemoteObject sinkObject = RemoteObjectInvocationHandler.getFor(sink).getRemoteObject();
+
+    sourceObject.invoke("setName", new Props("name", "source"), Void.class);
+    sourceObject.invoke("connect", new Props("sink", sinkObject), Void.class);
+    sinkObject.addEventListener("Sample", new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+      }
+    });
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.EventListener;
+import org.kurento.client.PipelineTemplate;
+import org.kurento.client.PipelineTemplate.Element;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.test.model.client.events.SampleEvent;
+
+public class PipelineTemplateTest {
+
+  private CountingRomClient client;
+  private RomManager manager;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    manager = new RomManager(client);
+  }
+
+  @Test
+  public void testTemplateIsBuiltInOneTransaction() {
+
+    PipelineTemplate template = new PipelineTemplate();
+
+    Element<SampleClass> pipeline = template.add(SampleClass.class);
+    Element<SampleClass> source = template.add(SampleClass.class).withParam("parent", pipeline)
+        .set("name", "source");
+    Element<SampleClass> sink = template.add(SampleClass.class).withParam("parent", pipeline);
+
+    template.connect(source, sink);
+    template.addListener(sink, SampleEvent.class, new EventListener<SampleEvent>() {
+      @Override
+      public void onEvent(SampleEvent event) {
+      }
+    });
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    PipelineTemplate.Instance instance = template.build(tx);
+    tx.commit();
+
+    assertEquals(1, client.transactions.get());
+    assertEquals(0, client.creates.get() + client.invokes.get() + client.subscribes.get());
+
+    List<String> descriptions = new ArrayList<>();
+    for (Operation op : client.getLastTransaction()) {
+      descriptions.add(op.getDescription());
+    }
+
+    // 3 creations, 1 setter, 1 connect and 1 subscription
+    assertEquals(descriptions.toString(), 6, descriptions.size());
+
+    SampleClass sourceObject = instance.get(source);
+    assertFalse(sourceObject.isCommited());
+    assertNotSame(sourceObject, instance.get(sink));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReferenceToLaterElementFails() {
+
+    PipelineTemplate template = new PipelineTemplate();
+
+    Element<SampleClass> first = template.add(SampleClass.class);
+    Element<SampleClass> second = template.add(SampleClass.class);
+    first.withParam("parent", second);
+
+    template.build(new TransactionImpl(manager));
+  }
+}
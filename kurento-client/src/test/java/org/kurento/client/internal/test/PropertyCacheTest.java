@@ -0,0 +1,176 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.PropertyCache;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.JsonObject;
+
+public class PropertyCacheTest {
+
+  private CountingRomClient client;
+  private RomManager manager;
+  private PropertyCache cache;
+  private RemoteObject remoteObject;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    manager = new RomManager(client);
+    cache = manager.getPropertyCache();
+    remoteObject = new RemoteObject("object", "SampleClass", manager);
+  }
+
+  @Test
+  public void testCacheIsDisabledByDefault() {
+
+    remoteObject.invoke("getMediaPipeline", null, String.class);
+    remoteObject.invoke("getMediaPipeline", null, String.class);
+
+    assertEquals(2, client.invokes.get());
+    assertEquals(0, cache.getHits());
+  }
+
+  @Test
+  public void testImmutableProperty() {
+
+    cache.setEnabled(true);
+
+    for (int i = 0; i < 10; i++) {
+      remoteObject.invoke("getCreationTime", null, Integer.class);
+    }
+
+    assertEquals(1, client.invokes.get());
+    assertEquals(9, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void testMethodsWithParamsAreNotCached() {
+
+    cache.setEnabled(true);
+
+    remoteObject.invoke("getMediaPipeline", new Props("param", 1), String.class);
+    remoteObject.invoke("getMediaPipeline", new Props("param", 1), String.class);
+
+    assertEquals(2, client.invokes.get());
+  }
+
+  @Test
+  public void testSetterInvalidatesProperty() {
+
+    cache.setEnabled(true);
+
+    remoteObject.invoke("getName", null, String.class);
+    remoteObject.invoke("getName", null, String.class);
+    assertEquals(1, client.invokes.get());
+
+    remoteObject.invoke("setName", new Props("name", "newName"), Void.class);
+    assertEquals(1, cache.getInvalidations());
+
+    remoteObject.invoke("getName", null, String.class);
+    assertEquals(3, client.invokes.get());
+  }
+
+  @Test
+  public void testGetterConcurrentWithSetterIsNotCached() throws Exception {
+
+    final CountDownLatch setterSent = new CountDownLatch(1);
+    final CountDownLatch getterDone = new CountDownLatch(1);
+
+    client = new CountingRomClient() {
+
+      private volatile String name = "oldName";
+
+      @Override
+      public Object invoke(String objectRef, String operationName, Props operationParams,
+          Type type) {
+        super.invoke(objectRef, operationName, operationParams, type);
+        if (operationName.equals("setName")) {
+          setterSent.countDown();
+          try {
+            // The response of the setter arrives after a concurrent getter has been answered
+            getterDone.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          name = (String) operationParams.getProp("name");
+          return null;
+        }
+        return name;
+      }
+    };
+    manager = new RomManager(client);
+    cache = manager.getPropertyCache();
+    cache.setEnabled(true);
+    remoteObject = new RemoteObject("object", "SampleClass", manager);
+
+    Thread setter = new Thread() {
+      @Override
+      public void run() {
+        remoteObject.invoke("setName", new Props("name", "newName"), Void.class);
+      }
+    };
+    setter.start();
+
+    assertTrue(setterSent.await(10, TimeUnit.SECONDS));
+    assertEquals("oldName", remoteObject.invoke("getName", null, String.class));
+    getterDone.countDown();
+    setter.join(10000);
+
+    assertEquals("newName", remoteObject.invoke("getName", null, String.class));
+  }
+
+  @Test
+  public void testEventPropertyIsCachedOnlyWhileSubscribed() {
+
+    cache.setEnabled(true);
+
+    remoteObject.invoke("getMediaState", null, String.class);
+    remoteObject.invoke("getMediaState", null, String.class);
+    assertEquals(2, client.invokes.get());
+
+    remoteObject.addEventListener("MediaStateChanged", new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+      }
+    });
+
+    remoteObject.invoke("getMediaState", null, String.class);
+    remoteObject.invoke("getMediaState", null, String.class);
+    assertEquals(3, client.invokes.get());
+
+    remoteObject.fireEvent("MediaStateChanged", new JsonObject());
+
+    remoteObject.invoke("getMediaState", null, String.class);
+    assertEquals(4, client.invokes.get());
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.TransactionPlanner;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.JsonObject;
+
+public class ReleaseTreeTest {
+
+  private static final String EVENT_TYPE = "MediaFlowOutStateChanged";
+
+  private CountingRomClient client;
+  private RomManager manager;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    client.processTransactionResponses = true;
+    manager = new RomManager(client);
+  }
+
+  private RemoteObject create(String parentParam, RemoteObject parent) {
+    Props params = new Props();
+    if (parent != null) {
+      params.add(parentParam, parent.getKurentoObject());
+    }
+    return manager.createWithKurentoObject(SampleClass.class, params, null);
+  }
+
+  @Test
+  public void testReleaseTreeSendsOneRelease() {
+
+    RemoteObject pipeline = create(null, null);
+    RemoteObject endpoint1 = create("mediaPipeline", pipeline);
+    RemoteObject endpoint2 = create("mediaPipeline", pipeline);
+    RemoteObject hub = create("mediaPipeline", pipeline);
+    RemoteObject port = create("hub", hub);
+
+    endpoint1.addEventListener(EVENT_TYPE, newListener());
+    port.addEventListener(EVENT_TYPE, newListener());
+
+    pipeline.releaseTree();
+
+    assertEquals(1, client.transactions.get());
+    assertEquals(1, client.getLastTransaction().size());
+    assertEquals(0, client.releases.get());
+    assertEquals(0, client.unsubscribes.get());
+
+    for (RemoteObject object : Arrays.asList(pipeline, endpoint1, endpoint2, hub, port)) {
+      assertNull(manager.getObject(object.getObjectRef()));
+    }
+
+    assertEquals(0, endpoint1.getEventListenerCount(EVENT_TYPE));
+    assertEquals(0, port.getEventListenerCount(EVENT_TYPE));
+  }
+
+  @Test
+  public void testReleaseAllSkipsDescendants() {
+
+    RemoteObject pipeline1 = create(null, null);
+    RemoteObject endpoint1 = create("mediaPipeline", pipeline1);
+    RemoteObject pipeline2 = create(null, null);
+    RemoteObject endpoint2 = create("mediaPipeline", pipeline2);
+    RemoteObject other = create(null, null);
+
+    // Endpoints of the first pipeline are released with it
+    manager.releaseAll(Arrays.asList(endpoint1, pipeline1, endpoint2, other));
+
+    assertEquals(1, client.transactions.get());
+
+    List<Operation> operations = client.getLastTransaction();
+    assertEquals(3, operations.size());
+
+    assertNull(manager.getObject(endpoint1.getObjectRef()));
+    assertNull(manager.getObject(pipeline1.getObjectRef()));
+    assertNull(manager.getObject(endpoint2.getObjectRef()));
+    assertNull(manager.getObject(other.getObjectRef()));
+    assertNotNull(manager.getObject(pipeline2.getObjectRef()));
+  }
+
+  @Test
+  public void testReleaseAllIsNotSplit() {
+
+    TransactionPlanner planner = manager.getTransactionPlanner();
+
+    List<RemoteObject> pipelines = new ArrayList<>();
+    for (int i = 0; i < planner.getMinOperations() * 2; i++) {
+      pipelines.add(create(null, null));
+    }
+
+    manager.releaseAll(pipelines);
+
+    assertEquals(0, planner.getSplitTransactions());
+    assertEquals(1, client.transactions.get());
+    assertEquals(pipelines.size(), client.getLastTransaction().size());
+
+    for (RemoteObject pipeline : pipelines) {
+      assertNull(manager.getObject(pipeline.getObjectRef()));
+    }
+  }
+
+  private RemoteObjectEventListener newListener() {
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+      }
+    };
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+public class RequestCoalescingTest {
+
+  private static final int CALLERS = 5;
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private final CountDownLatch requestReceived = new CountDownLatch(1);
+  private volatile CountDownLatch responseAllowed = new CountDownLatch(0);
+  private final AtomicBoolean loseResponse = new AtomicBoolean();
+
+  private JsonRpcClientLocal jsonRpcClient;
+  private RomClientJsonRpcClient client;
+  private ExecutorService executor;
+
+  @Before
+  public void setup() {
+
+    jsonRpcClient = new JsonRpcClientLocal(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+
+        requests.incrementAndGet();
+        requestReceived.countDown();
+
+        if (loseResponse.getAndSet(false)) {
+          // The response never arrives
+          transaction.startAsync();
+          return;
+        }
+
+        responseAllowed.await(10, TimeUnit.SECONDS);
+
+        JsonObject result = new JsonObject();
+        result.addProperty("value", "CONNECTED");
+        transaction.sendResponse(result);
+      }
+    });
+
+    client = new RomClientJsonRpcClient(jsonRpcClient);
+
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void teardown() {
+    executor.shutdownNow();
+    client.destroy();
+  }
+
+  @Test
+  public void testIdenticalReadsAreCoalesced() throws Exception {
+
+    client.addCoalescedOperation("getConnectionState");
+    responseAllowed = new CountDownLatch(1);
+
+    List<Future<String>> results = new ArrayList<>();
+    results.add(executor.submit(getConnectionState()));
+    assertTrue(requestReceived.await(10, TimeUnit.SECONDS));
+
+    for (int i = 1; i < CALLERS; i++) {
+      results.add(executor.submit(getConnectionState()));
+    }
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (client.getCoalescedRequests() < CALLERS - 1
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    responseAllowed.countDown();
+
+    for (Future<String> result : results) {
+      assertEquals("CONNECTED", result.get(10, TimeUnit.SECONDS));
+    }
+
+    assertEquals(1, requests.get());
+    assertEquals(CALLERS - 1, client.getCoalescedRequests());
+  }
+
+  @Test
+  public void testCompletedReadsAreNotReused() throws Exception {
+
+    client.addCoalescedOperation("getConnectionState");
+
+    assertEquals("CONNECTED", getConnectionState().call());
+    assertEquals("CONNECTED", getConnectionState().call());
+
+    assertEquals(2, requests.get());
+    assertEquals(0, client.getCoalescedRequests());
+  }
+
+  @Test
+  public void testLostResponseIsNotSharedForever() throws Exception {
+
+    client.addCoalescedOperation("getConnectionState");
+    jsonRpcClient.setRequestTimeout(200);
+    loseResponse.set(true);
+
+    try {
+      getConnectionState().call();
+      fail("JsonRpcException expected");
+    } catch (JsonRpcException e) {
+      // Expected
+    }
+
+    // The timed out request is not in flight anymore, so a new one is sent
+    assertEquals("CONNECTED", getConnectionState().call());
+    assertEquals(2, requests.get());
+    assertEquals(0, client.getCoalescedRequests());
+  }
+
+  @Test
+  public void testLostResponseOfAsyncInvocationIsNotSharedForever() throws Exception {
+
+    client.addCoalescedOperation("getConnectionState");
+    jsonRpcClient.setRequestTimeout(200);
+    loseResponse.set(true);
+
+    final CountDownLatch failed = new CountDownLatch(1);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    client.invoke("endpoint", "getConnectionState", null, String.class,
+        new Continuation<String>() {
+          @Override
+          public void onSuccess(String result) {
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            error.set(cause);
+            failed.countDown();
+          }
+        });
+
+    // Only asynchronous invocations wait for the request, and it fails anyway
+    assertTrue(failed.await(10, TimeUnit.SECONDS));
+    assertTrue(error.get() instanceof JsonRpcException);
+
+    assertEquals("CONNECTED", getConnectionState().call());
+    assertEquals(2, requests.get());
+    assertEquals(0, client.getCoalescedRequests());
+  }
+
+  @Test
+  public void testOperationsAreNotCoalescedByDefault() throws Exception {
+
+    assertTrue(client.getCoalescedOperations().isEmpty());
+
+    responseAllowed = new CountDownLatch(1);
+
+    Future<String> first = executor.submit(getConnectionState());
+    assertTrue(requestReceived.await(10, TimeUnit.SECONDS));
+
+    Future<String> second = executor.submit(getConnectionState());
+
+    // The second invocation reaches the server while the first one is still in flight
+    long deadline = System.currentTimeMillis() + 10000;
+    while (requests.get() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    responseAllowed.countDown();
+
+    assertEquals("CONNECTED", first.get(10, TimeUnit.SECONDS));
+    assertEquals("CONNECTED", second.get(10, TimeUnit.SECONDS));
+    assertEquals(2, requests.get());
+  }
+
+  private Callable<String> getConnectionState() {
+    return new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        return client.invoke("endpoint", "getConnectionState", null, String.class);
+      }
+    };
+  }
+}
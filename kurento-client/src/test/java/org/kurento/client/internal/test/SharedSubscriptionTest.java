@@ -0,0 +1,146 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.client.ListenerSubscriptionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RomManager;
+
+import com.google.gson.JsonObject;
+
+public class SharedSubscriptionTest {
+
+  private static final String EVENT_TYPE = "MediaFlowOutStateChanged";
+
+  private CountingRomClient client;
+  private RemoteObject remoteObject;
+  private AtomicInteger receivedEvents;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    remoteObject = new RemoteObject("object", "SampleClass", new RomManager(client));
+    receivedEvents = new AtomicInteger();
+  }
+
+  @Test
+  public void testListenersShareServerSubscription() {
+
+    ListenerSubscriptionImpl sub1 = remoteObject.addEventListener(EVENT_TYPE, newListener());
+    ListenerSubscriptionImpl sub2 = remoteObject.addEventListener(EVENT_TYPE, newListener());
+    ListenerSubscriptionImpl sub3 = remoteObject.addEventListener(EVENT_TYPE, newListener());
+
+    assertEquals(1, client.subscribes.get());
+    assertEquals(sub1.getSubscriptionId(), sub3.getSubscriptionId());
+
+    client.getEventHandler().processEvent("object", sub1.getSubscriptionId(), EVENT_TYPE,
+        new JsonObject());
+
+    assertEquals(3, receivedEvents.get());
+
+    remoteObject.removeEventListener(sub1);
+    remoteObject.removeEventListener(sub2);
+
+    assertEquals(0, client.unsubscribes.get());
+    assertEquals(1, remoteObject.getEventListenerCount(EVENT_TYPE));
+
+    remoteObject.removeEventListener(sub3);
+
+    assertEquals(1, client.unsubscribes.get());
+    assertEquals(0, remoteObject.getEventListenerCount(EVENT_TYPE));
+
+    remoteObject.addEventListener(EVENT_TYPE, newListener());
+
+    assertEquals(2, client.subscribes.get());
+  }
+
+  @Test
+  public void testAsyncListenersShareServerSubscription() {
+
+    final ListenerSubscriptionImpl[] subs = new ListenerSubscriptionImpl[2];
+
+    for (int i = 0; i < subs.length; i++) {
+      final int index = i;
+      remoteObject.addEventListener(EVENT_TYPE, newListener(),
+          new Continuation<ListenerSubscriptionImpl>() {
+            @Override
+            public void onSuccess(ListenerSubscriptionImpl result) {
+              subs[index] = result;
+            }
+
+            @Override
+            public void onError(Throwable cause) {
+            }
+          });
+    }
+
+    assertEquals(1, client.subscribes.get());
+
+    remoteObject.removeEventListener(subs[0], new NoOpContinuation());
+    assertEquals(0, client.unsubscribes.get());
+
+    remoteObject.removeEventListener(subs[1], new NoOpContinuation());
+    assertEquals(1, client.unsubscribes.get());
+  }
+
+  @Test
+  public void testTransactionSubscriptionIsShared() {
+
+    ListenerSubscriptionImpl sub1 = remoteObject.addEventListener(EVENT_TYPE, newListener());
+
+    // Simulates the response of a subscription executed in a transaction
+    RemoteObjectEventListener txListener = newListener();
+    remoteObject.addTransactionEventListener(EVENT_TYPE, txListener, "txSubscription");
+
+    assertEquals(2, remoteObject.getEventListenerCount(EVENT_TYPE));
+    assertEquals(1, client.unsubscribes.get());
+
+    remoteObject.removeEventListener(new ListenerSubscriptionImpl(EVENT_TYPE, txListener));
+    assertEquals(1, client.unsubscribes.get());
+
+    remoteObject.removeEventListener(sub1);
+    assertEquals(2, client.unsubscribes.get());
+  }
+
+  private RemoteObjectEventListener newListener() {
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+        receivedEvents.incrementAndGet();
+      }
+    };
+  }
+
+  private static class NoOpContinuation implements Continuation<Void> {
+    @Override
+    public void onSuccess(Void result) {
+    }
+
+    @Override
+    public void onError(Throwable cause) {
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.Continuation;
+import org.kurento.client.internal.TransactionImpl;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.client.TransactionPlanner;
+import org.kurento.client.internal.client.operation.Operation;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.client.internal.transport.jsonrpc.RomClientJsonRpcClient;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class TransactionPlannerTest {
+
+  private CountingRomClient client;
+  private RomManager manager;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    manager = new RomManager(client);
+  }
+
+  private List<RemoteObject> createInTransaction(TransactionImpl tx, int numObjects) {
+    List<RemoteObject> objects = new ArrayList<>();
+    for (int i = 0; i < numObjects; i++) {
+      RemoteObject object = manager.createWithKurentoObject(SampleClass.class, new Props(), null,
+          tx);
+      object.invoke("setName", new Props("name", "object" + i), Void.class, tx);
+      objects.add(object);
+    }
+    return objects;
+  }
+
+  @Test
+  public void testIndependentOperationsAreSplit() {
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    List<RemoteObject> objects = createInTransaction(tx, 20);
+
+    // Depends on objects 0 and 1, so both have to be in the same batch
+    objects.get(0).invoke("connect", new Props("sink", objects.get(1).getKurentoObject()),
+        Void.class, tx);
+
+    tx.commit();
+
+    TransactionPlanner planner = manager.getTransactionPlanner();
+    assertEquals(1, planner.getSplitTransactions());
+    assertEquals(planner.getMaxBatches(), client.committedTransactions.size());
+
+    int numOps = 0;
+    for (List<Operation> batch : client.committedTransactions) {
+
+      numOps += batch.size();
+
+      Set<String> batchRefs = new HashSet<>();
+      for (Operation op : batch) {
+        op.collectObjectRefs(batchRefs);
+      }
+
+      // Operations of an object are never split in several batches
+      for (List<Operation> other : client.committedTransactions) {
+        if (other != batch) {
+          for (Operation op : other) {
+            Set<String> refs = new HashSet<>();
+            op.collectObjectRefs(refs);
+            refs.retainAll(batchRefs);
+            assertTrue("Operation in two batches: " + refs, refs.isEmpty());
+          }
+        }
+      }
+    }
+
+    assertEquals(41, numOps);
+  }
+
+  @Test
+  public void testBatchesUseTheirOwnNewRefs() {
+
+    final List<JsonArray> requests = new CopyOnWriteArrayList<>();
+    final AtomicInteger ids = new AtomicInteger();
+
+    manager = new RomManager(
+        new RomClientJsonRpcClient(new JsonRpcClientLocal(new DefaultJsonRpcHandler<JsonObject>() {
+          @Override
+          public void handleRequest(Transaction transaction, Request<JsonObject> request)
+              throws Exception {
+
+            JsonArray operations = request.getParams().getAsJsonArray("operations");
+            requests.add(operations);
+
+            JsonArray responses = new JsonArray();
+            for (JsonElement operation : operations) {
+              JsonObject response = new JsonObject();
+              response.addProperty("jsonrpc", "2.0");
+              response.add("id", operation.getAsJsonObject().get("id"));
+              JsonObject result = new JsonObject();
+              if (operation.getAsJsonObject().get("method").getAsString().equals("create")) {
+                result.addProperty("value", "object-" + ids.incrementAndGet());
+              }
+              response.add("result", result);
+              responses.add(response);
+            }
+            transaction.sendResponse(responses);
+          }
+        })));
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    List<RemoteObject> objects = createInTransaction(tx, 20);
+    objects.get(0).invoke("connect", new Props("sink", objects.get(1).getKurentoObject()),
+        Void.class, tx);
+    tx.commit();
+
+    assertEquals(manager.getTransactionPlanner().getMaxBatches(), requests.size());
+
+    for (JsonArray operations : requests) {
+
+      // The media server resolves newref:N as the Nth object created in the request
+      int creates = 0;
+      for (JsonElement operation : operations) {
+
+        JsonObject op = operation.getAsJsonObject();
+        JsonObject params = op.getAsJsonObject("params");
+
+        if (op.get("method").getAsString().equals("create")) {
+          creates++;
+        } else {
+          assertNewRefCreatedBefore(params.get("object").getAsString(), creates);
+          JsonObject invokeParams = params.getAsJsonObject("operationParams");
+          if (invokeParams.has("sink")) {
+            assertNewRefCreatedBefore(invokeParams.get("sink").getAsString(), creates);
+          }
+        }
+      }
+    }
+
+    Set<String> createdRefs = new HashSet<>();
+    for (RemoteObject object : objects) {
+      assertTrue(object.isCommited());
+      createdRefs.add(object.getObjectRef());
+    }
+    assertEquals(objects.size(), createdRefs.size());
+
+    // Objects created in previous requests are referenced by their id
+    requests.clear();
+    tx = new TransactionImpl(manager);
+    objects.get(0).invoke("connect", new Props("sink", objects.get(1).getKurentoObject()),
+        Void.class, tx);
+    tx.commit();
+
+    JsonObject params = requests.get(0).get(0).getAsJsonObject().getAsJsonObject("params");
+    assertEquals(objects.get(0).getObjectRef(), params.get("object").getAsString());
+    assertEquals(objects.get(1).getObjectRef(),
+        params.getAsJsonObject("operationParams").get("sink").getAsString());
+  }
+
+  private static void assertNewRefCreatedBefore(String ref, int creates) {
+    assertTrue("Unexpected reference " + ref, ref.startsWith("newref:"));
+    int index = Integer.parseInt(ref.substring("newref:".length()));
+    assertTrue(ref + " is not created before in the request", index < creates);
+  }
+
+  @Test
+  public void testSetterIsNotRetried() throws Exception {
+
+    RemoteObject object = manager.createWithKurentoObject(SampleClass.class, new Props(), null);
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    object.invoke("setName", new Props("name", "name"), Void.class, tx);
+
+    client.failingTransactions.set(1);
+
+    assertNotNull(commitAsync(tx));
+    assertEquals(1, client.transactions.get());
+  }
+
+  @Test
+  public void testSmallTransactionIsNotSplit() {
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    createInTransaction(tx, 4);
+    tx.commit();
+
+    assertEquals(0, manager.getTransactionPlanner().getSplitTransactions());
+    assertEquals(1, client.transactions.get());
+  }
+
+  @Test
+  public void testIdempotentTransactionIsRetried() throws Exception {
+
+    RemoteObject object = manager.createWithKurentoObject(SampleClass.class, new Props(), null);
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    object.invoke("getName", null, String.class, tx);
+
+    client.failingTransactions.set(2);
+
+    assertNull(commitAsync(tx));
+    assertEquals(3, client.transactions.get());
+    assertEquals(2, manager.getTransactionRetries());
+  }
+
+  @Test
+  public void testSyncTransactionIsRetriedLikeAsync() {
+
+    RemoteObject object = manager.createWithKurentoObject(SampleClass.class, new Props(), null);
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    object.invoke("getName", null, String.class, tx);
+
+    client.failingTransactions.set(2);
+
+    tx.commit();
+
+    assertEquals(3, client.transactions.get());
+    assertEquals(2, manager.getTransactionRetries());
+  }
+
+  @Test
+  public void testRetriesAreBounded() throws Exception {
+
+    RemoteObject object = manager.createWithKurentoObject(SampleClass.class, new Props(), null);
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    object.invoke("getName", null, String.class, tx);
+
+    client.failingTransactions.set(100);
+
+    assertNotNull(commitAsync(tx));
+    assertEquals(4, client.transactions.get());
+  }
+
+  @Test
+  public void testNonIdempotentTransactionIsRolledBack() throws Exception {
+
+    TransactionImpl tx = new TransactionImpl(manager);
+    List<RemoteObject> objects = createInTransaction(tx, 1);
+
+    client.failingTransactions.set(1);
+
+    assertNotNull(commitAsync(tx));
+    assertEquals(1, client.transactions.get());
+    assertFalse(objects.get(0).isCommited());
+  }
+
+  private Throwable commitAsync(TransactionImpl tx) throws InterruptedException {
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    tx.commit(new Continuation<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        error.set(cause);
+        latch.countDown();
+      }
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    return error.get();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.client.internal.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.client.internal.client.RemoteObject;
+import org.kurento.client.internal.client.RemoteObjectEventListener;
+import org.kurento.client.internal.client.RemoteObjectInvocationHandler;
+import org.kurento.client.internal.client.RomManager;
+import org.kurento.client.internal.test.model.client.SampleClass;
+import org.kurento.jsonrpc.Props;
+
+import com.google.gson.JsonObject;
+
+public class UnreachableObjectsTest {
+
+  private static final long GC_TIMEOUT = 10000;
+
+  private CountingRomClient client;
+  private RomManager manager;
+
+  @Before
+  public void setup() {
+    client = new CountingRomClient();
+    manager = new RomManager(client);
+  }
+
+  @Test
+  public void testSubscriptionsOfUnreachableObjectsAreRemoved() throws InterruptedException {
+
+    createObjectWithListeners("object1", false);
+
+    waitUntilCollected(1);
+
+    assertEquals(2, client.unsubscribes.get());
+    assertEquals(0, client.releases.get());
+  }
+
+  @Test
+  public void testUnreachableObjectIsReleased() throws InterruptedException {
+
+    createObjectWithListeners("object1", true);
+
+    waitUntilCollected(1);
+
+    assertEquals(2, client.unsubscribes.get());
+    assertEquals(1, client.releases.get());
+  }
+
+  @Test
+  public void testObjectsObtainedByIdAreNotReleased() throws InterruptedException {
+
+    SampleClass object = manager.getById("object1_SampleClass", SampleClass.class);
+    RemoteObject remoteObject = RemoteObjectInvocationHandler.getFor(object).getRemoteObject();
+    remoteObject.setReleaseWhenUnreachable(true);
+
+    assertFalse(remoteObject.isReleaseWhenUnreachable());
+
+    object = null;
+    remoteObject = null;
+    waitUntilCollected(1);
+
+    assertEquals(0, client.releases.get());
+  }
+
+  @Test
+  public void testExplicitlyReleasedObjectsAreIgnored() throws InterruptedException {
+
+    RemoteObject remoteObject = new RemoteObject("object1", "SampleClass", manager);
+    remoteObject.setReleaseWhenUnreachable(true);
+    remoteObject.addEventListener("EventType", newListener());
+    remoteObject.release();
+
+    assertEquals(1, client.releases.get());
+    assertNull(manager.getObjectManager().getRemoteObject("object1"));
+
+    remoteObject = null;
+    collect();
+
+    assertEquals(0, manager.getObjectManager().freeUnreachableObjects());
+    assertEquals(1, client.releases.get());
+  }
+
+  @Test
+  public void testParentIsNotReleasedWhileChildIsReachable() throws InterruptedException {
+
+    RemoteObject endpoint = createChildOfDroppedParent();
+
+    for (int i = 0; i < 5; i++) {
+      collect();
+      assertEquals(0, manager.getObjectManager().freeUnreachableObjects());
+    }
+
+    assertEquals(0, client.releases.get());
+
+    endpoint.invoke("method", new Props(), Void.class);
+    assertEquals(1, client.invokes.get());
+
+    endpoint = null;
+    waitUntilCollected(2);
+
+    assertEquals(2, client.releases.get());
+  }
+
+  private RemoteObject createChildOfDroppedParent() {
+
+    RemoteObject pipeline = manager.createWithKurentoObject(SampleClass.class, new Props(), null);
+    pipeline.setReleaseWhenUnreachable(true);
+
+    Props params = new Props("mediaPipeline", pipeline.getKurentoObject());
+    RemoteObject endpoint = manager.createWithKurentoObject(SampleClass.class, params, null);
+    endpoint.setReleaseWhenUnreachable(true);
+
+    return endpoint;
+  }
+
+  private void createObjectWithListeners(String objectRef, boolean releaseWhenUnreachable) {
+
+    RemoteObject remoteObject = new RemoteObject(objectRef, "SampleClass", manager);
+    remoteObject.setReleaseWhenUnreachable(releaseWhenUnreachable);
+    remoteObject.addEventListener("EventType1", newListener());
+    remoteObject.addEventListener("EventType1", newListener());
+    remoteObject.addEventListener("EventType2", newListener());
+
+    assertEquals(2, client.subscribes.get());
+  }
+
+  private void waitUntilCollected(int numObjects) throws InterruptedException {
+
+    int collected = 0;
+    long timeout = System.currentTimeMillis() + GC_TIMEOUT;
+
+    while (collected < numObjects && System.currentTimeMillis() < timeout) {
+      collect();
+      collected += manager.getObjectManager().freeUnreachableObjects();
+    }
+
+    assertEquals(numObjects, collected);
+  }
+
+  private void collect() throws InterruptedException {
+    System.gc();
+    Thread.sleep(50);
+  }
+
+  private static RemoteObjectEventListener newListener() {
+    return new RemoteObjectEventListener() {
+      @Override
+      public void onEvent(String eventType, JsonObject data) {
+      }
+    };
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons;
+
+/**
+ * Histogram of non negative values where old samples lose weight exponentially: the weight of a
+ * sample is halved every half life. It is used to keep an estimation of recent latencies without
+ * storing the samples, so percentiles reflect the current behaviour of a server instead of its
+ * whole history. Histograms created without half life don't decay, so they cover the whole
+ * history (or the time since the last {@link #reset()}).
+ *
+ * <p>
+ * Values are stored in logarithmic buckets (four buckets per power of two), so percentiles have a
+ * relative error below 20%. Values bigger than the last bucket are accounted in the last bucket.
+ * </p>
+ */
+public class DecayingHistogram {
+
+  private static final int SUB_BUCKETS = 4;
+  private static final int MAX_POWER = 24;
+  private static final int NUM_BUCKETS = MAX_POWER * SUB_BUCKETS;
+
+  private final long halfLifeMillis;
+
+  private final double[] buckets = new double[NUM_BUCKETS];
+  private double count;
+  private double sum;
+  private long max;
+  private long lastDecayTime;
+
+  /**
+   * Creates a histogram whose samples never lose weight.
+   */
+  public DecayingHistogram() {
+    this.halfLifeMillis = 0;
+  }
+
+  public DecayingHistogram(long halfLifeMillis) {
+
+    if (halfLifeMillis <= 0) {
+      throw new IllegalArgumentException("The half life must be positive");
+    }
+
+    this.halfLifeMillis = halfLifeMillis;
+    this.lastDecayTime = currentTimeMillis();
+  }
+
+  public synchronized void record(long value) {
+
+    decay();
+
+    if (value < 0) {
+      value = 0;
+    }
+
+    buckets[getBucket(value)]++;
+    count++;
+    sum += value;
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Returns the decayed number of samples. It is the number of samples if all of them have been
+   * recorded now, and it tends to zero when no sample is recorded for several half lives.
+   */
+  public synchronized double getCount() {
+    decay();
+    return count;
+  }
+
+  /**
+   * Returns the weighted mean of the samples, or 0 if there are no samples.
+   */
+  public synchronized double getMean() {
+    decay();
+    return count > 0 ? sum / count : 0;
+  }
+
+  /**
+   * Returns the max value recorded since the creation of the histogram or its last reset. It
+   * doesn't decay.
+   */
+  public synchronized long getMax() {
+    return max;
+  }
+
+  /**
+   * Returns the weighted percentile of the samples, or 0 if there are no samples. The value
+   * returned is the upper bound of the bucket where the percentile falls, limited to the max value.
+   *
+   * @param percentile
+   *          a value between 0 and 100
+   */
+  public synchronized long getPercentile(double percentile) {
+
+    decay();
+
+    if (count <= 0) {
+      return 0;
+    }
+
+    double threshold = count * Math.min(100, Math.max(0, percentile)) / 100;
+    double accumulated = 0;
+
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      accumulated += buckets[i];
+      if (accumulated >= threshold && buckets[i] > 0) {
+        return Math.min(getBucketUpperBound(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  public synchronized void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets[i] = 0;
+    }
+    count = 0;
+    sum = 0;
+    max = 0;
+    lastDecayTime = currentTimeMillis();
+  }
+
+  /**
+   * Returns the half life of the samples, or 0 if they don't decay.
+   */
+  public long getHalfLifeMillis() {
+    return halfLifeMillis;
+  }
+
+  private void decay() {
+
+    if (halfLifeMillis == 0) {
+      return;
+    }
+
+    long now = currentTimeMillis();
+    long elapsed = now - lastDecayTime;
+
+    // Decaying on every access would accumulate rounding errors for no benefit
+    if (elapsed < halfLifeMillis / 16) {
+      return;
+    }
+
+    double factor = Math.pow(0.5, (double) elapsed / halfLifeMillis);
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      buckets[i] *= factor;
+    }
+    count *= factor;
+    sum *= factor;
+    lastDecayTime = now;
+  }
+
+  private static int getBucket(long value) {
+
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+
+    int power = 63 - Long.numberOfLeadingZeros(value);
+    if (power > MAX_POWER) {
+      return NUM_BUCKETS - 1;
+    }
+
+    int subBucket = (int) (value >> (power - 2)) & (SUB_BUCKETS - 1);
+    return Math.min(NUM_BUCKETS - 1, (power - 1) * SUB_BUCKETS + subBucket);
+  }
+
+  private static long getBucketUpperBound(int bucket) {
+
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+
+    int power = bucket / SUB_BUCKETS + 1;
+    int subBucket = bucket % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << (power - 2)) - 1;
+  }
+
+  /**
+   * Time source of the histogram. It can be overridden in tests.
+   */
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+}
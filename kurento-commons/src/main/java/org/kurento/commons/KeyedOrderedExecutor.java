@@ -0,0 +1,448 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes tasks in a bounded pool of threads, guaranteeing that tasks submitted with the same key
+ * are executed sequentially and in submission order. Tasks with different keys are executed in
+ * parallel.
+ *
+ * <p>
+ * Each key has a bounded queue of pending tasks. When a queue is full, the configured
+ * {@link OverflowPolicy} is applied.
+ * </p>
+ */
+public class KeyedOrderedExecutor {
+
+  public enum OverflowPolicy {
+
+    /**
+     * The submitting thread waits until there is room in the queue. If the queue is still full
+     * after the block timeout, the task is enqueued anyway and a warning is logged, so the
+     * submitting thread is never blocked forever.
+     */
+    BLOCK,
+
+    /**
+     * The oldest pending task of the queue is discarded.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The pending task with the same coalescing key is discarded and the new one is enqueued at
+     * the tail, so it still runs after the tasks submitted before it. If there is no such task,
+     * the oldest pending task is discarded.
+     */
+    COALESCE
+  }
+
+  public static class QueueStats {
+
+    private final String key;
+    private final int size;
+    private final int maxSize;
+    private final long executed;
+    private final long dropped;
+    private final long coalesced;
+
+    QueueStats(String key, int size, int maxSize, long executed, long dropped, long coalesced) {
+      this.key = key;
+      this.size = size;
+      this.maxSize = maxSize;
+      this.executed = executed;
+      this.dropped = dropped;
+      this.coalesced = coalesced;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public long getExecuted() {
+      return executed;
+    }
+
+    public long getDropped() {
+      return dropped;
+    }
+
+    public long getCoalesced() {
+      return coalesced;
+    }
+
+    @Override
+    public String toString() {
+      return "QueueStats [key=" + key + ", size=" + size + ", maxSize=" + maxSize + ", executed="
+          + executed + ", dropped=" + dropped + ", coalesced=" + coalesced + "]";
+    }
+  }
+
+  private static class KeyedTask {
+
+    private final String coalescingKey;
+    private final Runnable task;
+
+    KeyedTask(String coalescingKey, Runnable task) {
+      this.coalescingKey = coalescingKey;
+      this.task = task;
+    }
+  }
+
+  private class KeyQueue implements Runnable {
+
+    private final String key;
+    private final ArrayDeque<KeyedTask> tasks = new ArrayDeque<>();
+    private boolean scheduled;
+    private int maxSize;
+    private long executed;
+    private long dropped;
+    private long coalesced;
+
+    KeyQueue(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public void run() {
+      runNext(this);
+    }
+
+    boolean removeCoalesced(String coalescingKey) {
+      if (coalescingKey != null) {
+        Iterator<KeyedTask> it = tasks.descendingIterator();
+        while (it.hasNext()) {
+          KeyedTask pending = it.next();
+          if (coalescingKey.equals(pending.coalescingKey)) {
+            it.remove();
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    QueueStats getStats() {
+      return new QueueStats(key, tasks.size(), maxSize, executed, dropped, coalesced);
+    }
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(KeyedOrderedExecutor.class);
+
+  private final String name;
+  private final ExecutorService executor;
+  private final int queueCapacity;
+  private final OverflowPolicy overflowPolicy;
+  private final long blockTimeoutMillis;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+  private final Map<String, KeyQueue> queues = new HashMap<>();
+
+  private final AtomicLong executedTasks = new AtomicLong();
+  private final AtomicLong droppedTasks = new AtomicLong();
+  private final AtomicLong coalescedTasks = new AtomicLong();
+  private final AtomicLong blockTimeouts = new AtomicLong();
+  private volatile int maxQueueSize;
+
+  public KeyedOrderedExecutor(String name, int numThreads, int queueCapacity,
+      OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+
+    if (numThreads <= 0) {
+      throw new IllegalArgumentException("The number of threads must be positive");
+    }
+
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("The queue capacity must be positive");
+    }
+
+    this.name = name;
+    this.executor = Executors.newFixedThreadPool(numThreads, ThreadFactoryCreator.create(name));
+    this.queueCapacity = queueCapacity;
+    this.overflowPolicy = overflowPolicy;
+    this.blockTimeoutMillis = blockTimeoutMillis;
+  }
+
+  public void execute(String key, Runnable task) {
+    execute(key, null, task);
+  }
+
+  /**
+   * Enqueues a task to be executed after all the pending tasks with the same key.
+   *
+   * @param key
+   *          the ordering key of the task
+   * @param coalescingKey
+   *          tasks with the same key and coalescing key can be merged when the queue overflows
+   *          with {@link OverflowPolicy#COALESCE}. Can be null
+   * @param task
+   *          the task to execute
+   */
+  public void execute(String key, String coalescingKey, Runnable task) {
+
+    KeyQueue queue;
+    boolean schedule = false;
+
+    lock.lock();
+    try {
+
+      queue = getOrCreateQueue(key);
+
+      if (queue.tasks.size() >= queueCapacity) {
+
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+
+          queue = awaitNotFull(key);
+
+        } else if (overflowPolicy == OverflowPolicy.COALESCE
+            && queue.removeCoalesced(coalescingKey)) {
+
+          queue.coalesced++;
+          coalescedTasks.incrementAndGet();
+
+        } else {
+
+          queue.tasks.poll();
+          queue.dropped++;
+          droppedTasks.incrementAndGet();
+          log.debug("{} Queue for key {} is full. Dropping oldest task", name, key);
+        }
+      }
+
+      queue.tasks.add(new KeyedTask(coalescingKey, task));
+
+      int size = queue.tasks.size();
+      if (size > queue.maxSize) {
+        queue.maxSize = size;
+        if (size > maxQueueSize) {
+          maxQueueSize = size;
+        }
+      }
+
+      if (!queue.scheduled) {
+        queue.scheduled = true;
+        schedule = true;
+      }
+
+    } finally {
+      lock.unlock();
+    }
+
+    if (schedule) {
+      schedule(queue);
+    }
+  }
+
+  private KeyQueue getOrCreateQueue(String key) {
+    KeyQueue queue = queues.get(key);
+    if (queue == null) {
+      queue = new KeyQueue(key);
+      queues.put(key, queue);
+    }
+    return queue;
+  }
+
+  private KeyQueue awaitNotFull(String key) {
+
+    KeyQueue queue = getOrCreateQueue(key);
+    long remainingNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+
+    try {
+      while (queue.tasks.size() >= queueCapacity && remainingNanos > 0) {
+        remainingNanos = notFull.awaitNanos(remainingNanos);
+        // The queue could have been drained and removed while waiting
+        queue = getOrCreateQueue(key);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (queue.tasks.size() >= queueCapacity) {
+      blockTimeouts.incrementAndGet();
+      log.warn("{} Queue for key {} is still full after {} millis. Enqueuing task anyway", name,
+          key, blockTimeoutMillis);
+    }
+
+    return queue;
+  }
+
+  private void schedule(KeyQueue queue) {
+    try {
+      executor.execute(queue);
+    } catch (RejectedExecutionException e) {
+      log.debug("{} Executor is shut down. Discarding tasks for key {}", name, queue.key);
+      lock.lock();
+      try {
+        queue.tasks.clear();
+        queue.scheduled = false;
+        queues.remove(queue.key);
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void runNext(KeyQueue queue) {
+
+    KeyedTask task;
+
+    lock.lock();
+    try {
+      task = queue.tasks.poll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+
+    if (task != null) {
+      try {
+        task.task.run();
+      } catch (Throwable t) {
+        log.warn("{} Exception executing task for key {}", name, queue.key, t);
+      }
+    }
+
+    boolean reschedule = false;
+
+    lock.lock();
+    try {
+
+      // The task is null when the pending tasks were discarded on shutdown
+      if (task != null) {
+        queue.executed++;
+        executedTasks.incrementAndGet();
+      }
+
+      if (queue.tasks.isEmpty()) {
+        queue.scheduled = false;
+        queues.remove(queue.key);
+      } else {
+        reschedule = true;
+      }
+
+    } finally {
+      lock.unlock();
+    }
+
+    // Tasks of other keys can run before the next task of this key. This avoids a key with a lot
+    // of tasks starving the rest of them.
+    if (reschedule) {
+      schedule(queue);
+    }
+  }
+
+  public int getQueueSize(String key) {
+    lock.lock();
+    try {
+      KeyQueue queue = queues.get(key);
+      return queue != null ? queue.tasks.size() : 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the stats of the queues with pending tasks. Queues are discarded when they become
+   * empty, so their stats only cover the time they have had pending tasks.
+   */
+  public List<QueueStats> getQueueStats() {
+    lock.lock();
+    try {
+      List<QueueStats> stats = new ArrayList<>(queues.size());
+      for (KeyQueue queue : queues.values()) {
+        stats.add(queue.getStats());
+      }
+      return stats;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getExecutedTasks() {
+    return executedTasks.get();
+  }
+
+  public long getDroppedTasks() {
+    return droppedTasks.get();
+  }
+
+  public long getCoalescedTasks() {
+    return coalescedTasks.get();
+  }
+
+  public long getBlockTimeouts() {
+    return blockTimeouts.get();
+  }
+
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public boolean isShutdown() {
+    return executor.isShutdown();
+  }
+
+  /**
+   * Stops accepting tasks. Pending tasks are discarded and running tasks are allowed to finish.
+   */
+  public void shutdown() {
+
+    executor.shutdown();
+
+    lock.lock();
+    try {
+      // Queues already submitted to the executor are still drained, so their tasks are removed
+      // to prevent them from running
+      for (KeyQueue queue : queues.values()) {
+        queue.tasks.clear();
+      }
+      queues.clear();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
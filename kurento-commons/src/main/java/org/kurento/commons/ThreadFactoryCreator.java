@@ -16,18 +16,56 @@
  */
 package org.kurento.commons;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Creates the threads and thread pools used in Kurento. If virtual threads are enabled (see
+ * {@link VirtualThreads}), threads are virtual and cached pools are replaced by executors that
+ * start a new virtual thread per task.
+ */
 public class ThreadFactoryCreator {
 
   private static final AtomicLong numExecutor = new AtomicLong(0);
 
   public static ThreadFactory create(String name) {
-    return new ThreadFactoryBuilder()
-        .setNameFormat(name + "-e" + numExecutor.incrementAndGet() + "-t%d").build();
+
+    String namePrefix = name + "-e" + numExecutor.incrementAndGet() + "-t";
+
+    if (VirtualThreads.isEnabled()) {
+      return VirtualThreads.newThreadFactory(namePrefix);
+    }
+
+    return new ThreadFactoryBuilder().setNameFormat(namePrefix + "%d").build();
+  }
+
+  /**
+   * Creates a pool that starts threads on demand and reuses the idle ones, or an executor that
+   * starts a new virtual thread per task if virtual threads are enabled.
+   */
+  public static ExecutorService newCachedThreadPool(String name) {
+
+    if (VirtualThreads.isEnabled()) {
+      return VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    return Executors.newCachedThreadPool(create(name));
+  }
+
+  /**
+   * Creates a new thread, that is not started. It is a virtual thread if they are enabled.
+   */
+  public static Thread newThread(String name, Runnable task) {
+
+    if (VirtualThreads.isEnabled()) {
+      return VirtualThreads.newThreadFactory(name).newThread(task);
+    }
+
+    return new Thread(task, name);
   }
 
 }
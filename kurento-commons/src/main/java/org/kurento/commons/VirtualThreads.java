@@ -0,0 +1,131 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Access to the virtual threads of Java 21 and later. They are looked up by reflection, so the
+ * code keeps compiling and running on older runtimes, where virtual threads are reported as not
+ * supported.
+ *
+ * <p>
+ * Virtual threads are used by {@link ThreadFactoryCreator} when the property
+ * {@code kurento.virtualThreads} is true and the runtime supports them.
+ * </p>
+ */
+public class VirtualThreads {
+
+  private static final Logger log = LoggerFactory.getLogger(VirtualThreads.class);
+
+  public static final String ENABLED_PROPERTY = "kurento.virtualThreads";
+
+  private static final Method newVirtualThreadPerTaskExecutor;
+  private static final Method ofVirtual;
+  private static final Method builderName;
+  private static final Method builderFactory;
+
+  private static final boolean enabled;
+
+  static {
+
+    Method perTaskExecutor = null;
+    Method ofVirtualMethod = null;
+    Method nameMethod = null;
+    Method factoryMethod = null;
+
+    try {
+      perTaskExecutor =
+          java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+      nameMethod = Class.forName("java.lang.Thread$Builder$OfVirtual").getMethod("name",
+          String.class, long.class);
+      factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+    } catch (Exception e) {
+      perTaskExecutor = null;
+    }
+
+    newVirtualThreadPerTaskExecutor = perTaskExecutor;
+    ofVirtual = ofVirtualMethod;
+    builderName = nameMethod;
+    builderFactory = factoryMethod;
+
+    boolean requested = PropertiesManager.getProperty(ENABLED_PROPERTY, false);
+    if (requested && !isSupported()) {
+      log.warn("Virtual threads requested with property {} but they are not supported by this "
+          + "runtime ({}). Using platform threads", ENABLED_PROPERTY,
+          System.getProperty("java.version"));
+    }
+
+    enabled = requested && isSupported();
+  }
+
+  private VirtualThreads() {
+  }
+
+  public static boolean isSupported() {
+    return newVirtualThreadPerTaskExecutor != null;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for each task.
+   *
+   * @throws UnsupportedOperationException
+   *           if the runtime doesn't support virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    checkSupported();
+    try {
+      return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+    } catch (Exception e) {
+      throw new UnsupportedOperationException("Exception creating virtual thread executor", e);
+    }
+  }
+
+  /**
+   * Creates a factory of virtual threads named with the given prefix followed by a counter.
+   *
+   * @throws UnsupportedOperationException
+   *           if the runtime doesn't support virtual threads
+   */
+  public static ThreadFactory newThreadFactory(String namePrefix) {
+    checkSupported();
+    try {
+      Object builder = builderName.invoke(ofVirtual.invoke(null), namePrefix, 0L);
+      return (ThreadFactory) builderFactory.invoke(builder);
+    } catch (Exception e) {
+      throw new UnsupportedOperationException("Exception creating virtual thread factory", e);
+    }
+  }
+
+  private static void checkSupported() {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException(
+          "Virtual threads are not supported in Java " + System.getProperty("java.version"));
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.kurento.commons.DecayingHistogram;
+
+public class DecayingHistogramTest {
+
+  @Test
+  public void testPercentiles() {
+
+    DecayingHistogram histogram = new DecayingHistogram();
+
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(1000, histogram.getCount(), 0);
+    assertEquals(500.5, histogram.getMean(), 0.001);
+    assertEquals(1000, histogram.getMax());
+
+    assertWithinError(500, histogram.getPercentile(50));
+    assertWithinError(900, histogram.getPercentile(90));
+    assertWithinError(990, histogram.getPercentile(99));
+    assertEquals(1000, histogram.getPercentile(100));
+  }
+
+  @Test
+  public void testSmallAndHugeValues() {
+
+    DecayingHistogram histogram = new DecayingHistogram();
+
+    histogram.record(-1);
+    histogram.record(3);
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(3, histogram.getCount(), 0);
+    assertEquals(0, histogram.getPercentile(0));
+    assertEquals(3, histogram.getPercentile(60));
+    assertEquals(Long.MAX_VALUE, histogram.getMax());
+  }
+
+  @Test
+  public void testReset() {
+
+    DecayingHistogram histogram = new DecayingHistogram();
+    histogram.record(100);
+    histogram.reset();
+
+    assertEquals(0, histogram.getCount(), 0);
+    assertEquals(0, histogram.getPercentile(50));
+    assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  public void testConcurrentRecording() throws InterruptedException {
+
+    final DecayingHistogram histogram = new DecayingHistogram();
+    final int threads = 4;
+    final int samples = 100000;
+    final CountDownLatch done = new CountDownLatch(threads);
+
+    for (int t = 0; t < threads; t++) {
+      new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < samples; i++) {
+            histogram.record(i % 1000);
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+
+    done.await();
+
+    assertEquals(threads * samples, histogram.getCount(), 0);
+    assertEquals(999, histogram.getMax());
+  }
+
+  @Test
+  public void testSamplesDontDecayWithoutHalfLife() {
+
+    DecayingHistogram histogram = new DecayingHistogram();
+    histogram.record(100);
+
+    assertEquals(0, histogram.getHalfLifeMillis());
+    assertEquals(1, histogram.getCount(), 0);
+  }
+
+  private static void assertWithinError(long expected, long actual) {
+    assertTrue("Expected " + expected + " but was " + actual,
+        Math.abs(actual - expected) <= expected * 0.2);
+  }
+}
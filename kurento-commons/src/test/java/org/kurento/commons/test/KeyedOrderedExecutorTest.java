@@ -0,0 +1,208 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.commons.KeyedOrderedExecutor;
+import org.kurento.commons.KeyedOrderedExecutor.OverflowPolicy;
+
+public class KeyedOrderedExecutorTest {
+
+  private KeyedOrderedExecutor executor;
+
+  @After
+  public void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testTasksWithSameKeyAreExecutedInOrder() throws InterruptedException {
+
+    executor = new KeyedOrderedExecutor("test", 4, 10000, OverflowPolicy.BLOCK, 1000);
+
+    final int numKeys = 8;
+    final int numTasks = 1000;
+
+    final List<List<Integer>> executed = new ArrayList<>();
+    for (int i = 0; i < numKeys; i++) {
+      executed.add(Collections.synchronizedList(new ArrayList<Integer>()));
+    }
+
+    final CountDownLatch latch = new CountDownLatch(numKeys * numTasks);
+
+    for (int i = 0; i < numTasks; i++) {
+      for (int k = 0; k < numKeys; k++) {
+        final int task = i;
+        final List<Integer> keyExecuted = executed.get(k);
+        executor.execute("key" + k, new Runnable() {
+          @Override
+          public void run() {
+            keyExecuted.add(task);
+            latch.countDown();
+          }
+        });
+      }
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+    for (List<Integer> keyExecuted : executed) {
+      assertEquals(numTasks, keyExecuted.size());
+      for (int i = 0; i < numTasks; i++) {
+        assertEquals(i, (int) keyExecuted.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testDropOldest() throws InterruptedException {
+
+    executor = new KeyedOrderedExecutor("test", 1, 2, OverflowPolicy.DROP_OLDEST, 0);
+
+    CountDownLatch blocker = blockKey("key");
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(2);
+
+    executor.execute("key", recordTask(executed, "t1", latch));
+    executor.execute("key", recordTask(executed, "t2", latch));
+    executor.execute("key", recordTask(executed, "t3", latch));
+
+    assertEquals(2, executor.getQueueSize("key"));
+    assertEquals(1, executor.getDroppedTasks());
+
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("t2", "t3"), executed);
+  }
+
+  @Test
+  public void testCoalesce() throws InterruptedException {
+
+    executor = new KeyedOrderedExecutor("test", 1, 2, OverflowPolicy.COALESCE, 0);
+
+    CountDownLatch blocker = blockKey("key");
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(2);
+
+    executor.execute("key", "typeA", recordTask(executed, "a1", latch));
+    executor.execute("key", "typeB", recordTask(executed, "b1", latch));
+    executor.execute("key", "typeA", recordTask(executed, "a2", latch));
+
+    assertEquals(2, executor.getQueueSize("key"));
+    assertEquals(1, executor.getCoalescedTasks());
+    assertEquals(0, executor.getDroppedTasks());
+
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("b1", "a2"), executed);
+  }
+
+  @Test
+  public void testShutdownDiscardsPendingTasks() throws InterruptedException {
+
+    executor = new KeyedOrderedExecutor("test", 1, 10, OverflowPolicy.BLOCK, 0);
+
+    CountDownLatch blocker = blockKey("key");
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(1);
+
+    executor.execute("key", recordTask(executed, "t1", latch));
+    executor.execute("key", recordTask(executed, "t2", latch));
+
+    executor.shutdown();
+    blocker.countDown();
+
+    assertFalse(latch.await(500, TimeUnit.MILLISECONDS));
+    assertTrue(executed.isEmpty());
+    assertEquals(0, executor.getQueueSize("key"));
+  }
+
+  @Test
+  public void testBlockTimeout() throws InterruptedException {
+
+    executor = new KeyedOrderedExecutor("test", 1, 1, OverflowPolicy.BLOCK, 100);
+
+    CountDownLatch blocker = blockKey("key");
+
+    List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch latch = new CountDownLatch(2);
+
+    executor.execute("key", recordTask(executed, "t1", latch));
+    executor.execute("key", recordTask(executed, "t2", latch));
+
+    assertEquals(2, executor.getQueueSize("key"));
+    assertEquals(1, executor.getBlockTimeouts());
+
+    blocker.countDown();
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("t1", "t2"), executed);
+  }
+
+  private CountDownLatch blockKey(String key) throws InterruptedException {
+
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch blocker = new CountDownLatch(1);
+
+    executor.execute(key, new Runnable() {
+      @Override
+      public void run() {
+        running.countDown();
+        try {
+          blocker.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    return blocker;
+  }
+
+  private Runnable recordTask(final List<String> executed, final String name,
+      final CountDownLatch latch) {
+    return new Runnable() {
+      @Override
+      public void run() {
+        executed.add(name);
+        latch.countDown();
+      }
+    };
+  }
+}
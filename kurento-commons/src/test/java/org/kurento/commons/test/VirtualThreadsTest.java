@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.commons.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.commons.VirtualThreads;
+
+public class VirtualThreadsTest {
+
+  @Test
+  public void testCachedThreadPool() throws Exception {
+
+    ExecutorService executor = ThreadFactoryCreator.newCachedThreadPool("test");
+
+    try {
+      Future<String> name = executor.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          return Thread.currentThread().getName();
+        }
+      });
+
+      assertTrue(VirtualThreads.isEnabled() || name.get(1, TimeUnit.SECONDS).startsWith("test-"));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testNewThreadIsNotStarted() {
+
+    Thread thread = ThreadFactoryCreator.newThread("test-thread", new Runnable() {
+      @Override
+      public void run() {
+      }
+    });
+
+    assertEquals("test-thread", thread.getName());
+    assertFalse(thread.isAlive());
+  }
+
+  @Test
+  public void testUnsupportedRuntime() {
+
+    if (VirtualThreads.isSupported()) {
+      return;
+    }
+
+    assertFalse(VirtualThreads.isEnabled());
+
+    try {
+      VirtualThreads.newVirtualThreadPerTaskExecutor();
+      fail("UnsupportedOperationException expected");
+    } catch (UnsupportedOperationException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+/**
+ * Gives the tests access to the connection shared by multiplexed clients.
+ */
+public class MultiplexedConnections {
+
+  private MultiplexedConnections() {
+  }
+
+  /**
+   * Returns the number of clients registered in the connection of the client, or 0 if the client
+   * is not using a shared connection.
+   */
+  public static int getNumClients(JsonRpcClientMultiplexedWebSocket client) {
+    MultiplexedWebSocketConnection connection = client.getConnection();
+    return connection != null ? connection.getNumClients() : 0;
+  }
+
+  /**
+   * Closes the WebSocket of the connection of the client, as if the network connection was lost.
+   */
+  public static void closeWebSocket(JsonRpcClientMultiplexedWebSocket client) {
+    client.getConnection().closeWebSocket();
+  }
+}
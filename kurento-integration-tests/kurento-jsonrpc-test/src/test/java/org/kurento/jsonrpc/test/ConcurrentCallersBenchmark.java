@@ -0,0 +1,129 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.commons.VirtualThreads;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Measures the time needed to serve a large number of callers blocked in a synchronous
+ * {@code sendRequest} of a single WebSocket client. With virtual threads (property
+ * {@code kurento.virtualThreads} in Java 21+) it runs 50000 callers, and with platform threads it
+ * runs a smaller number by default (configurable with {@code test.concurrentCallers}). Run with
+ * the benchmark profile.
+ */
+public class ConcurrentCallersBenchmark extends JsonRpcConnectorBaseTest {
+
+  private static final Logger log = LoggerFactory.getLogger(ConcurrentCallersBenchmark.class);
+
+  private static final int RESPONSE_DELAY_MILLIS = 50;
+
+  public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+
+    @Override
+    public void handleRequest(final Transaction transaction, final Request<JsonObject> request)
+        throws Exception {
+
+      transaction.startAsync();
+
+      scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            transaction.sendResponse(request.getParams());
+          } catch (Exception e) {
+            log.error("Exception sending response", e);
+          }
+        }
+      }, RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Test
+  public void benchmarkBlockingCallers() throws Exception {
+
+    int numCallers = PropertiesManager.getProperty("test.concurrentCallers",
+        VirtualThreads.isEnabled() ? 50000 : 2000);
+
+    final JsonRpcClient client = createJsonRpcClient("/concurrent_callers");
+    ExecutorService callers = ThreadFactoryCreator.newCachedThreadPool("caller");
+
+    final JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    // Connect before measuring
+    client.sendRequest("echo", params);
+
+    final CountDownLatch done = new CountDownLatch(numCallers);
+    final AtomicInteger failures = new AtomicInteger();
+
+    long start = System.nanoTime();
+
+    for (int i = 0; i < numCallers; i++) {
+      callers.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            client.sendRequest("echo", params);
+          } catch (Exception e) {
+            log.warn("Exception in caller", e);
+            failures.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      });
+    }
+
+    done.await(5, TimeUnit.MINUTES);
+    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    callers.shutdown();
+    client.close();
+
+    log.info("{} blocking callers with {} threads served in {} ms ({} ms per response)",
+        numCallers, VirtualThreads.isEnabled() ? "virtual" : "platform", millis,
+        RESPONSE_DELAY_MILLIS);
+
+    assertEquals(0, done.getCount());
+    assertEquals(0, failures.get());
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientHttp;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+import com.google.gson.JsonElement;
+
+public class HttpServerRequestTest extends JsonRpcConnectorBaseTest {
+
+  public static class Handler extends DefaultJsonRpcHandler<JsonElement> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonElement> request)
+        throws Exception {
+
+      if ("reverse".equals(request.getMethod())) {
+        // Waits for the response of the client, sent while its next poll is held
+        transaction.sendResponse(transaction.getSession().sendRequest("reverse"));
+      } else {
+        transaction.sendResponse("started");
+      }
+    }
+  }
+
+  @Test
+  public void givenHttpClient_whenServerRequestIsRespondedLater_thenServerReceivesResponse()
+      throws IOException {
+
+    try (JsonRpcClientHttp client =
+        new JsonRpcClientHttp("http://localhost:" + getPort() + "/http_server_request")) {
+
+      client.setServerRequestHandler(new DefaultJsonRpcHandler<JsonElement>() {
+        @Override
+        public void handleRequest(final Transaction transaction, Request<JsonElement> request)
+            throws Exception {
+
+          transaction.startAsync();
+
+          // Responded after the next poll has been sent
+          new Thread() {
+            @Override
+            public void run() {
+              try {
+                Thread.sleep(1000);
+                transaction.sendResponse("reversed");
+              } catch (Exception e) {
+              }
+            }
+          }.start();
+        }
+      });
+
+      // Starts the long polling
+      assertThat(client.sendRequest("start", String.class)).isEqualTo("started");
+
+      assertThat(client.sendRequest("reverse", JsonElement.class).toString()).contains("reversed");
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClientMultiplexedWebSocket;
+import org.kurento.jsonrpc.client.MultiplexedConnections;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+
+public class MultiplexedWebSocketTest extends JsonRpcConnectorBaseTest {
+
+  private static final int NUM_CLIENTS = 3;
+
+  public static class Handler extends DefaultJsonRpcHandler<String> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<String> request) throws Exception {
+
+      Session session = transaction.getSession();
+
+      if ("webSocketId".equals(request.getMethod())) {
+        // The transport id of a multiplexed session is the WebSocket id followed by the channel
+        String transportId = ((ServerSession) session).getTransportId();
+        transaction.sendResponse(transportId.substring(0, transportId.indexOf('#')));
+      } else if (session.isNew()) {
+        transaction.sendResponse("new");
+      } else {
+        transaction.sendResponse("old");
+      }
+    }
+
+    @Override
+    public void afterConnectionEstablished(Session session) throws Exception {
+      session.setReconnectionTimeout(5000);
+    }
+  }
+
+  @Test
+  public void givenMultiplexedClients_whenRequestsAreSent_thenEachClientKeepsItsOwnSession()
+      throws IOException {
+
+    JsonRpcClientMultiplexedWebSocket[] clients = createClients();
+    try {
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("new");
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("old");
+        assertThat(client.isMultiplexed()).isTrue();
+      }
+
+      assertSingleWebSocket(clients);
+
+    } finally {
+      closeClients(clients);
+    }
+  }
+
+  @Test
+  public void givenMultiplexedClients_whenOneClientIsReconnected_thenItRejoinsTheSharedConnection()
+      throws IOException, InterruptedException {
+
+    JsonRpcClientMultiplexedWebSocket[] clients = createClients();
+    try {
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("new");
+      }
+
+      String webSocketId = assertSingleWebSocket(clients);
+
+      clients[0].closeNativeClient();
+
+      // Wait for reconnection
+      Thread.sleep(100);
+
+      assertThat(clients[0].sendRequest("sessiontest", String.class)).isEqualTo("old");
+      assertThat(clients[0].isMultiplexed()).isTrue();
+      assertThat(clients[1].sendRequest("sessiontest", String.class)).isEqualTo("old");
+
+      assertThat(assertSingleWebSocket(clients)).isEqualTo(webSocketId);
+
+    } finally {
+      closeClients(clients);
+    }
+  }
+
+  @Test
+  public void givenMultiplexedClients_whenSharedConnectionIsClosed_thenClientsReconnectMultiplexed()
+      throws IOException, InterruptedException {
+
+    JsonRpcClientMultiplexedWebSocket[] clients = createClients();
+    try {
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("new");
+      }
+
+      // Unregistering the last client closes the physical connection
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        client.closeNativeClient();
+      }
+
+      // Wait for reconnection
+      Thread.sleep(100);
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("old");
+        assertThat(client.isMultiplexed()).isTrue();
+      }
+
+      assertSingleWebSocket(clients);
+
+    } finally {
+      closeClients(clients);
+    }
+  }
+
+  @Test
+  public void givenMultiplexedClients_whenSharedConnectionIsLost_thenAllClientsReconnectToANewOne()
+      throws IOException, InterruptedException {
+
+    JsonRpcClientMultiplexedWebSocket[] clients = createClients();
+    try {
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("new");
+      }
+
+      String webSocketId = assertSingleWebSocket(clients);
+
+      // The clients are not unregistered, they are notified of the disconnection by the connection
+      MultiplexedConnections.closeWebSocket(clients[0]);
+
+      // Wait for reconnection
+      Thread.sleep(1000);
+
+      for (JsonRpcClientMultiplexedWebSocket client : clients) {
+        assertThat(client.sendRequest("sessiontest", String.class)).isEqualTo("old");
+        assertThat(client.isMultiplexed()).isTrue();
+      }
+
+      assertThat(assertSingleWebSocket(clients)).isNotEqualTo(webSocketId);
+
+    } finally {
+      closeClients(clients);
+    }
+  }
+
+  /**
+   * Checks that all the clients are registered in the same connection, and that the server
+   * receives their sessions in the same WebSocket.
+   *
+   * @return the id of the WebSocket in the server
+   */
+  private String assertSingleWebSocket(JsonRpcClientMultiplexedWebSocket[] clients)
+      throws IOException {
+
+    String webSocketId = null;
+
+    for (JsonRpcClientMultiplexedWebSocket client : clients) {
+
+      assertThat(MultiplexedConnections.getNumClients(client)).isEqualTo(NUM_CLIENTS);
+
+      String clientWebSocketId = client.sendRequest("webSocketId", String.class);
+      if (webSocketId == null) {
+        webSocketId = clientWebSocketId;
+      } else {
+        assertThat(clientWebSocketId).isEqualTo(webSocketId);
+      }
+    }
+
+    return webSocketId;
+  }
+
+  private JsonRpcClientMultiplexedWebSocket[] createClients() {
+    JsonRpcClientMultiplexedWebSocket[] clients =
+        new JsonRpcClientMultiplexedWebSocket[NUM_CLIENTS];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] =
+          new JsonRpcClientMultiplexedWebSocket("ws://localhost:" + getPort() + "/multiplexed");
+    }
+    return clients;
+  }
+
+  private void closeClients(JsonRpcClientMultiplexedWebSocket[] clients) throws IOException {
+    for (JsonRpcClientMultiplexedWebSocket client : clients) {
+      client.close();
+    }
+  }
+}
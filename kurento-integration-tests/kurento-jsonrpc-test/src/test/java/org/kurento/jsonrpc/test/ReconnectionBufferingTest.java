@@ -0,0 +1,149 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Session;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
+import org.kurento.jsonrpc.client.JsonRpcClientWebSocket;
+import org.kurento.jsonrpc.client.JsonRpcWSConnectionAdapter;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.test.base.JsonRpcConnectorBaseTest;
+import org.kurento.jsonrpc.test.util.EventWaiter;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class ReconnectionBufferingTest extends JsonRpcConnectorBaseTest {
+
+  private static final int NUM_REQUESTS = 10;
+
+  public static class Handler extends DefaultJsonRpcHandler<JsonObject> {
+
+    private final Set<String> lostResponseSessions =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      Session session = transaction.getSession();
+
+      if ("lose".equals(request.getMethod())) {
+        if (lostResponseSessions.add(session.getSessionId())) {
+          // The connection is lost before sending the response
+          ((ServerSession) session).closeNativeSession("Response lost");
+        } else {
+          transaction.sendResponse("replayed");
+        }
+      } else {
+        transaction.sendResponse(request.getParams().get("index").getAsInt());
+      }
+    }
+
+    @Override
+    public void afterConnectionEstablished(Session session) throws Exception {
+      session.setReconnectionTimeout(5000);
+    }
+  }
+
+  @Test
+  public void givenReplayableMethod_whenResponseIsLost_thenRequestIsReplayedAfterReconnecting()
+      throws IOException {
+
+    try (JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+        "ws://localhost:" + getPort() + "/reconnection_buffering")) {
+
+      client.setReplayableMethods("lose");
+
+      assertThat(client.sendRequest("lose", String.class)).isEqualTo("replayed");
+    }
+  }
+
+  @Test
+  public void givenReconnectingClient_whenRequestsAreSent_thenTheyAreSentInOrderAfterReconnecting()
+      throws IOException, InterruptedException {
+
+    final EventWaiter reconnecting = new EventWaiter("reconnecting");
+
+    JsonRpcWSConnectionAdapter listener = new JsonRpcWSConnectionAdapter() {
+      @Override
+      public void reconnecting() {
+        reconnecting.eventReceived();
+      }
+    };
+
+    try (JsonRpcClientWebSocket client = new JsonRpcClientWebSocket(
+        "ws://localhost:" + getPort() + "/reconnection_buffering", listener)) {
+
+      JsonObject params = new JsonObject();
+      params.addProperty("index", -1);
+      assertThat(client.sendRequest("index", params, Integer.class)).isEqualTo(-1);
+
+      client.closeNativeClient();
+
+      reconnecting.waitFor(3000);
+
+      final List<Integer> responses = Collections.synchronizedList(new ArrayList<Integer>());
+      final CountDownLatch responsesLatch = new CountDownLatch(NUM_REQUESTS);
+
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+        params = new JsonObject();
+        params.addProperty("index", i);
+        client.sendRequest("index", params, new Continuation<JsonElement>() {
+          @Override
+          public void onSuccess(JsonElement result) {
+            responses.add(result.getAsInt());
+            responsesLatch.countDown();
+          }
+
+          @Override
+          public void onError(Throwable cause) {
+            responsesLatch.countDown();
+          }
+        });
+      }
+
+      assertThat(responsesLatch.await(10, TimeUnit.SECONDS)).isTrue();
+
+      List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < NUM_REQUESTS; i++) {
+        expected.add(i);
+      }
+
+      assertThat(responses).containsOnlyElementsOf(expected).hasSize(NUM_REQUESTS);
+      assertThat(client.sendRequest("index", params, Integer.class))
+          .isEqualTo(NUM_REQUESTS - 1);
+    }
+  }
+}
@@ -24,12 +24,16 @@ import org.kurento.jsonrpc.test.AsyncServerTest;
 import org.kurento.jsonrpc.test.BidirectionalMultiTest;
 import org.kurento.jsonrpc.test.BidirectionalTest;
 import org.kurento.jsonrpc.test.CloseSessionTest;
+import org.kurento.jsonrpc.test.ConcurrentCallersBenchmark;
 import org.kurento.jsonrpc.test.ErrorServerTest;
+import org.kurento.jsonrpc.test.HttpServerRequestTest;
 import org.kurento.jsonrpc.test.LargePackageTest;
 import org.kurento.jsonrpc.test.MultipleSessionsTest;
+import org.kurento.jsonrpc.test.MultiplexedWebSocketTest;
 import org.kurento.jsonrpc.test.NewSessionTest;
 import org.kurento.jsonrpc.test.NotificationTest;
 import org.kurento.jsonrpc.test.PingPongTest;
+import org.kurento.jsonrpc.test.ReconnectionBufferingTest;
 import org.kurento.jsonrpc.test.ReconnectionFromServerTest;
 import org.kurento.jsonrpc.test.ReconnectionTest;
 import org.kurento.jsonrpc.test.ServerEventsTest;
@@ -76,10 +80,18 @@ public class BootTestApplication implements JsonRpcConfigurer {
 
     registry.addHandler(new ReconnectionFromServerTest.Handler(), "/reconnection2");
 
+    registry.addHandler(new ReconnectionBufferingTest.Handler(), "/reconnection_buffering");
+
+    registry.addHandler(new MultiplexedWebSocketTest.Handler(), "/multiplexed");
+
+    registry.addHandler(new HttpServerRequestTest.Handler(), "/http_server_request");
+
     registry.addHandler(new LargePackageTest.Handler(), "/largepackage");
 
     registry.addHandler(new NotificationTest.Handler(), "/notification");
 
+    registry.addHandler(new ConcurrentCallersBenchmark.Handler(), "/concurrent_callers");
+
   }
 
   @Bean
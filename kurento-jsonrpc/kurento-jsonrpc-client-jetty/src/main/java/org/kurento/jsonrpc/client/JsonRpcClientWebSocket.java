@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.websocket.api.Session;
@@ -61,6 +62,7 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
 
   protected volatile Session jettyWsSession;
   protected volatile WebSocketClient jettyClient;
+  private final ReentrantLock sendLock = new ReentrantLock();
 
   public JsonRpcClientWebSocket(String url) {
     this(url, null, new SslContextFactory());
@@ -88,8 +90,11 @@ public class JsonRpcClientWebSocket extends AbstractJsonRpcClientWebSocket {
           label + " JsonRpcClient is disconnected from WebSocket server at '" + this.uri + "'");
     }
 
-    synchronized (jettyWsSession) {
+    sendLock.lock();
+    try {
       jettyWsSession.getRemote().sendString(jsonMessage);
+    } finally {
+      sendLock.unlock();
     }
   }
 
@@ -0,0 +1,80 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc;
+
+import java.lang.reflect.Type;
+
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+
+/**
+ * Default {@link JsonCodec}, based on Gson.
+ */
+public class GsonJsonCodec implements JsonCodec {
+
+  public static final String NAME = "gson";
+
+  private final Gson gson;
+
+  public GsonJsonCodec() {
+    GsonBuilder builder = new GsonBuilder();
+    builder.registerTypeAdapter(Request.class, new JsonRpcRequestDeserializer());
+    builder.registerTypeAdapter(Response.class, new JsonRpcResponseDeserializer());
+    builder.registerTypeAdapter(Props.class, new JsonPropsAdapter());
+    builder.disableHtmlEscaping();
+    this.gson = builder.create();
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  public Gson getGson() {
+    return gson;
+  }
+
+  @Override
+  public String toJson(Object src) {
+    return gson.toJson(src);
+  }
+
+  @Override
+  public String toJson(Object src, Type type) {
+    return gson.toJson(src, type);
+  }
+
+  @Override
+  public JsonElement toJsonTree(Object src) {
+    return gson.toJsonTree(src);
+  }
+
+  @Override
+  public <T> T fromJson(String json, Type type) {
+    return gson.fromJson(json, type);
+  }
+
+  @Override
+  public <T> T fromJson(JsonElement json, Type type) {
+    return gson.fromJson(json, type);
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc;
+
+import java.lang.reflect.Type;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Converts between Java objects, JSON text and JSON trees. All the JSON conversions done by
+ * {@link JsonUtils} (JSON-RPC message envelopes, params and result binding and {@link Props}) are
+ * delegated to a codec, so a faster JSON library can be plugged in without changes in the rest of
+ * the code.
+ *
+ * <p>
+ * The JSON tree model is always Gson's {@link JsonElement}, because it is used in the public API
+ * of messages and handlers. Implementations have to support, with the same JSON representation as
+ * {@link GsonJsonCodec}:
+ * </p>
+ * <ul>
+ * <li>{@link org.kurento.jsonrpc.message.Request} and
+ * {@link org.kurento.jsonrpc.message.Response} parameterized with the params or result type.</li>
+ * <li>{@link Props}, as a plain JSON object.</li>
+ * <li>{@link JsonElement} and its subclasses.</li>
+ * <li>Plain Java objects, binding their fields as Gson does.</li>
+ * </ul>
+ *
+ * <p>
+ * Malformed JSON or JSON that can't be bound to the requested type must be reported with
+ * {@link com.google.gson.JsonSyntaxException}. Codecs are discovered with
+ * {@link java.util.ServiceLoader}, see {@link JsonUtils#getCodec()}. Implementations must be
+ * thread safe.
+ * </p>
+ */
+public interface JsonCodec {
+
+  /**
+   * Name of the codec, used to select it with the property {@value JsonUtils#CODEC_PROPERTY}.
+   */
+  String getName();
+
+  String toJson(Object src);
+
+  String toJson(Object src, Type type);
+
+  JsonElement toJsonTree(Object src);
+
+  <T> T fromJson(String json, Type type);
+
+  <T> T fromJson(JsonElement json, Type type);
+}
@@ -31,8 +31,6 @@ import org.kurento.jsonrpc.message.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.thoughtworks.paranamer.AnnotationParanamer;
@@ -42,8 +40,6 @@ public class JsonRpcAndJavaMethodManager {
 
   private static final Logger log = LoggerFactory.getLogger(JsonRpcAndJavaMethodManager.class);
 
-  private static Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-
   private Paranamer paranamer = new AnnotationParanamer();
 
   public void executeMethod(Method m, Object object, Transaction transaction,
@@ -95,7 +91,7 @@ public class JsonRpcAndJavaMethodManager {
     if (result == null) {
       return null;
     } else {
-      return new Response<>(null, gson.toJsonTree(result));
+      return new Response<>(null, JsonUtils.toJsonElement(result));
     }
   }
 
@@ -184,7 +180,7 @@ public class JsonRpcAndJavaMethodManager {
     } else if (type == boolean.class) {
       return jsonElement.getAsBoolean();
     } else if (type.isEnum()) {
-      return gson.fromJson(jsonElement, type);
+      return JsonUtils.fromJson(jsonElement, type);
     } else if (type == int.class) {
       return jsonElement.getAsInt();
     } else {
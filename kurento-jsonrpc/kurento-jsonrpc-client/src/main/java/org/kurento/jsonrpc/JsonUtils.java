@@ -32,7 +32,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 
+import org.kurento.commons.PropertiesManager;
 import org.kurento.jsonrpc.internal.JsonRpcConstants;
 import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
@@ -42,7 +45,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
@@ -65,11 +67,16 @@ import com.google.gson.internal.$Gson$Types;
  */
 public class JsonUtils {
 
+  private static final Logger log = LoggerFactory.getLogger(JsonUtils.class);
+
   public static final boolean INJECT_SESSION_ID = true;
+
+  public static final String CODEC_PROPERTY = "jsonRpc.codec";
+
   /**
-   * Static instance of Gson object.
+   * Codec used for all the conversions. It is loaded lazily, see {@link #getCodec()}.
    */
-  private static Gson gson;
+  private static volatile JsonCodec codec;
 
   /**
    * Serialise Java object to JSON (as String).
@@ -79,12 +86,12 @@ public class JsonUtils {
    * @return Serialised JSON message (as String)
    */
   public static String toJson(Object obj) {
-    return getGson().toJson(obj);
+    return getCodec().toJson(obj);
   }
 
   public static JsonObject toJsonObject(Object obj) {
     // TODO Optimise this implementation if possible
-    return fromJson(getGson().toJson(obj), JsonObject.class);
+    return fromJson(getCodec().toJson(obj), JsonObject.class);
   }
 
   public static Message fromJsonMessage(String message) {
@@ -103,7 +110,7 @@ public class JsonUtils {
       return fromJsonRequestInject(fromJson(json, JsonObject.class), paramsClass);
     }
 
-    return getGson().fromJson(json,
+    return getCodec().fromJson(json,
         $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
   }
 
@@ -114,7 +121,7 @@ public class JsonUtils {
       return fromJsonResponseInject(fromJson(json, JsonObject.class), resultClass);
     }
     try {
-      return getGson().fromJson(json,
+      return getCodec().fromJson(json,
           $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, resultClass));
 
     } catch (JsonSyntaxException e) {
@@ -132,7 +139,7 @@ public class JsonUtils {
 
     }
 
-    return getGson().fromJson(json,
+    return getCodec().fromJson(json,
         $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
 
   }
@@ -145,7 +152,7 @@ public class JsonUtils {
       return fromJsonResponseInject(json, resultClass);
     }
 
-    return getGson().fromJson(json,
+    return getCodec().fromJson(json,
         $Gson$Types.newParameterizedTypeWithOwner(null, Response.class, resultClass));
 
   }
@@ -178,7 +185,7 @@ public class JsonUtils {
   private static <T> Request<T> fromJsonRequestInject(JsonObject jsonObject, Class<T> paramsClass) {
 
     String sessionId = extractSessionId(jsonObject, PARAMS_PROPERTY);
-    Request<T> request = getGson().fromJson(jsonObject,
+    Request<T> request = getCodec().fromJson(jsonObject,
         $Gson$Types.newParameterizedTypeWithOwner(null, Request.class, paramsClass));
 
     request.setSessionId(sessionId);
@@ -202,33 +209,35 @@ public class JsonUtils {
   }
 
   public static String toJson(Object obj, Type type) {
-    return getGson().toJson(obj, type);
+    return getCodec().toJson(obj, type);
   }
 
   public static <T> String toJsonRequest(Request<T> request) {
-    return getGson().toJson(request, $Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
-        getClassOrNull(request.getParams())));
+    return getCodec().toJson(request,
+        $Gson$Types.newParameterizedTypeWithOwner(null, Request.class,
+            getClassOrNull(request.getParams())));
   }
 
   public static <T> String toJsonResponse(Response<T> request) {
-    return getGson().toJson(request, $Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
-        getClassOrNull(request.getResult())));
+    return getCodec().toJson(request,
+        $Gson$Types.newParameterizedTypeWithOwner(null, Response.class,
+            getClassOrNull(request.getResult())));
   }
 
   public static <T> T fromJson(String json, Class<T> clazz) {
-    return getGson().fromJson(json, clazz);
+    return getCodec().fromJson(json, clazz);
   }
 
   public static <T> T fromJson(JsonElement json, Class<T> clazz) {
-    return getGson().fromJson(json, clazz);
+    return getCodec().fromJson(json, clazz);
   }
 
   public static <T> T fromJson(String json, Type type) {
-    return getGson().fromJson(json, type);
+    return getCodec().fromJson(json, type);
   }
 
   public static <T> T fromJson(JsonElement json, Type type) {
-    return getGson().fromJson(json, type);
+    return getCodec().fromJson(json, type);
   }
 
   private static Class<?> getClassOrNull(Object object) {
@@ -236,30 +245,95 @@ public class JsonUtils {
   }
 
   /**
-   * Gson object accessor (getter).
+   * Returns the codec used to convert between Java objects and JSON.
    *
-   * @return son object
+   * <p>
+   * Codecs are discovered with {@link ServiceLoader} (providers of {@link JsonCodec} listed in
+   * {@code META-INF/services/org.kurento.jsonrpc.JsonCodec}), but they are only used when selected
+   * by name or class name with the property {@value #CODEC_PROPERTY}, so adding a library with a
+   * codec to the classpath doesn't change the codec in use. {@link GsonJsonCodec} is used if the
+   * property is not set or no matching codec is found.
+   * </p>
+   *
+   * @return the codec
    */
-  public static Gson getGson() {
+  public static JsonCodec getCodec() {
 
-    if (gson == null) {
+    JsonCodec result = codec;
+    if (result == null) {
       synchronized (JsonUtils.class) {
-        if (gson == null) {
-          GsonBuilder builder = new GsonBuilder();
-          builder.registerTypeAdapter(Request.class, new JsonRpcRequestDeserializer());
+        result = codec;
+        if (result == null) {
+          result = loadCodec();
+          codec = result;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Sets the codec to be used from now on. A null value restores {@link GsonJsonCodec}.
+   *
+   * @param codec
+   *          the codec
+   */
+  public static void setCodec(JsonCodec codec) {
+    JsonUtils.codec = codec != null ? codec : new GsonJsonCodec();
+  }
 
-          builder.registerTypeAdapter(Response.class, new JsonRpcResponseDeserializer());
+  private static JsonCodec loadCodec() {
+    return loadCodec(PropertiesManager.getProperty(CODEC_PROPERTY));
+  }
+
+  static JsonCodec loadCodec(String codecName) {
+
+    if (codecName == null || codecName.isEmpty() || GsonJsonCodec.NAME.equals(codecName)
+        || GsonJsonCodec.class.getName().equals(codecName)) {
+      return new GsonJsonCodec();
+    }
 
-          builder.registerTypeAdapter(Props.class, new JsonPropsAdapter());
+    try {
 
-          builder.disableHtmlEscaping();
+      for (JsonCodec candidate : ServiceLoader.load(JsonCodec.class,
+          JsonUtils.class.getClassLoader())) {
 
-          gson = builder.create();
+        if (codecName.equals(candidate.getName())
+            || codecName.equals(candidate.getClass().getName())) {
+          log.info("Using JSON codec {}", candidate.getName());
+          return candidate;
         }
       }
+
+    } catch (ServiceConfigurationError e) {
+      log.warn("Exception loading JSON codecs. Using {} codec", GsonJsonCodec.NAME, e);
+      return new GsonJsonCodec();
+    }
+
+    log.warn("JSON codec {} not found. Using {} codec", codecName, GsonJsonCodec.NAME);
+    return new GsonJsonCodec();
+  }
+
+  /**
+   * Gson object accessor (getter). When the configured codec is not {@link GsonJsonCodec}, the
+   * returned Gson object is not the one used by {@link JsonUtils}; use the conversion methods of
+   * this class instead of this one to honour the configured codec.
+   *
+   * @return son object
+   */
+  public static Gson getGson() {
+
+    JsonCodec current = getCodec();
+    if (current instanceof GsonJsonCodec) {
+      return ((GsonJsonCodec) current).getGson();
     }
 
-    return gson;
+    return DefaultGsonHolder.GSON;
+  }
+
+  private static class DefaultGsonHolder {
+    static final Gson GSON = new GsonJsonCodec().getGson();
   }
 
   static boolean isIn(JsonObject jObject, String[] clues) {
@@ -274,34 +348,55 @@ public class JsonUtils {
   public static String toJsonMessage(Message message) {
 
     if (message.getSessionId() != null && INJECT_SESSION_ID) {
+      return toJsonObjectWithSessionId(message).toString();
+    }
 
-      JsonObject jsonObject = JsonUtils.toJsonObject(message);
+    return JsonUtils.toJson(message);
 
-      JsonObject objectToInjectSessionId;
-      if (message instanceof Request) {
+  }
 
-        objectToInjectSessionId = convertToObject(jsonObject, PARAMS_PROPERTY);
+  /**
+   * Returns the same message as {@link #toJsonMessage(Message)}, as a JSON tree instead of text.
+   * Used to encode the message in other formats without parsing its text.
+   *
+   * @param message
+   *          the message
+   * @return the JSON tree of the message
+   */
+  public static JsonElement toJsonMessageTree(Message message) {
 
-      } else {
+    if (message.getSessionId() != null && INJECT_SESSION_ID) {
+      return toJsonObjectWithSessionId(message);
+    }
 
-        Response<?> response = (Response<?>) message;
-        if (response.getError() == null) {
+    return toJsonElement(message);
+  }
 
-          objectToInjectSessionId = convertToObject(jsonObject, RESULT_PROPERTY);
-        } else {
+  private static JsonObject toJsonObjectWithSessionId(Message message) {
 
-          objectToInjectSessionId = convertToObject(jsonObject, ERROR_PROPERTY, DATA_PROPERTY);
-        }
-      }
+    JsonObject jsonObject = toJsonElement(message).getAsJsonObject();
+
+    JsonObject objectToInjectSessionId;
+    if (message instanceof Request) {
+
+      objectToInjectSessionId = convertToObject(jsonObject, PARAMS_PROPERTY);
 
-      objectToInjectSessionId.addProperty(JsonRpcConstants.SESSION_ID_PROPERTY,
-          message.getSessionId());
+    } else {
+
+      Response<?> response = (Response<?>) message;
+      if (response.getError() == null) {
+
+        objectToInjectSessionId = convertToObject(jsonObject, RESULT_PROPERTY);
+      } else {
 
-      return jsonObject.toString();
+        objectToInjectSessionId = convertToObject(jsonObject, ERROR_PROPERTY, DATA_PROPERTY);
+      }
     }
 
-    return JsonUtils.toJson(message);
+    objectToInjectSessionId.addProperty(JsonRpcConstants.SESSION_ID_PROPERTY,
+        message.getSessionId());
 
+    return jsonObject;
   }
 
   private static JsonObject convertToObject(JsonObject jsonObject, String... properties) {
@@ -333,7 +428,7 @@ public class JsonUtils {
   }
 
   public static JsonElement toJsonElement(Object object) {
-    return getGson().toJsonTree(object);
+    return getCodec().toJsonTree(object);
   }
 
   public static <E> E extractJavaValueFromResult(JsonElement result, Type type) {
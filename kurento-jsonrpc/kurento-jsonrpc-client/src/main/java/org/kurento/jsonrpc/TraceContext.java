@@ -0,0 +1,200 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.SPAN_ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.TRACE_ID_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.TRACE_SAMPLED_PROPERTY;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.kurento.commons.PropertiesManager;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Trace context carried in the params of a request, next to the {@code sessionId}, so a slow
+ * operation can be correlated across the application, the JSON-RPC request and its handling in
+ * the server.
+ *
+ * <p>
+ * The context of the current thread is used as parent of the requests sent from it. It can be
+ * set explicitly with {@link #setCurrent(TraceContext)}, and it is set by the server while a
+ * request carrying a context is being handled. If there is no context, a new trace is started for
+ * a fraction of the requests given by the property {@code jsonRpc.trace.sampleRate} (0 by
+ * default, from 0 to 1). Unsampled requests don't carry any context, so they pay nothing.
+ * </p>
+ */
+public class TraceContext {
+
+  public static final String SAMPLE_RATE_PROPERTY = "jsonRpc.trace.sampleRate";
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final ThreadLocal<TraceContext> current = new ThreadLocal<>();
+
+  private static volatile double sampleRate =
+      PropertiesManager.getProperty(SAMPLE_RATE_PROPERTY, 0.0);
+
+  private final String traceId;
+  private final String spanId;
+  private final boolean sampled;
+
+  public TraceContext(String traceId, String spanId, boolean sampled) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.sampled = sampled;
+  }
+
+  /**
+   * Starts a new sampled trace.
+   */
+  public static TraceContext newTrace() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return new TraceContext(toHex(random.nextLong(), random.nextLong()), toHex(random.nextLong()),
+        true);
+  }
+
+  /**
+   * Returns the context of a new span in the same trace as this one.
+   */
+  public TraceContext newChild() {
+    return new TraceContext(traceId, toHex(ThreadLocalRandom.current().nextLong()), sampled);
+  }
+
+  public static TraceContext getCurrent() {
+    return current.get();
+  }
+
+  /**
+   * Sets the context of the current thread.
+   *
+   * @param context
+   *          the new context, or null to remove it
+   * @return the previous context of the thread, to be restored when the new one is no longer
+   *         active
+   */
+  public static TraceContext setCurrent(TraceContext context) {
+
+    TraceContext previous = current.get();
+
+    if (context == null) {
+      current.remove();
+    } else {
+      current.set(context);
+    }
+
+    return previous;
+  }
+
+  public static void setSampleRate(double rate) {
+    sampleRate = rate;
+  }
+
+  public static double getSampleRate() {
+    return sampleRate;
+  }
+
+  /**
+   * Returns the context to be sent in a new request: a child of the context of the current thread
+   * or, if there is none, a new trace if the request is sampled. Returns null if the request must
+   * not be traced.
+   */
+  public static TraceContext forOutgoingRequest() {
+
+    TraceContext parent = current.get();
+    if (parent != null) {
+      return parent.sampled ? parent.newChild() : null;
+    }
+
+    double rate = sampleRate;
+    if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+      return null;
+    }
+
+    return newTrace();
+  }
+
+  /**
+   * Adds this context to the params of a request.
+   */
+  public void injectInto(JsonObject params) {
+    params.addProperty(TRACE_ID_PROPERTY, traceId);
+    params.addProperty(SPAN_ID_PROPERTY, spanId);
+    params.addProperty(TRACE_SAMPLED_PROPERTY, sampled);
+  }
+
+  /**
+   * Removes the trace context from the params of a request.
+   *
+   * @return the context or null if the params don't carry any
+   */
+  public static TraceContext extractFrom(JsonElement params) {
+
+    if (params == null || !params.isJsonObject()) {
+      return null;
+    }
+
+    JsonObject paramsObject = params.getAsJsonObject();
+
+    JsonElement traceId = paramsObject.remove(TRACE_ID_PROPERTY);
+    if (traceId == null) {
+      return null;
+    }
+
+    JsonElement spanId = paramsObject.remove(SPAN_ID_PROPERTY);
+    JsonElement sampled = paramsObject.remove(TRACE_SAMPLED_PROPERTY);
+
+    try {
+      return new TraceContext(traceId.getAsString(), spanId != null ? spanId.getAsString() : null,
+          sampled == null || sampled.getAsBoolean());
+    } catch (RuntimeException e) {
+      // Malformed context. The request is processed without it
+      return null;
+    }
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  public boolean isSampled() {
+    return sampled;
+  }
+
+  private static String toHex(long... values) {
+    char[] chars = new char[values.length * 16];
+    int pos = 0;
+    for (long value : values) {
+      for (int shift = 60; shift >= 0; shift -= 4) {
+        chars[pos++] = HEX_DIGITS[(int) (value >>> shift) & 0xF];
+      }
+    }
+    return new String(chars);
+  }
+
+  @Override
+  public String toString() {
+    return "TraceContext [traceId=" + traceId + ", spanId=" + spanId + ", sampled=" + sampled + "]";
+  }
+}
@@ -20,20 +20,36 @@ package org.kurento.jsonrpc.client;
 import static org.kurento.jsonrpc.JsonUtils.fromJson;
 import static org.kurento.jsonrpc.JsonUtils.fromJsonRequest;
 import static org.kurento.jsonrpc.JsonUtils.fromJsonResponse;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CLOSE;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_CONNECT;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.kurento.commons.KeyedOrderedExecutor;
+import org.kurento.commons.KeyedOrderedExecutor.OverflowPolicy;
 import org.kurento.commons.PropertiesManager;
 import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.commons.TimeoutReentrantLock;
@@ -50,12 +66,16 @@ import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -67,18 +87,44 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   protected static final long RECONNECT_DELAY_TIME_MILLIS = 5000;
 
+  private static final long reconnectInitialDelay =
+      getDelayProperty("jsonRpcClientWebSocket.reconnect.initialDelay", 500L);
+
+  private static final long reconnectMaxDelay = getDelayProperty(
+      "jsonRpcClientWebSocket.reconnect.maxDelay", RECONNECT_DELAY_TIME_MILLIS * 6);
+
+  private static final int reconnectBufferSize =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.bufferSize", 100);
+
+  private static final String reconnectReplayableMethods =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.reconnect.replayableMethods", "");
+
   private long requestTimeout =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.timeout", 60000);
 
   protected static final int maxPacketSize =
       PropertiesManager.getProperty("jsonRpcClientWebSocket.packetSize", 1000000);
 
+  private static final int orderedRequestsThreads = PropertiesManager.getProperty(
+      "jsonRpcClientWebSocket.orderedRequests.threads", Runtime.getRuntime().availableProcessors());
+
+  private static final int orderedRequestsQueueSize =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.orderedRequests.queueSize", 1000);
+
+  private static final OverflowPolicy orderedRequestsOverflowPolicy = PropertiesManager
+      .getProperty("jsonRpcClientWebSocket.orderedRequests.overflowPolicy", OverflowPolicy.BLOCK);
+
+  private static final long orderedRequestsBlockTimeout = PropertiesManager
+      .getProperty("jsonRpcClientWebSocket.orderedRequests.blockTimeout", 5000L);
+
   private volatile ExecutorService reqResEventExec;
+  private volatile KeyedOrderedExecutor orderedRequestsExec;
   private volatile ScheduledExecutorService disconnectExec;
 
   protected URI uri;
 
-  private final PendingRequests pendingRequests = new PendingRequests();
+  private final PendingRequests pendingRequests =
+      new PendingRequests(JsonRpcMetrics.CLIENT_WEBSOCKET);
   private ResponseSender rs;
 
   private JsonRpcWSConnectionListener connectionListener;
@@ -89,6 +135,36 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   private ReconnectedHandler reconnectedHandler;
 
   private volatile boolean reconnecting;
+  private volatile long disconnectionTime;
+
+  // The shared health of the url is released once, when the user closes the client
+  private final AtomicBoolean healthReleased = new AtomicBoolean();
+
+  private static class BufferedRequest {
+
+    private final Request<?> request;
+    private final Continuation<Response<JsonElement>> continuation;
+    private final long time = System.currentTimeMillis();
+
+    BufferedRequest(Request<?> request, Continuation<Response<JsonElement>> continuation) {
+      this.request = request;
+      this.continuation = continuation;
+    }
+  }
+
+  private final ArrayDeque<BufferedRequest> bufferedRequests = new ArrayDeque<>();
+  // Buffered requests are sent while holding it, so it is not a monitor to avoid pinning virtual
+  // threads
+  private final ReentrantLock bufferLock = new ReentrantLock();
+  private volatile boolean bufferingRequests;
+
+  // The native client is closed while holding it, so it is not a monitor to avoid pinning virtual
+  // threads
+  private final ReentrantLock closeLock = new ReentrantLock();
+
+  private final Set<String> replayableMethods = new CopyOnWriteArraySet<>();
+  // Guarded by itself. Insertion ordered, so requests are replayed in the order they were sent
+  private final Map<Integer, Request<?>> inFlightReplayableRequests = new LinkedHashMap<>();
 
   private TimeoutReentrantLock lock;
 
@@ -96,6 +172,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
   private boolean concurrentServerRequest = true;
 
+  private ServerRequestKeyExtractor serverRequestKeyExtractor;
+
   private boolean tryReconnectingForever;
   private long tryReconnectingMaxTime;
 
@@ -124,6 +202,13 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
 
     this.connectionListener = connectionListener;
+    this.health = ConnectionHealth.getFor(url);
+
+    for (String method : reconnectReplayableMethods.split(",")) {
+      if (!method.trim().isEmpty()) {
+        replayableMethods.add(method.trim());
+      }
+    }
 
     rsHelper = new JsonRpcRequestSenderHelper() {
       @Override
@@ -139,6 +224,18 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
         return internalSendRequestWebSocket(request, resultClass);
       }
+
+      @Override
+      protected boolean isTimingRequests() {
+        return true;
+      }
+
+      @Override
+      protected void responseReceived(Request<?> request, long latencyNanos) {
+        if (!METHOD_PING.equals(request.getMethod())) {
+          health.recordRequestLatency(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+        }
+      }
     };
 
   }
@@ -152,6 +249,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     this.requestTimeout = timeout;
   }
 
+  @Override
   public long getRequestTimeout() {
     return requestTimeout;
   }
@@ -200,6 +298,55 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     return concurrentServerRequest;
   }
 
+  /**
+   * Configures the keys used to order the requests from server. When concurrentServerRequest is
+   * true, requests with the same ordering key are processed sequentially and in order, on a bounded
+   * pool of threads shared by all keys. Requests without ordering key are processed as before.
+   *
+   * The pool size, the queue size per key and the policy applied when a queue is full are
+   * configured with the properties jsonRpcClientWebSocket.orderedRequests.threads, queueSize,
+   * overflowPolicy (BLOCK, DROP_OLDEST or COALESCE) and blockTimeout.
+   *
+   * @param serverRequestKeyExtractor
+   */
+  public void setServerRequestKeyExtractor(ServerRequestKeyExtractor serverRequestKeyExtractor) {
+    this.serverRequestKeyExtractor = serverRequestKeyExtractor;
+  }
+
+  public ServerRequestKeyExtractor getServerRequestKeyExtractor() {
+    return serverRequestKeyExtractor;
+  }
+
+  /**
+   * Configures the methods whose requests can be sent again if the connection is lost before their
+   * response is received, when the client reconnects to the same session. Only idempotent methods
+   * should be replayable, as the server could have executed the request before the connection was
+   * lost. By default there are no replayable methods (property
+   * jsonRpcClientWebSocket.reconnect.replayableMethods, comma separated).
+   *
+   * Requests sent while the client is reconnecting are not affected by this setting: they are
+   * buffered (up to jsonRpcClientWebSocket.reconnect.bufferSize requests) and sent when the client
+   * reconnects to the same session, or failed if it gets a new session.
+   *
+   * @param methods
+   */
+  public void setReplayableMethods(String... methods) {
+    replayableMethods.clear();
+    replayableMethods.addAll(Arrays.asList(methods));
+  }
+
+  public Set<String> getReplayableMethods() {
+    return Collections.unmodifiableSet(replayableMethods);
+  }
+
+  /**
+   * @return the executor of ordered requests from server, used to get its queue metrics. It is null
+   *         if no ordered request has been received since the client was connected
+   */
+  public KeyedOrderedExecutor getOrderedRequestsExecutor() {
+    return orderedRequestsExec;
+  }
+
   private void fireEvent(Runnable r) {
     createExecServiceIfNecessary();
     reqResEventExec.submit(r);
@@ -332,8 +479,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
         if (reqResEventExec == null || reqResEventExec.isShutdown()
             || reqResEventExec.isTerminated()) {
-          reqResEventExec = Executors.newCachedThreadPool(
-              ThreadFactoryCreator.create("AbstractJsonRpcClientWebSocket-reqResEventExec"));
+          reqResEventExec = ThreadFactoryCreator
+              .newCachedThreadPool("AbstractJsonRpcClientWebSocket-reqResEventExec");
         }
 
         if (disconnectExec == null || disconnectExec.isShutdown()
@@ -345,9 +492,45 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     }
   }
 
+  private KeyedOrderedExecutor getOrderedRequestsExecutorOrCreate() {
+
+    if (orderedRequestsExec == null || orderedRequestsExec.isShutdown()) {
+      synchronized (executorsLock) {
+        if (orderedRequestsExec == null || orderedRequestsExec.isShutdown()) {
+          orderedRequestsExec = new KeyedOrderedExecutor(
+              "AbstractJsonRpcClientWebSocket-orderedRequestsExec", orderedRequestsThreads,
+              orderedRequestsQueueSize, orderedRequestsOverflowPolicy, orderedRequestsBlockTimeout);
+        }
+      }
+    }
+
+    return orderedRequestsExec;
+  }
+
   protected <P, R> Response<R> internalSendRequestWebSocket(Request<P> request,
       Class<R> resultClass) throws IOException {
 
+    if (bufferingRequests && isBufferable(request)) {
+
+      final SettableFuture<Response<JsonElement>> bufferedResponse = SettableFuture.create();
+
+      Continuation<Response<JsonElement>> continuation = new Continuation<Response<JsonElement>>() {
+        @Override
+        public void onSuccess(Response<JsonElement> result) {
+          bufferedResponse.set(result);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          bufferedResponse.setException(cause);
+        }
+      };
+
+      if (bufferRequest(request, continuation)) {
+        return waitBufferedResponse(request, continuation, bufferedResponse, resultClass);
+      }
+    }
+
     connectIfNecessary();
 
     Future<Response<JsonElement>> responseFuture = null;
@@ -365,7 +548,14 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       log.debug("{} Req-> {}", label, jsonMessage.trim());
     }
 
-    sendTextMessage(jsonMessage);
+    trackReplayableRequest(request);
+
+    try {
+      sendJsonMessage(request, jsonMessage);
+    } catch (IOException | RuntimeException e) {
+      untrackReplayableRequest(request.getId());
+      throw e;
+    }
 
     if (responseFuture == null) {
       return null;
@@ -392,17 +582,68 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     } catch (InterruptedException e) {
       throw new JsonRpcException(label + " Interrupted while waiting for a response", e);
     } catch (ExecutionException e) {
+      untrackReplayableRequest(request.getId());
       throw new JsonRpcException(label + " This exception shouldn't be thrown", e);
     } catch (TimeoutException e) {
+      health.recordFailure();
+      untrackReplayableRequest(request.getId());
       throw new JsonRpcException(label + " Timeout of " + requestTimeout
           + " milliseconds waiting from response to request " + jsonMessage.trim(), e);
     }
   }
 
+  private <R> Response<R> waitBufferedResponse(Request<?> request,
+      Continuation<Response<JsonElement>> continuation,
+      Future<Response<JsonElement>> bufferedResponse, Class<R> resultClass) throws IOException {
+
+    if (request.getId() == null) {
+      return null;
+    }
+
+    try {
+
+      return MessageUtils.convertResponse(
+          bufferedResponse.get(requestTimeout, TimeUnit.MILLISECONDS), resultClass);
+
+    } catch (InterruptedException e) {
+      throw new JsonRpcException(label + " Interrupted while waiting for a response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new JsonRpcException(label + " Exception sending buffered request", e.getCause());
+    } catch (TimeoutException e) {
+      removeBufferedRequest(continuation);
+      health.recordFailure();
+      throw new JsonRpcException(label + " Timeout of " + requestTimeout
+          + " milliseconds waiting from response to buffered request " + request, e);
+    }
+  }
+
   protected <P> void internalSendRequestWebSocket(final Request<P> request,
       final Class<JsonElement> resultClass,
       final Continuation<Response<JsonElement>> continuation) {
 
+    try {
+
+      if (bufferingRequests && isBufferable(request) && bufferRequest(request, continuation)) {
+        return;
+      }
+
+    } catch (Exception e) {
+      continuation.onError(e);
+      return;
+    }
+
+    sendRequestWebSocket(request, resultClass, continuation);
+  }
+
+  private <P> void sendRequestWebSocket(final Request<P> request,
+      final Class<JsonElement> resultClass,
+      final Continuation<Response<JsonElement>> continuation) {
+
     try {
 
       connectIfNecessary();
@@ -423,7 +664,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
         log.debug("{} Req-> {}", label, jsonMessage.trim());
       }
 
-      sendTextMessage(jsonMessage);
+      trackReplayableRequest(request);
+
+      sendJsonMessage(request, jsonMessage);
 
       if (responseFuture != null) {
 
@@ -457,6 +700,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
           @Override
           public void onFailure(Throwable thrown) {
+            health.recordFailure();
+            untrackReplayableRequest(request.getId());
             continuation.onError(thrown);
           }
         }, reqResEventExec);
@@ -464,10 +709,224 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       }
 
     } catch (Exception e) {
+      untrackReplayableRequest(request.getId());
       continuation.onError(e);
     }
   }
 
+  private boolean isBufferable(Request<?> request) {
+    String method = request.getMethod();
+    return !METHOD_CONNECT.equals(method) && !METHOD_PING.equals(method)
+        && !METHOD_CLOSE.equals(method);
+  }
+
+  /**
+   * Stores a request to be sent once the client has reconnected to the same session.
+   *
+   * @return false if the client is not reconnecting anymore, so the request should be sent
+   *         directly
+   * @throws JsonRpcException
+   *           if the buffer is full
+   */
+  private boolean bufferRequest(Request<?> request,
+      Continuation<Response<JsonElement>> continuation) {
+
+    bufferLock.lock();
+    try {
+
+      if (!bufferingRequests) {
+        return false;
+      }
+
+      if (bufferedRequests.size() >= reconnectBufferSize) {
+        throw new JsonRpcException(label + " Buffer of " + reconnectBufferSize
+            + " requests full while reconnecting to " + uri + ". Discarding request " + request);
+      }
+
+      log.debug("{} Buffering request while reconnecting {}", label, request);
+      bufferedRequests.add(new BufferedRequest(request, continuation));
+      return true;
+    } finally {
+      bufferLock.unlock();
+    }
+  }
+
+  private void removeBufferedRequest(Continuation<Response<JsonElement>> continuation) {
+    bufferLock.lock();
+    try {
+      Iterator<BufferedRequest> it = bufferedRequests.iterator();
+      while (it.hasNext()) {
+        if (it.next().continuation == continuation) {
+          it.remove();
+          return;
+        }
+      }
+    } finally {
+      bufferLock.unlock();
+    }
+  }
+
+  private void startBufferingRequests() {
+    if (reconnectBufferSize > 0) {
+      bufferingRequests = true;
+    }
+  }
+
+  /**
+   * Fails the buffered requests that have been waiting longer than the request timeout.
+   */
+  private void expireBufferedRequests() {
+
+    List<BufferedRequest> expired = new ArrayList<>();
+    long now = System.currentTimeMillis();
+
+    bufferLock.lock();
+    try {
+      Iterator<BufferedRequest> it = bufferedRequests.iterator();
+      while (it.hasNext()) {
+        BufferedRequest buffered = it.next();
+        if (now - buffered.time > requestTimeout) {
+          it.remove();
+          expired.add(buffered);
+        }
+      }
+    } finally {
+      bufferLock.unlock();
+    }
+
+    for (BufferedRequest buffered : expired) {
+      buffered.continuation.onError(new JsonRpcException(label + " Timeout of " + requestTimeout
+          + " milliseconds reconnecting to send buffered request " + buffered.request));
+    }
+  }
+
+  private void failBufferedRequests(String reason) {
+
+    List<BufferedRequest> failed;
+
+    bufferLock.lock();
+    try {
+      bufferingRequests = false;
+      failed = new ArrayList<>(bufferedRequests);
+      bufferedRequests.clear();
+    } finally {
+      bufferLock.unlock();
+    }
+
+    for (BufferedRequest buffered : failed) {
+      buffered.continuation.onError(new JsonRpcException(
+          label + " Buffered request " + buffered.request + " not sent: " + reason));
+    }
+  }
+
+  /**
+   * Sends again the replayable requests whose response was not received before the connection was
+   * lost and then the requests buffered while reconnecting, in the order they were sent by the
+   * user. New requests are buffered until all of them have been sent.
+   */
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private void flushBufferedRequests() {
+
+    List<Request<?>> inFlightRequests;
+    synchronized (inFlightReplayableRequests) {
+      inFlightRequests = new ArrayList<>(inFlightReplayableRequests.values());
+    }
+
+    for (Request<?> inFlight : inFlightRequests) {
+      try {
+        log.debug("{} Replaying request {}", label, inFlight);
+        sendJsonMessage(inFlight, inFlight.toString());
+      } catch (IOException e) {
+        log.warn("{} Exception replaying request {}", label, inFlight, e);
+      }
+    }
+
+    bufferLock.lock();
+    try {
+
+      if (!bufferedRequests.isEmpty()) {
+        log.debug("{} Sending {} requests buffered while reconnecting", label,
+            bufferedRequests.size());
+      }
+
+      BufferedRequest buffered;
+      while ((buffered = bufferedRequests.poll()) != null) {
+        sendRequestWebSocket((Request) buffered.request, JsonElement.class,
+            buffered.continuation);
+      }
+
+      bufferingRequests = false;
+    } finally {
+      bufferLock.unlock();
+    }
+  }
+
+  private void trackReplayableRequest(Request<?> request) {
+    if (request.getId() != null && replayableMethods.contains(request.getMethod())) {
+      synchronized (inFlightReplayableRequests) {
+        inFlightReplayableRequests.put(request.getId(), request);
+      }
+    }
+  }
+
+  private void untrackReplayableRequest(Integer id) {
+    if (id != null) {
+      synchronized (inFlightReplayableRequests) {
+        inFlightReplayableRequests.remove(id);
+      }
+    }
+  }
+
+  private void closeAllPendingRequests() {
+    synchronized (inFlightReplayableRequests) {
+      inFlightReplayableRequests.clear();
+    }
+    pendingRequests.closeAllPendingRequests();
+  }
+
+  /**
+   * Returns the delay before a reconnection attempt. The delay grows exponentially from the
+   * initial delay up to the max delay, and is randomized to prevent all the clients of a server
+   * from reconnecting at the same time when it is restarted. The first attempt uses a random delay
+   * between 0 and the initial delay; the next ones a random delay between half and the whole of
+   * the exponential delay. The initial delay is at least 1 millisecond, so the delay grows even if
+   * it is configured as 0.
+   */
+  static long getReconnectDelay(int attempt, long initialDelay, long maxDelay) {
+
+    initialDelay = Math.max(1, initialDelay);
+    maxDelay = Math.max(initialDelay, maxDelay);
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    if (attempt == 0) {
+      return random.nextLong(initialDelay + 1);
+    }
+
+    long delay = attempt >= Long.numberOfLeadingZeros(initialDelay) - 1 ? maxDelay
+        : Math.min(maxDelay, initialDelay << attempt);
+
+    long minDelay = (delay + 1) / 2;
+    return minDelay + random.nextLong(delay - minDelay + 1);
+  }
+
+  /**
+   * Reads a delay in milliseconds from a property. Negative values are ignored and the default
+   * value is used instead.
+   */
+  static long getDelayProperty(String property, long defaultValue) {
+
+    long value = PropertiesManager.getProperty(property, defaultValue);
+
+    if (value < 0) {
+      log.warn("Ignoring negative value {} of property {}. Using {}", value, property,
+          defaultValue);
+      return defaultValue;
+    }
+
+    return value;
+  }
+
   @Override
   public void close() throws IOException {
 
@@ -487,40 +946,55 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     reconnecting = false;
 
+    failBufferedRequests("client closed");
+
     this.closeClient("Session closed by JsonRpcClientWebsocket user");
 
+    if (healthReleased.compareAndSet(false, true)) {
+      health.release();
+    }
   }
 
-  protected synchronized void closeClient(String reason) {
+  protected void closeClient(String reason) {
 
-    if (!reconnecting) {
-      notifyDisconnection(reason, false);
-    }
+    closeLock.lock();
+    try {
+      if (!reconnecting) {
+        notifyDisconnection(reason, false);
+      }
 
-    closeNativeClient();
+      closeNativeClient();
 
-    if (reqResEventExec != null) {
-      try {
-        reqResEventExec.shutdown();
-      } catch (Exception e) {
-        log.debug("{} Could not properly shut down executor service. Reason: {}", label,
-            e.getMessage());
+      if (reqResEventExec != null) {
+        try {
+          reqResEventExec.shutdown();
+        } catch (Exception e) {
+          log.debug("{} Could not properly shut down executor service. Reason: {}", label,
+              e.getMessage());
+        }
+        reqResEventExec = null;
       }
-      reqResEventExec = null;
-    }
 
-    if (disconnectExec != null) {
-      try {
-        disconnectExec.shutdownNow();
-      } catch (Exception e) {
-        log.debug("{} Could not properly shut down disconnect executor service. Reason: {}", label,
-            e.getMessage());
+      if (orderedRequestsExec != null) {
+        orderedRequestsExec.shutdown();
+        orderedRequestsExec = null;
       }
-      disconnectExec = null;
-    }
 
-    if (heartbeating) {
-      disableHeartbeat();
+      if (disconnectExec != null) {
+        try {
+          disconnectExec.shutdownNow();
+        } catch (Exception e) {
+          log.debug("{} Could not properly shut down disconnect executor service. Reason: {}",
+              label, e.getMessage());
+        }
+        disconnectExec = null;
+      }
+
+      if (heartbeating) {
+        disableHeartbeat();
+      }
+    } finally {
+      closeLock.unlock();
     }
   }
 
@@ -531,7 +1005,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       fireConnectionFailed();
     }
 
-    pendingRequests.closeAllPendingRequests();
+    failBufferedRequests("client disconnected");
+
+    closeAllPendingRequests();
 
     if (session != null) {
       handlerManager.afterConnectionClosed(session, reason);
@@ -544,38 +1020,64 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
     setSessionId(response.getSessionId());
 
+    untrackReplayableRequest(response.getId());
+
     pendingRequests.handleResponse(response);
   }
 
   protected void receivedTextMessage(String message) {
 
-    try {
+    JsonRpcMetricsManager.getMetrics().messageReceived(JsonRpcMetrics.CLIENT_WEBSOCKET,
+        message.length());
+    JsonRpcEvents.messageReceived(JsonRpcMetrics.CLIENT_WEBSOCKET, message.length());
 
-      JsonObject jsonMessage = fromJson(message, JsonObject.class);
+    try {
 
-      if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
-        handleRequestFromServer(jsonMessage);
-      } else {
-        handleResponseFromServer(jsonMessage);
-      }
+      receivedJsonMessage(fromJson(message, JsonObject.class));
 
     } catch (Exception e) {
       log.error("{} Exception processing jsonRpc message {}", label, message, e);
     }
   }
 
+  protected void receivedJsonMessage(JsonObject jsonMessage) {
+
+    if (jsonMessage.has(JsonRpcConstants.METHOD_PROPERTY)) {
+      handleRequestFromServer(jsonMessage);
+    } else {
+      handleResponseFromServer(jsonMessage);
+    }
+  }
+
   void handleRequestFromServer(final JsonObject message) {
 
     if (concurrentServerRequest) {
 
-      createExecServiceIfNecessary();
+      Runnable handleRequest = JsonRpcEvents.recordQueueWait(JsonRpcMetrics.CLIENT_WEBSOCKET,
+          new Runnable() {
+            @Override
+            public void run() {
+              handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class),
+                  rs);
+            }
+          });
 
-      reqResEventExec.submit(new Runnable() {
-        @Override
-        public void run() {
-          handlerManager.handleRequest(session, fromJsonRequest(message, JsonElement.class), rs);
-        }
-      });
+      String orderingKey = null;
+      if (serverRequestKeyExtractor != null) {
+        orderingKey = serverRequestKeyExtractor.getOrderingKey(message);
+      }
+
+      if (orderingKey != null) {
+
+        getOrderedRequestsExecutorOrCreate().execute(orderingKey,
+            serverRequestKeyExtractor.getCoalescingKey(message), handleRequest);
+
+      } else {
+
+        createExecServiceIfNecessary();
+
+        reqResEventExec.submit(handleRequest);
+      }
 
     } else {
 
@@ -593,11 +1095,15 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
       log.debug("{}JsonRpcWsClient disconnected from {} because {}.", label, uri, closeReason);
 
+      health.recordReconnection();
+      JsonRpcMetricsManager.getMetrics().reconnected(JsonRpcMetrics.CLIENT_WEBSOCKET);
+      disconnectionTime = System.nanoTime();
+
       reconnect(closeReason);
 
     } else {
 
-      pendingRequests.closeAllPendingRequests();
+      closeAllPendingRequests();
 
       handlerManager.afterConnectionClosed(session, closeReason);
 
@@ -606,15 +1112,16 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
   }
 
   private void reconnect(final String closeReason) {
-    reconnect(closeReason, 0, true);
+    reconnect(closeReason, 0, getReconnectDelay(0, reconnectInitialDelay, reconnectMaxDelay), true);
   }
 
-  private void reconnect(final String closeReason, final long delayMillis,
+  private void reconnect(final String closeReason, final int attempt, long delayMillis,
       boolean fireReconnecting) {
 
     reconnecting = true;
 
     if (fireReconnecting) {
+      startBufferingRequests();
       fireReconnecting();
     }
 
@@ -635,6 +1142,9 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
           reconnecting = false;
 
+          JsonRpcEvents.reconnected(uri.toString(), attempt + 1,
+              System.nanoTime() - disconnectionTime);
+
         } catch (Exception e) {
 
           log.debug("TryReconnectingForever={}", tryReconnectingForever);
@@ -653,10 +1163,15 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
 
           } else {
 
+            expireBufferedRequests();
+
+            long delayMillis =
+                getReconnectDelay(attempt + 1, reconnectInitialDelay, reconnectMaxDelay);
+
             log.warn("{} Exception trying to reconnect to server {}. Retrying in {} millis", label,
-                uri, RECONNECT_DELAY_TIME_MILLIS, e);
+                uri, delayMillis, e);
 
-            reconnect(closeReason, RECONNECT_DELAY_TIME_MILLIS, false);
+            reconnect(closeReason, attempt + 1, delayMillis, false);
           }
         }
       }
@@ -729,6 +1244,8 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
           exceptionMessage = label + " Exception connecting to WebSocket server " + uri;
         }
 
+        health.recordFailure();
+
         this.closeClient("Closed by exception: " + exceptionMessage);
 
         throw new JsonRpcException(exceptionMessage, e);
@@ -762,8 +1279,10 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       boolean sameServer = executeConnectProtocol();
 
       if (sameServer) {
+        flushBufferedRequests();
         fireReconnectedSameServer();
       } else {
+        failBufferedRequests("reconnected to a new session");
         fireReconnectedNewServer();
       }
 
@@ -795,7 +1314,7 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       // Invalid session exception
       if (e.getCode() == 40007) {
 
-        pendingRequests.closeAllPendingRequests();
+        closeAllPendingRequests();
 
         try {
 
@@ -824,14 +1343,14 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
       public void sendResponse(Message message) throws IOException {
         String jsonMessage = message.toString();
         log.debug("{} <-Res {}", label, jsonMessage);
-        sendTextMessage(jsonMessage);
+        sendJsonMessage(message, jsonMessage);
       }
 
       @Override
       public void sendPingResponse(Message message) throws IOException {
         String jsonMessage = message.toString();
         log.trace("{} <-Res {}", label, jsonMessage);
-        sendTextMessage(jsonMessage);
+        sendJsonMessage(message, jsonMessage);
       }
     };
   }
@@ -883,6 +1402,21 @@ public abstract class AbstractJsonRpcClientWebSocket extends JsonRpcClient {
     this.tryReconnectingMaxTime = tryReconnectingMaxTime;
   }
 
+  private void sendJsonMessage(Message message, String jsonMessage) throws IOException {
+    JsonRpcMetricsManager.getMetrics().messageSent(JsonRpcMetrics.CLIENT_WEBSOCKET,
+        jsonMessage.length());
+    JsonRpcEvents.messageSent(JsonRpcMetrics.CLIENT_WEBSOCKET, jsonMessage.length());
+    sendMessage(message, jsonMessage);
+  }
+
+  /**
+   * Sends a message, given also as JSON text. By default the text is sent; implementations using
+   * other encodings can encode the message itself.
+   */
+  protected void sendMessage(Message message, String jsonMessage) throws IOException {
+    sendTextMessage(jsonMessage);
+  }
+
   protected abstract void sendTextMessage(String jsonMessage) throws IOException;
 
   protected abstract void closeNativeClient();
@@ -0,0 +1,310 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.kurento.commons.DecayingHistogram;
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Health of the connection to a server, computed from the round trip time of heartbeat pings, the
+ * latency of requests, the rate of failed requests and the number of reconnections. Samples decay
+ * with time (see {@link DecayingHistogram}), so the health reflects the recent behaviour of the
+ * server.
+ *
+ * <p>
+ * It also implements a circuit breaker: after a number of consecutive failures the circuit is
+ * opened and the server should not be used for new sessions. When the open time has elapsed the
+ * circuit is half open, and the next success closes it again (or the next failure opens it).
+ * Requests of existing sessions are never blocked by the circuit breaker.
+ * </p>
+ *
+ * <p>
+ * Clients connected to the same url share the same instance, that can be obtained with
+ * {@link #getFor(String)}. This way, server providers and connection pools can steer new sessions
+ * away from degraded servers using {@link #getScore()} and {@link #isCircuitOpen()}. Each instance
+ * obtained with {@link #getFor(String)} has to be released with {@link #release()} when it is no
+ * longer used, and it is discarded when all its users have released it.
+ * </p>
+ *
+ * <p>
+ * Configuration properties:
+ * <ul>
+ * <li>jsonRpcClient.health.halfLife: half life of samples in millis (60000)</li>
+ * <li>jsonRpcClient.health.referenceLatency: latency in millis over which the score is reduced
+ * (200)</li>
+ * <li>jsonRpcClient.health.circuitBreaker.failureThreshold: consecutive failures to open the
+ * circuit (5)</li>
+ * <li>jsonRpcClient.health.circuitBreaker.openTime: millis before a open circuit is half open
+ * (30000)</li>
+ * </ul>
+ * </p>
+ */
+public class ConnectionHealth {
+
+  public enum CircuitState {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(ConnectionHealth.class);
+
+  private static final long HALF_LIFE =
+      PropertiesManager.getProperty("jsonRpcClient.health.halfLife", 60000L);
+
+  private static final long REFERENCE_LATENCY =
+      PropertiesManager.getProperty("jsonRpcClient.health.referenceLatency", 200L);
+
+  private static final int FAILURE_THRESHOLD =
+      PropertiesManager.getProperty("jsonRpcClient.health.circuitBreaker.failureThreshold", 5);
+
+  private static final long OPEN_TIME =
+      PropertiesManager.getProperty("jsonRpcClient.health.circuitBreaker.openTime", 30000L);
+
+  private static final double ERROR_RATE_WEIGHT = 0.1;
+
+  private static final Map<String, ConnectionHealth> healths = new HashMap<>();
+
+  private final String name;
+  private final long referenceLatency;
+  private final int failureThreshold;
+  private final long openTimeMillis;
+
+  private final DecayingHistogram pingRtt;
+  private final DecayingHistogram requestLatency;
+  private final DecayingHistogram reconnections;
+  private final DecayingHistogram tlsHandshakeTime;
+
+  private double errorRate;
+  private long totalReconnections;
+  private long totalFailures;
+  private long totalTlsHandshakes;
+  private long resumedTlsHandshakes;
+  private int consecutiveFailures;
+  private CircuitState circuitState = CircuitState.CLOSED;
+  private long circuitOpenTime;
+
+  // Users of the shared instance. Guarded by healths
+  private int users;
+
+  public ConnectionHealth(String name) {
+    this(name, HALF_LIFE, REFERENCE_LATENCY, FAILURE_THRESHOLD, OPEN_TIME);
+  }
+
+  public ConnectionHealth(String name, long halfLifeMillis, long referenceLatency,
+      int failureThreshold, long openTimeMillis) {
+    this.name = name;
+    this.referenceLatency = referenceLatency;
+    this.failureThreshold = failureThreshold;
+    this.openTimeMillis = openTimeMillis;
+    this.pingRtt = new DecayingHistogram(halfLifeMillis);
+    this.requestLatency = new DecayingHistogram(halfLifeMillis);
+    this.reconnections = new DecayingHistogram(halfLifeMillis);
+    this.tlsHandshakeTime = new DecayingHistogram(halfLifeMillis);
+  }
+
+  /**
+   * Returns the health shared by all the clients connected to the url. It has to be released with
+   * {@link #release()} when the caller no longer uses it.
+   */
+  public static ConnectionHealth getFor(String url) {
+
+    synchronized (healths) {
+
+      ConnectionHealth health = healths.get(url);
+
+      if (health == null) {
+        health = new ConnectionHealth(url);
+        healths.put(url, health);
+      }
+
+      health.users++;
+      return health;
+    }
+  }
+
+  /**
+   * Releases an instance obtained with {@link #getFor(String)}. When it has been released by all
+   * its users, it is discarded and the next user of the url starts with a new one.
+   */
+  public void release() {
+
+    synchronized (healths) {
+      if (users > 0 && --users == 0 && healths.get(name) == this) {
+        healths.remove(name);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of urls with a shared instance in use.
+   */
+  public static int getSharedInstances() {
+    synchronized (healths) {
+      return healths.size();
+    }
+  }
+
+  public void recordPingRtt(long rttMillis) {
+    pingRtt.record(rttMillis);
+    recordSuccess();
+  }
+
+  public void recordRequestLatency(long latencyMillis) {
+    requestLatency.record(latencyMillis);
+    recordSuccess();
+  }
+
+  public synchronized void recordSuccess() {
+
+    errorRate = errorRate * (1 - ERROR_RATE_WEIGHT);
+    consecutiveFailures = 0;
+
+    if (getCircuitState() == CircuitState.HALF_OPEN) {
+      log.info("Closing circuit of {}", name);
+      circuitState = CircuitState.CLOSED;
+    }
+  }
+
+  public synchronized void recordFailure() {
+
+    errorRate = errorRate * (1 - ERROR_RATE_WEIGHT) + ERROR_RATE_WEIGHT;
+    consecutiveFailures++;
+    totalFailures++;
+
+    CircuitState state = getCircuitState();
+    if (state == CircuitState.HALF_OPEN
+        || (state == CircuitState.CLOSED && consecutiveFailures >= failureThreshold)) {
+      log.warn("Opening circuit of {} after {} consecutive failures", name, consecutiveFailures);
+      circuitState = CircuitState.OPEN;
+      circuitOpenTime = System.currentTimeMillis();
+    }
+  }
+
+  public synchronized void recordReconnection() {
+    reconnections.record(0);
+    totalReconnections++;
+  }
+
+  /**
+   * Records the duration of a TLS handshake.
+   *
+   * @param handshakeMillis
+   *          the time from the creation of the TLS handler to the end of the handshake
+   * @param resumed
+   *          whether a previous TLS session was resumed, avoiding a full handshake
+   */
+  public synchronized void recordTlsHandshake(long handshakeMillis, boolean resumed) {
+    tlsHandshakeTime.record(handshakeMillis);
+    totalTlsHandshakes++;
+    if (resumed) {
+      resumedTlsHandshakes++;
+    }
+  }
+
+  public synchronized CircuitState getCircuitState() {
+
+    if (circuitState == CircuitState.OPEN
+        && System.currentTimeMillis() - circuitOpenTime >= openTimeMillis) {
+      circuitState = CircuitState.HALF_OPEN;
+    }
+
+    return circuitState;
+  }
+
+  public boolean isCircuitOpen() {
+    return getCircuitState() == CircuitState.OPEN;
+  }
+
+  /**
+   * Returns the score of the connection, from 0 (unusable) to 1 (healthy). It is 0 when the
+   * circuit is open, and it is reduced when the 90th percentile of the ping round trip time (or of
+   * the request latency, if there are no pings) is over the reference latency, when requests fail
+   * and when the client has had to reconnect recently. A half open circuit halves the score.
+   */
+  public synchronized double getScore() {
+
+    CircuitState state = getCircuitState();
+    if (state == CircuitState.OPEN) {
+      return 0;
+    }
+
+    long latency = pingRtt.getCount() > 0 ? pingRtt.getPercentile(90)
+        : requestLatency.getPercentile(90);
+
+    double latencyFactor = latency > referenceLatency ? (double) referenceLatency / latency : 1;
+    double errorFactor = 1 - errorRate;
+    double reconnectionFactor = 1 / (1 + reconnections.getCount());
+
+    double score = latencyFactor * errorFactor * reconnectionFactor;
+
+    return state == CircuitState.HALF_OPEN ? score / 2 : score;
+  }
+
+  public DecayingHistogram getPingRtt() {
+    return pingRtt;
+  }
+
+  public DecayingHistogram getRequestLatency() {
+    return requestLatency;
+  }
+
+  public DecayingHistogram getTlsHandshakeTime() {
+    return tlsHandshakeTime;
+  }
+
+  public synchronized long getTotalTlsHandshakes() {
+    return totalTlsHandshakes;
+  }
+
+  public synchronized long getResumedTlsHandshakes() {
+    return resumedTlsHandshakes;
+  }
+
+  public synchronized double getErrorRate() {
+    return errorRate;
+  }
+
+  public synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  public synchronized long getTotalFailures() {
+    return totalFailures;
+  }
+
+  public synchronized long getTotalReconnections() {
+    return totalReconnections;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return "ConnectionHealth [name=" + name + ", score=" + String.format("%.2f", getScore())
+        + ", circuit=" + getCircuitState() + ", pingRttP90=" + pingRtt.getPercentile(90)
+        + ", requestLatencyP90=" + requestLatency.getPercentile(90) + ", errorRate="
+        + String.format("%.2f", getErrorRate()) + ", reconnections=" + getTotalReconnections()
+        + "]";
+  }
+}
@@ -18,6 +18,7 @@
 package org.kurento.jsonrpc.client;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.METHOD_PING;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG;
 import static org.kurento.jsonrpc.internal.JsonRpcConstants.PONG_PAYLOAD;
@@ -89,6 +90,7 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
   protected boolean heartbeating;
   protected boolean closedByClient;
   private volatile PingParams pingParams;
+  protected ConnectionHealth health = new ConnectionHealth(getClass().getSimpleName());
 
   private ScheduledExecutorService hearbeatExec = createScheduler();
 
@@ -170,6 +172,16 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
     return session;
   }
 
+  /**
+   * Gets the health of the connection to the server, measured from heartbeat pings, requests and
+   * reconnections. WebSocket clients share it with all the clients connected to the same url.
+   *
+   * @return the health of the connection
+   */
+  public ConnectionHealth getHealth() {
+    return health;
+  }
+
   public void setSessionId(String sessionId) {
     this.rsHelper.setSessionId(sessionId);
     this.session.setSessionId(sessionId);
@@ -262,15 +274,20 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
         @Override
         public void run() {
           try {
+            long start = System.nanoTime();
             JsonObject response = sendRequest(METHOD_PING, pingParams).getAsJsonObject();
 
             pingParams = null;
 
             if (!PONG.equals(response.get(PONG_PAYLOAD).getAsString())) {
+              health.recordFailure();
               closeHeartbeatOnFailure();
+            } else {
+              health.recordPingRtt(NANOSECONDS.toMillis(System.nanoTime() - start));
             }
           } catch (Exception e) {
             log.warn("{} Error sending heartbeat to server. Exception: {}", label, e.getMessage());
+            health.recordFailure();
             closeHeartbeatOnFailure();
           }
         }
@@ -352,6 +369,11 @@ public abstract class JsonRpcClient implements JsonRpcRequestSender, Closeable {
 
   public abstract void setRequestTimeout(long requesTimeout);
 
+  /**
+   * Returns the time (in millis) to wait for the response of a request before failing it.
+   */
+  public abstract long getRequestTimeout();
+
   /**
    * Returns the closed state of the client.
    *
@@ -22,14 +22,28 @@ import static org.kurento.jsonrpc.JsonUtils.toJson;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
+import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.JsonUtils;
-import org.kurento.jsonrpc.internal.HttpResponseSender;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
@@ -39,18 +53,67 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonElement;
 import com.google.gson.reflect.TypeToken;
 
+/**
+ * JSON-RPC client over HTTP. Requests from the server are received with long polling: a
+ * {@code poll} request is always pending, and the server holds it until it has requests to send to
+ * the client or the poll times out. The poll is sent again as soon as it is responded. Responses to
+ * the requests of the server are posted as soon as they are sent, each one in its own request.
+ *
+ * <p>
+ * All the requests are sent through a pool of keep-alive connections, so the long polling doesn't
+ * open a new connection each time.
+ * </p>
+ */
 public class JsonRpcClientHttp extends JsonRpcClient {
 
+  private static final int MAX_CONNECTIONS =
+      PropertiesManager.getProperty("jsonRpcClientHttp.maxConnections", 4);
+
+  private static final int POLL_SOCKET_TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcClientHttp.pollSocketTimeout", 60000);
+
+  private static final long MIN_POLL_INTERVAL = AbstractJsonRpcClientWebSocket
+      .getDelayProperty("jsonRpcClientHttp.minPollInterval", 1000L);
+
+  private static final long POLL_RETRY_MAX_DELAY = AbstractJsonRpcClientWebSocket
+      .getDelayProperty("jsonRpcClientHttp.pollRetryMaxDelay", 30000L);
+
+  private static final Type REQUEST_LIST_TYPE = new TypeToken<List<Request<JsonElement>>>() {
+  }.getType();
+
   private final Logger log = LoggerFactory.getLogger(JsonRpcClient.class);
 
   private Thread longPoolingThread;
+  private volatile boolean closed;
   private String url;
 
-  private HttpResponseSender rs;
+  private final ResponseSender rs;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+
+  private volatile int requestTimeout =
+      PropertiesManager.getProperty("jsonRpcClientHttp.timeout", 60000);
 
   public JsonRpcClientHttp(String url) {
     this.url = url;
-    this.rs = new HttpResponseSender();
+    this.rs = new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        postResponse(message);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        postResponse(message);
+      }
+    };
+
+    this.connectionManager = new PoolingHttpClientConnectionManager();
+    this.connectionManager.setMaxTotal(MAX_CONNECTIONS);
+    this.connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+    this.httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+
     this.rsHelper = new JsonRpcRequestSenderHelper() {
       @Override
       public <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
@@ -82,49 +145,69 @@ public class JsonRpcClientHttp extends JsonRpcClient {
   }
 
   private void startPooling() {
-    this.longPoolingThread = new Thread() {
-      @Override
-      public void run() {
-        longPooling();
-      }
-    };
-
+    this.longPoolingThread = ThreadFactoryCreator.newThread("JsonRpcClientHttp-poll",
+        new Runnable() {
+          @Override
+          public void run() {
+            longPooling();
+          }
+        });
+
+    this.longPoolingThread.setDaemon(true);
     this.longPoolingThread.start();
   }
 
   private void longPooling() {
 
-    while (true) {
+    int failedPolls = 0;
 
-      try {
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        log.debug("Long polling thread interrupted", e);
-      }
+    while (!closed && !Thread.currentThread().isInterrupted()) {
 
-      if (Thread.interrupted()) {
-        break;
-      }
+      long delay = 0;
 
       try {
 
+        long start = System.nanoTime();
+
+        // Responses are posted as soon as they are sent, so polls don't carry them
         JsonElement requestsListJsonObject = this.sendRequest(Request.POLL_METHOD_NAME,
-            rs.getResponseListToSend(), JsonElement.class);
+            Collections.emptyList(), JsonElement.class);
 
-        log.debug("Response from pool: {}", requestsListJsonObject);
+        failedPolls = 0;
 
-        Type collectionType = new TypeToken<List<Request<JsonElement>>>() {
-        }.getType();
+        log.debug("Response from pool: {}", requestsListJsonObject);
 
         List<Request<JsonElement>> requestList = JsonUtils.fromJson(requestsListJsonObject,
-            collectionType);
+            REQUEST_LIST_TYPE);
+
+        if (requestList == null || requestList.isEmpty()) {
+          // A server without long polling responds empty polls immediately. Avoid a busy loop
+          long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          delay = MIN_POLL_INTERVAL - elapsed;
+        } else {
+          processServerRequests(requestList);
+        }
 
-        processServerRequests(requestList);
+      } catch (IOException | JsonRpcErrorException e) {
+
+        if (closed) {
+          break;
+        }
+
+        delay = AbstractJsonRpcClientWebSocket.getReconnectDelay(failedPolls++, MIN_POLL_INTERVAL,
+            POLL_RETRY_MAX_DELAY);
+
+        log.error("Exception when waiting for events (long-polling). Retry in {} millis", delay,
+            e);
+      }
 
-      } catch (IOException e) {
-        // TODO Decide what to do in this case. If the net connection is
-        // lost, this will retry indefinitely
-        log.error("Exception when waiting for events (long-polling). Retry", e);
+      if (delay > 0) {
+        try {
+          Thread.sleep(delay);
+        } catch (InterruptedException e) {
+          log.debug("Long polling thread interrupted", e);
+          break;
+        }
       }
     }
   }
@@ -138,30 +221,89 @@ public class JsonRpcClientHttp extends JsonRpcClient {
   private <P, R> Response<R> internalSendRequestHttp(Request<P> request, Class<R> resultClass)
       throws IOException {
 
-    String resultJson = org.apache.http.client.fluent.Request.Post(url)
-        .bodyString(toJson(request), ContentType.APPLICATION_JSON).execute().returnContent()
-        .asString();
+    // The server holds polls until it has requests for the client
+    int socketTimeout = Request.POLL_METHOD_NAME.equals(request.getMethod()) ? POLL_SOCKET_TIMEOUT
+        : requestTimeout;
+
+    Response<R> response = post(request, resultClass, socketTimeout);
+
+    updateSession(response);
+
+    return response;
+  }
+
+  private <P, R> Response<R> post(Request<P> request, Class<R> resultClass, int socketTimeout)
+      throws IOException {
+
+    HttpPost post = new HttpPost(url);
+    post.setConfig(RequestConfig.custom().setSocketTimeout(socketTimeout).build());
+    post.setEntity(new StringEntity(toJson(request), ContentType.APPLICATION_JSON));
+
+    String resultJson;
+    try (CloseableHttpResponse httpResponse = httpClient.execute(post)) {
+
+      int status = httpResponse.getStatusLine().getStatusCode();
+      if (status >= 300) {
+        EntityUtils.consume(httpResponse.getEntity());
+        throw new ClientProtocolException("Unexpected HTTP response status "
+            + httpResponse.getStatusLine() + " to request " + request);
+      }
+
+      // Reading the whole entity releases the connection back to the pool
+      resultJson = httpResponse.getEntity() != null
+          ? EntityUtils.toString(httpResponse.getEntity()) : null;
+    }
 
     if (resultJson == null || resultJson.trim().isEmpty()) {
       return new Response<>(request.getId(), new ResponseError(3,
           "The server send an empty response"));
     }
 
-    Response<R> response = fromJsonResponse(resultJson, resultClass);
+    return fromJsonResponse(resultJson, resultClass);
+  }
 
-    updateSession(response);
+  /**
+   * Posts the response to a request from the server in its own HTTP request. It can't wait for
+   * the next poll, because the server holds it until it has more requests for the client.
+   */
+  private void postResponse(Message response) throws IOException {
 
-    return response;
+    // HTTP sessions are not bound to a connection, so the server finds them by session id
+    if (response.getSessionId() == null) {
+      response.setSessionId(rsHelper.getSessionId());
+    }
+
+    HttpPost post = new HttpPost(url);
+    post.setConfig(RequestConfig.custom().setSocketTimeout(requestTimeout).build());
+    post.setEntity(new StringEntity(response.toString(), ContentType.APPLICATION_JSON));
+
+    try (CloseableHttpResponse httpResponse = httpClient.execute(post)) {
+
+      EntityUtils.consume(httpResponse.getEntity());
+
+      int status = httpResponse.getStatusLine().getStatusCode();
+      if (status >= 300) {
+        throw new ClientProtocolException("Unexpected HTTP response status "
+            + httpResponse.getStatusLine() + " to response " + response);
+      }
+    }
   }
 
   @Override
   public void close() {
+    closed = true;
     if (this.longPoolingThread != null) {
       log.debug("Interrupted!!!");
       this.longPoolingThread.interrupt();
     }
     handlerManager.afterConnectionClosed(session, "Client closed connection");
     session = null;
+    try {
+      // Aborts the pending poll, if any
+      httpClient.close();
+    } catch (IOException e) {
+      log.warn("Exception closing HTTP connection pool", e);
+    }
     try {
       super.close();
     } catch (IOException e) {
@@ -172,11 +314,11 @@ public class JsonRpcClientHttp extends JsonRpcClient {
   @Override
   public void connect() throws IOException {
 
-    try {
-
-      org.apache.http.client.fluent.Request.Post(url).bodyString("", ContentType.APPLICATION_JSON)
-      .execute();
+    HttpPost post = new HttpPost(url);
+    post.setEntity(new StringEntity("", ContentType.APPLICATION_JSON));
 
+    try (CloseableHttpResponse httpResponse = httpClient.execute(post)) {
+      EntityUtils.consume(httpResponse.getEntity());
     } catch (ClientProtocolException e) {
       // Silence http connection exception. This indicate that server is
       // reachable and running
@@ -184,8 +326,13 @@ public class JsonRpcClientHttp extends JsonRpcClient {
   }
 
   @Override
-  public void setRequestTimeout(long requesTimeout) {
-    log.warn("setRequestTimeout(...) method will be ignored");
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = (int) Math.min(requestTimeout, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public long getRequestTimeout() {
+    return requestTimeout;
   }
 
 }
@@ -18,32 +18,61 @@
 package org.kurento.jsonrpc.client;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.ClientSession;
-import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
-import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 
+/**
+ * Client that invokes a {@link JsonRpcHandler} in the same JVM. Request and response objects are
+ * handed over to the handler directly, without being serialized. Params and results are only
+ * converted when their type is not the one expected by the receiver, using the same rules as the
+ * network clients.
+ *
+ * <p>
+ * Handlers can respond asynchronously (see {@link org.kurento.jsonrpc.Transaction#startAsync()}).
+ * Synchronous requests wait for the response up to the request timeout, and asynchronous requests
+ * are completed in the thread that sends the response.
+ * </p>
+ *
+ * <p>
+ * For tests, the copy mode ({@link #setCopyMessages(boolean)} or the property
+ * {@code jsonRpcClientLocal.copyMessages}) serializes params and results to JSON and back, so
+ * handlers and callers never share mutable objects and payloads that cannot be sent through the
+ * network are detected.
+ * </p>
+ */
 public class JsonRpcClientLocal extends JsonRpcClient {
 
   private static Logger log = LoggerFactory.getLogger(JsonRpcClientLocal.class);
 
   private JsonRpcHandler<? extends Object> remoteHandler;
   private final JsonRpcHandlerManager remoteHandlerManager = new JsonRpcHandlerManager();
+  private final ClientSession remoteSession;
+
+  private volatile boolean copyMessages =
+      PropertiesManager.getProperty("jsonRpcClientLocal.copyMessages", false);
+
+  private volatile long requestTimeout =
+      PropertiesManager.getProperty("jsonRpcClientLocal.timeout", 60000L);
 
   public <F> JsonRpcClientLocal(JsonRpcHandler<? extends Object> handler) {
 
@@ -56,102 +85,117 @@ public class JsonRpcClientLocal extends JsonRpcClient {
       @Override
       public <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
           throws IOException {
-        return localSendRequest(request, resultClass);
+        return localSendRequest(remoteHandlerManager, remoteSession, request, resultClass);
       }
 
       @Override
       protected void internalSendRequest(Request<? extends Object> request,
           Class<JsonElement> resultClass, Continuation<Response<JsonElement>> continuation) {
-        Response<JsonElement> result = localSendRequest(request, resultClass);
-        if (result != null) {
-          continuation.onSuccess(result);
-        }
+        localSendRequest(remoteHandlerManager, remoteSession, request, resultClass,
+            continuation);
       }
     };
+
+    // Requests sent by the handler through its session are processed by the handler of this
+    // client
+    remoteSession = new ClientSession(session.getSessionId(), null,
+        new JsonRpcRequestSenderHelper() {
+          @Override
+          protected <P, R> Response<R> internalSendRequest(Request<P> request,
+              Class<R> resultClass) throws IOException {
+            return localSendRequest(handlerManager, session, request, resultClass);
+          }
+
+          @Override
+          protected void internalSendRequest(Request<? extends Object> request,
+              Class<JsonElement> resultClass, Continuation<Response<JsonElement>> continuation) {
+            localSendRequest(handlerManager, session, request, resultClass, continuation);
+          }
+        });
   }
 
-  @SuppressWarnings({ "unchecked", "rawtypes" })
-  private <R, P> Response<R> localSendRequest(Request<P> request, Class<R> resultClass) {
-    // Simulate sending json string for net
-    String jsonRequest = request.toString();
+  private <P, R> Response<R> localSendRequest(JsonRpcHandlerManager manager,
+      Session targetSession, Request<P> request, Class<R> resultClass) throws IOException {
 
-    log.debug("--> {}", jsonRequest);
+    final SettableFuture<Response<R>> responseFuture = SettableFuture.create();
 
-    Request<JsonObject> newRequest = JsonUtils.fromJsonRequest(jsonRequest, JsonObject.class);
+    localSendRequest(manager, targetSession, request, resultClass,
+        new Continuation<Response<R>>() {
+          @Override
+          public void onSuccess(Response<R> response) {
+            responseFuture.set(response);
+          }
 
-    final Response<JsonObject>[] response = new Response[1];
+          @Override
+          public void onError(Throwable cause) {
+            responseFuture.setException(cause);
+          }
+        });
 
-    ClientSession clientSession = new ClientSession(session.getSessionId(), null,
-        new JsonRpcRequestSenderHelper() {
+    if (request.getId() == null) {
+      return null;
+    }
 
-      @Override
-      protected void internalSendRequest(Request<? extends Object> request,
-          Class<JsonElement> clazz, final Continuation<Response<JsonElement>> continuation) {
-            handlerManager.handleRequest(session, (Request<JsonElement>) request,
-                new ResponseSender() {
-                  @Override
-                  public void sendResponse(Message message) throws IOException {
-                    continuation.onSuccess((Response<JsonElement>) message);
-                  }
-
-                  @Override
-                  public void sendPingResponse(Message message) throws IOException {
-                    sendResponse(message);
-                  }
-                });
-      }
+    try {
 
-      @Override
-      protected <P2, R2> Response<R2> internalSendRequest(Request<P2> request,
-          Class<R2> resultClass) throws IOException {
-
-        final Object[] response = new Object[1];
-
-            final CountDownLatch responseLatch = new CountDownLatch(1);
-
-            handlerManager.handleRequest(session, (Request<JsonElement>) request,
-                new ResponseSender() {
-                  @Override
-                  public void sendResponse(Message message) throws IOException {
-                    response[0] = message;
-                    responseLatch.countDown();
-                  }
-
-                  @Override
-                  public void sendPingResponse(Message message) throws IOException {
-                    sendResponse(message);
-                  }
-                });
-
-            Response<R2> response2 = (Response<R2>) response[0];
-
-            try {
-              responseLatch.await(10, TimeUnit.SECONDS);
-            } catch (InterruptedException e) {
-              throw new RuntimeException(e);
-            }
-
-            log.debug("<-- {}", response2);
-
-            Object result = response2.getResult();
-
-            if (result == null || resultClass.isAssignableFrom(result.getClass())) {
-              return response2;
-            } else if (resultClass == JsonElement.class) {
-              response2.setResult((R2) JsonUtils.toJsonElement(result));
-              return response2;
-            } else {
-              throw new ClassCastException("Class " + result + " cannot be converted to "
-                  + resultClass);
-            }
+      // Only blocks if the handler has responded asynchronously
+      return responseFuture.get(requestTimeout, TimeUnit.MILLISECONDS);
+
+    } catch (InterruptedException e) {
+      throw new JsonRpcException("Interrupted while waiting for a response", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
       }
-    });
+      throw new JsonRpcException("Exception processing request " + request, e.getCause());
+    } catch (TimeoutException e) {
+      throw new JsonRpcException("Timeout of " + requestTimeout
+          + " milliseconds waiting from response to request " + request, e);
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private <R> void localSendRequest(JsonRpcHandlerManager manager, Session targetSession,
+      Request<?> request, final Class<R> resultClass,
+      final Continuation<Response<R>> continuation) {
+
+    log.debug("--> {}", request);
+
+    if (manager.getHandler() == null) {
+      continuation.onError(new JsonRpcException(
+          "There is no JsonRpcHandler configured to process request " + request));
+      return;
+    }
+
+    Class<?> paramsType =
+        JsonRpcHandlerManager.getParamsType(manager.getHandler().getHandlerType());
+
+    // The request is copied so the one owned by the caller is not modified when converting params
+    Request<Object> handlerRequest = new Request<>(request.getSessionId(), request.getId(),
+        request.getMethod(), convertParams(request.getParams(), paramsType));
 
-    TransactionImpl t = new TransactionImpl(clientSession, newRequest, new ResponseSender() {
+    final Integer requestId = request.getId();
+
+    manager.handleRequest(targetSession, (Request) handlerRequest, new ResponseSender() {
 
       @Override
       public void sendResponse(Message message) throws IOException {
-        response[0] = (Response<JsonObject>) message;
+
+        if (requestId == null) {
+          return;
+        }
+
+        Response<R> response;
+        try {
+          response = convertResponse(requestId, (Response<?>) message, resultClass);
+        } catch (Exception e) {
+          continuation.onError(e);
+          return;
+        }
+
+        log.debug("<-- {}", response);
+
+        continuation.onSuccess(response);
       }
 
       @Override
@@ -159,34 +203,68 @@ public class JsonRpcClientLocal extends JsonRpcClient {
         sendResponse(message);
       }
     });
+  }
 
-    try {
-      remoteHandler.handleRequest(t, (Request) request);
-    } catch (Exception e) {
-      ResponseError error = ResponseError.newFromException(e);
-      return new Response<>(request.getId(), error);
+  private Object convertParams(Object params, Class<?> paramsType) {
+
+    if (params == null) {
+      return null;
     }
 
-    if (response[0] != null) {
-      // Simulate receiving json string from net
-      Response<R> responseObj = (Response<R>) response[0];
-      if (responseObj.getId() == null) {
-        responseObj.setId(request.getId());
-      }
-      String jsonResponse = responseObj.toString();
+    if (copyMessages) {
+      return copyJson(params);
+    }
+
+    if (params instanceof JsonElement || paramsType.isInstance(params)) {
+      return params;
+    }
 
-      // log.debug("< {}", jsonResponse);
+    return JsonUtils.toJsonElement(params);
+  }
 
-      Response<R> newResponse = JsonUtils.fromJsonResponse(jsonResponse, resultClass);
+  private <R> Response<R> convertResponse(Integer requestId, Response<?> response,
+      Class<R> resultClass) {
 
-      newResponse.setId(request.getId());
+    if (response.getError() != null) {
+      return new Response<>(response.getSessionId(), requestId, response.getError());
+    }
 
-      return newResponse;
+    Object result = response.getResult();
 
+    if (result == null || (!copyMessages && resultClass.isInstance(result))) {
+      @SuppressWarnings("unchecked")
+      R resultR = (R) result;
+      return new Response<>(response.getSessionId(), requestId, resultR);
     }
 
-    return new Response<>(request.getId());
+    JsonElement jsonResult;
+    if (copyMessages) {
+      jsonResult = copyJson(result);
+    } else if (result instanceof JsonElement) {
+      jsonResult = (JsonElement) result;
+    } else {
+      jsonResult = JsonUtils.toJsonElement(result);
+    }
 
+    return MessageUtils.convertResponse(
+        new Response<>(response.getSessionId(), requestId, jsonResult), resultClass);
+  }
+
+  private static JsonElement copyJson(Object value) {
+    return JsonUtils.fromJson(JsonUtils.toJson(value), JsonElement.class);
+  }
+
+  public boolean isCopyMessages() {
+    return copyMessages;
+  }
+
+  /**
+   * When enabled, params and results are serialized to JSON and parsed back before handing them
+   * over, as if they were sent through the network. Intended for tests, as it is slower than
+   * handing over the objects directly.
+   */
+  public void setCopyMessages(boolean copyMessages) {
+    this.copyMessages = copyMessages;
   }
 
   @Override
@@ -209,8 +287,13 @@ public class JsonRpcClientLocal extends JsonRpcClient {
   }
 
   @Override
-  public void setRequestTimeout(long requesTimeout) {
-    log.warn("setRequestTimeout(...) method will be ignored");
+  public void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
+  @Override
+  public long getRequestTimeout() {
+    return requestTimeout;
   }
 
 }
@@ -0,0 +1,155 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WebSocket client that shares the connection with the rest of multiplexed clients connected to
+ * the same url, instead of opening its own connection. It behaves as a
+ * {@link JsonRpcClientNettyWebSocket}: it has its own JSON-RPC session, request ids and
+ * reconnection handling, but there is a single WebSocket and a single heartbeat per server.
+ *
+ * <p>
+ * Multiplexing is negotiated with the {@code kurento-jsonrpc-mux} WebSocket subprotocol. If the
+ * server doesn't accept it, the client falls back to a connection of its own.
+ * </p>
+ */
+public class JsonRpcClientMultiplexedWebSocket extends JsonRpcClientNettyWebSocket {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(JsonRpcClientMultiplexedWebSocket.class);
+
+  private final String url;
+  private volatile MultiplexedWebSocketConnection connection;
+  private volatile String channel;
+
+  public JsonRpcClientMultiplexedWebSocket(String url) {
+    this(url, null);
+  }
+
+  public JsonRpcClientMultiplexedWebSocket(String url,
+      JsonRpcWSConnectionListener connectionListener) {
+    super(url, connectionListener);
+    this.url = url;
+    // The server has to know when the session is closed, as the connection is not closed with it
+    setSendCloseMessage(true);
+  }
+
+  @Override
+  protected void connectNativeClient() throws TimeoutException, Exception {
+
+    if (connection == null && MultiplexedWebSocketConnection.isMultiplexingSupported(url)) {
+      connection = MultiplexedWebSocketConnection.getFor(url);
+    }
+
+    if (connection != null) {
+
+      // The connection could have been replaced by a new one if it was closed
+      connection = connection.register(this, connectionTimeout);
+
+      if (connection != null) {
+        log.debug("{} Connected to {} in channel {}", label, url, channel);
+        if (heartbeating) {
+          connection.enableHeartbeat(heartbeatInterval);
+        }
+        return;
+      }
+    }
+
+    super.connectNativeClient();
+  }
+
+  @Override
+  protected void sendTextMessage(String jsonMessage) throws IOException {
+
+    MultiplexedWebSocketConnection currentConnection = connection;
+    String currentChannel = channel;
+
+    if (currentConnection == null) {
+      super.sendTextMessage(jsonMessage);
+    } else if (currentChannel == null) {
+      throw new IllegalStateException(
+          label + " JsonRpcClient is disconnected from WebSocket server at '" + this.uri + "'");
+    } else {
+      currentConnection.send(currentChannel, jsonMessage);
+    }
+  }
+
+  @Override
+  protected boolean isNativeClientConnected() {
+    MultiplexedWebSocketConnection currentConnection = connection;
+    return currentConnection != null ? currentConnection.isConnected(this)
+        : super.isNativeClientConnected();
+  }
+
+  @Override
+  public void closeNativeClient() {
+    MultiplexedWebSocketConnection currentConnection = connection;
+    if (currentConnection != null) {
+      // The connection is closed with its last client, so it can't be reused when reconnecting
+      connection = null;
+      currentConnection.unregister(this);
+    } else {
+      super.closeNativeClient();
+    }
+  }
+
+  @Override
+  public synchronized void enableHeartbeat(int interval) {
+
+    MultiplexedWebSocketConnection currentConnection = connection;
+    if (currentConnection == null && !MultiplexedWebSocketConnection.isMultiplexingSupported(url)) {
+      super.enableHeartbeat(interval);
+    } else {
+      // The heartbeat of the shared connection is used. If not connected yet, it is enabled when
+      // the client is registered in the connection
+      this.heartbeating = true;
+      this.heartbeatInterval = interval;
+      if (currentConnection != null) {
+        currentConnection.enableHeartbeat(interval);
+      }
+    }
+  }
+
+  /**
+   * Returns true if this client is sharing the connection with other clients, or false if it is
+   * using a connection of its own (because it is not connected yet or because the server doesn't
+   * support multiplexing).
+   */
+  public boolean isMultiplexed() {
+    MultiplexedWebSocketConnection currentConnection = connection;
+    return currentConnection != null && currentConnection.isRegistered(this);
+  }
+
+  MultiplexedWebSocketConnection getConnection() {
+    return connection;
+  }
+
+  String getChannel() {
+    return channel;
+  }
+
+  void setChannel(String channel) {
+    this.channel = channel;
+  }
+}
@@ -16,18 +16,36 @@
 
 package org.kurento.jsonrpc.client;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.BINARY_SUBPROTOCOL;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
 
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.ws.CborCodec;
+import org.kurento.jsonrpc.message.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonObject;
+
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
@@ -39,7 +57,10 @@ import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
@@ -48,19 +69,19 @@ import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketHandshakeException;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
-import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketClientCompressionHandler;
-import io.netty.handler.ssl.SslContext;
-import io.netty.handler.ssl.SslContextBuilder;
-import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
 
 public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket {
 
   public class JsonRpcWebSocketClientHandler extends AbstractJsonRpcWebSocketClientHandler {
 
     private StringBuilder partialText = new StringBuilder();
+    private ByteArrayOutputStream partialBinary;
 
     public JsonRpcWebSocketClientHandler(WebSocketClientHandshaker handshaker) {
       super(handshaker);
@@ -95,8 +116,12 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
     public void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
       Channel ch = ctx.channel();
       if (!handshaker.isHandshakeComplete()) {
+        if (!isSubprotocolAccepted(ctx, (FullHttpResponse) msg)) {
+          return;
+        }
         handshaker.finishHandshake(ch, (FullHttpResponse) msg);
-        log.debug("{} WebSocket Client connected!", label);
+        binary = BINARY_SUBPROTOCOL.equals(handshaker.actualSubprotocol());
+        log.debug("{} WebSocket Client connected! Binary protocol: {}", label, binary);
         handshakeFuture.setSuccess();
         return;
       }
@@ -116,8 +141,23 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
         } else {
           partialText.append(textFrame.text());
         }
+      } else if (frame instanceof BinaryWebSocketFrame) {
+        if (frame.isFinalFragment()) {
+          receivedBinaryMessage(getBytes(frame.content()));
+        } else {
+          partialBinary = new ByteArrayOutputStream();
+          partialBinary.write(getBytes(frame.content()));
+        }
       } else if (frame instanceof ContinuationWebSocketFrame) {
         ContinuationWebSocketFrame continuationFrame = (ContinuationWebSocketFrame) frame;
+        if (partialBinary != null) {
+          partialBinary.write(getBytes(continuationFrame.content()));
+          if (continuationFrame.isFinalFragment()) {
+            receivedBinaryMessage(partialBinary.toByteArray());
+            partialBinary = null;
+          }
+          return;
+        }
         partialText.append(continuationFrame.text());
         if (continuationFrame.isFinalFragment()) {
           receivedTextMessage(partialText.toString());
@@ -134,6 +174,27 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
 
     }
 
+    /**
+     * Checks that a successful handshake response selects the requested subprotocol. Otherwise,
+     * the handshake fails with {@link SubprotocolNotAcceptedException}.
+     */
+    private boolean isSubprotocolAccepted(ChannelHandlerContext ctx, FullHttpResponse response) {
+
+      String requested = handshaker.expectedSubprotocol();
+      if (requested == null || !response.status().equals(HttpResponseStatus.SWITCHING_PROTOCOLS)) {
+        return true;
+      }
+
+      String accepted = response.headers().get(HttpHeaderNames.SEC_WEBSOCKET_PROTOCOL);
+      if (requested.equals(accepted)) {
+        return true;
+      }
+
+      handshakeFuture.setFailure(new SubprotocolNotAcceptedException(requested, accepted));
+      ctx.close();
+      return false;
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
       log.warn("{} Exception caught in Netty websocket handler", label, cause);
@@ -151,10 +212,26 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
 
   private static final Logger log = LoggerFactory.getLogger(JsonRpcClientNettyWebSocket.class);
 
+  private static final boolean BINARY_PROTOCOL =
+      PropertiesManager.getProperty("jsonRpcClientWebSocket.binaryProtocol", false);
+
+  private static final Set<String> textOnlyUrls =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
   private volatile Channel channel;
+  private final ReentrantLock sendLock = new ReentrantLock();
   private volatile EventLoopGroup group;
   private volatile JsonRpcWebSocketClientHandler handler;
 
+  private SslConfig sslConfig = SslConfig.fromProperties();
+  // Id of the TLS session of the last handshake, used to know if the next one resumes it
+  private volatile byte[] tlsSessionId;
+
+  private WebSocketCompression compression = WebSocketCompression.fromProperties();
+
+  private boolean binaryProtocol = BINARY_PROTOCOL;
+  private volatile boolean binary;
+
   public JsonRpcClientNettyWebSocket(String url) {
     this(url, null);
   }
@@ -164,17 +241,120 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
     log.debug("{} Creating JsonRPC NETTY Websocket client", label);
   }
 
+  @Override
+  protected void sendMessage(Message message, String jsonMessage) throws IOException {
+    if (binary) {
+      // Encoded from the JSON tree of the message, without parsing its text again
+      sendFrame(new BinaryWebSocketFrame(
+          Unpooled.wrappedBuffer(CborCodec.encode(JsonUtils.toJsonMessageTree(message)))));
+    } else {
+      super.sendMessage(message, jsonMessage);
+    }
+  }
+
   @Override
   protected void sendTextMessage(String jsonMessage) throws IOException {
+    sendFrame(new TextWebSocketFrame(jsonMessage));
+  }
+
+  private void sendFrame(WebSocketFrame frame) {
 
     if (channel == null || !channel.isWritable() || !channel.isActive()) {
       throw new IllegalStateException(
           label + " JsonRpcClient is disconnected from WebSocket server at '" + this.uri + "'");
     }
 
-    synchronized (channel) {
-      channel.writeAndFlush(new TextWebSocketFrame(jsonMessage));
+    sendLock.lock();
+    try {
+      channel.writeAndFlush(frame);
+    } finally {
+      sendLock.unlock();
+    }
+  }
+
+  private void receivedBinaryMessage(byte[] message) {
+    try {
+      receivedJsonMessage((JsonObject) CborCodec.decode(message));
+    } catch (Exception e) {
+      log.error("{} Exception processing binary jsonRpc message", label, e);
+    }
+  }
+
+  private static byte[] getBytes(ByteBuf buf) {
+    byte[] bytes = new byte[buf.readableBytes()];
+    buf.getBytes(buf.readerIndex(), bytes);
+    return bytes;
+  }
+
+  public boolean isBinaryProtocol() {
+    return binaryProtocol;
+  }
+
+  /**
+   * Requests the {@code kurento-jsonrpc-cbor} subprotocol in the next connections, where messages
+   * are encoded in CBOR and sent in binary frames. If the server doesn't support it, the client
+   * connects again using JSON text frames, and doesn't request it to that server anymore. By
+   * default it is not requested (property jsonRpcClientWebSocket.binaryProtocol).
+   */
+  public void setBinaryProtocol(boolean binaryProtocol) {
+    this.binaryProtocol = binaryProtocol;
+  }
+
+  /**
+   * @return true if the current connection uses the binary subprotocol
+   */
+  public boolean isBinary() {
+    return binary;
+  }
+
+  private String getRequestedSubprotocol() {
+    String subprotocol = getSubprotocol();
+    if (subprotocol == null && binaryProtocol && !textOnlyUrls.contains(uri.toString())) {
+      return BINARY_SUBPROTOCOL;
     }
+    return subprotocol;
+  }
+
+  public SslConfig getSslConfig() {
+    return sslConfig;
+  }
+
+  /**
+   * Sets the TLS configuration used to connect to {@code wss://} urls. Clients with equal
+   * configurations share the same SSL context, so they can resume TLS sessions. By default, the
+   * configuration is read from properties (see {@link SslConfig#fromProperties()}).
+   */
+  public void setSslConfig(SslConfig sslConfig) {
+    this.sslConfig = sslConfig;
+  }
+
+  public WebSocketCompression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Sets the permessage-deflate configuration offered to the server in the next connections. By
+   * default, the configuration is read from properties (see
+   * {@link WebSocketCompression#fromProperties()}).
+   */
+  public void setCompression(WebSocketCompression compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * Returns the subprotocol requested to the server in the WebSocket handshake, or null to not
+   * request any. If the server doesn't accept it, the handshake fails.
+   */
+  protected String getSubprotocol() {
+    return null;
+  }
+
+  /**
+   * Returns the subprotocol accepted by the server in the last handshake, or null if none.
+   */
+  protected String getAcceptedSubprotocol() {
+    JsonRpcWebSocketClientHandler currentHandler = handler;
+    return currentHandler != null ? currentHandler.handshaker.actualSubprotocol() : null;
   }
 
   @Override
@@ -191,10 +371,12 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
       log.info("{} Connecting native client", label);
 
       final boolean ssl = "wss".equalsIgnoreCase(this.uri.getScheme());
-      final SslContext sslCtx;
+      final SslConfig currentSslConfig = ssl ? sslConfig : null;
       try {
-        sslCtx = ssl ? SslContextBuilder.forClient()
-            .trustManager(InsecureTrustManagerFactory.INSTANCE).build() : null;
+        if (ssl) {
+          // The context is created here to fail before connecting if it is not valid
+          currentSslConfig.getSslContext();
+        }
       } catch (SSLException e) {
         log.error("{} Could not create SSL Context", label, e);
         throw new IllegalArgumentException(
@@ -230,19 +412,24 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
       b.group(group).channel(NioSocketChannel.class)
           .handler(new ChannelInitializer<SocketChannel>() {
             @Override
-            protected void initChannel(SocketChannel ch) {
+            protected void initChannel(SocketChannel ch) throws SSLException {
               log.info("{} Inititating new Netty channel. Will create new handler too!", label);
               handler = new JsonRpcWebSocketClientHandler(
-                  WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13, null,
-                      true, new DefaultHttpHeaders(), maxPacketSize));
+                  WebSocketClientHandshakerFactory.newHandshaker(uri, WebSocketVersion.V13,
+                      getRequestedSubprotocol(), true, new DefaultHttpHeaders(),
+                      maxPacketSize));
 
               ChannelPipeline p = ch.pipeline();
               p.addLast("idleStateHandler", new IdleStateHandler(0, 0, idleTimeout / 1000));
-              if (sslCtx != null) {
-                p.addLast(sslCtx.newHandler(ch.alloc(), host, port));
+              if (currentSslConfig != null) {
+                p.addLast(createSslHandler(currentSslConfig, ch, host, port));
               }
-              p.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192),
-                  WebSocketClientCompressionHandler.INSTANCE, handler);
+              p.addLast(new HttpClientCodec(), new HttpObjectAggregator(8192));
+              ChannelHandler compressionHandler = compression.newClientHandler();
+              if (compressionHandler != null) {
+                p.addLast(compressionHandler);
+              }
+              p.addLast(handler);
             }
           }).option(ChannelOption.CONNECT_TIMEOUT_MILLIS, this.connectionTimeout);
 
@@ -256,7 +443,12 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
           // This should never happen
           log.warn("{} ERROR connecting WS Netty client, opening channel", label, e);
         } catch (Exception e) {
-          if (e.getCause() instanceof WebSocketHandshakeException && numRetries < maxRetries) {
+          if (SubprotocolNotAcceptedException.isCauseOf(e, BINARY_SUBPROTOCOL)) {
+            log.info("{} Server {} doesn't support binary protocol. Connecting with text frames",
+                label, uri);
+            textOnlyUrls.add(uri.toString());
+            channel.close().sync();
+          } else if (e.getCause() instanceof WebSocketHandshakeException && numRetries < maxRetries) {
             log.warn(
                 "{} Upgrade exception when trying to connect to {}. Try {} of {}. Retrying in 200ms ",
                 label, uri, numRetries + 1, maxRetries);
@@ -281,6 +473,34 @@ public class JsonRpcClientNettyWebSocket extends AbstractJsonRpcClientWebSocket
 
   }
 
+  private SslHandler createSslHandler(SslConfig currentSslConfig, SocketChannel ch, String host,
+      int port) throws SSLException {
+
+    final SslHandler sslHandler = currentSslConfig.newHandler(ch.alloc(), host, port);
+    final long start = System.currentTimeMillis();
+
+    sslHandler.handshakeFuture().addListener(new GenericFutureListener<Future<Channel>>() {
+      @Override
+      public void operationComplete(Future<Channel> future) throws Exception {
+        if (future.isSuccess()) {
+          long handshakeTime = System.currentTimeMillis() - start;
+          SSLSession session = sslHandler.engine().getSession();
+          // A resumed session keeps the id of the session of a previous handshake
+          byte[] sessionId = session.getId();
+          boolean resumed = sessionId.length > 0 && Arrays.equals(sessionId, tlsSessionId);
+          tlsSessionId = sessionId;
+          health.recordTlsHandshake(handshakeTime, resumed);
+          log.debug("{} TLS handshake with {} completed in {} millis. Protocol {}, resumed {}",
+              label, uri, handshakeTime, session.getProtocol(), resumed);
+        } else {
+          log.debug("{} TLS handshake with {} failed", label, uri, future.cause());
+        }
+      }
+    });
+
+    return sslHandler;
+  }
+
   @Override
   public void closeNativeClient() {
     closeChannel();
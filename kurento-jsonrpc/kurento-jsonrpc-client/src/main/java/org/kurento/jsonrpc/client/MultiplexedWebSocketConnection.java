@@ -0,0 +1,268 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.CHANNEL_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.MULTIPLEXING_SUBPROTOCOL;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kurento.jsonrpc.internal.ws.ChannelMessages;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * WebSocket connection shared by all the {@link JsonRpcClientMultiplexedWebSocket} clients
+ * connected to the same url. Each client is registered in a channel, and messages are routed to it
+ * by the channel number added to each message. The connection has a single heartbeat, and when it
+ * is lost all its clients are notified so they reconnect as usual.
+ *
+ * <p>
+ * The connection is opened when the first client is registered and closed when the last one is
+ * unregistered. If the server doesn't accept the multiplexing subprotocol, the url is remembered
+ * and clients fall back to their own connection.
+ * </p>
+ */
+class MultiplexedWebSocketConnection {
+
+  private static final Logger log = LoggerFactory.getLogger(MultiplexedWebSocketConnection.class);
+
+  private static final Map<String, MultiplexedWebSocketConnection> connections = new HashMap<>();
+
+  private static final Set<String> unsupportedUrls =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private class PhysicalWebSocket extends JsonRpcClientNettyWebSocket {
+
+    PhysicalWebSocket(String url) {
+      super(url);
+      setLabel("Multiplexed:" + url);
+    }
+
+    @Override
+    protected String getSubprotocol() {
+      return MULTIPLEXING_SUBPROTOCOL;
+    }
+
+    @Override
+    protected void receivedJsonMessage(JsonObject message) {
+
+      JsonElement channel = message.remove(CHANNEL_PROPERTY);
+
+      if (channel == null) {
+        // Responses to the heartbeat pings of the connection
+        super.receivedJsonMessage(message);
+        return;
+      }
+
+      JsonRpcClientMultiplexedWebSocket client = clients.get(channel.getAsString());
+      if (client != null) {
+        client.receivedJsonMessage(message);
+      } else {
+        log.debug("{} Discarding message for unknown channel {}: {}", label, channel, message);
+      }
+    }
+
+    @Override
+    protected void handleReconnectDisconnection(int statusCode, String closeReason) {
+      // Clients reconnect by themselves, reconnecting this connection when needed
+      for (JsonRpcClientMultiplexedWebSocket client : getClients()) {
+        client.handleReconnectDisconnection(statusCode, closeReason);
+      }
+    }
+  }
+
+  private final String url;
+  private final PhysicalWebSocket webSocket;
+  private final ConcurrentMap<String, JsonRpcClientMultiplexedWebSocket> clients =
+      new ConcurrentHashMap<>();
+  private final AtomicInteger channels = new AtomicInteger();
+  // The WebSocket is connected and closed while holding it, so it is not a monitor to avoid
+  // pinning virtual threads
+  private final ReentrantLock lock = new ReentrantLock();
+  private boolean closed;
+
+  private MultiplexedWebSocketConnection(String url) {
+    this.url = url;
+    this.webSocket = new PhysicalWebSocket(url);
+  }
+
+  /**
+   * Returns the connection shared by the clients of the url, or null if the server of the url
+   * doesn't support multiplexing.
+   */
+  static synchronized MultiplexedWebSocketConnection getFor(String url) {
+
+    if (unsupportedUrls.contains(url)) {
+      return null;
+    }
+
+    MultiplexedWebSocketConnection connection = connections.get(url);
+    if (connection == null) {
+      connection = new MultiplexedWebSocketConnection(url);
+      connections.put(url, connection);
+    }
+
+    return connection;
+  }
+
+  static boolean isMultiplexingSupported(String url) {
+    return !unsupportedUrls.contains(url);
+  }
+
+  /**
+   * Connects the WebSocket if needed and registers the client in a new channel. If this connection
+   * has been closed, the client is registered in the current connection of the url.
+   *
+   * @return the connection where the client has been registered, or null if the server doesn't
+   *         support multiplexing, so the client has to use its own connection
+   */
+  MultiplexedWebSocketConnection register(JsonRpcClientMultiplexedWebSocket client,
+      int connectionTimeout) throws IOException {
+
+    lock.lock();
+    try {
+      if (!closed) {
+        return registerInChannel(client, connectionTimeout);
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    MultiplexedWebSocketConnection connection = getFor(url);
+    return connection != null ? connection.register(client, connectionTimeout) : null;
+  }
+
+  private MultiplexedWebSocketConnection registerInChannel(
+      JsonRpcClientMultiplexedWebSocket client, int connectionTimeout) throws IOException {
+
+    if (!webSocket.isNativeClientConnected()) {
+
+      webSocket.setConnectionTimeout(connectionTimeout);
+
+      try {
+        webSocket.connect();
+      } catch (IOException | RuntimeException e) {
+        // Other handshake failures (e.g. server overloaded) don't mean that multiplexing is not
+        // supported
+        if (SubprotocolNotAcceptedException.isCauseOf(e, MULTIPLEXING_SUBPROTOCOL)) {
+          log.info("Server {} doesn't support multiplexing. Using a connection per client", url);
+          unsupportedUrls.add(url);
+          close();
+          return null;
+        }
+        throw e;
+      }
+    }
+
+    if (client.getChannel() == null || clients.get(client.getChannel()) != client) {
+      String channel = Integer.toString(channels.incrementAndGet());
+      clients.put(channel, client);
+      client.setChannel(channel);
+      log.debug("Client registered in channel {} of {}", channel, url);
+    }
+
+    return this;
+  }
+
+  /**
+   * Unregisters the client. The WebSocket is closed when there are no more clients.
+   */
+  void unregister(JsonRpcClientMultiplexedWebSocket client) {
+
+    lock.lock();
+    try {
+
+      String channel = client.getChannel();
+      if (channel != null) {
+        clients.remove(channel, client);
+        client.setChannel(null);
+      }
+
+      if (clients.isEmpty()) {
+        close();
+      }
+
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void close() {
+
+    synchronized (MultiplexedWebSocketConnection.class) {
+      if (connections.get(url) == this) {
+        connections.remove(url);
+      }
+    }
+
+    closed = true;
+
+    try {
+      webSocket.close();
+    } catch (IOException e) {
+      log.warn("Exception closing multiplexed connection to {}", url, e);
+    }
+  }
+
+  void send(String channel, String jsonMessage) throws IOException {
+    webSocket.sendTextMessage(ChannelMessages.addChannel(jsonMessage, channel));
+  }
+
+  boolean isRegistered(JsonRpcClientMultiplexedWebSocket client) {
+    String channel = client.getChannel();
+    return channel != null && clients.get(channel) == client;
+  }
+
+  boolean isConnected(JsonRpcClientMultiplexedWebSocket client) {
+    return isRegistered(client) && webSocket.isNativeClientConnected();
+  }
+
+  void enableHeartbeat(int interval) {
+    webSocket.enableHeartbeat(interval);
+  }
+
+  int getNumClients() {
+    return clients.size();
+  }
+
+  /**
+   * Closes the WebSocket without unregistering the clients, as if the connection was lost. Method
+   * intended to be used for testing purposes
+   */
+  void closeWebSocket() {
+    webSocket.closeNativeClient();
+  }
+
+  private List<JsonRpcClientMultiplexedWebSocket> getClients() {
+    return new ArrayList<>(clients.values());
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Classifies the requests received from the server so they can be processed in order. Requests
+ * with the same ordering key are processed sequentially, in the order they were received.
+ */
+public interface ServerRequestKeyExtractor {
+
+  /**
+   * @return the ordering key of the request, or null if the request can be processed concurrently
+   *         with any other request
+   */
+  public String getOrderingKey(JsonObject request);
+
+  /**
+   * @return the key used to merge pending requests when the queue of its ordering key is full, or
+   *         null if the request can't be merged with others
+   */
+  public String getCoalescingKey(JsonObject request);
+}
@@ -0,0 +1,260 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
+/**
+ * TLS configuration of WebSocket clients connecting to {@code wss://} urls. The {@link SslContext}
+ * is built only once for each configuration and shared by all the clients using it. Besides
+ * avoiding the cost of loading the trust store on every connection, this allows TLS sessions to be
+ * resumed when a client reconnects, as the session cache belongs to the context.
+ *
+ * <p>
+ * The host name of the server is verified against its certificate, unless any certificate is
+ * trusted.
+ * </p>
+ *
+ * <p>
+ * The OpenSSL provider (netty-tcnative) is used when it is available in the classpath, unless
+ * other provider is configured.
+ * </p>
+ *
+ * <p>
+ * Configuration properties (used by {@link #fromProperties()}):
+ * <ul>
+ * <li>jsonRpcClientWebSocket.ssl.trustStore: path of the trust store. The default trust store of
+ * the JVM is used if not set</li>
+ * <li>jsonRpcClientWebSocket.ssl.trustStorePassword</li>
+ * <li>jsonRpcClientWebSocket.ssl.trustStoreType (default type of the JVM)</li>
+ * <li>jsonRpcClientWebSocket.ssl.trustAll: trust any server certificate, for servers with self
+ * signed certificates. Not for production use (false)</li>
+ * <li>jsonRpcClientWebSocket.ssl.provider: AUTO, JDK or OPENSSL (AUTO)</li>
+ * <li>jsonRpcClientWebSocket.ssl.sessionCacheSize: number of TLS sessions cached for resumption.
+ * 0 to use the default of the provider (0)</li>
+ * <li>jsonRpcClientWebSocket.ssl.sessionTimeout: seconds a TLS session can be resumed. 0 to use
+ * the default of the provider (0)</li>
+ * </ul>
+ * </p>
+ */
+public class SslConfig {
+
+  public enum Provider {
+    AUTO, JDK, OPENSSL
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(SslConfig.class);
+
+  private static final ConcurrentMap<SslConfig, SslContext> contexts = new ConcurrentHashMap<>();
+
+  private final String trustStore;
+  private final String trustStorePassword;
+  private final String trustStoreType;
+  private final boolean trustAll;
+  private final Provider provider;
+  private final long sessionCacheSize;
+  private final long sessionTimeout;
+
+  public SslConfig(String trustStore, String trustStorePassword, String trustStoreType,
+      boolean trustAll, Provider provider, long sessionCacheSize, long sessionTimeout) {
+    this.trustStore = trustStore;
+    this.trustStorePassword = trustStorePassword;
+    this.trustStoreType = trustStoreType != null ? trustStoreType : KeyStore.getDefaultType();
+    this.trustAll = trustAll;
+    this.provider = provider != null ? provider : Provider.AUTO;
+    this.sessionCacheSize = sessionCacheSize;
+    this.sessionTimeout = sessionTimeout;
+  }
+
+  public static SslConfig fromProperties() {
+    return new SslConfig(PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.trustStore"),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.trustStorePassword"),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.trustStoreType"),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.trustAll", false),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.provider", Provider.AUTO),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.sessionCacheSize", 0L),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.ssl.sessionTimeout", 0L));
+  }
+
+  /**
+   * Returns the context for this configuration, creating it the first time it is requested.
+   */
+  public SslContext getSslContext() throws SSLException {
+
+    SslContext context = contexts.get(this);
+
+    if (context == null) {
+      context = createSslContext();
+      SslContext previous = contexts.putIfAbsent(this, context);
+      if (previous != null) {
+        context = previous;
+      }
+    }
+
+    return context;
+  }
+
+  /**
+   * Creates a handler for a new connection to the given server.
+   */
+  public SslHandler newHandler(ByteBufAllocator alloc, String host, int port)
+      throws SSLException {
+
+    // Host and port are used by the context to find a previous session to resume
+    SslHandler sslHandler = getSslContext().newHandler(alloc, host, port);
+
+    if (!trustAll) {
+      SSLEngine engine = sslHandler.engine();
+      SSLParameters parameters = engine.getSSLParameters();
+      parameters.setEndpointIdentificationAlgorithm("HTTPS");
+      engine.setSSLParameters(parameters);
+    }
+
+    return sslHandler;
+  }
+
+  private SslContext createSslContext() throws SSLException {
+
+    SslProvider sslProvider = getSslProvider();
+
+    log.debug("Creating SSL context with provider {} and trust store {}", sslProvider,
+        trustAll ? "<trust all>" : trustStore != null ? trustStore : "<JVM default>");
+
+    SslContextBuilder builder = SslContextBuilder.forClient().sslProvider(sslProvider)
+        .trustManager(createTrustManagerFactory());
+
+    if (sessionCacheSize > 0) {
+      builder.sessionCacheSize(sessionCacheSize);
+    }
+
+    if (sessionTimeout > 0) {
+      builder.sessionTimeout(sessionTimeout);
+    }
+
+    return builder.build();
+  }
+
+  private SslProvider getSslProvider() {
+    switch (provider) {
+      case JDK:
+        return SslProvider.JDK;
+      case OPENSSL:
+        return SslProvider.OPENSSL;
+      default:
+        return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+  }
+
+  private TrustManagerFactory createTrustManagerFactory() throws SSLException {
+
+    if (trustAll) {
+      return InsecureTrustManagerFactory.INSTANCE;
+    }
+
+    try {
+
+      KeyStore keyStore = null;
+
+      if (trustStore != null) {
+        keyStore = KeyStore.getInstance(trustStoreType);
+        try (InputStream is = new FileInputStream(new File(trustStore))) {
+          keyStore.load(is, trustStorePassword != null ? trustStorePassword.toCharArray() : null);
+        }
+      }
+
+      // A null key store initializes the factory with the default trust store of the JVM
+      TrustManagerFactory factory =
+          TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+      factory.init(keyStore);
+      return factory;
+
+    } catch (IOException | GeneralSecurityException e) {
+      throw new SSLException("Could not load trust store " + trustStore, e);
+    }
+  }
+
+  public String getTrustStore() {
+    return trustStore;
+  }
+
+  public boolean isTrustAll() {
+    return trustAll;
+  }
+
+  public Provider getProvider() {
+    return provider;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + (trustStore == null ? 0 : trustStore.hashCode());
+    result = prime * result + (trustStorePassword == null ? 0 : trustStorePassword.hashCode());
+    result = prime * result + trustStoreType.hashCode();
+    result = prime * result + (trustAll ? 1231 : 1237);
+    result = prime * result + provider.hashCode();
+    result = prime * result + (int) (sessionCacheSize ^ (sessionCacheSize >>> 32));
+    result = prime * result + (int) (sessionTimeout ^ (sessionTimeout >>> 32));
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof SslConfig)) {
+      return false;
+    }
+    SslConfig other = (SslConfig) obj;
+    return equal(trustStore, other.trustStore)
+        && equal(trustStorePassword, other.trustStorePassword)
+        && trustStoreType.equals(other.trustStoreType) && trustAll == other.trustAll
+        && provider == other.provider && sessionCacheSize == other.sessionCacheSize
+        && sessionTimeout == other.sessionTimeout;
+  }
+
+  private static boolean equal(Object a, Object b) {
+    return a == null ? b == null : a.equals(b);
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.client;
+
+import io.netty.handler.codec.http.websocketx.WebSocketHandshakeException;
+
+/**
+ * Exception thrown when the server completes the WebSocket handshake without selecting the
+ * subprotocol requested by the client. Unlike other handshake failures, it means that the server
+ * doesn't support the subprotocol, so the client can connect again without it.
+ */
+public class SubprotocolNotAcceptedException extends WebSocketHandshakeException {
+
+  private static final long serialVersionUID = 3386406296738460391L;
+
+  private final String subprotocol;
+
+  public SubprotocolNotAcceptedException(String subprotocol, String acceptedSubprotocol) {
+    super("Server didn't accept subprotocol " + subprotocol + ". Accepted: "
+        + acceptedSubprotocol);
+    this.subprotocol = subprotocol;
+  }
+
+  public String getSubprotocol() {
+    return subprotocol;
+  }
+
+  /**
+   * Returns true if the exception, or any of its causes, is a
+   * {@link SubprotocolNotAcceptedException} for the given subprotocol.
+   */
+  public static boolean isCauseOf(Throwable e, String subprotocol) {
+    while (e != null) {
+      if (e instanceof SubprotocolNotAcceptedException
+          && subprotocol.equals(((SubprotocolNotAcceptedException) e).getSubprotocol())) {
+        return true;
+      }
+      e = e.getCause();
+    }
+    return false;
+  }
+}
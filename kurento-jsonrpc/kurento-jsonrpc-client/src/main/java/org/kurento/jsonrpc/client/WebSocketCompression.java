@@ -0,0 +1,209 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.client;
+
+import java.util.List;
+
+import org.kurento.commons.PropertiesManager;
+
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketClientExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionDecoder;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateClientExtensionHandshaker;
+
+/**
+ * Configuration of the permessage-deflate compression (RFC 7692) negotiated by the Netty WebSocket
+ * client. Compression is only worth it for big messages, such as SDP offers and answers or stats,
+ * so messages smaller than a minimum size are sent uncompressed. The extension allows it, as
+ * compression is signaled per message.
+ *
+ * <p>
+ * Configuration properties (used by {@link #fromProperties()}):
+ * <ul>
+ * <li>jsonRpcClientWebSocket.compression.enabled: offer permessage-deflate to the server
+ * (true)</li>
+ * <li>jsonRpcClientWebSocket.compression.minSize: size in bytes from which sent messages are
+ * compressed (256)</li>
+ * <li>jsonRpcClientWebSocket.compression.level: compression level, from 0 to 9 (1)</li>
+ * <li>jsonRpcClientWebSocket.compression.contextTakeover: keep the compression context between
+ * messages. It improves the compression ratio at the cost of keeping a deflater per connection in
+ * each end (true)</li>
+ * </ul>
+ * </p>
+ */
+public class WebSocketCompression {
+
+  private static final int MAX_WINDOW_SIZE = 15;
+
+  private final boolean enabled;
+  private final int minSize;
+  private final int level;
+  private final boolean contextTakeover;
+
+  public WebSocketCompression(boolean enabled, int minSize, int level, boolean contextTakeover) {
+
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("Compression level must be between 0 and 9: " + level);
+    }
+
+    this.enabled = enabled;
+    this.minSize = minSize;
+    this.level = level;
+    this.contextTakeover = contextTakeover;
+  }
+
+  public static WebSocketCompression fromProperties() {
+    return new WebSocketCompression(
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.compression.enabled", true),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.compression.minSize", 256),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.compression.level", 1),
+        PropertiesManager.getProperty("jsonRpcClientWebSocket.compression.contextTakeover", true));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public int getMinSize() {
+    return minSize;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public boolean isContextTakeover() {
+    return contextTakeover;
+  }
+
+  /**
+   * Returns the handler negotiating the extension in the handshake, or null if compression is
+   * disabled.
+   */
+  public ChannelHandler newClientHandler() {
+
+    if (!enabled) {
+      return null;
+    }
+
+    WebSocketClientExtensionHandshaker deflate =
+        new PerMessageDeflateClientExtensionHandshaker(level, false, MAX_WINDOW_SIZE,
+            !contextTakeover, !contextTakeover);
+
+    return new WebSocketClientExtensionHandler(new MinSizeExtensionHandshaker(deflate, minSize));
+  }
+
+  private static class MinSizeExtensionHandshaker implements WebSocketClientExtensionHandshaker {
+
+    private final WebSocketClientExtensionHandshaker delegate;
+    private final int minSize;
+
+    MinSizeExtensionHandshaker(WebSocketClientExtensionHandshaker delegate, int minSize) {
+      this.delegate = delegate;
+      this.minSize = minSize;
+    }
+
+    @Override
+    public WebSocketExtensionData newRequestData() {
+      return delegate.newRequestData();
+    }
+
+    @Override
+    public WebSocketClientExtension handshakeExtension(WebSocketExtensionData extensionData) {
+
+      final WebSocketClientExtension extension = delegate.handshakeExtension(extensionData);
+
+      if (extension == null) {
+        return null;
+      }
+
+      return new WebSocketClientExtension() {
+
+        @Override
+        public int rsv() {
+          return extension.rsv();
+        }
+
+        @Override
+        public WebSocketExtensionEncoder newExtensionEncoder() {
+          return new MinSizeEncoder(extension.newExtensionEncoder(), minSize);
+        }
+
+        @Override
+        public WebSocketExtensionDecoder newExtensionDecoder() {
+          return extension.newExtensionDecoder();
+        }
+      };
+    }
+  }
+
+  /**
+   * Sends unfragmented messages smaller than the minimum size without compression, and passes the
+   * rest of frames to the deflate encoder.
+   */
+  static class MinSizeEncoder extends WebSocketExtensionEncoder {
+
+    private final WebSocketExtensionEncoder delegate;
+    private final int minSize;
+
+    MinSizeEncoder(WebSocketExtensionEncoder delegate, int minSize) {
+      this.delegate = delegate;
+      this.minSize = minSize;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+        throws Exception {
+
+      if (isSmallMessage(msg)) {
+        ctx.write(msg, promise);
+      } else {
+        delegate.write(ctx, msg, promise);
+      }
+    }
+
+    private boolean isSmallMessage(Object msg) {
+      if (msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame) {
+        WebSocketFrame frame = (WebSocketFrame) msg;
+        return frame.isFinalFragment() && frame.content().readableBytes() < minSize;
+      }
+      return false;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out)
+        throws Exception {
+      throw new UnsupportedOperationException("Frames are encoded by the delegate encoder");
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+      delegate.handlerRemoved(ctx);
+      super.handlerRemoved(ctx);
+    }
+  }
+}
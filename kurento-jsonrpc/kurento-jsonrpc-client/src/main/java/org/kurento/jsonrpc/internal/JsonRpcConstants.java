@@ -45,6 +45,12 @@ public class JsonRpcConstants {
 
   public static final String SESSION_ID_PROPERTY = "sessionId";
 
+  public static final String TRACE_ID_PROPERTY = "traceId";
+
+  public static final String SPAN_ID_PROPERTY = "spanId";
+
+  public static final String TRACE_SAMPLED_PROPERTY = "traceSampled";
+
   public static final String METHOD_START = "start";
 
   public static final String METHOD_TERMINATE = "terminate";
@@ -71,6 +77,12 @@ public class JsonRpcConstants {
 
   public static final String RECONNECTION_SUCCESSFUL = "reconnection successful";
 
+  public static final String CHANNEL_PROPERTY = "channel";
+
+  public static final String MULTIPLEXING_SUBPROTOCOL = "kurento-jsonrpc-mux";
+
+  public static final String BINARY_SUBPROTOCOL = "kurento-jsonrpc-cbor";
+
   public static final int ERROR_NO_ERROR = 0;
 
   public static final int ERROR_APPLICATION_TERMINATION = 1;
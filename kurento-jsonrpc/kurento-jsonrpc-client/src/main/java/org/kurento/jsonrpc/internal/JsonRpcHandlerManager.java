@@ -20,6 +20,7 @@ package org.kurento.jsonrpc.internal;
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
 import org.kurento.jsonrpc.JsonRpcException;
@@ -27,10 +28,15 @@ import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.Session;
 import org.kurento.jsonrpc.internal.client.TransactionImpl;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +44,53 @@ import com.google.gson.JsonElement;
 
 public class JsonRpcHandlerManager {
 
+  /**
+   * Records the latency of a request, and the event if it is over the threshold, when its response
+   * is sent. The response can be sent from other thread if the request is processed
+   * asynchronously.
+   */
+  private static class TimedResponseSender implements ResponseSender {
+
+    private final ResponseSender responseSender;
+    private final JsonRpcMetrics metrics;
+    private final String method;
+    private final long start;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    TimedResponseSender(ResponseSender responseSender, JsonRpcMetrics metrics, String method,
+        long start) {
+      this.responseSender = responseSender;
+      this.metrics = metrics;
+      this.method = method;
+      this.start = start;
+    }
+
+    void completed(Outcome outcome) {
+      if (completed.compareAndSet(false, true)) {
+        long duration = System.nanoTime() - start;
+        metrics.requestCompleted(JsonRpcMetrics.HANDLED, method, duration, outcome);
+        JsonRpcEvents.requestCompleted(JsonRpcMetrics.HANDLED, method, duration, outcome);
+      }
+    }
+
+    private void completed(Message message) {
+      boolean error = message instanceof Response && ((Response<?>) message).getError() != null;
+      completed(error ? Outcome.ERROR : Outcome.SUCCESS);
+    }
+
+    @Override
+    public void sendResponse(Message message) throws IOException {
+      completed(message);
+      responseSender.sendResponse(message);
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      completed(message);
+      responseSender.sendPingResponse(message);
+    }
+  }
+
   private static final Logger log = LoggerFactory.getLogger(JsonRpcHandlerManager.class);
 
   private JsonRpcHandler<?> handler;
@@ -88,9 +141,30 @@ public class JsonRpcHandlerManager {
     }
   }
 
-  @SuppressWarnings({ "rawtypes", "unchecked" })
   public void handleRequest(Session session, Request<JsonElement> request, ResponseSender rs) {
 
+    JsonRpcMetrics metrics = JsonRpcMetricsManager.getMetrics();
+    if (!metrics.isEnabled() && !JsonRpcEvents.isEnabled()) {
+      handleRequestInternal(session, request, rs);
+      return;
+    }
+
+    long start = System.nanoTime();
+    metrics.requestStarted(JsonRpcMetrics.HANDLED, request.getMethod());
+
+    TimedResponseSender timedRs = new TimedResponseSender(rs, metrics, request.getMethod(), start);
+    handleRequestInternal(session, request, timedRs);
+
+    // Notifications are never responded
+    if (request.getId() == null) {
+      timedRs.completed(Outcome.SUCCESS);
+    }
+  }
+
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  private void handleRequestInternal(Session session, Request<JsonElement> request,
+      ResponseSender rs) {
+
     try {
 
       if (handler == null) {
@@ -20,12 +20,17 @@ package org.kurento.jsonrpc.internal;
 import static org.kurento.jsonrpc.JsonUtils.INJECT_SESSION_ID;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kurento.jsonrpc.JsonRpcErrorException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -72,7 +77,7 @@ public abstract class JsonRpcRequestSenderHelper implements JsonRpcRequestSender
   public <P, R> R sendRequest(Request<P> request, Class<R> resultClass)
       throws JsonRpcErrorException, IOException {
 
-    Response<R> response = internalSendRequest(request, resultClass);
+    Response<R> response = timedSendRequest(request, resultClass);
 
     if (response == null) {
       return null;
@@ -110,7 +115,7 @@ public abstract class JsonRpcRequestSenderHelper implements JsonRpcRequestSender
       request.setSessionId(sessionId);
     }
 
-    internalSendRequest(request, JsonElement.class, new Continuation<Response<JsonElement>>() {
+    timedSendRequest(request, JsonElement.class, new Continuation<Response<JsonElement>>() {
 
       @Override
       public void onSuccess(Response<JsonElement> response) {
@@ -167,7 +172,7 @@ public abstract class JsonRpcRequestSenderHelper implements JsonRpcRequestSender
   public Response<JsonElement> sendRequest(Request<JsonObject> request) throws IOException {
 
     setIdIfNecessary(request);
-    return internalSendRequest(request, JsonElement.class);
+    return timedSendRequest(request, JsonElement.class);
   }
 
   private void setIdIfNecessary(Request<? extends Object> request) {
@@ -181,18 +186,121 @@ public abstract class JsonRpcRequestSenderHelper implements JsonRpcRequestSender
       Continuation<Response<JsonElement>> continuation) {
 
     setIdIfNecessary(request);
-    internalSendRequest(request, JsonElement.class, continuation);
+    timedSendRequest(request, JsonElement.class, continuation);
   }
 
   @Override
   public Response<JsonElement> sendRequestHonorId(Request<JsonObject> request) throws IOException {
-    return internalSendRequest(request, JsonElement.class);
+    return timedSendRequest(request, JsonElement.class);
   }
 
   @Override
   public void sendRequestHonorId(Request<JsonObject> request,
       Continuation<Response<JsonElement>> continuation) throws IOException {
-    internalSendRequest(request, JsonElement.class, continuation);
+    timedSendRequest(request, JsonElement.class, continuation);
+  }
+
+  /**
+   * Returns true if requests have to be timed even when metrics and events are disabled, so
+   * {@link #responseReceived(Request, long)} is called. False by default.
+   */
+  protected boolean isTimingRequests() {
+    return false;
+  }
+
+  /**
+   * Called when the response of a request is received, with the same latency that is recorded in
+   * the metrics. Does nothing by default.
+   */
+  protected void responseReceived(Request<?> request, long latencyNanos) {
+  }
+
+  private static long completed(JsonRpcMetrics metrics, String method, long start,
+      Outcome outcome) {
+    long duration = System.nanoTime() - start;
+    metrics.requestCompleted(JsonRpcMetrics.SENT, method, duration, outcome);
+    JsonRpcEvents.requestCompleted(JsonRpcMetrics.SENT, method, duration, outcome);
+    return duration;
+  }
+
+  private <P, R> Response<R> timedSendRequest(Request<P> request, Class<R> resultClass)
+      throws IOException {
+
+    JsonRpcMetrics metrics = JsonRpcMetricsManager.getMetrics();
+    if (!metrics.isEnabled() && !JsonRpcEvents.isEnabled() && !isTimingRequests()) {
+      return internalSendRequest(request, resultClass);
+    }
+
+    String method = request.getMethod();
+    Outcome outcome = Outcome.ERROR;
+    long start = System.nanoTime();
+    metrics.requestStarted(JsonRpcMetrics.SENT, method);
+    Response<R> response = null;
+
+    try {
+
+      response = internalSendRequest(request, resultClass);
+      if (response == null || response.getError() == null) {
+        outcome = Outcome.SUCCESS;
+      }
+      return response;
+
+    } catch (IOException | RuntimeException e) {
+      outcome = Outcome.fromException(e);
+      throw e;
+    } finally {
+      long latency = completed(metrics, method, start, outcome);
+      if (response != null) {
+        responseReceived(request, latency);
+      }
+    }
+  }
+
+  private void timedSendRequest(final Request<? extends Object> request,
+      Class<JsonElement> resultClass, final Continuation<Response<JsonElement>> continuation) {
+
+    final JsonRpcMetrics metrics = JsonRpcMetricsManager.getMetrics();
+    if (!metrics.isEnabled() && !JsonRpcEvents.isEnabled() && !isTimingRequests()) {
+      internalSendRequest(request, resultClass, continuation);
+      return;
+    }
+
+    final String method = request.getMethod();
+    final long start = System.nanoTime();
+    final AtomicBoolean completed = new AtomicBoolean();
+    metrics.requestStarted(JsonRpcMetrics.SENT, method);
+
+    try {
+
+      internalSendRequest(request, resultClass, new Continuation<Response<JsonElement>>() {
+        @Override
+        public void onSuccess(Response<JsonElement> response) {
+          if (completed.compareAndSet(false, true)) {
+            long latency = completed(metrics, method, start,
+                response == null || response.getError() == null ? Outcome.SUCCESS
+                    : Outcome.ERROR);
+            if (response != null) {
+              responseReceived(request, latency);
+            }
+          }
+          continuation.onSuccess(response);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+          if (completed.compareAndSet(false, true)) {
+            completed(metrics, method, start, Outcome.fromException(cause));
+          }
+          continuation.onError(cause);
+        }
+      });
+
+    } catch (RuntimeException e) {
+      if (completed.compareAndSet(false, true)) {
+        completed(metrics, method, start, Outcome.fromException(e));
+      }
+      throw e;
+    }
   }
 
   protected abstract <P, R> Response<R> internalSendRequest(Request<P> request,
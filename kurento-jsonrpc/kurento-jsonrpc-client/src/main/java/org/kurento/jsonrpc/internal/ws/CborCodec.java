@@ -0,0 +1,419 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import org.kurento.jsonrpc.JsonUtils;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.internal.LazilyParsedNumber;
+
+/**
+ * Encodes JSON-RPC messages in CBOR (RFC 7049) for the {@code kurento-jsonrpc-cbor} subprotocol.
+ * Messages have the same structure as in JSON; only the encoding changes. Integers are encoded in
+ * the smallest CBOR integer that holds them, and the rest of numbers as double precision floats.
+ *
+ * <p>
+ * Decoding accepts any well formed CBOR item: byte strings are converted to base64 strings, tags
+ * are ignored and undefined is converted to null, as they have no JSON equivalent.
+ * </p>
+ */
+public class CborCodec {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int MAJOR_UNSIGNED = 0;
+  private static final int MAJOR_NEGATIVE = 1;
+  private static final int MAJOR_BYTES = 2;
+  private static final int MAJOR_TEXT = 3;
+  private static final int MAJOR_ARRAY = 4;
+  private static final int MAJOR_MAP = 5;
+  private static final int MAJOR_TAG = 6;
+  private static final int MAJOR_SIMPLE = 7;
+
+  private static final int FALSE = 0xf4;
+  private static final int TRUE = 0xf5;
+  private static final int NULL = 0xf6;
+  private static final int DOUBLE = 0xfb;
+  private static final int BREAK = 0xff;
+
+  private static final int INDEFINITE = 31;
+
+  private static final BigInteger TWO_64 = BigInteger.ONE.shiftLeft(64);
+
+  private CborCodec() {
+  }
+
+  private static class Output {
+
+    private byte[] buf = new byte[256];
+    private int pos;
+
+    void ensure(int n) {
+      if (pos + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+      }
+    }
+
+    void write(int b) {
+      ensure(1);
+      buf[pos++] = (byte) b;
+    }
+
+    void write(byte[] bytes) {
+      ensure(bytes.length);
+      System.arraycopy(bytes, 0, buf, pos, bytes.length);
+      pos += bytes.length;
+    }
+
+    void writeLong(long value, int bytes) {
+      ensure(bytes);
+      for (int i = bytes - 1; i >= 0; i--) {
+        buf[pos++] = (byte) (value >>> (i * 8));
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, pos);
+    }
+  }
+
+  private static class Input {
+
+    private final byte[] buf;
+    private int pos;
+
+    Input(byte[] buf) {
+      this.buf = buf;
+    }
+
+    int read() {
+      if (pos >= buf.length) {
+        throw new IllegalArgumentException("Unexpected end of CBOR data");
+      }
+      return buf[pos++] & 0xff;
+    }
+
+    long readLong(int bytes) {
+      long value = 0;
+      for (int i = 0; i < bytes; i++) {
+        value = (value << 8) | read();
+      }
+      return value;
+    }
+
+    byte[] read(long length) {
+      if (length < 0 || length > buf.length - pos) {
+        throw new IllegalArgumentException("Invalid CBOR length " + length);
+      }
+      byte[] bytes = Arrays.copyOfRange(buf, pos, pos + (int) length);
+      pos += length;
+      return bytes;
+    }
+
+    boolean isBreak() {
+      if (pos < buf.length && (buf[pos] & 0xff) == BREAK) {
+        pos++;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  public static byte[] encode(String jsonMessage) {
+    return encode(JsonUtils.fromJson(jsonMessage, JsonElement.class));
+  }
+
+  public static byte[] encode(JsonElement json) {
+    Output out = new Output();
+    write(out, json);
+    return out.toByteArray();
+  }
+
+  public static JsonElement decode(byte[] data) {
+    Input in = new Input(data);
+    JsonElement json = read(in);
+    if (in.pos != data.length) {
+      throw new IllegalArgumentException("Unexpected data after CBOR item");
+    }
+    return json;
+  }
+
+  private static void write(Output out, JsonElement json) {
+
+    if (json == null || json.isJsonNull()) {
+
+      out.write(NULL);
+
+    } else if (json.isJsonObject()) {
+
+      JsonObject object = json.getAsJsonObject();
+      writeHeader(out, MAJOR_MAP, object.entrySet().size());
+      for (Entry<String, JsonElement> member : object.entrySet()) {
+        writeText(out, member.getKey());
+        write(out, member.getValue());
+      }
+
+    } else if (json.isJsonArray()) {
+
+      JsonArray array = json.getAsJsonArray();
+      writeHeader(out, MAJOR_ARRAY, array.size());
+      for (JsonElement element : array) {
+        write(out, element);
+      }
+
+    } else {
+
+      JsonPrimitive primitive = json.getAsJsonPrimitive();
+      if (primitive.isBoolean()) {
+        out.write(primitive.getAsBoolean() ? TRUE : FALSE);
+      } else if (primitive.isNumber()) {
+        writeNumber(out, primitive.getAsNumber());
+      } else {
+        writeText(out, primitive.getAsString());
+      }
+    }
+  }
+
+  private static void writeNumber(Output out, Number number) {
+
+    if (number instanceof Integer || number instanceof Long || number instanceof Short
+        || number instanceof Byte) {
+      writeInteger(out, number.longValue());
+      return;
+    }
+
+    if (number instanceof LazilyParsedNumber || number instanceof BigInteger
+        || number instanceof BigDecimal) {
+      String value = number.toString();
+      if (isInteger(value)) {
+        try {
+          writeInteger(out, Long.parseLong(value));
+          return;
+        } catch (NumberFormatException e) {
+          // Doesn't fit in a long. Encoded as double
+        }
+      }
+    }
+
+    out.write(DOUBLE);
+    out.writeLong(Double.doubleToLongBits(number.doubleValue()), 8);
+  }
+
+  private static boolean isInteger(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if ((c < '0' || c > '9') && !(i == 0 && c == '-')) {
+        return false;
+      }
+    }
+    return !value.isEmpty();
+  }
+
+  private static void writeInteger(Output out, long value) {
+    if (value >= 0) {
+      writeHeader(out, MAJOR_UNSIGNED, value);
+    } else {
+      writeHeader(out, MAJOR_NEGATIVE, -1 - value);
+    }
+  }
+
+  private static void writeText(Output out, String text) {
+    byte[] bytes = text.getBytes(UTF8);
+    writeHeader(out, MAJOR_TEXT, bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeHeader(Output out, int major, long value) {
+
+    int type = major << 5;
+
+    if (value < 24) {
+      out.write(type | (int) value);
+    } else if (value < 0x100) {
+      out.write(type | 24);
+      out.writeLong(value, 1);
+    } else if (value < 0x10000) {
+      out.write(type | 25);
+      out.writeLong(value, 2);
+    } else if (value < 0x100000000L) {
+      out.write(type | 26);
+      out.writeLong(value, 4);
+    } else {
+      out.write(type | 27);
+      out.writeLong(value, 8);
+    }
+  }
+
+  private static JsonElement read(Input in) {
+
+    int initial = in.read();
+    int major = initial >>> 5;
+    int info = initial & 0x1f;
+
+    if (major == MAJOR_SIMPLE) {
+      return readSimple(in, info);
+    }
+
+    if (info == INDEFINITE) {
+      return readIndefinite(in, major);
+    }
+
+    long value = readValue(in, info);
+
+    switch (major) {
+      case MAJOR_UNSIGNED:
+        return new JsonPrimitive(toNumber(value));
+      case MAJOR_NEGATIVE:
+        return new JsonPrimitive(
+            value >= 0 ? (Number) (-1 - value) : BigInteger.ONE.negate().subtract(toBig(value)));
+      case MAJOR_BYTES:
+        return new JsonPrimitive(BaseEncoding.base64().encode(in.read(value)));
+      case MAJOR_TEXT:
+        return new JsonPrimitive(new String(in.read(value), UTF8));
+      case MAJOR_ARRAY:
+        JsonArray array = new JsonArray();
+        for (long i = 0; i < value; i++) {
+          array.add(read(in));
+        }
+        return array;
+      case MAJOR_MAP:
+        JsonObject object = new JsonObject();
+        for (long i = 0; i < value; i++) {
+          object.add(readKey(in), read(in));
+        }
+        return object;
+      case MAJOR_TAG:
+        return read(in);
+      default:
+        throw new IllegalArgumentException("Invalid CBOR major type " + major);
+    }
+  }
+
+  private static JsonElement readIndefinite(Input in, int major) {
+
+    switch (major) {
+      case MAJOR_BYTES:
+      case MAJOR_TEXT:
+        StringBuilder text = new StringBuilder();
+        while (!in.isBreak()) {
+          JsonElement chunk = read(in);
+          if (!chunk.isJsonPrimitive()) {
+            throw new IllegalArgumentException("Invalid chunk in CBOR string");
+          }
+          text.append(chunk.getAsString());
+        }
+        return new JsonPrimitive(text.toString());
+      case MAJOR_ARRAY:
+        JsonArray array = new JsonArray();
+        while (!in.isBreak()) {
+          array.add(read(in));
+        }
+        return array;
+      case MAJOR_MAP:
+        JsonObject object = new JsonObject();
+        while (!in.isBreak()) {
+          object.add(readKey(in), read(in));
+        }
+        return object;
+      default:
+        throw new IllegalArgumentException("Invalid indefinite length for major type " + major);
+    }
+  }
+
+  private static String readKey(Input in) {
+    JsonElement key = read(in);
+    if (!key.isJsonPrimitive()) {
+      throw new IllegalArgumentException("CBOR map keys must be strings or numbers");
+    }
+    return key.getAsString();
+  }
+
+  private static JsonElement readSimple(Input in, int info) {
+    switch (info) {
+      case 20:
+        return new JsonPrimitive(false);
+      case 21:
+        return new JsonPrimitive(true);
+      case 22:
+      case 23:
+        return JsonNull.INSTANCE;
+      case 25:
+        return new JsonPrimitive(halfToFloat((int) in.readLong(2)));
+      case 26:
+        return new JsonPrimitive(Float.intBitsToFloat((int) in.readLong(4)));
+      case 27:
+        return new JsonPrimitive(Double.longBitsToDouble(in.readLong(8)));
+      default:
+        throw new IllegalArgumentException("Unsupported CBOR simple value " + info);
+    }
+  }
+
+  private static long readValue(Input in, int info) {
+    if (info < 24) {
+      return info;
+    }
+    switch (info) {
+      case 24:
+        return in.readLong(1);
+      case 25:
+        return in.readLong(2);
+      case 26:
+        return in.readLong(4);
+      case 27:
+        return in.readLong(8);
+      default:
+        throw new IllegalArgumentException("Invalid CBOR additional info " + info);
+    }
+  }
+
+  private static Number toNumber(long unsigned) {
+    return unsigned >= 0 ? (Number) unsigned : toBig(unsigned);
+  }
+
+  private static BigInteger toBig(long unsigned) {
+    return BigInteger.valueOf(unsigned).add(TWO_64);
+  }
+
+  private static float halfToFloat(int half) {
+
+    int exponent = (half >> 10) & 0x1f;
+    int mantissa = half & 0x3ff;
+    float value;
+
+    if (exponent == 0) {
+      value = (float) (mantissa * Math.pow(2, -24));
+    } else if (exponent == 0x1f) {
+      value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+    } else {
+      value = (float) ((mantissa + 1024) * Math.pow(2, exponent - 25));
+    }
+
+    return (half & 0x8000) != 0 ? -value : value;
+  }
+}
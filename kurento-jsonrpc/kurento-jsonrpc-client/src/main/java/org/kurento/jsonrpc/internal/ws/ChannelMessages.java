@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.CHANNEL_PROPERTY;
+
+import org.kurento.jsonrpc.JsonUtils;
+
+/**
+ * Helpers for the multiplexing subprotocol, where several logical JSON-RPC sessions share the same
+ * WebSocket connection. Each message of a logical session has an extra {@code channel} member with
+ * the channel number assigned by the client to the session. Messages without channel belong to the
+ * connection itself (e.g. heartbeat pings).
+ */
+public class ChannelMessages {
+
+  private ChannelMessages() {
+  }
+
+  /**
+   * Adds the channel member to a JSON object message. The channel is added as the first member, so
+   * the message doesn't need to be parsed again.
+   */
+  public static String addChannel(String jsonMessage, String channel) {
+
+    if (channel == null) {
+      return jsonMessage;
+    }
+
+    int start = jsonMessage.indexOf('{');
+    if (start < 0) {
+      throw new IllegalArgumentException("Message is not a JSON object: " + jsonMessage);
+    }
+
+    StringBuilder sb = new StringBuilder(jsonMessage.length() + channel.length() + 16);
+    sb.append(jsonMessage, 0, start + 1).append('"').append(CHANNEL_PROPERTY).append("\":")
+        .append(JsonUtils.toJson(channel));
+
+    int next = start + 1;
+    while (next < jsonMessage.length() && Character.isWhitespace(jsonMessage.charAt(next))) {
+      next++;
+    }
+    if (next < jsonMessage.length() && jsonMessage.charAt(next) != '}') {
+      sb.append(',');
+    }
+
+    return sb.append(jsonMessage, start + 1, jsonMessage.length()).toString();
+  }
+
+  /**
+   * Returns the id used to identify the transport of a logical session in the server. It is the id
+   * of the WebSocket session when there is no channel.
+   */
+  public static String getTransportId(String webSocketSessionId, String channel) {
+    return channel == null ? webSocketSessionId : webSocketSessionId + "#" + channel;
+  }
+}
@@ -23,6 +23,8 @@ import java.util.concurrent.ConcurrentMap;
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.message.Response;
 import org.kurento.jsonrpc.message.ResponseError;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,13 +33,28 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.JsonElement;
 
-public class PendingRequests {
+public class PendingRequests implements JsonRpcMetrics.Gauge {
 
   private static final Logger log = LoggerFactory.getLogger(PendingRequests.class);
 
   private final ConcurrentMap<Integer, SettableFuture<Response<JsonElement>>> pendingRequests =
       new ConcurrentHashMap<>();
 
+  public PendingRequests() {
+    this(null);
+  }
+
+  /**
+   * @param transport
+   *          name of the transport used to account the pending requests in the JSON-RPC metrics
+   *          (see {@link JsonRpcMetrics}). If null, pending requests are not accounted
+   */
+  public PendingRequests(String transport) {
+    if (transport != null) {
+      JsonRpcMetricsManager.getMetrics().registerPendingRequests(transport, this);
+    }
+  }
+
   public void handleResponse(Response<JsonElement> response) {
 
     SettableFuture<Response<JsonElement>> responseFuture = pendingRequests.remove(response.getId());
@@ -64,13 +81,33 @@ public class PendingRequests {
     return responseFuture;
   }
 
+  /**
+   * Discards a pending request that will never be responded, for instance because it could not be
+   * sent.
+   */
+  public void removeResponse(Integer id) {
+    SettableFuture<Response<JsonElement>> responseFuture = pendingRequests.remove(id);
+    if (responseFuture != null) {
+      responseFuture.cancel(false);
+    }
+  }
+
   public void closeAllPendingRequests() {
     log.debug("Sending error to all pending requests");
-    for (SettableFuture<Response<JsonElement>> responseFuture : pendingRequests.values()) {
-      responseFuture.set(new Response<JsonElement>(
-          new ResponseError(0, "Connection with server have been closed")));
+    for (Integer id : pendingRequests.keySet()) {
+      SettableFuture<Response<JsonElement>> responseFuture = pendingRequests.remove(id);
+      if (responseFuture != null) {
+        responseFuture.set(new Response<JsonElement>(
+            new ResponseError(0, "Connection with server have been closed")));
+      }
     }
-    pendingRequests.clear();
   }
 
+  /**
+   * Returns the number of requests waiting for a response.
+   */
+  @Override
+  public long getValue() {
+    return pendingRequests.size();
+  }
 }
@@ -18,11 +18,9 @@
 package org.kurento.jsonrpc.message;
 
 import java.util.Map.Entry;
-
-import static org.kurento.jsonrpc.JsonUtils.getGson;
-
 import java.util.Set;
 
+import org.kurento.jsonrpc.JsonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -122,9 +120,9 @@ public class MessageUtils {
         value = resultJsonObject;
       }
 
-      resultR = getGson().fromJson(value, resultClass);
+      resultR = JsonUtils.fromJson(value, resultClass);
     } else {
-      resultR = getGson().fromJson(resultJsonObject, resultClass);
+      resultR = JsonUtils.fromJson(resultJsonObject, resultClass);
     }
     return resultR;
   }
@@ -17,6 +17,8 @@
 
 package org.kurento.jsonrpc.message;
 
+import org.kurento.jsonrpc.TraceContext;
+
 /**
  *
  * Java representation for JSON RPC request. This class holds the information needed to invoke a
@@ -48,6 +50,11 @@ public class Request<P> extends Message {
    */
   protected P params;
 
+  /**
+   * Trace context received in the params, if any
+   */
+  private transient TraceContext traceContext;
+
   /**
    * Default constructor.
    */
@@ -115,6 +122,14 @@ public class Request<P> extends Message {
     this.id = id;
   }
 
+  public TraceContext getTraceContext() {
+    return traceContext;
+  }
+
+  public void setTraceContext(TraceContext traceContext) {
+    this.traceContext = traceContext;
+  }
+
   public boolean isNotification() {
     return id == null;
   }
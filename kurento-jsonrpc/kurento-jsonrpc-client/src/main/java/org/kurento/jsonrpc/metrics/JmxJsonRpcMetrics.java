@@ -0,0 +1,368 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.kurento.commons.DecayingHistogram;
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link JsonRpcMetrics}, that keeps the metrics in memory and exposes them as MBeans in
+ * the platform MBean server:
+ * <ul>
+ * <li>{@code org.kurento.jsonrpc:type=Requests,scope=<scope>,method=<method>}: see
+ * {@link JsonRpcMethodMetricsMBean}</li>
+ * <li>{@code org.kurento.jsonrpc:type=Transport,name=<transport>}: see
+ * {@link JsonRpcTransportMetricsMBean}</li>
+ * </ul>
+ *
+ * <p>
+ * Recording a request only takes two map lookups, a few atomic operations and a short synchronized
+ * update of the latency histogram. MBeans are
+ * registered the first time a method is seen. To protect the MBean server from clients sending
+ * arbitrary method names, methods over {@code jsonRpc.metrics.maxMethods} (200) are accounted
+ * together as method {@value #OTHER_METHODS}.
+ * </p>
+ */
+public class JmxJsonRpcMetrics implements JsonRpcMetrics {
+
+  private static final Logger log = LoggerFactory.getLogger(JmxJsonRpcMetrics.class);
+
+  public static final String DOMAIN = "org.kurento.jsonrpc";
+  public static final String OTHER_METHODS = "_other";
+
+  private static final int MAX_METHODS =
+      PropertiesManager.getProperty("jsonRpc.metrics.maxMethods", 200);
+
+  public static class MethodMetrics implements JsonRpcMethodMetricsMBean {
+
+    private final String scope;
+    private final String method;
+
+    // Latencies are recorded in micros, so the histogram has less buckets to update
+    private final DecayingHistogram latency = new DecayingHistogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    MethodMetrics(String scope, String method) {
+      this.scope = scope;
+      this.method = method;
+    }
+
+    void completed(long latencyNanos, Outcome outcome) {
+      inFlight.decrementAndGet();
+      latency.record(latencyNanos / 1000);
+      if (outcome == Outcome.ERROR) {
+        errors.incrementAndGet();
+      } else if (outcome == Outcome.TIMEOUT) {
+        timeouts.incrementAndGet();
+      }
+    }
+
+    @Override
+    public String getScope() {
+      return scope;
+    }
+
+    @Override
+    public String getMethod() {
+      return method;
+    }
+
+    @Override
+    public long getRequests() {
+      return (long) latency.getCount();
+    }
+
+    @Override
+    public long getInFlight() {
+      return inFlight.get();
+    }
+
+    @Override
+    public long getErrors() {
+      return errors.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+      return timeouts.get();
+    }
+
+    @Override
+    public double getMeanLatency() {
+      return latency.getMean() / 1000;
+    }
+
+    @Override
+    public double getP50Latency() {
+      return latency.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getP90Latency() {
+      return latency.getPercentile(90) / 1000.0;
+    }
+
+    @Override
+    public double getP99Latency() {
+      return latency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxLatency() {
+      return latency.getMax() / 1000.0;
+    }
+
+    public DecayingHistogram getLatencyMicros() {
+      return latency;
+    }
+
+    @Override
+    public void reset() {
+      latency.reset();
+      errors.set(0);
+      timeouts.set(0);
+    }
+  }
+
+  public static class TransportMetrics implements JsonRpcTransportMetricsMBean {
+
+    private final String transport;
+
+    private final AtomicLong messagesSent = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong messagesReceived = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong reconnections = new AtomicLong();
+    private final Set<Gauge> pendingRequests =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Gauge, Boolean>()));
+
+    TransportMetrics(String transport) {
+      this.transport = transport;
+    }
+
+    @Override
+    public String getTransport() {
+      return transport;
+    }
+
+    @Override
+    public long getMessagesSent() {
+      return messagesSent.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+      return bytesSent.get();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+      return messagesReceived.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+      return bytesReceived.get();
+    }
+
+    @Override
+    public long getReconnections() {
+      return reconnections.get();
+    }
+
+    @Override
+    public long getPendingRequests() {
+      long value = 0;
+      synchronized (pendingRequests) {
+        for (Gauge gauge : pendingRequests) {
+          value += gauge.getValue();
+        }
+      }
+      return value;
+    }
+  }
+
+  private final ConcurrentMap<String, ConcurrentMap<String, MethodMetrics>> methods =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, TransportMetrics> transports = new ConcurrentHashMap<>();
+
+  private final MBeanServer mbeanServer;
+
+  public JmxJsonRpcMetrics() {
+    this(ManagementFactory.getPlatformMBeanServer());
+  }
+
+  /**
+   * @param mbeanServer
+   *          server where MBeans are registered. If null, metrics are only kept in memory
+   */
+  public JmxJsonRpcMetrics(MBeanServer mbeanServer) {
+    this.mbeanServer = mbeanServer;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void requestStarted(String scope, String method) {
+    getMethodMetrics(scope, method).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void requestCompleted(String scope, String method, long latencyNanos, Outcome outcome) {
+    getMethodMetrics(scope, method).completed(latencyNanos, outcome);
+  }
+
+  @Override
+  public void messageSent(String transport, int size) {
+    TransportMetrics metrics = getTransportMetrics(transport);
+    metrics.messagesSent.incrementAndGet();
+    metrics.bytesSent.addAndGet(size);
+  }
+
+  @Override
+  public void messageReceived(String transport, int size) {
+    TransportMetrics metrics = getTransportMetrics(transport);
+    metrics.messagesReceived.incrementAndGet();
+    metrics.bytesReceived.addAndGet(size);
+  }
+
+  @Override
+  public void reconnected(String transport) {
+    getTransportMetrics(transport).reconnections.incrementAndGet();
+  }
+
+  @Override
+  public void registerPendingRequests(String transport, Gauge pendingRequests) {
+    getTransportMetrics(transport).pendingRequests.add(pendingRequests);
+  }
+
+  /**
+   * Returns the metrics of a method, creating them if they don't exist.
+   */
+  public MethodMetrics getMethodMetrics(String scope, String method) {
+
+    ConcurrentMap<String, MethodMetrics> scopeMethods = methods.get(scope);
+    if (scopeMethods == null) {
+      scopeMethods = new ConcurrentHashMap<>();
+      ConcurrentMap<String, MethodMetrics> previous = methods.putIfAbsent(scope, scopeMethods);
+      if (previous != null) {
+        scopeMethods = previous;
+      }
+    }
+
+    if (method == null) {
+      method = OTHER_METHODS;
+    }
+
+    MethodMetrics metrics = scopeMethods.get(method);
+    if (metrics != null) {
+      return metrics;
+    }
+
+    if (scopeMethods.size() >= MAX_METHODS) {
+      method = OTHER_METHODS;
+      metrics = scopeMethods.get(method);
+      if (metrics != null) {
+        return metrics;
+      }
+    }
+
+    metrics = new MethodMetrics(scope, method);
+    MethodMetrics previous = scopeMethods.putIfAbsent(method, metrics);
+    if (previous != null) {
+      return previous;
+    }
+
+    register("type=Requests,scope=" + quoteIfNeeded(scope) + ",method=" + quoteIfNeeded(method),
+        metrics, JsonRpcMethodMetricsMBean.class);
+
+    return metrics;
+  }
+
+  public TransportMetrics getTransportMetrics(String transport) {
+
+    TransportMetrics metrics = transports.get(transport);
+    if (metrics != null) {
+      return metrics;
+    }
+
+    metrics = new TransportMetrics(transport);
+    TransportMetrics previous = transports.putIfAbsent(transport, metrics);
+    if (previous != null) {
+      return previous;
+    }
+
+    register("type=Transport,name=" + quoteIfNeeded(transport), metrics,
+        JsonRpcTransportMetricsMBean.class);
+
+    return metrics;
+  }
+
+  private <T> void register(String keys, T mbean, Class<T> mbeanInterface) {
+
+    if (mbeanServer == null) {
+      return;
+    }
+
+    try {
+
+      ObjectName name = new ObjectName(DOMAIN + ":" + keys);
+
+      if (mbeanServer.isRegistered(name)) {
+        // Other instance (e.g. from other class loader) has registered it before
+        log.debug("MBean {} is already registered", name);
+        return;
+      }
+
+      mbeanServer.registerMBean(new StandardMBean(mbean, mbeanInterface), name);
+
+    } catch (Exception e) {
+      log.warn("Exception registering JSON-RPC metrics MBean {}", keys, e);
+    }
+  }
+
+  private static String quoteIfNeeded(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '=' || c == ':' || c == '"' || c == '*' || c == '?' || c == '\n') {
+        return ObjectName.quote(value);
+      }
+    }
+    return value;
+  }
+}
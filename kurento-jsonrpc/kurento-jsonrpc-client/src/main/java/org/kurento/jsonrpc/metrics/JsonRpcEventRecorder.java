@@ -0,0 +1,63 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+
+/**
+ * Service provider interface for recording individual lifecycle events of requests and
+ * connections, to diagnose stalls in production. Unlike {@link JsonRpcMetrics}, that aggregates
+ * every request, only the events over the thresholds configured in {@link JsonRpcEvents} reach
+ * the recorder, so implementations can afford to do more work per event (e.g. writing a log line
+ * or committing a profiler event).
+ *
+ * <p>
+ * Durations are in nanoseconds and sizes are the length of the JSON text of the message.
+ * </p>
+ */
+public interface JsonRpcEventRecorder {
+
+  /**
+   * Records a request that has been completed. In the {@link JsonRpcMetrics#SENT} scope the
+   * duration is the time from the request being sent to its response being received, and in the
+   * {@link JsonRpcMetrics#HANDLED} scope it is the time from the request being dispatched to the
+   * handler to its response being sent.
+   */
+  void requestCompleted(String scope, String method, long durationNanos, Outcome outcome);
+
+  /**
+   * Records the time a task has waited in the queue of an executor before being run.
+   */
+  void queueWaited(String executor, long waitNanos);
+
+  /**
+   * Records a reconnection, with the time from the disconnection to the new connection.
+   */
+  void reconnected(String uri, int attempts, long durationNanos);
+
+  /**
+   * Records the delivery of an event received from the media server to the listeners of a remote
+   * object.
+   */
+  void remoteObjectEventFired(String eventType, String objectRef, int listeners,
+      long durationNanos);
+
+  void messageSent(String transport, int size);
+
+  void messageReceived(String transport, int size);
+}
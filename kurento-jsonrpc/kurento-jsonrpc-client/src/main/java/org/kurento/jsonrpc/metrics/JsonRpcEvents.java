@@ -0,0 +1,179 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point for recording lifecycle events with a {@link JsonRpcEventRecorder}.
+ *
+ * <p>
+ * Events are disabled by default. They are enabled with the property {@code jsonRpc.events.enabled}
+ * and then they are passed to the class configured in the property {@code jsonRpc.events.recorder}
+ * (it must have a public constructor without params) or to {@link LoggingJsonRpcEventRecorder} if
+ * there is none. To keep them cheap, only events lasting at least {@code jsonRpc.events.threshold}
+ * millis (20 by default) and messages of at least {@code jsonRpc.events.messageSizeThreshold}
+ * chars (64 KiB by default) are recorded. When events are disabled, the instrumented code only
+ * pays for a volatile read.
+ * </p>
+ *
+ * <p>
+ * In Java 11 or newer, events can be recorded in Java Flight Recorder with
+ * {@code org.kurento.jsonrpc.jfr.JfrJsonRpcEventRecorder}, from the module kurento-jsonrpc-jfr.
+ * </p>
+ */
+public class JsonRpcEvents {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcEvents.class);
+
+  public static final String ENABLED_PROPERTY = "jsonRpc.events.enabled";
+  public static final String RECORDER_PROPERTY = "jsonRpc.events.recorder";
+  public static final String THRESHOLD_PROPERTY = "jsonRpc.events.threshold";
+  public static final String MESSAGE_SIZE_THRESHOLD_PROPERTY =
+      "jsonRpc.events.messageSizeThreshold";
+
+  private static volatile JsonRpcEventRecorder recorder = createRecorder();
+
+  private static volatile long thresholdNanos =
+      TimeUnit.MILLISECONDS.toNanos(PropertiesManager.getProperty(THRESHOLD_PROPERTY, 20L));
+
+  private static volatile int messageSizeThreshold =
+      PropertiesManager.getProperty(MESSAGE_SIZE_THRESHOLD_PROPERTY, 64 * 1024);
+
+  private JsonRpcEvents() {
+  }
+
+  public static boolean isEnabled() {
+    return recorder != null;
+  }
+
+  public static JsonRpcEventRecorder getRecorder() {
+    return recorder;
+  }
+
+  /**
+   * Sets the recorder of the events. A null recorder disables them.
+   */
+  public static void setRecorder(JsonRpcEventRecorder recorder) {
+    JsonRpcEvents.recorder = recorder;
+  }
+
+  public static void setThreshold(long threshold, TimeUnit unit) {
+    thresholdNanos = unit.toNanos(threshold);
+  }
+
+  public static void setMessageSizeThreshold(int size) {
+    messageSizeThreshold = size;
+  }
+
+  public static void requestCompleted(String scope, String method, long durationNanos,
+      Outcome outcome) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && durationNanos >= thresholdNanos) {
+      r.requestCompleted(scope, method, durationNanos, outcome);
+    }
+  }
+
+  public static void queueWaited(String executor, long waitNanos) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && waitNanos >= thresholdNanos) {
+      r.queueWaited(executor, waitNanos);
+    }
+  }
+
+  public static void reconnected(String uri, int attempts, long durationNanos) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && durationNanos >= thresholdNanos) {
+      r.reconnected(uri, attempts, durationNanos);
+    }
+  }
+
+  public static void remoteObjectEventFired(String eventType, String objectRef, int listeners,
+      long durationNanos) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && durationNanos >= thresholdNanos) {
+      r.remoteObjectEventFired(eventType, objectRef, listeners, durationNanos);
+    }
+  }
+
+  public static void messageSent(String transport, int size) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && size >= messageSizeThreshold) {
+      r.messageSent(transport, size);
+    }
+  }
+
+  public static void messageReceived(String transport, int size) {
+    JsonRpcEventRecorder r = recorder;
+    if (r != null && size >= messageSizeThreshold) {
+      r.messageReceived(transport, size);
+    }
+  }
+
+  /**
+   * Wraps a task that is going to be submitted to an executor, so the time it waits in the queue
+   * is recorded. If events are disabled, the task is returned as is.
+   */
+  public static Runnable recordQueueWait(final String executor, final Runnable task) {
+
+    if (recorder == null) {
+      return task;
+    }
+
+    final long queuedTime = System.nanoTime();
+
+    return new Runnable() {
+      @Override
+      public void run() {
+        queueWaited(executor, System.nanoTime() - queuedTime);
+        task.run();
+      }
+    };
+  }
+
+  private static JsonRpcEventRecorder createRecorder() {
+
+    if (!PropertiesManager.getProperty(ENABLED_PROPERTY, false)) {
+      return null;
+    }
+
+    String recorderClassName = PropertiesManager.getProperty(RECORDER_PROPERTY);
+
+    if (recorderClassName == null || recorderClassName.isEmpty()) {
+      return new LoggingJsonRpcEventRecorder();
+    }
+
+    try {
+
+      JsonRpcEventRecorder eventRecorder =
+          (JsonRpcEventRecorder) Class.forName(recorderClassName).newInstance();
+      log.info("Using JSON-RPC event recorder {}", recorderClassName);
+      return eventRecorder;
+
+    } catch (Exception e) {
+      log.warn("Exception loading JSON-RPC event recorder {}. Logging events instead",
+          recorderClassName, e);
+      return new LoggingJsonRpcEventRecorder();
+    }
+  }
+}
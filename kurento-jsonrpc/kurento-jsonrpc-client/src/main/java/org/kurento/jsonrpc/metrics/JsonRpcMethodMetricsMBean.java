@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+/**
+ * Metrics of the requests of a JSON-RPC method, exposed through JMX. Latencies are in
+ * milliseconds, with microsecond resolution.
+ */
+public interface JsonRpcMethodMetricsMBean {
+
+  String getScope();
+
+  String getMethod();
+
+  long getRequests();
+
+  long getInFlight();
+
+  long getErrors();
+
+  long getTimeouts();
+
+  double getMeanLatency();
+
+  double getP50Latency();
+
+  double getP90Latency();
+
+  double getP99Latency();
+
+  double getMaxLatency();
+
+  void reset();
+}
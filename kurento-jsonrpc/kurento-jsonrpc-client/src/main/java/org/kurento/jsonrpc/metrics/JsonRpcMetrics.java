@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Service provider interface of the JSON-RPC metrics. The implementation in use is obtained with
+ * {@link JsonRpcMetricsManager#getMetrics()}, and it is called in the hot path of every request,
+ * so implementations must be thread safe and must not block.
+ *
+ * <p>
+ * Requests are accounted in two scopes: {@link #SENT} for the requests sent by a client or by a
+ * server session, and {@link #HANDLED} for the requests processed by a local handler. Transport
+ * metrics (bytes, reconnections and pending requests) are accounted by transport name.
+ * </p>
+ */
+public interface JsonRpcMetrics {
+
+  String SENT = "sent";
+  String HANDLED = "handled";
+
+  String CLIENT_WEBSOCKET = "clientWebSocket";
+  String SERVER_WEBSOCKET = "serverWebSocket";
+  String SERVER_HTTP = "serverHttp";
+
+  enum Outcome {
+    SUCCESS, ERROR, TIMEOUT;
+
+    /**
+     * Returns {@link #TIMEOUT} if the exception has been caused by a timeout, and {@link #ERROR}
+     * otherwise.
+     */
+    public static Outcome fromException(Throwable t) {
+      for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+        if (cause instanceof TimeoutException) {
+          return TIMEOUT;
+        }
+      }
+      return ERROR;
+    }
+  }
+
+  /**
+   * Value that is read when the metrics are queried.
+   */
+  interface Gauge {
+    long getValue();
+  }
+
+  /**
+   * Returns false if calls to this object are discarded, so callers can skip the instrumentation
+   * altogether.
+   */
+  boolean isEnabled();
+
+  void requestStarted(String scope, String method);
+
+  /**
+   * Records the end of a request started with {@link #requestStarted(String, String)}.
+   *
+   * @param latencyNanos
+   *          time from the start of the request to the response
+   */
+  void requestCompleted(String scope, String method, long latencyNanos, Outcome outcome);
+
+  /**
+   * Records a message sent. The size is the length of the JSON text, that matches the size in
+   * bytes for ASCII messages.
+   */
+  void messageSent(String transport, int size);
+
+  void messageReceived(String transport, int size);
+
+  void reconnected(String transport);
+
+  /**
+   * Registers the requests waiting for a response in a connection of the transport. The gauge is
+   * read when the metrics are queried, and it is only weakly referenced, so it doesn't need to be
+   * unregistered when the connection is discarded.
+   */
+  void registerPendingRequests(String transport, Gauge pendingRequests);
+}
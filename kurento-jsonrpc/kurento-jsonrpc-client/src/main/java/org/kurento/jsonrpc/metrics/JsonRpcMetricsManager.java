@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link JsonRpcMetrics} used by the JSON-RPC layer.
+ *
+ * <p>
+ * Metrics are disabled by default. They are enabled with the property
+ * {@code jsonRpc.metrics.enabled}, and then the implementation is the class configured in the
+ * property {@code jsonRpc.metrics.provider} (it must have a public constructor without params) or
+ * {@link JmxJsonRpcMetrics} if there is none. An implementation can also be set programmatically
+ * with {@link #setMetrics(JsonRpcMetrics)}, for instance to bind the metrics to another metrics
+ * library. A binding to Micrometer is provided by
+ * {@code org.kurento.jsonrpc.micrometer.MicrometerJsonRpcMetrics}, from the module
+ * kurento-jsonrpc-micrometer.
+ * </p>
+ */
+public class JsonRpcMetricsManager {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcMetricsManager.class);
+
+  public static final String ENABLED_PROPERTY = "jsonRpc.metrics.enabled";
+  public static final String PROVIDER_PROPERTY = "jsonRpc.metrics.provider";
+
+  private static volatile JsonRpcMetrics metrics = createMetrics();
+
+  private JsonRpcMetricsManager() {
+  }
+
+  public static JsonRpcMetrics getMetrics() {
+    return metrics;
+  }
+
+  public static void setMetrics(JsonRpcMetrics metrics) {
+    JsonRpcMetricsManager.metrics = metrics != null ? metrics : NoopJsonRpcMetrics.INSTANCE;
+  }
+
+  private static JsonRpcMetrics createMetrics() {
+
+    if (!PropertiesManager.getProperty(ENABLED_PROPERTY, false)) {
+      return NoopJsonRpcMetrics.INSTANCE;
+    }
+
+    String providerClassName = PropertiesManager.getProperty(PROVIDER_PROPERTY);
+
+    if (providerClassName == null || providerClassName.isEmpty()) {
+      return new JmxJsonRpcMetrics();
+    }
+
+    try {
+
+      JsonRpcMetrics provider = (JsonRpcMetrics) Class.forName(providerClassName).newInstance();
+      log.info("Using JSON-RPC metrics provider {}", providerClassName);
+      return provider;
+
+    } catch (Exception e) {
+      log.warn("Exception loading JSON-RPC metrics provider {}. Using JMX metrics",
+          providerClassName, e);
+      return new JmxJsonRpcMetrics();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+/**
+ * Metrics of a JSON-RPC transport, exposed through JMX.
+ */
+public interface JsonRpcTransportMetricsMBean {
+
+  String getTransport();
+
+  long getMessagesSent();
+
+  long getBytesSent();
+
+  long getMessagesReceived();
+
+  long getBytesReceived();
+
+  long getReconnections();
+
+  long getPendingRequests();
+}
@@ -0,0 +1,72 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the recorded events to the log, in a logger of its own so they can be routed to a
+ * separate appender.
+ */
+public class LoggingJsonRpcEventRecorder implements JsonRpcEventRecorder {
+
+  private static final Logger log = LoggerFactory.getLogger(LoggingJsonRpcEventRecorder.class);
+
+  @Override
+  public void requestCompleted(String scope, String method, long durationNanos,
+      Outcome outcome) {
+    log.info("Request {} ({}) completed in {} ms with outcome {}", method, scope,
+        toMillis(durationNanos), outcome);
+  }
+
+  @Override
+  public void queueWaited(String executor, long waitNanos) {
+    log.info("Task waited {} ms in the queue of executor {}", toMillis(waitNanos), executor);
+  }
+
+  @Override
+  public void reconnected(String uri, int attempts, long durationNanos) {
+    log.info("Reconnected to {} after {} ms and {} attempts", uri, toMillis(durationNanos),
+        attempts);
+  }
+
+  @Override
+  public void remoteObjectEventFired(String eventType, String objectRef, int listeners,
+      long durationNanos) {
+    log.info("Event {} of object {} delivered to {} listeners in {} ms", eventType, objectRef,
+        listeners, toMillis(durationNanos));
+  }
+
+  @Override
+  public void messageSent(String transport, int size) {
+    log.info("Message of {} chars sent in transport {}", size, transport);
+  }
+
+  @Override
+  public void messageReceived(String transport, int size) {
+    log.info("Message of {} chars received in transport {}", size, transport);
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
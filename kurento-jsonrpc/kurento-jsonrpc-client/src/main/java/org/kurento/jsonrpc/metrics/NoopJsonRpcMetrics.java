@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.metrics;
+
+/**
+ * Metrics that discard everything. Used when metrics are disabled.
+ */
+public class NoopJsonRpcMetrics implements JsonRpcMetrics {
+
+  public static final NoopJsonRpcMetrics INSTANCE = new NoopJsonRpcMetrics();
+
+  @Override
+  public boolean isEnabled() {
+    return false;
+  }
+
+  @Override
+  public void requestStarted(String scope, String method) {
+  }
+
+  @Override
+  public void requestCompleted(String scope, String method, long latencyNanos, Outcome outcome) {
+  }
+
+  @Override
+  public void messageSent(String transport, int size) {
+  }
+
+  @Override
+  public void messageReceived(String transport, int size) {
+  }
+
+  @Override
+  public void reconnected(String transport) {
+  }
+
+  @Override
+  public void registerPendingRequests(String transport, Gauge pendingRequests) {
+  }
+}
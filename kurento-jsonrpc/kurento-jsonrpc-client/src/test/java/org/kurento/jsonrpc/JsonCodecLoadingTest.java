@@ -0,0 +1,50 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * The test classpath registers the codec "counting" as a {@link JsonCodec} provider.
+ */
+public class JsonCodecLoadingTest {
+
+  @Test
+  public void testGsonIsUsedWhenNoCodecIsSelected() {
+    assertEquals(GsonJsonCodec.NAME, JsonUtils.loadCodec(null).getName());
+    assertEquals(GsonJsonCodec.NAME, JsonUtils.loadCodec("").getName());
+  }
+
+  @Test
+  public void testProviderIsSelectedByName() {
+    assertEquals("counting", JsonUtils.loadCodec("counting").getName());
+  }
+
+  @Test
+  public void testProviderIsSelectedByClassName() {
+    assertEquals("counting", JsonUtils
+        .loadCodec("org.kurento.jsonrpc.test.JsonCodecTest$CountingJsonCodec").getName());
+  }
+
+  @Test
+  public void testGsonIsUsedWhenSelectedCodecIsNotFound() {
+    assertEquals(GsonJsonCodec.NAME, JsonUtils.loadCodec("unknown").getName());
+  }
+}
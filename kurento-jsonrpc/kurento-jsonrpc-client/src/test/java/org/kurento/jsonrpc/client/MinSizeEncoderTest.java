@@ -0,0 +1,126 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.WebSocketCompression.MinSizeEncoder;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionEncoder;
+
+public class MinSizeEncoderTest {
+
+  private static final int MIN_SIZE = 16;
+
+  /**
+   * Records the frames it is asked to compress and passes them unchanged.
+   */
+  private static class RecordingEncoder extends WebSocketExtensionEncoder {
+
+    private final List<WebSocketFrame> frames = new ArrayList<>();
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, WebSocketFrame msg, List<Object> out) {
+      frames.add(msg);
+      out.add(msg.retain());
+    }
+  }
+
+  private RecordingEncoder deflate;
+  private EmbeddedChannel channel;
+
+  @Before
+  public void setUp() {
+    deflate = new RecordingEncoder();
+    channel = new EmbeddedChannel(new MinSizeEncoder(deflate, MIN_SIZE));
+  }
+
+  @Test
+  public void testSmallMessagesAreNotCompressed() {
+
+    WebSocketFrame text = new TextWebSocketFrame(repeat('a', MIN_SIZE - 1));
+    WebSocketFrame binary = new BinaryWebSocketFrame(Unpooled.wrappedBuffer(new byte[1]));
+
+    assertTrue(channel.writeOutbound(text, binary));
+
+    assertSame(text, channel.readOutbound());
+    assertSame(binary, channel.readOutbound());
+    assertTrue(deflate.frames.isEmpty());
+  }
+
+  @Test
+  public void testMessagesFromMinSizeAreCompressed() {
+
+    WebSocketFrame text = new TextWebSocketFrame(repeat('a', MIN_SIZE));
+
+    assertTrue(channel.writeOutbound(text));
+
+    assertSame(text, channel.readOutbound());
+    assertEquals(1, deflate.frames.size());
+    assertSame(text, deflate.frames.get(0));
+  }
+
+  @Test
+  public void testFragmentsAreCompressed() {
+
+    // All the fragments of a message must be compressed, as it is signaled in the first one
+    WebSocketFrame first = new TextWebSocketFrame(false, 0, "a");
+    WebSocketFrame last = new ContinuationWebSocketFrame(true, 0, "b");
+
+    assertTrue(channel.writeOutbound(first, last));
+
+    assertEquals(2, deflate.frames.size());
+    assertSame(first, deflate.frames.get(0));
+    assertSame(last, deflate.frames.get(1));
+  }
+
+  @Test
+  public void testControlFramesArePassedToDeflateEncoder() {
+
+    WebSocketFrame ping = new PingWebSocketFrame();
+
+    assertTrue(channel.writeOutbound(ping));
+
+    assertEquals(1, deflate.frames.size());
+    assertSame(ping, channel.readOutbound());
+  }
+
+  private static String repeat(char c, int times) {
+    StringBuilder sb = new StringBuilder(times);
+    for (int i = 0; i < times; i++) {
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+}
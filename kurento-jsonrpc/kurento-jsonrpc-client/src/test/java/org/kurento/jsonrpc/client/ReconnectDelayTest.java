@@ -0,0 +1,98 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReconnectDelayTest {
+
+  private static final int SAMPLES = 1000;
+
+  private static final long INITIAL_DELAY = 500;
+  private static final long MAX_DELAY = 30000;
+
+  @Test
+  public void testFirstAttemptIsBetweenZeroAndInitialDelay() {
+    for (int i = 0; i < SAMPLES; i++) {
+      assertBetween(0, INITIAL_DELAY, getDelay(0));
+    }
+  }
+
+  @Test
+  public void testDelayGrowsExponentially() {
+    for (int attempt = 1; attempt <= 5; attempt++) {
+      long delay = INITIAL_DELAY << attempt;
+      for (int i = 0; i < SAMPLES; i++) {
+        assertBetween(delay / 2, delay, getDelay(attempt));
+      }
+    }
+  }
+
+  @Test
+  public void testDelayIsLimitedByMaxDelay() {
+    for (int attempt : new int[] { 6, 10, 54, 55, 63, 64, 1000, Integer.MAX_VALUE }) {
+      for (int i = 0; i < SAMPLES; i++) {
+        assertBetween(MAX_DELAY / 2, MAX_DELAY, getDelay(attempt));
+      }
+    }
+  }
+
+  @Test
+  public void testDelaysAreRandomized() {
+    long first = getDelay(3);
+    for (int i = 0; i < SAMPLES; i++) {
+      if (getDelay(3) != first) {
+        return;
+      }
+    }
+    throw new AssertionError("All the delays of attempt 3 were " + first);
+  }
+
+  @Test
+  public void testZeroInitialDelayStillGrows() {
+    for (int i = 0; i < SAMPLES; i++) {
+      assertBetween(0, 1, AbstractJsonRpcClientWebSocket.getReconnectDelay(0, 0, MAX_DELAY));
+      assertBetween(16, 32, AbstractJsonRpcClientWebSocket.getReconnectDelay(5, 0, MAX_DELAY));
+      assertEquals(1, AbstractJsonRpcClientWebSocket.getReconnectDelay(5, 0, 0));
+    }
+  }
+
+  @Test
+  public void testNegativeDelayPropertyIsIgnored() {
+    String property = "test.reconnect.delay";
+    System.setProperty(property, "-1");
+    try {
+      assertEquals(500, AbstractJsonRpcClientWebSocket.getDelayProperty(property, 500));
+    } finally {
+      System.clearProperty(property);
+    }
+  }
+
+  private static long getDelay(int attempt) {
+    return AbstractJsonRpcClientWebSocket.getReconnectDelay(attempt, INITIAL_DELAY, MAX_DELAY);
+  }
+
+  private static void assertBetween(long min, long max, long value) {
+    assertTrue("Delay " + value + " not in [" + min + ", " + max + "]",
+        value >= min && value <= max);
+  }
+}
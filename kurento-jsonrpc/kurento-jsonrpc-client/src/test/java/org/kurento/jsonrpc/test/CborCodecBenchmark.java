@@ -0,0 +1,114 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.ws.CborCodec;
+import org.kurento.jsonrpc.message.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Compares the size and the CPU time to encode and decode messages in CBOR and in JSON text, for
+ * a typical request and a stats response. Run with the benchmark profile.
+ */
+public class CborCodecBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(CborCodecBenchmark.class);
+
+  private static final int WARMUP_MESSAGES = 20000;
+  private static final int MEASURED_MESSAGES = 100000;
+
+  private static final ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+
+  @Test
+  public void benchmarkCborVsJson() {
+
+    JsonObject params = new JsonObject();
+    params.addProperty("object", "d5b2b9c6-4c1f-4a3a-9b3e-0a4f5e7d8c9b_kurento.MediaPipeline/"
+        + "e1f2a3b4-c5d6-4e7f-8a9b-0c1d2e3f4a5b_kurento.WebRtcEndpoint");
+    params.addProperty("operation", "getStats");
+    params.addProperty("sessionId", "8f0c7c1e-3a3e-4b7a-bd8e-1e6a2c2f9d41");
+    Request<JsonObject> request = new Request<>(5, "invoke", params);
+
+    JsonObject stats = new JsonObject();
+    for (int i = 0; i < 12; i++) {
+      JsonObject stat = new JsonObject();
+      stat.addProperty("__module__", "kurento");
+      stat.addProperty("__type__", "RTCInboundRTPStreamStats");
+      stat.addProperty("bytesReceived", 1234567 + i * 7919);
+      stat.addProperty("fractionLost", 0);
+      stat.addProperty("jitter", 0.01 * i);
+      stat.addProperty("packetsLost", i);
+      stat.addProperty("packetsReceived", 45678 + i * 31);
+      stat.addProperty("ssrc", String.valueOf(1193834185L + i));
+      stat.addProperty("timestamp", 1476839728 + i);
+      stats.add("RTCInboundRTPStreamStats_" + i, stat);
+    }
+    JsonObject response = json("{'id':5,'result':{'sessionId':'8f0c7c1e'},'jsonrpc':'2.0'}");
+    response.getAsJsonObject("result").add("value", stats);
+
+    benchmark("invoke", JsonUtils.toJsonElement(request).getAsJsonObject());
+    benchmark("stats", response);
+  }
+
+  private void benchmark(String name, JsonObject message) {
+
+    String text = message.toString();
+    byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+    byte[] cbor = CborCodec.encode(message);
+
+    for (int i = 0; i < WARMUP_MESSAGES; i++) {
+      JsonUtils.fromJson(new String(message.toString().getBytes(StandardCharsets.UTF_8),
+          StandardCharsets.UTF_8), JsonObject.class);
+      CborCodec.decode(CborCodec.encode(message));
+    }
+
+    long start = threadMxBean.getCurrentThreadCpuTime();
+    for (int i = 0; i < MEASURED_MESSAGES; i++) {
+      byte[] bytes = message.toString().getBytes(StandardCharsets.UTF_8);
+      JsonUtils.fromJson(new String(bytes, StandardCharsets.UTF_8), JsonObject.class);
+    }
+    long jsonNanos = threadMxBean.getCurrentThreadCpuTime() - start;
+
+    start = threadMxBean.getCurrentThreadCpuTime();
+    for (int i = 0; i < MEASURED_MESSAGES; i++) {
+      CborCodec.decode(CborCodec.encode(message));
+    }
+    long cborNanos = threadMxBean.getCurrentThreadCpuTime() - start;
+
+    log.info("{}: JSON size={} cpu={} ns/msg, CBOR size={} cpu={} ns/msg", name,
+        textBytes.length, jsonNanos / MEASURED_MESSAGES, cbor.length,
+        cborNanos / MEASURED_MESSAGES);
+
+    assertTrue(cbor.length < textBytes.length);
+  }
+
+  private static JsonObject json(String json) {
+    return JsonUtils.fromJson(json.replace('\'', '"'), JsonObject.class);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.ws.CborCodec;
+
+import com.google.common.io.BaseEncoding;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class CborCodecTest {
+
+  private static byte[] hex(String hex) {
+    return BaseEncoding.base16().lowerCase().decode(hex);
+  }
+
+  @Test
+  public void testEncodeRfcExamples() {
+
+    assertArrayEquals(hex("00"), CborCodec.encode(JsonUtils.toJsonElement(0)));
+    assertArrayEquals(hex("17"), CborCodec.encode(JsonUtils.toJsonElement(23)));
+    assertArrayEquals(hex("1818"), CborCodec.encode(JsonUtils.toJsonElement(24)));
+    assertArrayEquals(hex("1903e8"), CborCodec.encode(JsonUtils.toJsonElement(1000)));
+    assertArrayEquals(hex("3863"), CborCodec.encode(JsonUtils.toJsonElement(-100)));
+    assertArrayEquals(hex("fb3ff199999999999a"), CborCodec.encode(JsonUtils.toJsonElement(1.1)));
+    assertArrayEquals(hex("6449455446"), CborCodec.encode(JsonUtils.toJsonElement("IETF")));
+    assertArrayEquals(hex("f5"), CborCodec.encode(JsonUtils.toJsonElement(true)));
+    assertArrayEquals(hex("a26161016162820203"), CborCodec.encode(json("{'a':1,'b':[2,3]}")));
+  }
+
+  @Test
+  public void testDecodeRfcExamples() {
+
+    assertEquals(1000, CborCodec.decode(hex("1903e8")).getAsInt());
+    assertEquals(-1000, CborCodec.decode(hex("3903e7")).getAsInt());
+    assertEquals(1.5, CborCodec.decode(hex("f93e00")).getAsDouble(), 0);
+    assertEquals(100000.0, CborCodec.decode(hex("fa47c35000")).getAsDouble(), 0);
+    assertEquals(18446744073709551615.0,
+        CborCodec.decode(hex("1bffffffffffffffff")).getAsDouble(), 0);
+    assertTrue(CborCodec.decode(hex("f6")).isJsonNull());
+
+    // Indefinite length items
+    assertEquals(json("{'a':1,'b':[2,3]}"), CborCodec.decode(hex("bf61610161629f0203ffff")));
+    assertEquals("streaming", CborCodec.decode(hex("7f657374726561646d696e67ff")).getAsString());
+  }
+
+  @Test
+  public void testRoundTrip() {
+
+    JsonObject message = json("{'id':7,'method':'invoke','params':{'object':'pipeline',"
+        + "'operation':'connect','operationParams':{'sink':'endpoint','gain':-0.5,"
+        + "'big':12345678901234,'text':'ñandú €','empty':{},'list':[true,false,null]}},"
+        + "'jsonrpc':'2.0'}");
+
+    assertEquals(message, CborCodec.decode(CborCodec.encode(message)));
+
+    // Numbers parsed from text keep their integer or decimal nature
+    assertEquals(message, CborCodec.decode(CborCodec.encode(message.toString())));
+  }
+
+  private static JsonObject json(String json) {
+    return JsonUtils.fromJson(json.replace('\'', '"'), JsonObject.class);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.ws.ChannelMessages;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonObject;
+
+public class ChannelMessagesTest {
+
+  @Test
+  public void testAddChannel() {
+
+    Request<JsonObject> request = new Request<>(3, "invoke", new JsonObject());
+    request.setSessionId("session");
+
+    String message = ChannelMessages.addChannel(request.toString(), "12");
+
+    JsonObject json = JsonUtils.fromJson(message, JsonObject.class);
+    assertEquals("12", json.remove(JsonRpcConstants.CHANNEL_PROPERTY).getAsString());
+
+    Request<JsonObject> received = JsonUtils.fromJsonRequest(json, JsonObject.class);
+    assertEquals(Integer.valueOf(3), received.getId());
+    assertEquals("invoke", received.getMethod());
+    assertEquals("session", received.getSessionId());
+  }
+
+  @Test
+  public void testAddChannelToEmptyObject() {
+    JsonObject json = JsonUtils.fromJson(ChannelMessages.addChannel(" { } ", "1"),
+        JsonObject.class);
+    assertEquals(1, json.entrySet().size());
+  }
+
+  @Test
+  public void testMessagesWithoutChannel() {
+
+    String message = "{\"jsonrpc\":\"2.0\",\"method\":\"ping\"}";
+
+    assertSame(message, ChannelMessages.addChannel(message, null));
+    assertFalse(JsonUtils.fromJson(message, JsonObject.class)
+        .has(JsonRpcConstants.CHANNEL_PROPERTY));
+    assertEquals("ws1", ChannelMessages.getTransportId("ws1", null));
+    assertEquals("ws1#2", ChannelMessages.getTransportId("ws1", "2"));
+  }
+}
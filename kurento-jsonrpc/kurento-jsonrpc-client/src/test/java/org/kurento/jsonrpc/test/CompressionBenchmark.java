@@ -0,0 +1,250 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the CPU time per message and the bytes saved by permessage-deflate for typical KMS
+ * traffic, to choose the defaults of {@code WebSocketCompression}. Messages are deflated the same
+ * way the extension does it: raw deflate with a sync flush, removing the trailing empty block.
+ * Run with the benchmark profile.
+ */
+public class CompressionBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(CompressionBenchmark.class);
+
+  private static final int WARMUP_MESSAGES = 20000;
+  private static final int MEASURED_MESSAGES = 50000;
+  private static final int VARIANTS = 256;
+
+  private static final String SESSION_ID = "8f0c7c1e-3a3e-4b7a-bd8e-1e6a2c2f9d41";
+  private static final String PIPELINE_ID = "d5b2b9c6-4c1f-4a3a-9b3e-0a4f5e7d8c9b";
+  private static final String ENDPOINT_ID = "e1f2a3b4-c5d6-4e7f-8a9b-0c1d2e3f4a5b";
+
+  private static final String PING =
+      "{\"id\":1,\"method\":\"ping\",\"params\":{\"interval\":240000},\"jsonrpc\":\"2.0\"}";
+
+  private static final String INVOKE = "{\"id\":5,\"method\":\"invoke\",\"params\":{\"object\":"
+      + "\"" + PIPELINE_ID + "_kurento.MediaPipeline/"
+      + ENDPOINT_ID + "_kurento.WebRtcEndpoint\",\"operation\":"
+      + "\"addIceCandidate\",\"operationParams\":{\"candidate\":{\"candidate\":\"candidate:1 1 UDP "
+      + "2013266431 192.168.1.10 46025 typ host\",\"sdpMid\":\"audio\",\"sdpMLineIndex\":0}},"
+      + "\"sessionId\":\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+
+  private static final String EVENT = "{\"method\":\"onEvent\",\"params\":{\"value\":{\"data\":{"
+      + "\"candidate\":{\"__module__\":\"kurento\",\"__type__\":\"IceCandidate\",\"candidate\":"
+      + "\"candidate:2 1 UDP 2013266430 10.0.0.5 38153 typ host\",\"sdpMLineIndex\":1,\"sdpMid\":"
+      + "\"video\"},\"source\":\"" + ENDPOINT_ID + "_kurento.WebRtcEndpoint\","
+      + "\"tags\":[],\"timestamp\":\"1476839728\",\"type\":\"IceCandidateFound\"},\"object\":"
+      + "\"" + ENDPOINT_ID + "_kurento.WebRtcEndpoint\",\"type\":"
+      + "\"IceCandidateFound\"}},\"jsonrpc\":\"2.0\"}";
+
+  private static final String SDP = createSdpMessage();
+
+  private static final String STATS = createStatsMessage();
+
+  private static final String[][] TRAFFIC = { { "ping", PING }, { "invoke", INVOKE },
+      { "event", EVENT }, { "sdp", SDP }, { "stats", STATS } };
+
+  private static final Pattern NUMBER = Pattern.compile("\\d{3,}");
+
+  private static final ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+
+  private static class MessageDeflater {
+
+    private final Deflater deflater;
+    private final boolean contextTakeover;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    MessageDeflater(int level, boolean contextTakeover) {
+      this.deflater = new Deflater(level, true);
+      this.contextTakeover = contextTakeover;
+    }
+
+    int deflate(byte[] message) {
+
+      deflater.setInput(message);
+
+      int size = 0;
+      int count;
+      do {
+        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        size += count;
+      } while (count == buffer.length);
+
+      if (!contextTakeover) {
+        deflater.reset();
+      }
+
+      // The 0x00 0x00 0xff 0xff tail of the sync flush is not sent
+      return size - 4;
+    }
+  }
+
+  @Test
+  public void testBigMessagesAreWorthCompressing() {
+
+    MessageDeflater deflater = new MessageDeflater(6, false);
+
+    byte[] sdp = SDP.getBytes(StandardCharsets.UTF_8);
+    byte[] stats = STATS.getBytes(StandardCharsets.UTF_8);
+
+    assertTrue(deflater.deflate(sdp) < sdp.length / 2);
+    assertTrue(deflater.deflate(stats) < stats.length / 2);
+  }
+
+  @Test
+  public void benchmarkCompression() {
+
+    for (int level : new int[] { 1, 6, 9 }) {
+      for (boolean contextTakeover : new boolean[] { true, false }) {
+        for (String[] message : TRAFFIC) {
+          benchmark(message[0], message[1], level, contextTakeover);
+        }
+      }
+    }
+  }
+
+  private void benchmark(String name, String template, int level, boolean contextTakeover) {
+
+    byte[][] messages = createVariants(template, new Random(0));
+    MessageDeflater deflater = new MessageDeflater(level, contextTakeover);
+
+    for (int i = 0; i < WARMUP_MESSAGES; i++) {
+      deflater.deflate(messages[i % VARIANTS]);
+    }
+
+    long bytes = 0;
+    long compressedBytes = 0;
+    long start = threadMxBean.getCurrentThreadCpuTime();
+    for (int i = 0; i < MEASURED_MESSAGES; i++) {
+      bytes += messages[i % VARIANTS].length;
+      compressedBytes += deflater.deflate(messages[i % VARIANTS]);
+    }
+    long cpuNanos = threadMxBean.getCurrentThreadCpuTime() - start;
+
+    log.info(
+        "level={} contextTakeover={} message={} size={} compressed={} saved={}% cpu={} ns/msg",
+        level, contextTakeover, name, bytes / MEASURED_MESSAGES,
+        compressedBytes / MEASURED_MESSAGES, 100 * (bytes - compressedBytes) / bytes,
+        cpuNanos / MEASURED_MESSAGES);
+  }
+
+  /**
+   * Creates variants of a message with different object ids and numbers, so the benchmark with
+   * context takeover doesn't just measure repeated messages.
+   */
+  private static byte[][] createVariants(String template, Random random) {
+
+    byte[][] variants = new byte[VARIANTS][];
+
+    for (int i = 0; i < VARIANTS; i++) {
+
+      String variant = template.replace(PIPELINE_ID, randomUuid(random)).replace(ENDPOINT_ID,
+          randomUuid(random));
+
+      Matcher matcher = NUMBER.matcher(variant);
+      StringBuffer sb = new StringBuffer();
+      while (matcher.find()) {
+        StringBuilder digits = new StringBuilder();
+        for (int j = 0; j < matcher.group().length(); j++) {
+          digits.append(random.nextInt(10));
+        }
+        matcher.appendReplacement(sb, digits.toString());
+      }
+      matcher.appendTail(sb);
+
+      variants[i] = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    return variants;
+  }
+
+  private static String randomUuid(Random random) {
+    return new UUID(random.nextLong(), random.nextLong()).toString();
+  }
+
+  private static String createSdpMessage() {
+
+    StringBuilder sdp = new StringBuilder("v=0\\r\\no=- 3683623410 3683623410 IN IP4 0.0.0.0\\r\\n"
+        + "s=Kurento Media Server\\r\\nc=IN IP4 0.0.0.0\\r\\nt=0 0\\r\\n"
+        + "a=msid-semantic: WMS EunOzjpSpnjVVdASR1SSuSHvzVHLHRW1v1cr\\r\\n"
+        + "a=group:BUNDLE audio video\\r\\n");
+
+    String[][] media = { { "audio", "111 0 8 9", "opus/48000/2" },
+        { "video", "100 101 107", "VP8/90000" } };
+
+    for (String[] m : media) {
+      sdp.append("m=").append(m[0]).append(" 1 UDP/TLS/RTP/SAVPF ").append(m[1]).append("\\r\\n")
+          .append("a=rtcp:9 IN IP4 0.0.0.0\\r\\na=ice-ufrag:Jt0d\\r\\n")
+          .append("a=ice-pwd:zUbzbV9jwWJrG6gVFkQ6xM1b\\r\\na=ice-options:trickle\\r\\n")
+          .append("a=fingerprint:sha-256 8C:E2:8F:91:C1:C5:7D:9A:53:70:6F:2E:D7:83:41:8A:42:0F:")
+          .append("BA:C0:DE:C9:6A:36:B3:57:3F:6B:D1:F4:D1:1E\\r\\na=setup:actpass\\r\\n")
+          .append("a=mid:").append(m[0]).append("\\r\\na=sendrecv\\r\\na=rtcp-mux\\r\\n")
+          .append("a=rtpmap:").append(m[1].split(" ")[0]).append(' ').append(m[2])
+          .append("\\r\\na=rtcp-fb:").append(m[1].split(" ")[0]).append(" nack\\r\\n")
+          .append("a=rtcp-fb:").append(m[1].split(" ")[0]).append(" nack pli\\r\\n")
+          .append("a=rtcp-fb:").append(m[1].split(" ")[0]).append(" goog-remb\\r\\n")
+          .append("a=rtcp-fb:").append(m[1].split(" ")[0]).append(" ccm fir\\r\\n")
+          .append("a=ssrc:1193834185 cname:user1451498217@host-a8b3c2d1\\r\\n")
+          .append("a=ssrc:1193834185 msid:EunOzjpSpnjVVdASR1SSuSHvzVHLHRW1v1cr ")
+          .append("7d3fb9b2-bb6b-4c0d-9a3e-2f1f0c8a6e5b\\r\\n");
+    }
+
+    return "{\"id\":7,\"result\":{\"value\":\"" + sdp + "\",\"sessionId\":"
+        + "\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+  }
+
+  private static String createStatsMessage() {
+
+    StringBuilder stats = new StringBuilder();
+
+    for (int i = 0; i < 12; i++) {
+      if (i > 0) {
+        stats.append(',');
+      }
+      stats.append("\"RTCInboundRTPStreamStats_").append(i).append("\":{")
+          .append("\"__module__\":\"kurento\",")
+          .append("\"__type__\":\"RTCInboundRTPStreamStats\",\"bytesReceived\":")
+          .append(1234567 + i * 7919).append(",\"fractionLost\":0,\"id\":\"")
+          .append("RTCInboundRTPStreamStats_").append(i).append("\",\"jitter\":0.0")
+          .append(i).append(",\"mediaTrackId\":\"track").append(i)
+          .append("\",\"nackCount\":").append(i * 3).append(",\"packetsLost\":").append(i)
+          .append(",\"packetsReceived\":").append(45678 + i * 31).append(",\"remb\":")
+          .append(512000 + i * 1000).append(",\"ssrc\":\"").append(1193834185L + i)
+          .append("\",\"timestamp\":").append(1476839728 + i).append(",\"type\":\"inboundrtp\"}");
+    }
+
+    return "{\"id\":9,\"result\":{\"value\":{" + stats + "},\"sessionId\":"
+        + "\"" + SESSION_ID + "\"},\"jsonrpc\":\"2.0\"}";
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.kurento.commons.DecayingHistogram;
+import org.kurento.jsonrpc.client.ConnectionHealth;
+import org.kurento.jsonrpc.client.ConnectionHealth.CircuitState;
+
+public class ConnectionHealthTest {
+
+  private static class ManualClockHistogram extends DecayingHistogram {
+
+    private long now;
+
+    ManualClockHistogram(long halfLifeMillis) {
+      super(halfLifeMillis);
+    }
+
+    @Override
+    protected long currentTimeMillis() {
+      return now;
+    }
+  }
+
+  @Test
+  public void testHistogramPercentiles() {
+
+    DecayingHistogram histogram = new DecayingHistogram(60000);
+
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertEquals(100, histogram.getCount(), 0.1);
+    assertEquals(50.5, histogram.getMean(), 0.1);
+
+    // Buckets have a relative error below 20%
+    assertEquals(50, histogram.getPercentile(50), 10);
+    assertEquals(90, histogram.getPercentile(90), 18);
+    assertEquals(100, histogram.getPercentile(100), 20);
+  }
+
+  @Test
+  public void testHistogramDecay() {
+
+    ManualClockHistogram histogram = new ManualClockHistogram(1000);
+
+    for (int i = 0; i < 100; i++) {
+      histogram.record(1000);
+    }
+
+    histogram.now = 1000;
+    assertEquals(50, histogram.getCount(), 0.1);
+
+    // Recent fast samples outweigh old slow ones
+    histogram.now = 5000;
+    for (int i = 0; i < 100; i++) {
+      histogram.record(10);
+    }
+
+    assertEquals(10, histogram.getPercentile(90), 2);
+  }
+
+  @Test
+  public void testCircuitBreaker() throws Exception {
+
+    ConnectionHealth health = new ConnectionHealth("test", 60000, 200, 3, 100);
+
+    health.recordFailure();
+    health.recordFailure();
+    assertEquals(CircuitState.CLOSED, health.getCircuitState());
+
+    health.recordFailure();
+    assertEquals(CircuitState.OPEN, health.getCircuitState());
+    assertEquals(0, health.getScore(), 0);
+
+    Thread.sleep(150);
+    assertEquals(CircuitState.HALF_OPEN, health.getCircuitState());
+
+    // A failure while half open opens the circuit again
+    health.recordFailure();
+    assertTrue(health.isCircuitOpen());
+
+    Thread.sleep(150);
+    health.recordPingRtt(10);
+    assertEquals(CircuitState.CLOSED, health.getCircuitState());
+    assertEquals(0, health.getConsecutiveFailures());
+  }
+
+  @Test
+  public void testScore() {
+
+    ConnectionHealth healthy = new ConnectionHealth("healthy", 60000, 200, 5, 30000);
+    ConnectionHealth slow = new ConnectionHealth("slow", 60000, 200, 5, 30000);
+    ConnectionHealth unstable = new ConnectionHealth("unstable", 60000, 200, 5, 30000);
+
+    for (int i = 0; i < 20; i++) {
+      healthy.recordPingRtt(20);
+      slow.recordPingRtt(800);
+      unstable.recordPingRtt(20);
+    }
+
+    unstable.recordFailure();
+    unstable.recordReconnection();
+
+    assertEquals(1, healthy.getScore(), 0.01);
+    assertTrue(slow.getScore() < 0.3);
+    assertTrue(unstable.getScore() < 0.5);
+    assertFalse(unstable.isCircuitOpen());
+  }
+
+  @Test
+  public void testHealthIsSharedByUrl() {
+
+    ConnectionHealth health1 = ConnectionHealth.getFor("ws://localhost:8888/kurento");
+    ConnectionHealth health2 = ConnectionHealth.getFor("ws://localhost:8888/kurento");
+    assertSame(health1, health2);
+
+    health1.release();
+    health2.release();
+  }
+
+  @Test
+  public void testHealthIsDiscardedWhenReleasedByAllUsers() {
+
+    String url = "ws://released:8888/kurento";
+    int sharedInstances = ConnectionHealth.getSharedInstances();
+
+    ConnectionHealth health1 = ConnectionHealth.getFor(url);
+    ConnectionHealth health2 = ConnectionHealth.getFor(url);
+    assertEquals(sharedInstances + 1, ConnectionHealth.getSharedInstances());
+
+    health1.release();
+    assertSame(health2, ConnectionHealth.getFor(url));
+    health2.release();
+    health2.release();
+    assertEquals(sharedInstances, ConnectionHealth.getSharedInstances());
+
+    ConnectionHealth health3 = ConnectionHealth.getFor(url);
+    assertNotSame(health1, health3);
+    health3.release();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.jsonrpc.GsonJsonCodec;
+import org.kurento.jsonrpc.JsonCodec;
+import org.kurento.jsonrpc.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the time to decode and encode the KMS messages of {@link JsonCodecTest} with Gson and
+ * with each {@link JsonCodec} found in the classpath. Run with the benchmark profile.
+ */
+public class JsonCodecBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonCodecBenchmark.class);
+
+  private static final int WARMUP_MESSAGES = 20000;
+  private static final int MEASURED_MESSAGES = 100000;
+
+  private static final String[] KMS_MESSAGES = JsonCodecTest.KMS_MESSAGES;
+
+  @After
+  public void teardown() {
+    JsonUtils.setCodec(null);
+  }
+
+  @Test
+  public void benchmarkCodecs() {
+
+    List<JsonCodec> codecs = new ArrayList<>();
+    codecs.add(new GsonJsonCodec());
+    for (JsonCodec codec : ServiceLoader.load(JsonCodec.class)) {
+      codecs.add(codec);
+    }
+
+    for (JsonCodec codec : codecs) {
+
+      JsonUtils.setCodec(codec);
+
+      for (int i = 0; i < WARMUP_MESSAGES; i++) {
+        roundTrip(KMS_MESSAGES[i % KMS_MESSAGES.length]);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < MEASURED_MESSAGES; i++) {
+        roundTrip(KMS_MESSAGES[i % KMS_MESSAGES.length]);
+      }
+      long elapsed = System.nanoTime() - start;
+
+      log.info("Codec {}: {} ns per KMS message decoded and encoded", codec.getName(),
+          elapsed / MEASURED_MESSAGES);
+    }
+  }
+
+  private static String roundTrip(String json) {
+    return JsonUtils.toJsonMessage(JsonUtils.fromJsonMessage(json));
+  }
+}
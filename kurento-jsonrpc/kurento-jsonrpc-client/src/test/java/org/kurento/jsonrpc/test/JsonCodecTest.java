@@ -0,0 +1,163 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.jsonrpc.GsonJsonCodec;
+import org.kurento.jsonrpc.JsonCodec;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.Props;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class JsonCodecTest {
+
+  private static final String PIPELINE_REF =
+      "6ba9067f-4bd0-4b4a-a4ae-2a3a6a05ca9e_kurento.MediaPipeline";
+  private static final String ENDPOINT_REF = PIPELINE_REF
+      + "/a2d2b1b5-8a34-4ff3-94a4-1e6a8c0ee2a0_kurento.WebRtcEndpoint";
+  private static final String SESSION_ID = "b4a33c4d-0c4a-4a56-8ab6-5c4c3c8f1f42";
+
+  /**
+   * Samples of the messages exchanged with a Kurento Media Server in a WebRTC call.
+   */
+  static final String[] KMS_MESSAGES = {
+      "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"create\",\"params\":{\"type\":\"MediaPipeline\","
+          + "\"constructorParams\":{},\"properties\":{},\"sessionId\":\"" + SESSION_ID + "\"}}",
+      "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"value\":\"" + PIPELINE_REF
+          + "\",\"sessionId\":\"" + SESSION_ID + "\"}}",
+      "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"invoke\",\"params\":{\"object\":\""
+          + ENDPOINT_REF + "\",\"operation\":\"processOffer\",\"operationParams\":{\"offer\":"
+          + "\"v=0\\r\\no=- 0 0 IN IP4 0.0.0.0\\r\\ns=-\\r\\nt=0 0\\r\\nm=audio 9 UDP/TLS/RTP/SAVPF"
+          + " 111\\r\\na=rtpmap:111 opus/48000/2\\r\\n\"},\"sessionId\":\"" + SESSION_ID + "\"}}",
+      "{\"jsonrpc\":\"2.0\",\"method\":\"onEvent\",\"params\":{\"value\":{\"data\":{\"candidate\":"
+          + "{\"__module__\":\"kurento\",\"__type__\":\"IceCandidate\",\"candidate\":\"candidate:1"
+          + " 1 UDP 2013266431 192.168.1.10 45734 typ host\",\"sdpMLineIndex\":0,\"sdpMid\":"
+          + "\"audio\"},\"source\":\"" + ENDPOINT_REF + "\",\"tags\":[],\"timestamp\":"
+          + "\"1476839728\",\"timestampMillis\":\"1476839728123\",\"type\":\"IceCandidateFound\"},"
+          + "\"object\":\"" + ENDPOINT_REF + "\",\"type\":\"IceCandidateFound\"}}}",
+      "{\"jsonrpc\":\"2.0\",\"id\":3,\"error\":{\"code\":40101,\"message\":\"Object '"
+          + ENDPOINT_REF + "' not found\",\"data\":{\"type\":\"MEDIA_OBJECT_NOT_FOUND\"}}}" };
+
+  public static class CountingJsonCodec implements JsonCodec {
+
+    private final JsonCodec delegate = new GsonJsonCodec();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Override
+    public String getName() {
+      return "counting";
+    }
+
+    @Override
+    public String toJson(Object src) {
+      calls.incrementAndGet();
+      return delegate.toJson(src);
+    }
+
+    @Override
+    public String toJson(Object src, Type type) {
+      calls.incrementAndGet();
+      return delegate.toJson(src, type);
+    }
+
+    @Override
+    public JsonElement toJsonTree(Object src) {
+      calls.incrementAndGet();
+      return delegate.toJsonTree(src);
+    }
+
+    @Override
+    public <T> T fromJson(String json, Type type) {
+      calls.incrementAndGet();
+      return delegate.fromJson(json, type);
+    }
+
+    @Override
+    public <T> T fromJson(JsonElement json, Type type) {
+      calls.incrementAndGet();
+      return delegate.fromJson(json, type);
+    }
+  }
+
+  @After
+  public void teardown() {
+    JsonUtils.setCodec(null);
+  }
+
+  @Test
+  public void testGsonIsDefaultCodec() {
+    assertEquals(GsonJsonCodec.NAME, JsonUtils.getCodec().getName());
+  }
+
+  @Test
+  public void testConfiguredCodecIsUsed() {
+
+    CountingJsonCodec codec = new CountingJsonCodec();
+    JsonUtils.setCodec(codec);
+
+    for (String json : KMS_MESSAGES) {
+      Message message = JsonUtils.fromJsonMessage(json);
+      assertEquals(JsonUtils.fromJson(json, JsonObject.class),
+          JsonUtils.fromJson(JsonUtils.toJsonMessage(message), JsonObject.class));
+    }
+
+    assertTrue(codec.calls.get() > 0);
+  }
+
+  @Test
+  public void testDecodeKmsMessages() {
+
+    Request<JsonObject> create = JsonUtils.fromJsonRequest(KMS_MESSAGES[0], JsonObject.class);
+    assertEquals("create", create.getMethod());
+    assertEquals(SESSION_ID, create.getSessionId());
+    assertEquals("MediaPipeline", create.getParams().get("type").getAsString());
+
+    Response<JsonElement> response = JsonUtils.fromJsonResponse(KMS_MESSAGES[1],
+        JsonElement.class);
+    assertEquals(SESSION_ID, response.getSessionId());
+    assertEquals(PIPELINE_REF, response.getResult().getAsJsonObject().get("value").getAsString());
+
+    Response<JsonElement> error = JsonUtils.fromJsonResponse(KMS_MESSAGES[4], JsonElement.class);
+    assertEquals(40101, error.getError().getCode());
+  }
+
+  @Test
+  public void testPropsConversion() {
+
+    Request<JsonObject> event = JsonUtils.fromJsonRequest(KMS_MESSAGES[3], JsonObject.class);
+    JsonObject data = event.getParams().getAsJsonObject("value").getAsJsonObject("data");
+
+    Props props = JsonUtils.fromJson(data, Props.class);
+    assertEquals("IceCandidateFound", props.getProp("type"));
+    assertEquals(0, ((Props) props.getProp("candidate")).getProp("sdpMLineIndex"));
+
+    assertEquals(data, JsonUtils.toJsonElement(props));
+  }
+}
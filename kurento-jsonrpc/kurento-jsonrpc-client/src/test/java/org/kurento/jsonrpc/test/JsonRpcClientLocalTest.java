@@ -17,16 +17,23 @@
 
 package org.kurento.jsonrpc.test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Assert;
 import org.junit.Test;
 import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.client.JsonRpcClient;
 import org.kurento.jsonrpc.client.JsonRpcClientLocal;
 import org.kurento.jsonrpc.message.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public class JsonRpcClientLocalTest {
@@ -47,6 +54,28 @@ public class JsonRpcClientLocalTest {
     }
   }
 
+  static class AsyncEchoJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(final Transaction transaction, final Request<JsonObject> request)
+        throws Exception {
+
+      transaction.startAsync();
+
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            Thread.sleep(100);
+            transaction.sendResponse(request.getParams());
+          } catch (Exception e) {
+            LOG.error("Exception sending response", e);
+          }
+        }
+      }.start();
+    }
+  }
+
   static class Params {
     String param1;
     String param2;
@@ -76,4 +105,85 @@ public class JsonRpcClientLocalTest {
 
   }
 
+  @Test
+  public void paramsAreHandedOverWithoutCopy() throws Exception {
+
+    final JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    JsonRpcClient client = new JsonRpcClientLocal(new EchoJsonRpcHandler());
+
+    Assert.assertSame(params, client.sendRequest("echo", params));
+
+    client.close();
+  }
+
+  @Test
+  public void copyModeDoesNotShareObjects() throws Exception {
+
+    JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    JsonRpcClientLocal client = new JsonRpcClientLocal(new EchoJsonRpcHandler());
+    client.setCopyMessages(true);
+
+    JsonElement result = client.sendRequest("echo", params);
+
+    Assert.assertNotSame(params, result);
+    Assert.assertEquals(params, result);
+
+    client.close();
+  }
+
+  @Test
+  public void asyncResponseTest() throws Exception {
+
+    JsonRpcClient client = new JsonRpcClientLocal(new AsyncEchoJsonRpcHandler());
+
+    JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    Assert.assertEquals(params, client.sendRequest("echo", params));
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<JsonElement> result = new AtomicReference<>();
+
+    client.sendRequest("echo", params, new Continuation<JsonElement>() {
+      @Override
+      public void onSuccess(JsonElement response) {
+        result.set(response);
+        latch.countDown();
+      }
+
+      @Override
+      public void onError(Throwable cause) {
+        LOG.error("Unexpected error", cause);
+      }
+    });
+
+    Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(params, result.get());
+
+    client.close();
+  }
+
+  @Test(expected = JsonRpcException.class)
+  public void asyncResponseTimeoutTest() throws Exception {
+
+    JsonRpcClient client = new JsonRpcClientLocal(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        transaction.startAsync();
+      }
+    });
+
+    client.setRequestTimeout(100);
+
+    try {
+      client.sendRequest("neverResponded");
+    } finally {
+      client.close();
+    }
+  }
 }
@@ -0,0 +1,161 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.metrics.JsonRpcEventRecorder;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcEventsTest {
+
+  static class RecordingEventRecorder implements JsonRpcEventRecorder {
+
+    final List<String> events = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void requestCompleted(String scope, String method, long durationNanos,
+        Outcome outcome) {
+      events.add("request " + scope + " " + method + " " + outcome);
+    }
+
+    @Override
+    public void queueWaited(String executor, long waitNanos) {
+      events.add("queue " + executor);
+    }
+
+    @Override
+    public void reconnected(String uri, int attempts, long durationNanos) {
+      events.add("reconnect " + uri);
+    }
+
+    @Override
+    public void remoteObjectEventFired(String eventType, String objectRef, int listeners,
+        long durationNanos) {
+      events.add("event " + eventType + " " + objectRef);
+    }
+
+    @Override
+    public void messageSent(String transport, int size) {
+      events.add("sent " + transport + " " + size);
+    }
+
+    @Override
+    public void messageReceived(String transport, int size) {
+      events.add("received " + transport + " " + size);
+    }
+  }
+
+  static class SlowJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if ("slow".equals(request.getMethod())) {
+        Thread.sleep(100);
+      }
+
+      transaction.sendResponse(request.getParams());
+    }
+  }
+
+  private RecordingEventRecorder recorder;
+
+  @Before
+  public void setup() {
+    recorder = new RecordingEventRecorder();
+    JsonRpcEvents.setRecorder(recorder);
+    JsonRpcEvents.setThreshold(50, TimeUnit.MILLISECONDS);
+    JsonRpcEvents.setMessageSizeThreshold(1024);
+  }
+
+  @After
+  public void teardown() {
+    JsonRpcEvents.setRecorder(null);
+    JsonRpcEvents.setThreshold(20, TimeUnit.MILLISECONDS);
+    JsonRpcEvents.setMessageSizeThreshold(64 * 1024);
+  }
+
+  @Test
+  public void testOnlySlowRequestsAreRecorded() throws Exception {
+
+    JsonRpcClient client = new JsonRpcClientLocal(new SlowJsonRpcHandler());
+
+    JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    client.sendRequest("fast", params);
+    client.sendRequest("slow", params);
+    client.close();
+
+    assertEquals(2, recorder.events.size());
+    assertTrue(recorder.events.contains("request " + JsonRpcMetrics.SENT + " slow SUCCESS"));
+    assertTrue(recorder.events.contains("request " + JsonRpcMetrics.HANDLED + " slow SUCCESS"));
+  }
+
+  @Test
+  public void testMessageSizeThreshold() {
+
+    JsonRpcEvents.messageSent("test", 100);
+    JsonRpcEvents.messageReceived("test", 2048);
+
+    assertEquals(1, recorder.events.size());
+    assertEquals("received test 2048", recorder.events.get(0));
+  }
+
+  @Test
+  public void testQueueWait() throws Exception {
+
+    Runnable task = new Runnable() {
+      @Override
+      public void run() {
+      }
+    };
+
+    Runnable wrapped = JsonRpcEvents.recordQueueWait("executor", task);
+    assertNotSame(task, wrapped);
+
+    Thread.sleep(100);
+    wrapped.run();
+
+    assertEquals("queue executor", recorder.events.get(0));
+
+    JsonRpcEvents.setRecorder(null);
+    assertSame(task, JsonRpcEvents.recordQueueWait("executor", task));
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.metrics.JmxJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the time spent recording a request in {@link JmxJsonRpcMetrics}. Run with the
+ * benchmark profile.
+ */
+public class JsonRpcMetricsBenchmark {
+
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcMetricsBenchmark.class);
+
+  private static final int WARMUP_REQUESTS = 20000;
+  private static final int MEASURED_REQUESTS = 200000;
+
+  private JmxJsonRpcMetrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = new JmxJsonRpcMetrics(null);
+  }
+
+  @Test
+  public void benchmarkRecordingOverhead() {
+
+    for (int i = 0; i < WARMUP_REQUESTS; i++) {
+      record(i);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_REQUESTS; i++) {
+      record(i);
+    }
+    long time = System.nanoTime() - start;
+
+    log.info("Metrics recording overhead per request: {} ns", time / MEASURED_REQUESTS);
+  }
+
+  private void record(int i) {
+    metrics.requestStarted(JsonRpcMetrics.SENT, "benchmark");
+    metrics.requestCompleted(JsonRpcMetrics.SENT, "benchmark", i % 100000, Outcome.SUCCESS);
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcErrorException;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.client.JsonRpcClient;
+import org.kurento.jsonrpc.client.JsonRpcClientLocal;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.metrics.JmxJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JmxJsonRpcMetrics.MethodMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
+
+import com.google.gson.JsonObject;
+
+public class JsonRpcMetricsTest {
+
+  static class MetricsJsonRpcHandler extends DefaultJsonRpcHandler<JsonObject> {
+
+    @Override
+    public void handleRequest(Transaction transaction, Request<JsonObject> request)
+        throws Exception {
+
+      if ("fail".equals(request.getMethod())) {
+        throw new IllegalStateException("Failing on purpose");
+      }
+
+      transaction.sendResponse(request.getParams());
+    }
+  }
+
+  private MBeanServer mbeanServer;
+  private JmxJsonRpcMetrics metrics;
+
+  @Before
+  public void setup() {
+    mbeanServer = MBeanServerFactory.newMBeanServer();
+    metrics = new JmxJsonRpcMetrics(mbeanServer);
+    JsonRpcMetricsManager.setMetrics(metrics);
+  }
+
+  @After
+  public void teardown() {
+    JsonRpcMetricsManager.setMetrics(null);
+  }
+
+  @Test
+  public void testRequestMetrics() throws Exception {
+
+    JsonRpcClient client = new JsonRpcClientLocal(new MetricsJsonRpcHandler());
+
+    JsonObject params = new JsonObject();
+    params.addProperty("param1", "Value1");
+
+    for (int i = 0; i < 5; i++) {
+      client.sendRequest("echo", params);
+    }
+
+    try {
+      client.sendRequest("fail", params);
+      fail("JsonRpcErrorException expected");
+    } catch (JsonRpcErrorException e) {
+      // Expected
+    }
+
+    client.close();
+
+    MethodMetrics sentEcho = metrics.getMethodMetrics(JsonRpcMetrics.SENT, "echo");
+    assertEquals(5, sentEcho.getRequests());
+    assertEquals(0, sentEcho.getErrors());
+    assertEquals(0, sentEcho.getInFlight());
+
+    MethodMetrics handledEcho = metrics.getMethodMetrics(JsonRpcMetrics.HANDLED, "echo");
+    assertEquals(5, handledEcho.getRequests());
+
+    assertEquals(1, metrics.getMethodMetrics(JsonRpcMetrics.SENT, "fail").getErrors());
+    assertEquals(1, metrics.getMethodMetrics(JsonRpcMetrics.HANDLED, "fail").getErrors());
+
+    ObjectName name = new ObjectName(
+        JmxJsonRpcMetrics.DOMAIN + ":type=Requests,scope=" + JsonRpcMetrics.SENT + ",method=echo");
+    assertEquals(5L, mbeanServer.getAttribute(name, "Requests"));
+    assertTrue((Double) mbeanServer.getAttribute(name, "MaxLatency") >= 0);
+  }
+
+  @Test
+  public void testMethodsLimit() {
+
+    for (int i = 0; i < 1000; i++) {
+      metrics.requestCompleted(JsonRpcMetrics.SENT, "method" + i, 1000, Outcome.SUCCESS);
+    }
+
+    MethodMetrics other = metrics.getMethodMetrics(JsonRpcMetrics.SENT,
+        JmxJsonRpcMetrics.OTHER_METHODS);
+    assertTrue(other.getRequests() > 0);
+  }
+
+  @Test
+  public void testPendingRequests() {
+
+    PendingRequests pendingRequests = new PendingRequests(JsonRpcMetrics.CLIENT_WEBSOCKET);
+    pendingRequests.prepareResponse(1);
+    pendingRequests.prepareResponse(2);
+
+    assertEquals(2,
+        metrics.getTransportMetrics(JsonRpcMetrics.CLIENT_WEBSOCKET).getPendingRequests());
+
+    pendingRequests.removeResponse(1);
+    pendingRequests.closeAllPendingRequests();
+
+    assertEquals(0,
+        metrics.getTransportMetrics(JsonRpcMetrics.CLIENT_WEBSOCKET).getPendingRequests());
+  }
+}
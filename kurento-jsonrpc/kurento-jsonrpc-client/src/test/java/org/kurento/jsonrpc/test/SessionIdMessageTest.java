@@ -20,8 +20,10 @@ package org.kurento.jsonrpc.test;
 import org.junit.Assert;
 import org.junit.Test;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.ResponseError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -127,4 +129,26 @@ public class SessionIdMessageTest {
     Assert.assertEquals(newResponse.getSessionId(), "xxxxxxx");
   }
 
+  @Test
+  public void messageTreeTest() {
+
+    Params params = new Params();
+    params.param1 = "Value1";
+
+    Request<Params> request = new Request<Params>(1, "method", params);
+    assertTreeEqualsText(request);
+
+    request.setSessionId("xxxxxxx");
+    assertTreeEqualsText(request);
+
+    Response<Void> response = new Response<Void>(1, new ResponseError(2, "error"));
+    response.setSessionId("xxxxxxx");
+    assertTreeEqualsText(response);
+  }
+
+  private void assertTreeEqualsText(Message message) {
+    Assert.assertEquals(new JsonParser().parse(message.toString()),
+        JsonUtils.toJsonMessageTree(message));
+  }
+
 }
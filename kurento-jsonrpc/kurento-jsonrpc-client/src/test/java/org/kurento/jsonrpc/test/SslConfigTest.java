@@ -0,0 +1,165 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kurento.jsonrpc.client.SslConfig;
+import org.kurento.jsonrpc.client.SslConfig.Provider;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+
+public class SslConfigTest {
+
+  private static final String TRUST_STORE_PASSWORD = "password";
+
+  private static SelfSignedCertificate localhostCert;
+  private static SelfSignedCertificate otherHostCert;
+  private static File trustStore;
+
+  @BeforeClass
+  public static void createCertificates() throws Exception {
+
+    localhostCert = new SelfSignedCertificate("localhost");
+    otherHostCert = new SelfSignedCertificate("otherhost.kurento.org");
+
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    keyStore.load(null, null);
+    keyStore.setCertificateEntry("localhost", localhostCert.cert());
+    keyStore.setCertificateEntry("otherhost", otherHostCert.cert());
+
+    trustStore = File.createTempFile("truststore", ".jks");
+    try (OutputStream os = new FileOutputStream(trustStore)) {
+      keyStore.store(os, TRUST_STORE_PASSWORD.toCharArray());
+    }
+  }
+
+  @AfterClass
+  public static void deleteCertificates() {
+    localhostCert.delete();
+    otherHostCert.delete();
+    trustStore.delete();
+  }
+
+  @Test
+  public void testTrustedCertificateOfServerIsAccepted() throws Exception {
+    handshake(createConfig(false), localhostCert, "localhost");
+  }
+
+  @Test
+  public void testTrustedCertificateOfOtherHostIsRejected() throws Exception {
+    try {
+      handshake(createConfig(false), otherHostCert, "localhost");
+      fail("Handshake with the certificate of other host should fail");
+    } catch (SSLException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testTrustAllAcceptsCertificateOfOtherHost() throws Exception {
+    handshake(createConfig(true), otherHostCert, "localhost");
+  }
+
+  @Test
+  public void testEqualConfigsShareContext() throws Exception {
+    assertSame(createConfig(false).getSslContext(), createConfig(false).getSslContext());
+  }
+
+  private static SslConfig createConfig(boolean trustAll) {
+    return new SslConfig(trustStore.getAbsolutePath(), TRUST_STORE_PASSWORD, "JKS", trustAll,
+        Provider.JDK, 0, 0);
+  }
+
+  private static void handshake(SslConfig config, SelfSignedCertificate serverCert, String host)
+      throws Exception {
+
+    SSLEngine client = config.newHandler(ByteBufAllocator.DEFAULT, host, 443).engine();
+    SSLEngine server = SslContextBuilder
+        .forServer(serverCert.certificate(), serverCert.privateKey()).sslProvider(SslProvider.JDK)
+        .build().newEngine(ByteBufAllocator.DEFAULT);
+
+    client.beginHandshake();
+    server.beginHandshake();
+
+    int packetSize = Math.max(client.getSession().getPacketBufferSize(),
+        server.getSession().getPacketBufferSize());
+    ByteBuffer empty = ByteBuffer.allocate(0);
+    ByteBuffer clientToServer = ByteBuffer.allocate(packetSize);
+    ByteBuffer serverToClient = ByteBuffer.allocate(packetSize);
+    ByteBuffer appData = ByteBuffer.allocate(packetSize * 2);
+
+    for (int i = 0; i < 1000 && (isHandshaking(client) || isHandshaking(server)); i++) {
+      step(client, empty, clientToServer, serverToClient, appData);
+      step(server, empty, serverToClient, clientToServer, appData);
+    }
+
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, client.getHandshakeStatus());
+    assertEquals(HandshakeStatus.NOT_HANDSHAKING, server.getHandshakeStatus());
+  }
+
+  private static boolean isHandshaking(SSLEngine engine) {
+    return engine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING;
+  }
+
+  /**
+   * Advances the handshake of an engine, reading the packets sent by the peer and writing the ones
+   * to send to it.
+   */
+  private static void step(SSLEngine engine, ByteBuffer empty, ByteBuffer out, ByteBuffer in,
+      ByteBuffer appData) throws SSLException {
+
+    switch (engine.getHandshakeStatus()) {
+      case NEED_TASK:
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+          task.run();
+        }
+        break;
+      case NEED_WRAP:
+        engine.wrap(empty, out);
+        break;
+      case NEED_UNWRAP:
+        in.flip();
+        engine.unwrap(in, appData);
+        in.compact();
+        break;
+      default:
+        break;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.kurento.jsonrpc.TraceContext;
+
+import com.google.gson.JsonObject;
+
+public class TraceContextTest {
+
+  @After
+  public void teardown() {
+    TraceContext.setCurrent(null);
+    TraceContext.setSampleRate(0);
+  }
+
+  @Test
+  public void testUnsampledRequestsHaveNoContext() {
+
+    TraceContext.setSampleRate(0);
+
+    for (int i = 0; i < 1000; i++) {
+      assertNull(TraceContext.forOutgoingRequest());
+    }
+  }
+
+  @Test
+  public void testSampledRequestsStartNewTraces() {
+
+    TraceContext.setSampleRate(1);
+
+    TraceContext context = TraceContext.forOutgoingRequest();
+
+    assertNotNull(context);
+    assertTrue(context.isSampled());
+    assertEquals(32, context.getTraceId().length());
+    assertEquals(16, context.getSpanId().length());
+    assertFalse(context.getTraceId().equals(TraceContext.forOutgoingRequest().getTraceId()));
+  }
+
+  @Test
+  public void testCurrentContextIsParent() {
+
+    TraceContext parent = TraceContext.newTrace();
+    assertNull(TraceContext.setCurrent(parent));
+
+    TraceContext child = TraceContext.forOutgoingRequest();
+
+    assertEquals(parent.getTraceId(), child.getTraceId());
+    assertFalse(parent.getSpanId().equals(child.getSpanId()));
+
+    assertSame(parent, TraceContext.setCurrent(new TraceContext("trace", "span", false)));
+    assertNull(TraceContext.forOutgoingRequest());
+  }
+
+  @Test
+  public void testInjectAndExtract() {
+
+    TraceContext context = TraceContext.newTrace();
+
+    JsonObject params = new JsonObject();
+    params.addProperty("object", "objectRef");
+    context.injectInto(params);
+
+    TraceContext extracted = TraceContext.extractFrom(params);
+
+    assertEquals(context.getTraceId(), extracted.getTraceId());
+    assertEquals(context.getSpanId(), extracted.getSpanId());
+    assertTrue(extracted.isSampled());
+
+    // Trace fields are removed, so handlers only see their own params
+    assertEquals(1, params.entrySet().size());
+    assertNull(TraceContext.extractFrom(params));
+    assertFalse(params.has("traceId"));
+  }
+}
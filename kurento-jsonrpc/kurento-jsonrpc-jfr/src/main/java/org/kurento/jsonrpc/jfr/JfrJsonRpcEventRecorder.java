@@ -0,0 +1,110 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.jfr;
+
+import org.kurento.jsonrpc.metrics.JsonRpcEventRecorder;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+
+/**
+ * Records the JSON-RPC events as Java Flight Recorder events, so they can be correlated with GC
+ * pauses, thread states and the rest of the events of the JVM. To use it, start the application
+ * with:
+ *
+ * <pre>
+ * -DjsonRpc.events.enabled=true
+ * -DjsonRpc.events.recorder=org.kurento.jsonrpc.jfr.JfrJsonRpcEventRecorder
+ * -XX:StartFlightRecording=settings=default,settings=/path/to/kurento-jsonrpc.jfc
+ * </pre>
+ *
+ * <p>
+ * The settings file {@code kurento-jsonrpc.jfc} is packaged in this module, next to this class.
+ * The thresholds of {@code JsonRpcEvents} are applied before reaching this recorder, so events
+ * are recorded without a threshold of their own. Events are only created if they are enabled in
+ * the running recordings.
+ * </p>
+ */
+public class JfrJsonRpcEventRecorder implements JsonRpcEventRecorder {
+
+  @Override
+  public void requestCompleted(String scope, String method, long durationNanos,
+      Outcome outcome) {
+    RequestEvent event = new RequestEvent();
+    if (event.shouldCommit()) {
+      event.scope = scope;
+      event.method = method;
+      event.outcome = outcome.name();
+      event.durationNanos = durationNanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void queueWaited(String executor, long waitNanos) {
+    QueueWaitEvent event = new QueueWaitEvent();
+    if (event.shouldCommit()) {
+      event.executor = executor;
+      event.waitNanos = waitNanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void reconnected(String uri, int attempts, long durationNanos) {
+    ReconnectionEvent event = new ReconnectionEvent();
+    if (event.shouldCommit()) {
+      event.uri = uri;
+      event.attempts = attempts;
+      event.durationNanos = durationNanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void remoteObjectEventFired(String eventType, String objectRef, int listeners,
+      long durationNanos) {
+    RemoteObjectEventEvent event = new RemoteObjectEventEvent();
+    if (event.shouldCommit()) {
+      event.eventType = eventType;
+      event.objectRef = objectRef;
+      event.listeners = listeners;
+      event.durationNanos = durationNanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void messageSent(String transport, int size) {
+    message(transport, MessageEvent.SENT, size);
+  }
+
+  @Override
+  public void messageReceived(String transport, int size) {
+    message(transport, MessageEvent.RECEIVED, size);
+  }
+
+  private static void message(String transport, String direction, int size) {
+    MessageEvent event = new MessageEvent();
+    if (event.shouldCommit()) {
+      event.transport = transport;
+      event.direction = direction;
+      event.size = size;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.kurento.jsonrpc.Message")
+@Label("JSON-RPC Message")
+@Description("Message bigger than the events size threshold")
+@Category({ "Kurento", "JSON-RPC" })
+@StackTrace(false)
+class MessageEvent extends jdk.jfr.Event {
+
+  static final String SENT = "sent";
+  static final String RECEIVED = "received";
+
+  @Label("Transport")
+  String transport;
+
+  @Label("Direction")
+  String direction;
+
+  @Label("Size")
+  @Description("Length of the JSON text of the message")
+  @DataAmount
+  int size;
+}
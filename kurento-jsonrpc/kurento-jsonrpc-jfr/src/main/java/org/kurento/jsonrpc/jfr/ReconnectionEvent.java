@@ -0,0 +1,42 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.kurento.jsonrpc.Reconnection")
+@Label("JSON-RPC Reconnection")
+@Category({ "Kurento", "JSON-RPC" })
+@StackTrace(false)
+class ReconnectionEvent extends jdk.jfr.Event {
+
+  @Label("URI")
+  String uri;
+
+  @Label("Attempts")
+  int attempts;
+
+  @Label("Duration")
+  @Timespan
+  long durationNanos;
+}
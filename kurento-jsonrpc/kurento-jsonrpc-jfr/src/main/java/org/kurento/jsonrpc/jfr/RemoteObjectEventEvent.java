@@ -0,0 +1,47 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.kurento.jsonrpc.RemoteObjectEvent")
+@Label("Remote Object Event")
+@Description("Delivery of an event of the media server to the listeners of a remote object")
+@Category({ "Kurento", "JSON-RPC" })
+@StackTrace(false)
+class RemoteObjectEventEvent extends jdk.jfr.Event {
+
+  @Label("Event Type")
+  String eventType;
+
+  @Label("Object")
+  String objectRef;
+
+  @Label("Listeners")
+  int listeners;
+
+  @Label("Duration")
+  @Timespan
+  long durationNanos;
+}
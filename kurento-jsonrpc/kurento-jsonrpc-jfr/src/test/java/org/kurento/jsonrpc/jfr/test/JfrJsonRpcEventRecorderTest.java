@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.jfr.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.jfr.JfrJsonRpcEventRecorder;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrJsonRpcEventRecorderTest {
+
+  @Test
+  public void testEventsAreRecordedWithTheSettingsFile() throws Exception {
+
+    Configuration configuration;
+    try (Reader reader = new InputStreamReader(
+        JfrJsonRpcEventRecorder.class.getResourceAsStream("kurento-jsonrpc.jfc"),
+        StandardCharsets.UTF_8)) {
+      configuration = Configuration.create(reader);
+    }
+
+    JfrJsonRpcEventRecorder recorder = new JfrJsonRpcEventRecorder();
+
+    // Without a recording running events are discarded
+    recorder.reconnected("ws://localhost:8888/kurento", 1, 1000000);
+
+    Path file = Files.createTempFile("kurento-jsonrpc", ".jfr");
+
+    try {
+
+      try (Recording recording = new Recording(configuration)) {
+        recording.start();
+        recorder.requestCompleted(JsonRpcMetrics.SENT, "invoke", 30000000, Outcome.TIMEOUT);
+        recorder.queueWaited("reqResEventExec", 25000000);
+        recorder.messageReceived(JsonRpcMetrics.CLIENT_WEBSOCKET, 100000);
+        recording.stop();
+        recording.dump(file);
+      }
+
+      List<RecordedEvent> events = new ArrayList<>();
+      for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+        if (event.getEventType().getName().startsWith("org.kurento.jsonrpc.")) {
+          events.add(event);
+        }
+      }
+
+      assertEquals(3, events.size());
+
+      RecordedEvent request = getEvent(events, "org.kurento.jsonrpc.Request");
+      assertEquals(JsonRpcMetrics.SENT, request.getString("scope"));
+      assertEquals("invoke", request.getString("method"));
+      assertEquals(Outcome.TIMEOUT.name(), request.getString("outcome"));
+      assertEquals(Duration.ofMillis(30), request.getDuration("durationNanos"));
+
+      RecordedEvent queueWait = getEvent(events, "org.kurento.jsonrpc.QueueWait");
+      assertEquals("reqResEventExec", queueWait.getString("executor"));
+      assertEquals(Duration.ofMillis(25), queueWait.getDuration("waitNanos"));
+
+      RecordedEvent message = getEvent(events, "org.kurento.jsonrpc.Message");
+      assertEquals(JsonRpcMetrics.CLIENT_WEBSOCKET, message.getString("transport"));
+      assertEquals("received", message.getString("direction"));
+      assertEquals(100000, message.getInt("size"));
+
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static RecordedEvent getEvent(List<RecordedEvent> events, String name) {
+    for (RecordedEvent event : events) {
+      if (event.getEventType().getName().equals(name)) {
+        return event;
+      }
+    }
+    throw new AssertionError("Event " + name + " not recorded");
+  }
+}
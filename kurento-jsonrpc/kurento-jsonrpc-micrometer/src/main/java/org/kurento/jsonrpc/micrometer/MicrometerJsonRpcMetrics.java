@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.micrometer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.metrics.JmxJsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * {@link JsonRpcMetrics} that records the metrics in a Micrometer {@link MeterRegistry}, so they
+ * are published by any of its monitoring systems. To use it, start the application with:
+ *
+ * <pre>
+ * -DjsonRpc.metrics.enabled=true
+ * -DjsonRpc.metrics.provider=org.kurento.jsonrpc.micrometer.MicrometerJsonRpcMetrics
+ * </pre>
+ *
+ * <p>
+ * Created this way, meters are registered in {@link Metrics#globalRegistry}. To use another
+ * registry, pass an instance to {@link JsonRpcMetricsManager#setMetrics(JsonRpcMetrics)}. Meters
+ * are:
+ * </p>
+ * <ul>
+ * <li>{@value #REQUESTS} (timer): tags {@code scope}, {@code method} and {@code outcome}</li>
+ * <li>{@value #IN_FLIGHT} (gauge): tags {@code scope} and {@code method}</li>
+ * <li>{@value #MESSAGES} (distribution summary of sizes in bytes): tags {@code transport} and
+ * {@code direction}</li>
+ * <li>{@value #RECONNECTIONS} (counter): tag {@code transport}</li>
+ * <li>{@value #PENDING_REQUESTS} (gauge): tag {@code transport}</li>
+ * </ul>
+ *
+ * <p>
+ * As in {@link JmxJsonRpcMetrics}, methods over {@code jsonRpc.metrics.maxMethods} (200) are
+ * accounted together as method {@value JmxJsonRpcMetrics#OTHER_METHODS}, so clients sending
+ * arbitrary method names can't create unbounded meters.
+ * </p>
+ */
+public class MicrometerJsonRpcMetrics implements JsonRpcMetrics {
+
+  public static final String REQUESTS = "kurento.jsonrpc.requests";
+  public static final String IN_FLIGHT = "kurento.jsonrpc.requests.inflight";
+  public static final String MESSAGES = "kurento.jsonrpc.messages";
+  public static final String RECONNECTIONS = "kurento.jsonrpc.reconnections";
+  public static final String PENDING_REQUESTS = "kurento.jsonrpc.requests.pending";
+
+  private static final int MAX_METHODS =
+      PropertiesManager.getProperty("jsonRpc.metrics.maxMethods", 200);
+
+  private static class MethodMeters {
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final Timer[] latency = new Timer[Outcome.values().length];
+
+    MethodMeters(MeterRegistry registry, String scope, String method) {
+      Tags tags = Tags.of("scope", scope, "method", method);
+      registry.gauge(IN_FLIGHT, tags, inFlight);
+      for (Outcome outcome : Outcome.values()) {
+        latency[outcome.ordinal()] = Timer.builder(REQUESTS).tags(tags)
+            .tag("outcome", outcome.name().toLowerCase()).register(registry);
+      }
+    }
+  }
+
+  private static class TransportMeters {
+
+    private final DistributionSummary sent;
+    private final DistributionSummary received;
+    private final Counter reconnections;
+    private final Set<Gauge> pendingRequests =
+        Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<Gauge, Boolean>()));
+
+    TransportMeters(MeterRegistry registry, String transport) {
+      sent = DistributionSummary.builder(MESSAGES).baseUnit("bytes").tag("transport", transport)
+          .tag("direction", "sent").register(registry);
+      received = DistributionSummary.builder(MESSAGES).baseUnit("bytes")
+          .tag("transport", transport).tag("direction", "received").register(registry);
+      reconnections = Counter.builder(RECONNECTIONS).tag("transport", transport).register(registry);
+      io.micrometer.core.instrument.Gauge
+          .builder(PENDING_REQUESTS, this, TransportMeters::getPendingRequests)
+          .tag("transport", transport).register(registry);
+    }
+
+    private long getPendingRequests() {
+      long value = 0;
+      synchronized (pendingRequests) {
+        for (Gauge gauge : pendingRequests) {
+          value += gauge.getValue();
+        }
+      }
+      return value;
+    }
+  }
+
+  private final ConcurrentMap<String, ConcurrentMap<String, MethodMeters>> methods =
+      new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, TransportMeters> transports = new ConcurrentHashMap<>();
+
+  private final MeterRegistry registry;
+
+  public MicrometerJsonRpcMetrics() {
+    this(Metrics.globalRegistry);
+  }
+
+  public MicrometerJsonRpcMetrics(MeterRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void requestStarted(String scope, String method) {
+    getMethodMeters(scope, method).inFlight.incrementAndGet();
+  }
+
+  @Override
+  public void requestCompleted(String scope, String method, long latencyNanos, Outcome outcome) {
+    MethodMeters meters = getMethodMeters(scope, method);
+    meters.inFlight.decrementAndGet();
+    meters.latency[outcome.ordinal()].record(latencyNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void messageSent(String transport, int size) {
+    getTransportMeters(transport).sent.record(size);
+  }
+
+  @Override
+  public void messageReceived(String transport, int size) {
+    getTransportMeters(transport).received.record(size);
+  }
+
+  @Override
+  public void reconnected(String transport) {
+    getTransportMeters(transport).reconnections.increment();
+  }
+
+  @Override
+  public void registerPendingRequests(String transport, Gauge pendingRequests) {
+    getTransportMeters(transport).pendingRequests.add(pendingRequests);
+  }
+
+  private MethodMeters getMethodMeters(String scope, String method) {
+
+    ConcurrentMap<String, MethodMeters> scopeMethods =
+        methods.computeIfAbsent(scope, key -> new ConcurrentHashMap<>());
+
+    if (method == null) {
+      method = JmxJsonRpcMetrics.OTHER_METHODS;
+    }
+
+    MethodMeters meters = scopeMethods.get(method);
+    if (meters != null) {
+      return meters;
+    }
+
+    if (scopeMethods.size() >= MAX_METHODS) {
+      method = JmxJsonRpcMetrics.OTHER_METHODS;
+    }
+
+    // Meters are created inside computeIfAbsent, so gauges are never bound to a discarded holder
+    return scopeMethods.computeIfAbsent(method, key -> new MethodMeters(registry, scope, key));
+  }
+
+  private TransportMeters getTransportMeters(String transport) {
+    TransportMeters meters = transports.get(transport);
+    if (meters != null) {
+      return meters;
+    }
+    return transports.computeIfAbsent(transport, key -> new TransportMeters(registry, key));
+  }
+}
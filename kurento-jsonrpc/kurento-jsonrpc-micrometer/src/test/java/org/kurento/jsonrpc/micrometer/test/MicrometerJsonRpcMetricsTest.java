@@ -0,0 +1,104 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.micrometer.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Gauge;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics.Outcome;
+import org.kurento.jsonrpc.micrometer.MicrometerJsonRpcMetrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MicrometerJsonRpcMetricsTest {
+
+  @Test
+  public void testRequestsAreRecordedByOutcome() {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MicrometerJsonRpcMetrics metrics = new MicrometerJsonRpcMetrics(registry);
+
+    metrics.requestStarted(JsonRpcMetrics.SENT, "invoke");
+    metrics.requestStarted(JsonRpcMetrics.SENT, "invoke");
+    metrics.requestStarted(JsonRpcMetrics.SENT, "invoke");
+
+    assertEquals(3, registry.get(MicrometerJsonRpcMetrics.IN_FLIGHT).tag("method", "invoke")
+        .gauge().value(), 0);
+
+    metrics.requestCompleted(JsonRpcMetrics.SENT, "invoke", 10000000, Outcome.SUCCESS);
+    metrics.requestCompleted(JsonRpcMetrics.SENT, "invoke", 30000000, Outcome.SUCCESS);
+    metrics.requestCompleted(JsonRpcMetrics.SENT, "invoke", 50000000, Outcome.TIMEOUT);
+
+    Timer success = registry.get(MicrometerJsonRpcMetrics.REQUESTS)
+        .tags("scope", JsonRpcMetrics.SENT, "method", "invoke", "outcome", "success").timer();
+    assertEquals(2, success.count());
+    assertEquals(40, success.totalTime(TimeUnit.MILLISECONDS), 0.001);
+
+    Timer timeout = registry.get(MicrometerJsonRpcMetrics.REQUESTS)
+        .tags("method", "invoke", "outcome", "timeout").timer();
+    assertEquals(1, timeout.count());
+
+    assertEquals(0, registry.get(MicrometerJsonRpcMetrics.IN_FLIGHT).tag("method", "invoke")
+        .gauge().value(), 0);
+  }
+
+  @Test
+  public void testTransportMetrics() {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    MicrometerJsonRpcMetrics metrics = new MicrometerJsonRpcMetrics(registry);
+
+    metrics.messageSent(JsonRpcMetrics.CLIENT_WEBSOCKET, 100);
+    metrics.messageSent(JsonRpcMetrics.CLIENT_WEBSOCKET, 50);
+    metrics.messageReceived(JsonRpcMetrics.CLIENT_WEBSOCKET, 20);
+    metrics.reconnected(JsonRpcMetrics.CLIENT_WEBSOCKET);
+
+    Gauge first = new Gauge() {
+      @Override
+      public long getValue() {
+        return 2;
+      }
+    };
+    Gauge second = new Gauge() {
+      @Override
+      public long getValue() {
+        return 3;
+      }
+    };
+    metrics.registerPendingRequests(JsonRpcMetrics.CLIENT_WEBSOCKET, first);
+    metrics.registerPendingRequests(JsonRpcMetrics.CLIENT_WEBSOCKET, second);
+
+    DistributionSummary sent = registry.get(MicrometerJsonRpcMetrics.MESSAGES)
+        .tags("transport", JsonRpcMetrics.CLIENT_WEBSOCKET, "direction", "sent").summary();
+    assertEquals(2, sent.count());
+    assertEquals(150, sent.totalAmount(), 0);
+
+    DistributionSummary received = registry.get(MicrometerJsonRpcMetrics.MESSAGES)
+        .tags("transport", JsonRpcMetrics.CLIENT_WEBSOCKET, "direction", "received").summary();
+    assertEquals(1, received.count());
+
+    assertEquals(1, registry.get(MicrometerJsonRpcMetrics.RECONNECTIONS).counter().count(), 0);
+    assertEquals(5, registry.get(MicrometerJsonRpcMetrics.PENDING_REQUESTS).gauge().value(), 0);
+  }
+}
@@ -17,13 +17,27 @@
 
 package org.kurento.jsonrpc.internal.http;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.ID_PROPERTY;
+
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonRpcException;
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TransportException;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
@@ -31,43 +45,170 @@ import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.PendingRequests;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.HttpRequestHandler;
 
 import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
 public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
+  private static final Logger log = LoggerFactory.getLogger(JsonRpcHttpRequestHandler.class);
+
+  private static final long TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.timeout", 10000L);
+
+  private static final long POLL_TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.pollTimeout", 30000L);
+
+  private static final int OUTBOUND_QUEUE_SIZE =
+      PropertiesManager.getProperty("jsonRpcServerHttp.outboundQueueSize", 1000);
+
+  private static final long ASYNC_TIMEOUT =
+      PropertiesManager.getProperty("jsonRpcServerHttp.asyncTimeout", 60000L);
+
   private final class HttpRequestServerSession extends ServerSession {
 
+    private final PendingRequests pendingRequests =
+        new PendingRequests(JsonRpcMetrics.SERVER_HTTP);
+    private final LongPollingQueue outboundQueue;
+
     private HttpRequestServerSession(String sessionId, Object registerInfo,
         SessionsManager sessionsManager, String internalSessionId) {
 
       super(sessionId, registerInfo, sessionsManager, internalSessionId);
 
+      this.outboundQueue = new LongPollingQueue(sessionId, OUTBOUND_QUEUE_SIZE, POLL_TIMEOUT);
+
       setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
 
         @Override
         protected <P, R> Response<R> internalSendRequest(Request<P> request, Class<R> resultClass)
             throws IOException {
-          // TODO Poner aquí la cola de mensajes que devolver al
-          // cliente cuando haga pooling
-          return new Response<>();
+          return sendRequestHttp(request, resultClass);
         }
 
         @Override
         protected void internalSendRequest(Request<? extends Object> request,
             Class<JsonElement> class1, Continuation<Response<JsonElement>> continuation) {
-          throw new UnsupportedOperationException("Async client is unavailable");
+          sendRequestHttp(request, continuation);
         }
       });
     }
 
+    private ListenableFuture<Response<JsonElement>> enqueue(Request<?> request) {
+
+      log.debug("Req-> {} (queued for session {})", request, getSessionId());
+
+      ListenableFuture<Response<JsonElement>> responseFuture = null;
+
+      if (request.getId() != null) {
+        responseFuture = pendingRequests.prepareResponse(request.getId());
+      }
+
+      try {
+        outboundQueue.offer(request);
+      } catch (RuntimeException e) {
+        if (request.getId() != null) {
+          pendingRequests.removeResponse(request.getId());
+        }
+        throw e;
+      }
+
+      return responseFuture;
+    }
+
+    private <P, R> Response<R> sendRequestHttp(Request<P> request, Class<R> resultClass) {
+
+      ListenableFuture<Response<JsonElement>> responseFuture = enqueue(request);
+
+      if (responseFuture == null) {
+        return null;
+      }
+
+      Response<JsonElement> response;
+      try {
+        response = responseFuture.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        log.debug("<-Res {}", response);
+
+      } catch (InterruptedException e) {
+        throw new JsonRpcException("Interrupted while waiting for a response", e);
+      } catch (ExecutionException e) {
+        throw new JsonRpcException("This exception shouldn't be thrown", e);
+      } catch (TimeoutException e) {
+        pendingRequests.removeResponse(request.getId());
+        throw new TransportException(
+            "Timeout of " + TIMEOUT + " milliseconds waiting from response to request with id:"
+                + request.getId() + ". Request: " + request,
+            e);
+      }
+
+      return MessageUtils.convertResponse(response, resultClass);
+    }
+
+    private void sendRequestHttp(Request<?> request,
+        final Continuation<Response<JsonElement>> continuation) {
+
+      ListenableFuture<Response<JsonElement>> responseFuture;
+      try {
+        responseFuture = enqueue(request);
+      } catch (Exception e) {
+        continuation.onError(e);
+        return;
+      }
+
+      if (responseFuture == null) {
+        continuation.onSuccess(null);
+        return;
+      }
+
+      Futures.addCallback(responseFuture, new FutureCallback<Response<JsonElement>>() {
+        @Override
+        public void onSuccess(Response<JsonElement> response) {
+          continuation.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(Throwable cause) {
+          continuation.onError(cause);
+        }
+      }, MoreExecutors.directExecutor());
+    }
+
+    @Override
+    public void processPoll(Request<JsonElement> request, ResponseSender responseSender)
+        throws IOException {
+      outboundQueue.poll(request.getId(), responseSender);
+    }
+
     @Override
     public void handleResponse(Response<JsonElement> response) {
+      pendingRequests.handleResponse(response);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        outboundQueue.close();
+        pendingRequests.closeAllPendingRequests();
+      } finally {
+        super.close();
+      }
     }
 
     @Override
@@ -76,6 +217,72 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
     }
   }
 
+  /**
+   * Sends the response of an asynchronous servlet request. Responses are sent from the session
+   * threads or, for polls, when the server has requests for the client.
+   */
+  private static final class AsyncResponseSender implements ResponseSender, AsyncListener {
+
+    private final AsyncContext asyncContext;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private AsyncResponseSender(AsyncContext asyncContext) {
+      this.asyncContext = asyncContext;
+      asyncContext.setTimeout(ASYNC_TIMEOUT);
+      asyncContext.addListener(this);
+    }
+
+    @Override
+    public void sendResponse(Message message) throws IOException {
+
+      if (!completed.compareAndSet(false, true)) {
+        // Makes the long polling queue keep the requests for the next poll
+        throw new IOException("HTTP request already completed. Discarding " + message);
+      }
+
+      try {
+        writeMessage(asyncContext.getResponse().getWriter(), message);
+      } finally {
+        asyncContext.complete();
+      }
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      sendResponse(message);
+    }
+
+    private void completeWithError() {
+      complete(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    private void complete(int status) {
+      if (completed.compareAndSet(false, true)) {
+        ((HttpServletResponse) asyncContext.getResponse()).setStatus(status);
+        asyncContext.complete();
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) throws IOException {
+      log.warn("Timeout of {} millis waiting for the response of an HTTP request", ASYNC_TIMEOUT);
+      complete(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+
+    @Override
+    public void onError(AsyncEvent event) throws IOException {
+      completed.set(true);
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) throws IOException {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) throws IOException {
+    }
+  }
+
   private final ProtocolManager protocolManager;
 
   public JsonRpcHttpRequestHandler(ProtocolManager protocolManager) {
@@ -88,6 +295,17 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
 
     String messageJson = getBodyAsString(servletRequest);
 
+    JsonRpcMetricsManager.getMetrics().messageReceived(JsonRpcMetrics.SERVER_HTTP,
+        messageJson.length());
+    JsonRpcEvents.messageReceived(JsonRpcMetrics.SERVER_HTTP, messageJson.length());
+
+    JsonObject message = JsonUtils.fromJson(messageJson, JsonObject.class);
+
+    if (message == null) {
+      servletResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, "Empty JSON-RPC message");
+      return;
+    }
+
     ServerSessionFactory factory = new ServerSessionFactory() {
       @Override
       public ServerSession createSession(String sessionId, Object registerInfo,
@@ -102,17 +320,28 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
       }
     };
 
-    ResponseSender responseSender = new ResponseSender() {
-      @Override
-      public void sendResponse(Message message) throws IOException {
-        servletResponse.getWriter().println(message);
-      }
+    ResponseSender responseSender;
 
-      @Override
-      public void sendPingResponse(Message message) throws IOException {
-        sendResponse(message);
-      }
-    };
+    // Requests are processed in the session threads, and polls are held until there are requests
+    // for the client, so the servlet thread is released while waiting for the response
+    if (expectsResponse(message) && servletRequest.isAsyncSupported()) {
+
+      responseSender = new AsyncResponseSender(servletRequest.startAsync());
+
+    } else {
+
+      responseSender = new ResponseSender() {
+        @Override
+        public void sendResponse(Message message) throws IOException {
+          writeMessage(servletResponse.getWriter(), message);
+        }
+
+        @Override
+        public void sendPingResponse(Message message) throws IOException {
+          sendResponse(message);
+        }
+      };
+    }
 
     String internalSessionId = null;
 
@@ -121,7 +350,29 @@ public class JsonRpcHttpRequestHandler implements HttpRequestHandler {
       internalSessionId = session.getId();
     }
 
-    protocolManager.processMessage(messageJson, factory, responseSender, internalSessionId);
+    try {
+      protocolManager.processMessage(message, factory, responseSender, internalSessionId);
+    } catch (IOException | RuntimeException e) {
+      if (responseSender instanceof AsyncResponseSender) {
+        log.error("Exception processing message {}", messageJson, e);
+        ((AsyncResponseSender) responseSender).completeWithError();
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private static void writeMessage(PrintWriter writer, Message message) {
+    String jsonMessage = message.toString();
+    JsonRpcMetricsManager.getMetrics().messageSent(JsonRpcMetrics.SERVER_HTTP,
+        jsonMessage.length());
+    JsonRpcEvents.messageSent(JsonRpcMetrics.SERVER_HTTP, jsonMessage.length());
+    writer.println(jsonMessage);
+  }
+
+  private boolean expectsResponse(JsonObject message) {
+    return message.has(Request.METHOD_FIELD_NAME) && message.has(ID_PROPERTY)
+        && !message.get(ID_PROPERTY).isJsonNull();
   }
 
   /**
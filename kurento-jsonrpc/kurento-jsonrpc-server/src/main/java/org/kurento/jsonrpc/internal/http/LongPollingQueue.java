@@ -0,0 +1,221 @@
+/*
+ * (C) Copyright 2013 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.http;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Outbound queue of the requests that the server sends to an HTTP client. The client receives them
+ * in the response to a {@code poll} request, that is held until there are requests to send or the
+ * poll timeout expires. Only one poll is held per session; if a new one arrives, the previous one
+ * is responded with an empty list.
+ */
+public class LongPollingQueue {
+
+  private static final Logger log = LoggerFactory.getLogger(LongPollingQueue.class);
+
+  private static final ScheduledExecutorService pollTimer =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("LongPollingTimer-%d").setDaemon(true).build());
+
+  private static class HeldPoll {
+
+    private final Integer id;
+    private final ResponseSender responseSender;
+    private ScheduledFuture<?> timeout;
+
+    HeldPoll(Integer id, ResponseSender responseSender) {
+      this.id = id;
+      this.responseSender = responseSender;
+    }
+  }
+
+  private final String sessionId;
+  private final int maxSize;
+  private final long pollTimeout;
+
+  private final ArrayDeque<Request<?>> requests = new ArrayDeque<>();
+  private HeldPoll heldPoll;
+  private boolean closed;
+
+  public LongPollingQueue(String sessionId, int maxSize, long pollTimeout) {
+    this.sessionId = sessionId;
+    this.maxSize = maxSize;
+    this.pollTimeout = pollTimeout;
+  }
+
+  /**
+   * Enqueues a request to be sent to the client. If there is a poll held, it is responded
+   * immediately.
+   *
+   * @throws TransportException
+   *           if the session is closed or the queue is full
+   */
+  public void offer(Request<?> request) {
+
+    HeldPoll poll;
+    List<Request<?>> pending;
+
+    synchronized (this) {
+
+      if (closed) {
+        throw new TransportException(
+            "Session " + sessionId + " is closed. Request " + request + " can't be sent");
+      }
+
+      if (requests.size() >= maxSize) {
+        throw new TransportException("Outbound queue of session " + sessionId + " is full ("
+            + maxSize + " requests). Client is not polling?");
+      }
+
+      requests.add(request);
+
+      poll = releaseHeldPoll();
+      if (poll == null) {
+        return;
+      }
+
+      pending = drain();
+    }
+
+    respond(poll, pending);
+  }
+
+  /**
+   * Processes a poll from the client. It is responded immediately if there are pending requests,
+   * and held otherwise.
+   */
+  public void poll(Integer pollId, ResponseSender responseSender) {
+
+    final HeldPoll poll = new HeldPoll(pollId, responseSender);
+    HeldPoll previous;
+    List<Request<?>> pending = null;
+
+    synchronized (this) {
+
+      previous = releaseHeldPoll();
+
+      if (closed || !requests.isEmpty()) {
+        pending = drain();
+      } else {
+        heldPoll = poll;
+        poll.timeout = pollTimer.schedule(new Runnable() {
+          @Override
+          public void run() {
+            expire(poll);
+          }
+        }, pollTimeout, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (previous != null) {
+      log.debug("Session {} has sent a new poll. Releasing the previous one", sessionId);
+      respond(previous, Collections.<Request<?>> emptyList());
+    }
+
+    if (pending != null) {
+      respond(poll, pending);
+    }
+  }
+
+  private void expire(HeldPoll poll) {
+
+    synchronized (this) {
+      if (heldPoll != poll) {
+        return;
+      }
+      heldPoll = null;
+    }
+
+    respond(poll, Collections.<Request<?>> emptyList());
+  }
+
+  /**
+   * Releases the held poll, if any, and discards the pending requests.
+   */
+  public void close() {
+
+    HeldPoll poll;
+
+    synchronized (this) {
+      closed = true;
+      requests.clear();
+      poll = releaseHeldPoll();
+    }
+
+    if (poll != null) {
+      respond(poll, Collections.<Request<?>> emptyList());
+    }
+  }
+
+  public synchronized int size() {
+    return requests.size();
+  }
+
+  private HeldPoll releaseHeldPoll() {
+    HeldPoll poll = heldPoll;
+    if (poll != null) {
+      heldPoll = null;
+      poll.timeout.cancel(false);
+    }
+    return poll;
+  }
+
+  private List<Request<?>> drain() {
+    List<Request<?>> pending = new ArrayList<>(requests);
+    requests.clear();
+    return pending;
+  }
+
+  private void respond(HeldPoll poll, List<Request<?>> pending) {
+    try {
+      poll.responseSender.sendResponse(new Response<Object>(poll.id, pending));
+    } catch (IOException e) {
+      log.warn("Exception responding poll of session {}. Requeuing {} requests", sessionId,
+          pending.size(), e);
+      requeue(pending);
+    }
+  }
+
+  private synchronized void requeue(List<Request<?>> pending) {
+    if (closed) {
+      return;
+    }
+    for (ListIterator<Request<?>> it = pending.listIterator(pending.size()); it.hasPrevious();) {
+      requests.addFirst(it.previous());
+    }
+  }
+}
@@ -28,7 +28,6 @@ import static org.kurento.jsonrpc.internal.JsonRpcConstants.RECONNECTION_SUCCESS
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ScheduledFuture;
@@ -38,6 +37,7 @@ import javax.annotation.PostConstruct;
 import org.kurento.commons.SecretGenerator;
 import org.kurento.jsonrpc.JsonRpcHandler;
 import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.TraceContext;
 import org.kurento.jsonrpc.internal.JsonRpcHandlerManager;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
@@ -188,9 +188,6 @@ public class ProtocolManager {
       log.debug("{} Req-> {} [jsonRpcSessionId={}, transportId={}]", label, request,
           session.getSessionId(), transportId);
 
-      // TODO, Take out this an put in Http specific handler. The main
-      // reason is to wait for request before responding to the client.
-      // And for no contaminate the ProtocolManager.
       if (request.getMethod().equals(Request.POLL_METHOD_NAME)) {
 
         Type collectionType = new TypeToken<List<Response<JsonElement>>>() {
@@ -199,23 +196,50 @@ public class ProtocolManager {
         List<Response<JsonElement>> responseList = JsonUtils.fromJson(request.getParams(),
             collectionType);
 
-        for (Response<JsonElement> response : responseList) {
-          session.handleResponse(response);
+        if (responseList != null) {
+          for (Response<JsonElement> response : responseList) {
+            session.handleResponse(response);
+          }
         }
 
-        // Wait for some time if there is a request from server to
-        // client
-
-        // TODO Allow send empty responses. Now you have to send at
-        // least an
-        // empty string
-        responseSender.sendResponse(new Response<Object>(request.getId(), Collections.emptyList()));
+        // The session can hold the poll until it has requests for the client
+        session.processPoll(request, responseSender);
 
       } else {
+
+        final TraceContext traceContext = TraceContext.extractFrom(request.getParams());
+        request.setTraceContext(traceContext);
+
+        final String requestTransportId = transportId;
+
         session.processRequest(new Runnable() {
           @Override
           public void run() {
-            handlerManager.handleRequest(session, request, responseSender);
+
+            try {
+              if (session.replayResponse(request, requestTransportId, responseSender)) {
+                return;
+              }
+            } catch (IOException e) {
+              log.warn("{} Exception replaying response to request {}", label, request, e);
+              return;
+            }
+
+            ResponseSender recordingSender =
+                session.recordResponse(request, requestTransportId, responseSender);
+
+            if (traceContext == null) {
+              handlerManager.handleRequest(session, request, recordingSender);
+              return;
+            }
+
+            // Requests sent while handling this one are part of the same trace
+            TraceContext previous = TraceContext.setCurrent(traceContext);
+            try {
+              handlerManager.handleRequest(session, request, recordingSender);
+            } finally {
+              TraceContext.setCurrent(previous);
+            }
           }
         });
       }
@@ -393,6 +417,11 @@ public class ProtocolManager {
 
     ServerSession session = sessionsManager.getByTransportId(internalSessionId);
 
+    if (session == null && response.getSessionId() != null) {
+      // HTTP sessions are not bound to a transport, their clients send the session id instead
+      session = sessionsManager.get(response.getSessionId());
+    }
+
     if (session != null) {
       session.handleResponse(response);
     } else {
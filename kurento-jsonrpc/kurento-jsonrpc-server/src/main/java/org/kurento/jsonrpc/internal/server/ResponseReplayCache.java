@@ -0,0 +1,195 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Recent responses sent in a session, by request id. When a client reconnects after losing the
+ * transport, it retries the requests whose responses it hasn't received. If the request was
+ * already processed, its response is replayed from this cache instead of processing the request
+ * again.
+ *
+ * <p>
+ * A response is only replayed for a request with the same id, method and params (compared with
+ * {@code equals}, so JSON params must have the same members and values) that arrives through a
+ * different transport than the original one, that is, after a reconnection. Params are stored as
+ * JSON text captured when the request is received, because handlers can replace them with typed
+ * objects or modify them before responding. The cache
+ * keeps at most {@code maxSize} responses, and each one expires {@code ttlMillis} after being
+ * sent. A cache with size 0 is disabled.
+ * </p>
+ */
+public class ResponseReplayCache {
+
+  private static class CachedResponse {
+
+    private final String method;
+    private final String params;
+    private final String transportId;
+    private final Message response;
+    private final long expirationTime;
+
+    CachedResponse(String method, String params, String transportId, Message response,
+        long expirationTime) {
+      this.method = method;
+      this.params = params;
+      this.transportId = transportId;
+      this.response = response;
+      this.expirationTime = expirationTime;
+    }
+  }
+
+  private final int maxSize;
+  private final long ttlNanos;
+
+  private final LinkedHashMap<Integer, CachedResponse> responses = new LinkedHashMap<>();
+  private long replayedResponses;
+
+  public ResponseReplayCache(int maxSize, long ttlMillis) {
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+  }
+
+  public boolean isEnabled() {
+    return maxSize > 0 && ttlNanos > 0;
+  }
+
+  /**
+   * Returns the params of a request as JSON text, to be stored with
+   * {@link #put(Request, String, String, Message)}.
+   */
+  public static String paramsToJson(Object params) {
+    if (params == null) {
+      return null;
+    }
+    return params instanceof JsonElement ? params.toString() : JsonUtils.toJson(params);
+  }
+
+  /**
+   * Stores the response sent to a request, with its current params.
+   *
+   * @see #put(Request, String, String, Message)
+   */
+  public void put(Request<?> request, String transportId, Message response) {
+    put(request, paramsToJson(request.getParams()), transportId, response);
+  }
+
+  /**
+   * Stores the response sent to a request.
+   *
+   * @param request
+   *          the request
+   * @param params
+   *          the params of the request as received from the client, see
+   *          {@link #paramsToJson(Object)}
+   * @param transportId
+   *          the transport the request was received from
+   * @param response
+   *          the response sent to the client
+   */
+  public synchronized void put(Request<?> request, String params, String transportId,
+      Message response) {
+
+    if (!isEnabled() || request.getId() == null) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    removeExpired(now);
+
+    // Re-inserted so iteration order is the order in which responses expire
+    responses.remove(request.getId());
+    responses.put(request.getId(), new CachedResponse(request.getMethod(), params, transportId,
+        response, now + ttlNanos));
+
+    if (responses.size() > maxSize) {
+      Iterator<Integer> it = responses.keySet().iterator();
+      it.next();
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns the response to replay for a retried request, or null if the request has to be
+   * processed.
+   *
+   * @param request
+   *          the request, as received from the client
+   * @param transportId
+   *          the transport the request was received from
+   */
+  public synchronized Message getReplay(Request<?> request, String transportId) {
+
+    if (!isEnabled() || request.getId() == null) {
+      return null;
+    }
+
+    removeExpired(System.nanoTime());
+
+    CachedResponse cached = responses.get(request.getId());
+
+    if (cached == null || Objects.equals(cached.transportId, transportId)
+        || !Objects.equals(cached.method, request.getMethod())
+        || !sameParams(cached.params, request.getParams())) {
+      return null;
+    }
+
+    replayedResponses++;
+    return cached.response;
+  }
+
+  private static boolean sameParams(String cachedParams, Object params) {
+
+    if (cachedParams == null || params == null) {
+      return cachedParams == null && params == null;
+    }
+
+    // Parsed only for retried requests, so requests answered in time just pay for the text
+    return JsonUtils.fromJson(cachedParams, JsonElement.class).equals(
+        params instanceof JsonElement ? params : JsonUtils.toJsonElement(params));
+  }
+
+  private void removeExpired(long now) {
+    Iterator<CachedResponse> it = responses.values().iterator();
+    while (it.hasNext() && it.next().expirationTime - now <= 0) {
+      it.remove();
+    }
+  }
+
+  public synchronized int size() {
+    return responses.size();
+  }
+
+  public synchronized long getReplayedResponses() {
+    return replayedResponses;
+  }
+
+  public synchronized void clear() {
+    responses.clear();
+  }
+}
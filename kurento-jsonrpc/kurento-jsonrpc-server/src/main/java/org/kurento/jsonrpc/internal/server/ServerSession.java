@@ -18,6 +18,7 @@
 package org.kurento.jsonrpc.internal.server;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -30,16 +31,29 @@ import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.jsonrpc.client.Continuation;
 import org.kurento.jsonrpc.internal.JsonRpcRequestSenderHelper;
 import org.kurento.jsonrpc.internal.client.AbstractSession;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 public abstract class ServerSession extends AbstractSession {
 
+  private static final Logger log = LoggerFactory.getLogger(ServerSession.class);
+
   public static final String SESSION_RECONNECTION_TIME_PROP = "ws.sessionReconnectionTime";
   private static final int SESSION_RECONNECTION_TIME_DEFAULT = 10;
+  private static final String SESSION_EXECUTOR = "serverSession";
+
+  public static final String RESPONSE_REPLAY_CACHE_SIZE_PROP = "ws.responseReplayCache.size";
+  private static final int RESPONSE_REPLAY_CACHE_SIZE_DEFAULT = 32;
+  public static final String RESPONSE_REPLAY_CACHE_TTL_PROP = "ws.responseReplayCache.ttl";
+  private static final int RESPONSE_REPLAY_CACHE_TTL_DEFAULT = 30;
 
   private final SessionsManager sessionsManager;
   private JsonRpcRequestSenderHelper rsHelper;
@@ -53,6 +67,12 @@ public abstract class ServerSession extends AbstractSession {
       SESSION_RECONNECTION_TIME_PROP, SESSION_RECONNECTION_TIME_DEFAULT) * 1000;
   private boolean gracefullyClosed;
 
+  private final ResponseReplayCache responseReplayCache = new ResponseReplayCache(
+      PropertiesManager.getProperty(RESPONSE_REPLAY_CACHE_SIZE_PROP,
+          RESPONSE_REPLAY_CACHE_SIZE_DEFAULT),
+      PropertiesManager.getProperty(RESPONSE_REPLAY_CACHE_TTL_PROP,
+          RESPONSE_REPLAY_CACHE_TTL_DEFAULT) * 1000L);
+
   public ServerSession(String sessionId, Object registerInfo, SessionsManager sessionsManager,
       String transportId) {
 
@@ -79,6 +99,7 @@ public abstract class ServerSession extends AbstractSession {
   public void close() throws IOException {
     this.sessionsManager.remove(this.getSessionId());
     this.sessionExecutor.shutdownNow();
+    this.responseReplayCache.clear();
   }
 
   protected void setRsHelper(JsonRpcRequestSenderHelper rsHelper) {
@@ -188,7 +209,79 @@ public abstract class ServerSession extends AbstractSession {
 
   public abstract void closeNativeSession(String reason);
 
+  /**
+   * Processes a {@code poll} request, used by clients that can only receive requests from the
+   * server in the response to a poll. By default, the poll is responded immediately with an empty
+   * list of requests.
+   */
+  public void processPoll(Request<JsonElement> request, ResponseSender responseSender)
+      throws IOException {
+    responseSender.sendResponse(new Response<Object>(request.getId(), Collections.emptyList()));
+  }
+
   public void processRequest(Runnable task) {
-    sessionExecutor.execute(task);
+    sessionExecutor.execute(JsonRpcEvents.recordQueueWait(SESSION_EXECUTOR, task));
+  }
+
+  public ResponseReplayCache getResponseReplayCache() {
+    return responseReplayCache;
+  }
+
+  /**
+   * Sends the cached response of a request retried after a reconnection, if any. Requests are
+   * processed in order in the session executor, so a retry received while the original request is
+   * being processed finds its response cached, unless the handler responds asynchronously.
+   *
+   * @param request
+   *          the request received from the client
+   * @param transportId
+   *          the transport the request was received from
+   * @param responseSender
+   *          used to send the cached response
+   * @return true if the response has been replayed, false if the request has to be processed
+   */
+  public boolean replayResponse(Request<?> request, String transportId,
+      ResponseSender responseSender) throws IOException {
+
+    Message response = responseReplayCache.getReplay(request, transportId);
+    if (response == null) {
+      return false;
+    }
+
+    log.debug("Session {}: replaying response to request {} retried after reconnection",
+        getSessionId(), request.getId());
+
+    responseSender.sendResponse(response);
+    return true;
+  }
+
+  /**
+   * Wraps the sender of the responses to a request, so the response is stored to be replayed if
+   * the request is retried after a reconnection. It must be called before the request is handled,
+   * as the params are captured here.
+   */
+  public ResponseSender recordResponse(final Request<?> request, final String transportId,
+      final ResponseSender responseSender) {
+
+    if (!responseReplayCache.isEnabled() || request.getId() == null) {
+      return responseSender;
+    }
+
+    final String params = ResponseReplayCache.paramsToJson(request.getParams());
+
+    return new ResponseSender() {
+
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        // Stored before sending, as the transport can be lost while sending
+        responseReplayCache.put(request, params, transportId, message);
+        responseSender.sendResponse(message);
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        responseSender.sendPingResponse(message);
+      }
+    };
   }
 }
@@ -31,6 +31,7 @@ import org.kurento.jsonrpc.internal.http.JsonRpcHttpRequestHandler;
 import org.kurento.jsonrpc.internal.server.PerSessionJsonRpcHandler;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.internal.ws.CompressionHandshakeHandler;
 import org.kurento.jsonrpc.internal.ws.JsonRpcWebSocketHandler;
 import org.kurento.jsonrpc.server.JsonRpcConfigurer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -219,9 +220,12 @@ public class JsonRpcConfiguration implements WebSocketConfigurer {
 
     protocolManager.setPingWachdog(handler.isPingWatchdog());
 
+    CompressionHandshakeHandler handshakeHandler = new CompressionHandshakeHandler();
+
     for (String path : paths) {
 
       WebSocketHandlerRegistration registration = wsHandlerRegistry.addHandler(wsHandler, path);
+      registration.setHandshakeHandler(handshakeHandler);
 
       List<String> origins = handler.allowedOrigins();
       registration.setAllowedOrigins(origins.toArray(new String[origins.size()]));
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kurento.commons.PropertiesManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+/**
+ * Handshake handler controlling the compression extensions negotiated with clients. The
+ * compression itself is done by the servlet container, that doesn't allow configuring the level or
+ * a minimum size, so only the negotiation can be controlled:
+ * <ul>
+ * <li>jsonRpcServerWebSocket.compression.enabled: accept compression extensions requested by
+ * clients (true)</li>
+ * <li>jsonRpcServerWebSocket.compression.contextTakeover: keep the compression context between
+ * messages. If false, {@code server_no_context_takeover} and {@code client_no_context_takeover}
+ * are negotiated, so no end keeps a deflater per connection (true)</li>
+ * </ul>
+ */
+public class CompressionHandshakeHandler extends DefaultHandshakeHandler {
+
+  public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+  private static final Logger log = LoggerFactory.getLogger(CompressionHandshakeHandler.class);
+
+  private final boolean compressionEnabled;
+  private final boolean contextTakeover;
+
+  public CompressionHandshakeHandler() {
+    this(PropertiesManager.getProperty("jsonRpcServerWebSocket.compression.enabled", true),
+        PropertiesManager.getProperty("jsonRpcServerWebSocket.compression.contextTakeover", true));
+  }
+
+  public CompressionHandshakeHandler(boolean compressionEnabled, boolean contextTakeover) {
+    this.compressionEnabled = compressionEnabled;
+    this.contextTakeover = contextTakeover;
+  }
+
+  @Override
+  protected List<WebSocketExtension> filterRequestedExtensions(ServerHttpRequest request,
+      List<WebSocketExtension> requestedExtensions, List<WebSocketExtension> supportedExtensions) {
+
+    List<WebSocketExtension> extensions = super.filterRequestedExtensions(request,
+        requestedExtensions, supportedExtensions);
+
+    return filterCompressionExtensions(extensions);
+  }
+
+  List<WebSocketExtension> filterCompressionExtensions(List<WebSocketExtension> extensions) {
+
+    List<WebSocketExtension> result = new ArrayList<>(extensions.size());
+
+    for (WebSocketExtension extension : extensions) {
+
+      if (!isCompressionExtension(extension)) {
+        result.add(extension);
+      } else if (!compressionEnabled) {
+        log.debug("Rejecting compression extension {}", extension.getName());
+      } else if (!contextTakeover && PERMESSAGE_DEFLATE.equals(extension.getName())) {
+        Map<String, String> params = new LinkedHashMap<>(extension.getParameters());
+        params.put(SERVER_NO_CONTEXT_TAKEOVER, null);
+        params.put(CLIENT_NO_CONTEXT_TAKEOVER, null);
+        result.add(new WebSocketExtension(extension.getName(), params));
+      } else {
+        result.add(extension);
+      }
+    }
+
+    return result;
+  }
+
+  private boolean isCompressionExtension(WebSocketExtension extension) {
+    String name = extension.getName();
+    return PERMESSAGE_DEFLATE.equals(name) || name.endsWith("deflate-frame");
+  }
+}
@@ -17,24 +17,51 @@
 
 package org.kurento.jsonrpc.internal.ws;
 
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.BINARY_SUBPROTOCOL;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.CHANNEL_PROPERTY;
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.MULTIPLEXING_SUBPROTOCOL;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 import org.kurento.commons.PropertiesManager;
+import org.kurento.jsonrpc.JsonUtils;
 import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
 import org.kurento.jsonrpc.internal.server.ProtocolManager;
 import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
 import org.kurento.jsonrpc.internal.server.ServerSession;
 import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 
-public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
+/**
+ * Handles the JSON-RPC messages received through WebSockets. Clients requesting the
+ * {@code kurento-jsonrpc-mux} subprotocol can open several logical sessions in the same WebSocket:
+ * each message has a {@code channel} member, and each channel is handled as a separate transport
+ * (see {@link ChannelMessages}). Clients requesting the {@code kurento-jsonrpc-cbor} subprotocol
+ * send and receive messages encoded in CBOR in binary messages (see {@link CborCodec}).
+ */
+public class JsonRpcWebSocketHandler extends AbstractWebSocketHandler
+    implements SubProtocolCapable {
 
   public class MaxNumberWsConnectionsReachedException extends Exception {
 
@@ -44,6 +71,9 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
   private static final long MAX_WS_CONNECTIONS =
       PropertiesManager.getProperty("ws.maxSessions", Long.MAX_VALUE);
 
+  private static final boolean BINARY_PROTOCOL =
+      PropertiesManager.getProperty("jsonRpcServerWebSocket.binaryProtocol", true);
+
   private static final AtomicLong numConnections = new AtomicLong();
 
   private static final Logger log = LoggerFactory.getLogger(JsonRpcWebSocketHandler.class);
@@ -61,6 +91,18 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
     this.protocolManager.setLabel(label);
   }
 
+  @Override
+  public List<String> getSubProtocols() {
+    if (BINARY_PROTOCOL) {
+      return Arrays.asList(MULTIPLEXING_SUBPROTOCOL, BINARY_SUBPROTOCOL);
+    }
+    return Collections.singletonList(MULTIPLEXING_SUBPROTOCOL);
+  }
+
+  private static boolean isMultiplexed(WebSocketSession wsSession) {
+    return MULTIPLEXING_SUBPROTOCOL.equals(wsSession.getAcceptedProtocol());
+  }
+
   @Override
   public void afterConnectionEstablished(WebSocketSession session) throws Exception {
 
@@ -116,38 +158,52 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
 
     numConnections.decrementAndGet();
 
+    List<String> transportIds = new ArrayList<>();
+    transportIds.add(wsSession.getId());
+    if (isMultiplexed(wsSession)) {
+      for (String channel : WebSocketMessages.getChannels(wsSession)) {
+        transportIds.add(ChannelMessages.getTransportId(wsSession.getId(), channel));
+      }
+    }
+
+    for (String transportId : transportIds) {
+      transportClosed(transportId, status);
+    }
+  }
+
+  private void transportClosed(String transportId, CloseStatus status) {
+
     try {
-      ServerSession session =
-          (ServerSession) protocolManager.getSessionByTransportId(wsSession.getId());
+      ServerSession session = (ServerSession) protocolManager.getSessionByTransportId(transportId);
 
       if (session != null) {
 
         if (session.isGracefullyClosed()) {
 
           log.debug("{} WebSocket session {} with transportId {} closed gracefully", label,
-              session.getSessionId(), wsSession.getId());
+              session.getSessionId(), transportId);
 
         } else {
 
           log.debug(
               "{} WebSocket session {} with transportId {} closed for {} (code {}, reason '{}')",
-              label, session.getSessionId(), wsSession.getId(),
+              label, session.getSessionId(), transportId,
               CloseStatusHelper.getCloseStatusType(status.getCode()), status.getCode(),
               status.getReason());
 
-          protocolManager.closeSessionIfTimeout(wsSession.getId(), status.getReason());
+          protocolManager.closeSessionIfTimeout(transportId, status.getReason());
         }
       } else {
         log.debug(
             "{} WebSocket session not associated to any jsonRpcSession "
                 + "with transportId {} closed for {} (code {}, reason '{}')",
-            label, wsSession.getId(), CloseStatusHelper.getCloseStatusType(status.getCode()),
+            label, transportId, CloseStatusHelper.getCloseStatusType(status.getCode()),
             status.getCode(), status.getReason());
       }
 
     } catch (Throwable t) {
       log.error("{} Exception processing afterConnectionClosed in session={}", label,
-          wsSession.getId(), t);
+          transportId, t);
     }
   }
 
@@ -162,59 +218,101 @@ public class JsonRpcWebSocketHandler extends TextWebSocketHandler {
   }
 
   @Override
-  public void handleTextMessage(final WebSocketSession wsSession, TextMessage message)
+  public void handleTextMessage(WebSocketSession wsSession, TextMessage message) throws Exception {
+
+    JsonRpcMetricsManager.getMetrics().messageReceived(JsonRpcMetrics.SERVER_WEBSOCKET,
+        message.getPayloadLength());
+    JsonRpcEvents.messageReceived(JsonRpcMetrics.SERVER_WEBSOCKET, message.getPayloadLength());
+
+    try {
+      processMessage(wsSession, JsonUtils.fromJson(message.getPayload(), JsonObject.class));
+    } catch (Throwable t) {
+      log.error("{} Exception processing request {}.", label, message.getPayload(), t);
+    }
+  }
+
+  @Override
+  protected void handleBinaryMessage(WebSocketSession wsSession, BinaryMessage message)
       throws Exception {
 
+    JsonRpcMetricsManager.getMetrics().messageReceived(JsonRpcMetrics.SERVER_WEBSOCKET,
+        message.getPayloadLength());
+    JsonRpcEvents.messageReceived(JsonRpcMetrics.SERVER_WEBSOCKET, message.getPayloadLength());
+
+    JsonObject messageJson = null;
     try {
+      byte[] payload = new byte[message.getPayloadLength()];
+      message.getPayload().get(payload);
+      messageJson = (JsonObject) CborCodec.decode(payload);
+      processMessage(wsSession, messageJson);
+    } catch (Throwable t) {
+      log.error("{} Exception processing binary request {}.", label, messageJson, t);
+    }
+  }
 
-      String messageJson = message.getPayload();
+  private void processMessage(final WebSocketSession wsSession, JsonObject messageJson)
+      throws IOException {
 
-      // TODO Ensure only one register message per websocket session.
-      ServerSessionFactory factory = new ServerSessionFactory() {
-        @Override
-        public ServerSession createSession(String sessionId, Object registerInfo,
-            SessionsManager sessionsManager) {
-          return new WebSocketServerSession(sessionId, registerInfo, sessionsManager, wsSession);
-        }
+    String channel = null;
+    if (isMultiplexed(wsSession)) {
+      JsonElement channelElement = messageJson.remove(CHANNEL_PROPERTY);
+      if (channelElement != null) {
+        channel = channelElement.getAsString();
+      }
+    }
 
-        @Override
-        public void updateSessionOnReconnection(ServerSession session) {
-          ((WebSocketServerSession) session).updateWebSocketSession(wsSession);
-        }
-      };
+    final String messageChannel = channel;
 
-      protocolManager.processMessage(messageJson, factory, new ResponseSender() {
-        @Override
-        public void sendResponse(Message message) throws IOException {
+    // TODO Ensure only one register message per websocket session.
+    ServerSessionFactory factory = new ServerSessionFactory() {
+      @Override
+      public ServerSession createSession(String sessionId, Object registerInfo,
+          SessionsManager sessionsManager) {
+        return new WebSocketServerSession(sessionId, registerInfo, sessionsManager, wsSession,
+            messageChannel);
+      }
 
-          String jsonMessage = message.toString();
-          log.debug("{} Res<- {}", label, jsonMessage);
-          sendJsonMessage(jsonMessage);
-        }
+      @Override
+      public void updateSessionOnReconnection(ServerSession session) {
+        ((WebSocketServerSession) session).updateWebSocketSession(wsSession, messageChannel);
+      }
+    };
 
-        @Override
-        public void sendPingResponse(Message message) throws IOException {
+    protocolManager.processMessage(messageJson, factory, new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
 
-          String jsonMessage = message.toString();
-          log.trace("{} Res<- {}", label, jsonMessage);
-          sendJsonMessage(jsonMessage);
-        }
+        log.debug("{} Res<- {}", label, message);
+        sendJsonMessage(message);
+      }
 
-        private void sendJsonMessage(String jsonMessage) throws IOException {
-          synchronized (wsSession) {
-            if (wsSession.isOpen()) {
-              wsSession.sendMessage(new TextMessage(jsonMessage));
-            } else {
-              log.error("Trying to send a message to a closed session");
-            }
-          }
-        }
-      }, wsSession.getId());
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
 
-    } catch (Throwable t) {
-      log.error("{} Exception processing request {}.", label, message.getPayload(), t);
-    }
+        log.trace("{} Res<- {}", label, message);
+        sendJsonMessage(message);
+      }
 
+      private void sendJsonMessage(Message message) throws IOException {
+        Lock sendLock = WebSocketMessages.getSendLock(wsSession);
+        sendLock.lock();
+        try {
+          if (wsSession.isOpen()) {
+            WebSocketMessage<?> wsMessage =
+                WebSocketMessages.create(wsSession, message, messageChannel);
+            JsonRpcMetricsManager.getMetrics().messageSent(JsonRpcMetrics.SERVER_WEBSOCKET,
+                wsMessage.getPayloadLength());
+            JsonRpcEvents.messageSent(JsonRpcMetrics.SERVER_WEBSOCKET,
+                wsMessage.getPayloadLength());
+            wsSession.sendMessage(wsMessage);
+          } else {
+            log.error("Trying to send a message to a closed session");
+          }
+        } finally {
+          sendLock.unlock();
+        }
+      }
+    }, ChannelMessages.getTransportId(wsSession.getId(), channel));
   }
 
 }
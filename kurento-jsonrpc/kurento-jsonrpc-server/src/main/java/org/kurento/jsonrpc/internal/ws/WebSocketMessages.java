@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.internal.ws;
+
+import static org.kurento.jsonrpc.internal.JsonRpcConstants.BINARY_SUBPROTOCOL;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kurento.jsonrpc.JsonUtils;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Creates the WebSocket messages sent to a client according to the subprotocol accepted in the
+ * handshake: CBOR binary messages for {@code kurento-jsonrpc-cbor}, and JSON text messages
+ * otherwise (with the channel of the session for {@code kurento-jsonrpc-mux}).
+ */
+final class WebSocketMessages {
+
+  private static final String SEND_LOCK_ATTRIBUTE = "kurento.jsonrpc.sendLock";
+
+  private static final String CHANNELS_ATTRIBUTE = "kurento.jsonrpc.channels";
+
+  private WebSocketMessages() {
+  }
+
+  static boolean isBinary(WebSocketSession wsSession) {
+    return BINARY_SUBPROTOCOL.equals(wsSession.getAcceptedProtocol());
+  }
+
+  /**
+   * Returns the lock that serializes the messages sent through a WebSocket. It is a
+   * {@link ReentrantLock} instead of a monitor on the session, so a virtual thread blocked in a
+   * send doesn't pin its carrier thread.
+   */
+  static Lock getSendLock(WebSocketSession wsSession) {
+
+    Lock lock = (Lock) wsSession.getAttributes().get(SEND_LOCK_ATTRIBUTE);
+
+    if (lock == null) {
+      // Only guards the creation of the lock, no I/O is done while holding the monitor
+      synchronized (wsSession) {
+        lock = (Lock) wsSession.getAttributes().get(SEND_LOCK_ATTRIBUTE);
+        if (lock == null) {
+          lock = new ReentrantLock();
+          wsSession.getAttributes().put(SEND_LOCK_ATTRIBUTE, lock);
+        }
+      }
+    }
+
+    return lock;
+  }
+
+  /**
+   * Returns the channels of a multiplexed WebSocket that have an open session. Sessions add and
+   * remove their channel, so the set doesn't grow with the sessions closed in a long-lived
+   * connection.
+   */
+  @SuppressWarnings("unchecked")
+  static Set<String> getChannels(WebSocketSession wsSession) {
+    synchronized (wsSession) {
+      Set<String> channels = (Set<String>) wsSession.getAttributes().get(CHANNELS_ATTRIBUTE);
+      if (channels == null) {
+        channels = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        wsSession.getAttributes().put(CHANNELS_ATTRIBUTE, channels);
+      }
+      return channels;
+    }
+  }
+
+  /**
+   * Creates the message of a response, with the session id injected as in
+   * {@link JsonUtils#toJsonMessage(Message)}.
+   */
+  static WebSocketMessage<?> create(WebSocketSession wsSession, Message message, String channel) {
+
+    if (isBinary(wsSession)) {
+      // Encoded from the JSON tree of the message, without serializing it to text
+      return new BinaryMessage(CborCodec.encode(JsonUtils.toJsonMessageTree(message)));
+    }
+
+    return new TextMessage(ChannelMessages.addChannel(message.toString(), channel));
+  }
+
+  /**
+   * Creates the message of a request sent by the server, that doesn't include the session id.
+   */
+  static WebSocketMessage<?> createRequest(WebSocketSession wsSession, Request<?> request,
+      String channel) {
+
+    if (isBinary(wsSession)) {
+      return new BinaryMessage(CborCodec.encode(JsonUtils.toJsonElement(request)));
+    }
+
+    return new TextMessage(ChannelMessages.addChannel(JsonUtils.toJson(request), channel));
+  }
+}
@@ -20,12 +20,13 @@ package org.kurento.jsonrpc.internal.ws;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
 
 import org.kurento.commons.PropertiesManager;
+import org.kurento.commons.ThreadFactoryCreator;
 import org.kurento.commons.exception.KurentoException;
 import org.kurento.jsonrpc.JsonRpcException;
 import org.kurento.jsonrpc.JsonUtils;
@@ -37,10 +38,13 @@ import org.kurento.jsonrpc.internal.server.SessionsManager;
 import org.kurento.jsonrpc.message.MessageUtils;
 import org.kurento.jsonrpc.message.Request;
 import org.kurento.jsonrpc.message.Response;
+import org.kurento.jsonrpc.metrics.JsonRpcEvents;
+import org.kurento.jsonrpc.metrics.JsonRpcMetrics;
+import org.kurento.jsonrpc.metrics.JsonRpcMetricsManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.google.gson.JsonElement;
@@ -54,16 +58,35 @@ public class WebSocketServerSession extends ServerSession {
 
   private WebSocketSession wsSession;
 
-  private final PendingRequests pendingRequests = new PendingRequests();
+  private String channel;
 
-  private ExecutorService execService = Executors.newCachedThreadPool();
+  private final PendingRequests pendingRequests =
+      new PendingRequests(JsonRpcMetrics.SERVER_WEBSOCKET);
+
+  private ExecutorService execService =
+      ThreadFactoryCreator.newCachedThreadPool("WebSocketServerSession-execService");
 
   public WebSocketServerSession(String sessionId, Object registerInfo,
       SessionsManager sessionsManager, WebSocketSession wsSession) {
+    this(sessionId, registerInfo, sessionsManager, wsSession, null);
+  }
+
+  /**
+   * Creates a session for a channel of a multiplexed WebSocket. The channel is null if the
+   * WebSocket is not multiplexed.
+   */
+  public WebSocketServerSession(String sessionId, Object registerInfo,
+      SessionsManager sessionsManager, WebSocketSession wsSession, String channel) {
 
-    super(sessionId, registerInfo, sessionsManager, wsSession.getId());
+    super(sessionId, registerInfo, sessionsManager,
+        ChannelMessages.getTransportId(wsSession.getId(), channel));
 
     this.wsSession = wsSession;
+    this.channel = channel;
+
+    if (channel != null) {
+      WebSocketMessages.getChannels(wsSession).add(channel);
+    }
 
     this.setRsHelper(new JsonRpcRequestSenderHelper(sessionId) {
       @Override
@@ -113,8 +136,17 @@ public class WebSocketServerSession extends ServerSession {
     }
 
     try {
-      synchronized (wsSession) {
-        wsSession.sendMessage(new TextMessage(JsonUtils.toJson(request)));
+      Lock sendLock = WebSocketMessages.getSendLock(wsSession);
+      sendLock.lock();
+      try {
+        WebSocketMessage<?> wsMessage =
+            WebSocketMessages.createRequest(wsSession, request, channel);
+        JsonRpcMetricsManager.getMetrics().messageSent(JsonRpcMetrics.SERVER_WEBSOCKET,
+            wsMessage.getPayloadLength());
+        JsonRpcEvents.messageSent(JsonRpcMetrics.SERVER_WEBSOCKET, wsMessage.getPayloadLength());
+        wsSession.sendMessage(wsMessage);
+      } finally {
+        sendLock.unlock();
       }
     } catch (Exception e) {
       throw new KurentoException("Exception while sending message '" + JsonUtils.toJson(request)
@@ -156,20 +188,45 @@ public class WebSocketServerSession extends ServerSession {
   public void close() throws IOException {
     try {
       execService.shutdown();
-      wsSession.close();
+      // The WebSocket of a channel is shared with other sessions
+      if (channel == null) {
+        wsSession.close();
+      } else {
+        WebSocketMessages.getChannels(wsSession).remove(channel);
+      }
     } finally {
       super.close();
     }
   }
 
   public void updateWebSocketSession(WebSocketSession wsSession) {
-    synchronized (wsSession) {
+    updateWebSocketSession(wsSession, null);
+  }
+
+  public void updateWebSocketSession(WebSocketSession wsSession, String channel) {
+    Lock sendLock = WebSocketMessages.getSendLock(wsSession);
+    sendLock.lock();
+    try {
+      if (this.channel != null) {
+        WebSocketMessages.getChannels(this.wsSession).remove(this.channel);
+      }
       this.wsSession = wsSession;
+      this.channel = channel;
+      if (channel != null) {
+        WebSocketMessages.getChannels(wsSession).add(channel);
+      }
+    } finally {
+      sendLock.unlock();
     }
   }
 
   @Override
   public void closeNativeSession(String reason) {
+    if (channel != null) {
+      log.debug("Not closing shared WebSocket of session {} in channel {}: {}", getSessionId(),
+          channel, reason);
+      return;
+    }
     try {
       wsSession.close(new CloseStatus(CloseStatus.NORMAL.getCode(), reason));
     } catch (IOException e) {
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.internal.ws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.web.socket.WebSocketExtension;
+
+public class CompressionHandshakeHandlerTest {
+
+  private static final WebSocketExtension DEFLATE =
+      new WebSocketExtension(CompressionHandshakeHandler.PERMESSAGE_DEFLATE,
+          Collections.singletonMap("client_max_window_bits", "15"));
+
+  private static final WebSocketExtension DEFLATE_FRAME =
+      new WebSocketExtension("x-webkit-deflate-frame");
+
+  private static final WebSocketExtension OTHER = new WebSocketExtension("other-extension");
+
+  private static final List<WebSocketExtension> REQUESTED =
+      Arrays.asList(DEFLATE, DEFLATE_FRAME, OTHER);
+
+  @Test
+  public void testExtensionsAreAcceptedWhenCompressionIsEnabled() {
+
+    CompressionHandshakeHandler handler = new CompressionHandshakeHandler(true, true);
+
+    assertEquals(REQUESTED, handler.filterCompressionExtensions(REQUESTED));
+  }
+
+  @Test
+  public void testCompressionExtensionsAreRejectedWhenCompressionIsDisabled() {
+
+    CompressionHandshakeHandler handler = new CompressionHandshakeHandler(false, true);
+
+    assertEquals(Arrays.asList(OTHER), handler.filterCompressionExtensions(REQUESTED));
+  }
+
+  @Test
+  public void testNoContextTakeoverIsNegotiated() {
+
+    CompressionHandshakeHandler handler = new CompressionHandshakeHandler(true, false);
+
+    List<WebSocketExtension> extensions = handler.filterCompressionExtensions(REQUESTED);
+
+    assertEquals(3, extensions.size());
+
+    WebSocketExtension deflate = extensions.get(0);
+    assertEquals(CompressionHandshakeHandler.PERMESSAGE_DEFLATE, deflate.getName());
+    assertEquals("15", deflate.getParameters().get("client_max_window_bits"));
+    assertTrue(deflate.getParameters().containsKey("server_no_context_takeover"));
+    assertTrue(deflate.getParameters().containsKey("client_no_context_takeover"));
+
+    assertEquals(DEFLATE_FRAME, extensions.get(1));
+    assertEquals(OTHER, extensions.get(2));
+  }
+
+  @Test
+  public void testEmptyExtensions() {
+
+    CompressionHandshakeHandler handler = new CompressionHandshakeHandler(true, false);
+
+    assertTrue(handler.filterCompressionExtensions(
+        Collections.<WebSocketExtension> emptyList()).isEmpty());
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.TransportException;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.http.LongPollingQueue;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+public class LongPollingQueueTest {
+
+  private static class PollResponses implements ResponseSender {
+
+    private final LinkedBlockingQueue<Response<?>> responses = new LinkedBlockingQueue<>();
+
+    @Override
+    public void sendResponse(Message message) throws IOException {
+      responses.add((Response<?>) message);
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      sendResponse(message);
+    }
+
+    List<?> next(long timeoutMillis) throws InterruptedException {
+      Response<?> response = responses.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      return response != null ? (List<?>) response.getResult() : null;
+    }
+  }
+
+  @Test
+  public void heldPollIsRespondedWhenRequestIsQueued() throws Exception {
+
+    LongPollingQueue queue = new LongPollingQueue("session", 10, 10000);
+    PollResponses poll = new PollResponses();
+
+    queue.poll(1, poll);
+    assertNull(poll.next(100));
+
+    queue.offer(new Request<Object>(1, "method", null));
+
+    List<?> requests = poll.next(1000);
+    assertEquals(1, requests.size());
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void queuedRequestsAreSentInNextPoll() throws Exception {
+
+    LongPollingQueue queue = new LongPollingQueue("session", 10, 10000);
+
+    queue.offer(new Request<Object>(1, "method1", null));
+    queue.offer(new Request<Object>(2, "method2", null));
+
+    PollResponses poll = new PollResponses();
+    queue.poll(1, poll);
+
+    List<?> requests = poll.next(0);
+    assertEquals(2, requests.size());
+    assertEquals("method1", ((Request<?>) requests.get(0)).getMethod());
+  }
+
+  @Test
+  public void heldPollExpires() throws Exception {
+
+    LongPollingQueue queue = new LongPollingQueue("session", 10, 100);
+    PollResponses poll = new PollResponses();
+
+    long start = System.nanoTime();
+    queue.poll(1, poll);
+
+    assertTrue(poll.next(5000).isEmpty());
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+  }
+
+  @Test
+  public void requestsAreRequeuedIfPollCannotBeResponded() throws Exception {
+
+    LongPollingQueue queue = new LongPollingQueue("session", 10, 10000);
+
+    queue.poll(1, new ResponseSender() {
+      @Override
+      public void sendResponse(Message message) throws IOException {
+        throw new IOException("Connection closed");
+      }
+
+      @Override
+      public void sendPingResponse(Message message) throws IOException {
+        sendResponse(message);
+      }
+    });
+
+    queue.offer(new Request<Object>(1, "method", null));
+
+    assertEquals(1, queue.size());
+  }
+
+  @Test(expected = TransportException.class)
+  public void fullQueueRejectsRequests() {
+
+    LongPollingQueue queue = new LongPollingQueue("session", 1, 10000);
+
+    queue.offer(new Request<Object>(1, "method1", null));
+    queue.offer(new Request<Object>(2, "method2", null));
+  }
+}
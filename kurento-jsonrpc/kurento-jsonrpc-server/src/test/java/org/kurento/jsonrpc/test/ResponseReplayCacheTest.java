@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.kurento.jsonrpc.internal.server.ResponseReplayCache;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+public class ResponseReplayCacheTest {
+
+  private static Request<JsonElement> request(int id, String method, String param) {
+    JsonObject params = new JsonObject();
+    params.addProperty("param", param);
+    return new Request<JsonElement>(id, method, params);
+  }
+
+  @Test
+  public void responseIsReplayedAfterReconnection() {
+
+    ResponseReplayCache cache = new ResponseReplayCache(10, 10000);
+    Response<String> response = new Response<>(1, "result");
+
+    cache.put(request(1, "create", "value"), "transport1", response);
+
+    assertNull(cache.getReplay(request(1, "create", "value"), "transport1"));
+    assertSame(response, cache.getReplay(request(1, "create", "value"), "transport2"));
+    assertEquals(1, cache.getReplayedResponses());
+  }
+
+  @Test
+  public void differentRequestWithSameIdIsNotReplayed() {
+
+    ResponseReplayCache cache = new ResponseReplayCache(10, 10000);
+    cache.put(request(1, "create", "value"), "transport1", new Response<>(1, "result"));
+
+    assertNull(cache.getReplay(request(1, "invoke", "value"), "transport2"));
+    assertNull(cache.getReplay(request(1, "create", "other"), "transport2"));
+    assertNull(cache.getReplay(request(2, "create", "value"), "transport2"));
+  }
+
+  @Test
+  public void paramsWithSameHashAreNotReplayed() {
+
+    JsonObject params = new JsonObject();
+    params.addProperty("a", 0);
+    JsonObject otherParams = new JsonObject();
+    otherParams.addProperty("b", 3);
+    assertEquals(params.hashCode(), otherParams.hashCode());
+
+    ResponseReplayCache cache = new ResponseReplayCache(10, 10000);
+    cache.put(new Request<JsonElement>(1, "create", params), "transport1",
+        new Response<>(1, "result"));
+
+    assertNull(cache.getReplay(new Request<JsonElement>(1, "create", otherParams), "transport2"));
+  }
+
+  @Test
+  public void cacheIsBoundedBySize() {
+
+    ResponseReplayCache cache = new ResponseReplayCache(3, 10000);
+    Response<String> last = null;
+    for (int i = 0; i < 10; i++) {
+      last = new Response<>(i, "result");
+      cache.put(request(i, "create", "value"), "transport1", last);
+    }
+
+    assertEquals(3, cache.size());
+    assertNull(cache.getReplay(request(6, "create", "value"), "transport2"));
+    assertSame(last, cache.getReplay(request(9, "create", "value"), "transport2"));
+  }
+
+  @Test
+  public void responsesExpire() throws Exception {
+
+    ResponseReplayCache cache = new ResponseReplayCache(10, 50);
+    cache.put(request(1, "create", "value"), "transport1", new Response<>(1, "result"));
+
+    Thread.sleep(100);
+
+    assertNull(cache.getReplay(request(1, "create", "value"), "transport2"));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void cacheWithoutSizeIsDisabled() {
+
+    ResponseReplayCache cache = new ResponseReplayCache(0, 10000);
+    cache.put(request(1, "create", "value"), "transport1", new Response<>(1, "result"));
+
+    assertFalse(cache.isEnabled());
+    assertEquals(0, cache.size());
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * (C) Copyright 2016 Kurento (http://kurento.org/)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+
+package org.kurento.jsonrpc.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.kurento.jsonrpc.DefaultJsonRpcHandler;
+import org.kurento.jsonrpc.JsonRpcHandler;
+import org.kurento.jsonrpc.Transaction;
+import org.kurento.jsonrpc.internal.JsonRpcConstants;
+import org.kurento.jsonrpc.internal.client.TransactionImpl.ResponseSender;
+import org.kurento.jsonrpc.internal.server.ProtocolManager;
+import org.kurento.jsonrpc.internal.server.ProtocolManager.ServerSessionFactory;
+import org.kurento.jsonrpc.internal.server.ServerSession;
+import org.kurento.jsonrpc.internal.server.SessionsManager;
+import org.kurento.jsonrpc.message.Message;
+import org.kurento.jsonrpc.message.Request;
+import org.kurento.jsonrpc.message.Response;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Checks that a request retried by a client after reconnecting to its session gets the response
+ * of the original request, without processing it again.
+ */
+public class ResponseReplayTest {
+
+  public static class CreateParams {
+    public String param;
+  }
+
+  private static class TestServerSession extends ServerSession {
+
+    TestServerSession(String sessionId, Object registerInfo, SessionsManager sessionsManager,
+        String transportId) {
+      super(sessionId, registerInfo, sessionsManager, transportId);
+    }
+
+    @Override
+    public void handleResponse(Response<JsonElement> response) {
+    }
+
+    @Override
+    public void closeNativeSession(String reason) {
+    }
+  }
+
+  private class Transport implements ServerSessionFactory, ResponseSender {
+
+    private final String transportId;
+    private final BlockingQueue<Message> responses = new LinkedBlockingQueue<>();
+
+    Transport(String transportId) {
+      this.transportId = transportId;
+    }
+
+    @Override
+    public ServerSession createSession(String sessionId, Object registerInfo,
+        SessionsManager sessionsManager) {
+      ServerSession session =
+          new TestServerSession(sessionId, registerInfo, sessionsManager, transportId);
+      sessions.add(session);
+      return session;
+    }
+
+    @Override
+    public void updateSessionOnReconnection(ServerSession session) {
+    }
+
+    @Override
+    public void sendResponse(Message message) throws IOException {
+      responses.add(message);
+    }
+
+    @Override
+    public void sendPingResponse(Message message) throws IOException {
+      responses.add(message);
+    }
+
+    Response<?> send(Request<?> request) throws Exception {
+      protocolManager.processMessage(request.toString(), this, this, transportId);
+      Message response = responses.poll(10, TimeUnit.SECONDS);
+      assertNotNull("Response to " + request + " not received", response);
+      return (Response<?>) response;
+    }
+  }
+
+  private final AtomicInteger handledRequests = new AtomicInteger();
+  private final List<ServerSession> sessions = new CopyOnWriteArrayList<>();
+
+  private ThreadPoolTaskScheduler scheduler;
+  private ProtocolManager protocolManager;
+
+  @Before
+  public void setup() {
+
+    scheduler = new ThreadPoolTaskScheduler();
+    scheduler.initialize();
+
+    setHandler(new DefaultJsonRpcHandler<JsonObject>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<JsonObject> request)
+          throws Exception {
+        transaction.sendResponse(handledRequests.incrementAndGet());
+      }
+    });
+  }
+
+  private void setHandler(JsonRpcHandler<?> handler) {
+    protocolManager = new ProtocolManager(handler, new SessionsManager(), scheduler);
+  }
+
+  @After
+  public void teardown() throws IOException {
+    for (ServerSession session : sessions) {
+      session.close();
+    }
+    scheduler.shutdown();
+  }
+
+  @Test
+  public void retriedRequestIsHandledOnce() throws Exception {
+
+    Transport transport1 = new Transport("transport1");
+    String sessionId =
+        transport1.send(new Request<>(1, JsonRpcConstants.METHOD_CONNECT, null)).getSessionId();
+
+    Response<?> response = transport1.send(request(sessionId, 2, "value"));
+    assertEquals(1, handledRequests.get());
+
+    // The client reconnects to the same session and retries the request
+    Transport transport2 = new Transport("transport2");
+    Response<?> reconnection =
+        transport2.send(new Request<>(sessionId, 3, JsonRpcConstants.METHOD_CONNECT, null));
+    assertEquals(JsonRpcConstants.RECONNECTION_SUCCESSFUL, reconnection.getResult());
+
+    assertSame(response, transport2.send(request(sessionId, 2, "value")));
+    assertEquals(1, handledRequests.get());
+
+    // A different request reusing the id is handled
+    transport2.send(request(sessionId, 2, "other"));
+    assertEquals(2, handledRequests.get());
+  }
+
+  @Test
+  public void retriedRequestIsHandledOnceWithTypedParams() throws Exception {
+
+    // Params are converted to CreateParams before handling the request
+    setHandler(new DefaultJsonRpcHandler<CreateParams>() {
+      @Override
+      public void handleRequest(Transaction transaction, Request<CreateParams> request)
+          throws Exception {
+        assertEquals("value", request.getParams().param);
+        transaction.sendResponse(handledRequests.incrementAndGet());
+      }
+    });
+
+    Transport transport1 = new Transport("transport1");
+    String sessionId =
+        transport1.send(new Request<>(1, JsonRpcConstants.METHOD_CONNECT, null)).getSessionId();
+
+    Response<?> response = transport1.send(request(sessionId, 2, "value"));
+
+    Transport transport2 = new Transport("transport2");
+    transport2.send(new Request<>(sessionId, 3, JsonRpcConstants.METHOD_CONNECT, null));
+
+    assertSame(response, transport2.send(request(sessionId, 2, "value")));
+    assertEquals(1, handledRequests.get());
+  }
+
+  private static Request<JsonObject> request(String sessionId, int id, String param) {
+    JsonObject params = new JsonObject();
+    params.addProperty("param", param);
+    return new Request<>(sessionId, id, "create", params);
+  }
+}